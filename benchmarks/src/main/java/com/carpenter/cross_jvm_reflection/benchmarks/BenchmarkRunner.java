@@ -0,0 +1,39 @@
+package com.carpenter.cross_jvm_reflection.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks twice with the gc profiler, once for throughput in ops/s and once sampling the latency of each call for its percentiles.
+ * Any arguments are regular JMH arguments, for example a regex selecting the benchmarks to run, and are applied to both passes.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions command_line = new CommandLineOptions(args);
+        new Runner(options(command_line, "throughput")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .build()).run();
+        new Runner(options(command_line, "latency")
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(CommandLineOptions command_line, String pass) {
+        return new OptionsBuilder()
+                .parent(command_line)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-" + pass + ".json");
+    }
+}
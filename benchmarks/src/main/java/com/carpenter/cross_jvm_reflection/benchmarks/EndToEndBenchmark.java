@@ -0,0 +1,140 @@
+package com.carpenter.cross_jvm_reflection.benchmarks;
+
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Resolutions;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.rmi.StoreStatistics;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip of each family of ServerStub methods against a forked target, once per transport.
+ * The unix transport requires Java 16 or later on both sides.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+    private static final String COUNTER = SyntheticTarget.CLASS_NAME + ".counter";
+    private static final String NAME = SyntheticTarget.CLASS_NAME + ".name";
+    private static final String PARTICLE = SyntheticTarget.CLASS_NAME + ".particle";
+    private static final String X = SyntheticTarget.PARTICLE_CLASS_NAME + ".x";
+
+    @Param({"rmi", "tcp", "unix"})
+    public String transport;
+
+    private TargetProcess target;
+    private ServerStub stub;
+    private long particle_uid;
+    private long values_uid;
+    private long few_particles_uid;
+    private long index_uid;
+    private long counter_plan;
+    private PathExpression path;
+    private PathExpression[] paths;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        target = TargetProcess.start(transport);
+        stub = target.getStub();
+        particle_uid = stub.uid(PARTICLE);
+        values_uid = stub.uid(SyntheticTarget.CLASS_NAME + ".values");
+        few_particles_uid = stub.uid(SyntheticTarget.CLASS_NAME + ".few_particles");
+        index_uid = stub.uid(SyntheticTarget.CLASS_NAME + ".index");
+        counter_plan = stub.plan(PathExpression.compile(COUNTER));
+        path = PathExpression.compile(SyntheticTarget.CLASS_NAME + ".few_particles -> [500] -> " + X);
+        paths = new PathExpression[]{PathExpression.compile(COUNTER), PathExpression.compile(SyntheticTarget.CLASS_NAME + ".total"),
+                PathExpression.compile(SyntheticTarget.CLASS_NAME + ".rate"), PathExpression.compile(NAME), path};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        target.close();
+    }
+
+    @Benchmark
+    public long uid() throws RemoteException {
+        return stub.uid(PARTICLE);
+    }
+
+    @Benchmark
+    public boolean validate() throws RemoteException {
+        return stub.validate(particle_uid);
+    }
+
+    @Benchmark
+    public String type() throws RemoteException {
+        return stub.type(particle_uid);
+    }
+
+    @Benchmark
+    public int int32() throws RemoteException {
+        return stub.int32(COUNTER);
+    }
+
+    @Benchmark
+    public double fp64Owned() throws RemoteException {
+        return stub.fp64(X, particle_uid);
+    }
+
+    @Benchmark
+    public Serializable serialize() throws RemoteException {
+        return stub.serialize(NAME);
+    }
+
+    @Benchmark
+    public int length() throws RemoteException {
+        return stub.length(values_uid);
+    }
+
+    @Benchmark
+    public long[] array() throws RemoteException {
+        return stub.array(few_particles_uid);
+    }
+
+    @Benchmark
+    public int[] int32Array() throws RemoteException {
+        return stub.int32_array(values_uid, 0, SyntheticTarget.SMALL_LENGTH);
+    }
+
+    @Benchmark
+    public int[] int32ArrayLarge() throws RemoteException {
+        return stub.int32_array(values_uid, 0, -1);
+    }
+
+    @Benchmark
+    public double[] fp64Strided() throws RemoteException {
+        return stub.fp64_strided(X, few_particles_uid, 0, -1);
+    }
+
+    @Benchmark
+    public long mapValue() throws RemoteException {
+        return stub.map_value(SyntheticTarget.key(500), index_uid);
+    }
+
+    @Benchmark
+    public Serializable resolve() throws RemoteException {
+        return stub.resolve(path);
+    }
+
+    @Benchmark
+    public Resolutions resolveBatch() throws RemoteException {
+        return stub.resolve(paths);
+    }
+
+    @Benchmark
+    public int plan() throws RemoteException {
+        return stub.int32_plan(counter_plan);
+    }
+
+    @Benchmark
+    public StoreStatistics storeStatistics() throws RemoteException {
+        return stub.store_statistics();
+    }
+}
@@ -0,0 +1,109 @@
+package com.carpenter.cross_jvm_reflection.benchmarks;
+
+import com.carpenter.cross_jvm_reflection.server.rmi.impl.DefaultServerImpl;
+import com.carpenter.cross_jvm_reflection.server.rmi.impl.HandleTable;
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DefaultServerImpl} called directly, without a transport, so that the cost of the server itself is isolated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InProcessBenchmark {
+    private static final String COUNTER = SyntheticTarget.CLASS_NAME + ".counter";
+    private static final String CHURN = SyntheticTarget.CLASS_NAME + ".churn";
+
+    private DefaultServerImpl server;
+    private HandleTable store;
+    private long counter_plan;
+    private long values_uid;
+    private long particles_uid;
+    private long few_particles_uid;
+    private long index_uid;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws RemoteException {
+        server = new DefaultServerImpl(SyntheticTarget.class.getClassLoader(), Integer.MAX_VALUE - 1, null, false);
+        store = new HandleTable();
+        counter_plan = server.plan(PathExpression.compile(COUNTER));
+        values_uid = server.uid(SyntheticTarget.CLASS_NAME + ".values");
+        particles_uid = server.uid(SyntheticTarget.CLASS_NAME + ".particles");
+        few_particles_uid = server.uid(SyntheticTarget.CLASS_NAME + ".few_particles");
+        index_uid = server.uid(SyntheticTarget.CLASS_NAME + ".index");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws RemoteException {
+        server.close();
+    }
+
+    /**
+     * A named read, every call looks the field up in the handle cache.
+     */
+    @Benchmark
+    public int cachedHandle() throws RemoteException {
+        return server.int32(COUNTER);
+    }
+
+    /**
+     * The same read through a compiled plan, which skips the cache lookup.
+     */
+    @Benchmark
+    public int plan() throws RemoteException {
+        return server.int32_plan(counter_plan);
+    }
+
+    /**
+     * Registers and releases a new object, the cost of a slot allocation in the object store.
+     */
+    @Benchmark
+    public boolean storeChurn() {
+        return store.release(store.register(new Object(), 0));
+    }
+
+    /**
+     * Registers a new object through the server and drops it, the collected objects are left to the reclaimer.
+     */
+    @Benchmark
+    public long uidChurn() throws RemoteException {
+        SyntheticTarget.churn(next++);
+        return server.uid(CHURN);
+    }
+
+    /**
+     * Re-registers 100k objects that are already registered, the cost of the identity index.
+     */
+    @Benchmark
+    public long[] largeArray() throws RemoteException {
+        return server.array(particles_uid);
+    }
+
+    @Benchmark
+    public long[] smallArray() throws RemoteException {
+        return server.array(few_particles_uid);
+    }
+
+    @Benchmark
+    public int[] largeIntArray() throws RemoteException {
+        return server.int32_array(values_uid, 0, -1);
+    }
+
+    @Benchmark
+    public double[] stridedRead() throws RemoteException {
+        return server.fp64_strided(SyntheticTarget.PARTICLE_CLASS_NAME + ".x", few_particles_uid, 0, -1);
+    }
+
+    @Benchmark
+    public long mapLookup() throws RemoteException {
+        return server.map_value(SyntheticTarget.key(next++ % SyntheticTarget.MAP_SIZE), index_uid);
+    }
+}
@@ -0,0 +1,75 @@
+package com.carpenter.cross_jvm_reflection.benchmarks;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The application the benchmarks read from, in the benchmark jvm for the in-process suite and in a forked jvm for the end to end suite.
+ * When forked it prints its pid and exits once its standard input is closed, so it never outlives the benchmark.
+ */
+public class SyntheticTarget {
+    public static final String CLASS_NAME = SyntheticTarget.class.getName();
+    public static final String PARTICLE_CLASS_NAME = Particle.class.getName();
+    public static final int LARGE_LENGTH = 100_000;
+    public static final int SMALL_LENGTH = 1_000;
+    public static final int MAP_SIZE = 10_000;
+
+    static int counter = 42;
+    static long total = 1L << 40;
+    static double rate = 0.5;
+    static String name = "synthetic";
+    static Particle particle = new Particle(7);
+    static Particle churn = new Particle(-1);
+    static int[] values = new int[LARGE_LENGTH];
+    static Particle[] particles = new Particle[LARGE_LENGTH];
+    static Particle[] few_particles = new Particle[SMALL_LENGTH];
+    static Map<String, Particle> index = new HashMap<>();
+
+    static {
+        for (int i = 0; i < LARGE_LENGTH; ++i) {
+            values[i] = i;
+            particles[i] = new Particle(i);
+        }
+        System.arraycopy(particles, 0, few_particles, 0, SMALL_LENGTH);
+        for (int i = 0; i < MAP_SIZE; ++i) {
+            index.put(key(i), particles[i]);
+        }
+    }
+
+    public static String key(int i) {
+        return "particle-" + i;
+    }
+
+    /**
+     * Replaces the churn field with a new object, the previous one becomes garbage.
+     */
+    public static void churn(int id) {
+        churn = new Particle(id);
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]);
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            //Wait for the benchmark to close our input.
+        }
+        System.exit(0);
+    }
+
+    public static class Particle implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int id;
+        double x;
+        double y;
+
+        Particle(int id) {
+            this.id = id;
+            this.x = id * 0.5;
+            this.y = id * 0.25;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.carpenter.cross_jvm_reflection.benchmarks;
+
+import com.carpenter.cross_jvm_reflection.client.transport.BinaryClient;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.sun.tools.attach.VirtualMachine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.rmi.registry.LocateRegistry;
+
+/**
+ * A forked {@link SyntheticTarget} with the agent attached the same way ClientExample attaches it.
+ * The agent jar defaults to the benchmark jar, whose manifest declares the agent, and can be overridden with -Dagent.jar=path.
+ */
+final class TargetProcess implements Closeable {
+    private final Process process;
+    private final BinaryClient client;
+    private final ServerStub stub;
+    private final String unix_path;
+
+    private TargetProcess(Process process, BinaryClient client, ServerStub stub, String unix_path) {
+        this.process = process;
+        this.client = client;
+        this.stub = stub;
+        this.unix_path = unix_path;
+    }
+
+    /**
+     * Forks the target, attaches the agent and connects to it.
+     *
+     * @param transport rmi, tcp or unix, the same values the agent accepts.
+     */
+    static TargetProcess start(String transport) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), SyntheticTarget.class.getName())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            String pid = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)).readLine();
+            if (pid == null) {
+                throw new IOException("The target exited before it was ready.");
+            }
+            String name = "Server" + pid;
+            String unix_path = null;
+            int port = 0;
+            String args;
+            switch (transport) {
+                case "rmi":
+                    args = "name=" + name;
+                    break;
+                case "tcp":
+                    port = freePort();
+                    args = "transport=tcp,port=" + port;
+                    break;
+                case "unix":
+                    unix_path = new File(System.getProperty("java.io.tmpdir"), "cross-jvm-reflection-" + pid + ".sock").getAbsolutePath();
+                    args = "transport=unix,path=" + unix_path;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown transport " + transport + ", expected rmi, tcp or unix.");
+            }
+            VirtualMachine vm = VirtualMachine.attach(pid);
+            try {
+                vm.loadAgent(agentJar(), args);
+            } finally {
+                vm.detach();
+            }
+            switch (transport) {
+                case "rmi":
+                    return new TargetProcess(process, null, (ServerStub) LocateRegistry.getRegistry().lookup(name), null);
+                case "tcp":
+                    BinaryClient tcp = BinaryClient.connect("127.0.0.1", port);
+                    return new TargetProcess(process, tcp, tcp.getStub(), null);
+                default:
+                    BinaryClient unix = BinaryClient.connect(unix_path);
+                    return new TargetProcess(process, unix, unix.getStub(), unix_path);
+            }
+        } catch (Exception e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    ServerStub getStub() {
+        return stub;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        process.getOutputStream().close();
+        try {
+            process.waitFor();
+        } catch (InterruptedException ie) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        if (unix_path != null) {
+            Files.deleteIfExists(Paths.get(unix_path));
+        }
+    }
+
+    private static String agentJar() throws Exception {
+        String configured = System.getProperty("agent.jar");
+        if (configured != null) {
+            return configured;
+        }
+        return new File(TargetProcess.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.carpenter.cross_jvm_reflection.client.async;
+
+import com.carpenter.cross_jvm_reflection.client.transport.BinaryClient;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A client that issues the operations of a {@link com.carpenter.cross_jvm_reflection.server.transport.BinaryServer} without blocking.
+ * Every call is a request pipelined over the one connection of a {@link BinaryClient}, so any number may be in flight at once, and calls issued
+ * within the batch window are written to the socket together. For example, reading 500 values costs one round trip rather than 500:
+ * <pre>
+ * CompletableFuture&lt;Integer&gt;[] values = new CompletableFuture[500];
+ * for (int index = 0; index &lt; values.length; ++index) {
+ *     values[index] = client.getAsync().int32("pkg.Item.value", uids[index]);
+ * }
+ * CompletableFuture.allOf(values).join();
+ * </pre>
+ * {@link #getBlocking()} is a ServerStub over the same connection for code written in the blocking style, it parks the calling thread on the
+ * future of its request and so scales with virtual threads in place of platform threads.
+ */
+public class AsyncClient implements Closeable {
+    private final BinaryClient client;
+    private final Map<Method, Method> methods = new HashMap<>();
+    private final AsyncServerStub async;
+
+    /**
+     * @param batch_window_micros How long calls are held to be written together with the calls that follow them, 0 to write them at once.
+     */
+    public AsyncClient(BinaryClient client, long batch_window_micros) {
+        this.client = client;
+        client.setBatchWindow(batch_window_micros);
+        for (Method method : AsyncServerStub.class.getMethods()) {
+            try {
+                methods.put(method, ServerStub.class.getMethod(method.getName(), method.getParameterTypes()));
+            } catch (NoSuchMethodException nsme) {
+                throw new IllegalStateException(method + " has no counterpart in ServerStub.", nsme);
+            }
+        }
+        this.async = createAsync(0);
+    }
+
+    /**
+     * Connects to a server listening on a TCP socket.
+     */
+    public static AsyncClient connect(String host, int port, long batch_window_micros) throws IOException {
+        return new AsyncClient(BinaryClient.connect(host, port), batch_window_micros);
+    }
+
+    /**
+     * Connects to a server listening on a unix domain socket.
+     *
+     * @throws UnsupportedOperationException before Java 16.
+     */
+    public static AsyncClient connect(String unix_path, long batch_window_micros) throws IOException {
+        return new AsyncClient(BinaryClient.connect(unix_path), batch_window_micros);
+    }
+
+    /**
+     * Gets the operations of the server as calls returning futures.
+     */
+    public AsyncServerStub getAsync() {
+        return async;
+    }
+
+    /**
+     * Gets a ServerStub whose calls block until their response arrives, sharing the connection and the batching of the async calls.
+     */
+    public ServerStub getBlocking() {
+        return client.getStub();
+    }
+
+    public BinaryClient getClient() {
+        return client;
+    }
+
+    private AsyncServerStub createAsync(int target) {
+        InvocationHandler handler = (proxy, method, arguments) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "AsyncClient.Stub{target=" + target + "}";
+                }
+            }
+            Method stub_method = methods.get(method);
+            CompletableFuture<Object> future = client.invoke(target, stub_method, arguments == null ? new Object[0] : arguments);
+            if (stub_method.getReturnType() == ServerStub.class) {
+                return future.thenApply(session -> createAsync((Integer) session));
+            }
+            return future;
+        };
+        return (AsyncServerStub) Proxy.newProxyInstance(AsyncServerStub.class.getClassLoader(), new Class<?>[]{AsyncServerStub.class}, handler);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
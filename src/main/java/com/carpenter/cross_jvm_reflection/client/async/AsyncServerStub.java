@@ -0,0 +1,293 @@
+package com.carpenter.cross_jvm_reflection.client.async;
+
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.query.Query;
+import com.carpenter.cross_jvm_reflection.shared.query.QueryResult;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ClassSchema;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Delta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.FieldEvents;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Invocations;
+import com.carpenter.cross_jvm_reflection.shared.rmi.MetricsSnapshot;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Resolutions;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Snapshot;
+import com.carpenter.cross_jvm_reflection.shared.rmi.StoreStatistics;
+import com.carpenter.cross_jvm_reflection.shared.rmi.TimeSeries;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchListener;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The operations of {@link ServerStub} with the same names and parameters, returning a future instead of blocking.
+ * A future is completed exceptionally with a RemoteException where the blocking call would throw one.
+ * Futures are completed on the reader thread of the connection, dependent stages that block or take long should be run on an executor of their own.
+ */
+public interface AsyncServerStub {
+    /**
+     * Opens a session, see {@link ServerStub#session(long)}. The session shares the connection.
+     */
+    CompletableFuture<AsyncServerStub> session(long lease_millis);
+
+    CompletableFuture<Void> release();
+
+    CompletableFuture<Void> renew();
+
+    CompletableFuture<StoreStatistics> store_statistics();
+
+    CompletableFuture<MetricsSnapshot> metrics();
+
+    CompletableFuture<ClassSchema[]> schema(String prefix);
+
+    CompletableFuture<Long> uid(String name);
+
+    CompletableFuture<Long> uid(String name, long owner_uid);
+
+    CompletableFuture<Integer> length(long array_uid);
+
+    CompletableFuture<Long> index(int index, long uid);
+
+    CompletableFuture<long[]> cleaned_array(long uid);
+
+    CompletableFuture<long[]> cleaned_array(String name);
+
+    CompletableFuture<long[]> cleaned_array(String name, long owner_uid);
+
+    CompletableFuture<long[]> array(long uid);
+
+    CompletableFuture<long[]> array(String name);
+
+    CompletableFuture<long[]> array(String name, long owner_uid);
+
+    CompletableFuture<Delta> array_delta(long uid, long baseline_checksum);
+
+    CompletableFuture<Delta> array_delta(PathExpression path, long baseline_checksum);
+
+    CompletableFuture<long[]> map_keys(long map_uid);
+
+    CompletableFuture<Long> map_value(long key_uid, long map_uid);
+
+    CompletableFuture<Long> map_value(Object key, long map_uid);
+
+    CompletableFuture<Long> cursor(long uid);
+
+    CompletableFuture<long[]> cursor_uids(long cursor, int count);
+
+    CompletableFuture<Serializable[]> cursor_values(long cursor, int count);
+
+    CompletableFuture<long[]> cursor_int64(long cursor, int count);
+
+    CompletableFuture<double[]> cursor_fp64(long cursor, int count);
+
+    CompletableFuture<Boolean> cursor_close(long cursor);
+
+    CompletableFuture<Serializable> invoke(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments);
+
+    CompletableFuture<Long> invoke_uid(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments);
+
+    CompletableFuture<Invocations> invoke_all(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments);
+
+    CompletableFuture<Invocations> invoke_all_uids(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments);
+
+    CompletableFuture<QueryResult> query(Query query);
+
+    CompletableFuture<Snapshot> snapshot(long root_uid, int max_depth, String[] includes, String[] excludes);
+
+    CompletableFuture<Long> hash(long uid, int max_depth);
+
+    CompletableFuture<Long> hash(PathExpression path, int max_depth);
+
+    CompletableFuture<Boolean> validate(long uid);
+
+    CompletableFuture<Boolean> instance(String type_name, long uid);
+
+    CompletableFuture<String> type(long uid);
+
+    CompletableFuture<Serializable> serialize(long uid);
+
+    CompletableFuture<Serializable> serialize(String name);
+
+    CompletableFuture<Serializable> serialize(String name, long owner_uid);
+
+    CompletableFuture<byte[]> encode(long uid, int max_depth);
+
+    CompletableFuture<byte[]> encode(String name, int max_depth);
+
+    CompletableFuture<byte[]> encode(String name, long owner_uid, int max_depth);
+
+    CompletableFuture<Delta> encode_delta(long uid, int max_depth, long baseline_checksum);
+
+    CompletableFuture<Delta> encode_delta(PathExpression path, int max_depth, long baseline_checksum);
+
+    CompletableFuture<Byte> int8(long uid);
+
+    CompletableFuture<Byte> int8(String name);
+
+    CompletableFuture<Byte> int8(String name, long owner_uid);
+
+    CompletableFuture<Short> int16(long uid);
+
+    CompletableFuture<Short> int16(String name);
+
+    CompletableFuture<Short> int16(String name, long owner_uid);
+
+    CompletableFuture<Integer> int32(long uid);
+
+    CompletableFuture<Integer> int32(String name);
+
+    CompletableFuture<Integer> int32(String name, long owner_uid);
+
+    CompletableFuture<Long> int64(long uid);
+
+    CompletableFuture<Long> int64(String name);
+
+    CompletableFuture<Long> int64(String name, long owner_uid);
+
+    CompletableFuture<Float> fp32(long uid);
+
+    CompletableFuture<Float> fp32(String name);
+
+    CompletableFuture<Float> fp32(String name, long owner_uid);
+
+    CompletableFuture<Double> fp64(long uid);
+
+    CompletableFuture<Double> fp64(String name);
+
+    CompletableFuture<Double> fp64(String name, long owner_uid);
+
+    CompletableFuture<Boolean> bool(long uid);
+
+    CompletableFuture<Boolean> bool(String name);
+
+    CompletableFuture<Boolean> bool(String name, long owner_uid);
+
+    CompletableFuture<Character> uint16(long uid);
+
+    CompletableFuture<Character> uint16(String name);
+
+    CompletableFuture<Character> uint16(String name, long owner_uid);
+
+    CompletableFuture<byte[]> int8_array(long uid, int offset, int length);
+
+    CompletableFuture<byte[]> int8_array(String name, int offset, int length);
+
+    CompletableFuture<byte[]> int8_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<short[]> int16_array(long uid, int offset, int length);
+
+    CompletableFuture<short[]> int16_array(String name, int offset, int length);
+
+    CompletableFuture<short[]> int16_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<int[]> int32_array(long uid, int offset, int length);
+
+    CompletableFuture<int[]> int32_array(String name, int offset, int length);
+
+    CompletableFuture<int[]> int32_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<long[]> int64_array(long uid, int offset, int length);
+
+    CompletableFuture<long[]> int64_array(String name, int offset, int length);
+
+    CompletableFuture<long[]> int64_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<float[]> fp32_array(long uid, int offset, int length);
+
+    CompletableFuture<float[]> fp32_array(String name, int offset, int length);
+
+    CompletableFuture<float[]> fp32_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<double[]> fp64_array(long uid, int offset, int length);
+
+    CompletableFuture<double[]> fp64_array(String name, int offset, int length);
+
+    CompletableFuture<double[]> fp64_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<boolean[]> bool_array(long uid, int offset, int length);
+
+    CompletableFuture<boolean[]> bool_array(String name, int offset, int length);
+
+    CompletableFuture<boolean[]> bool_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<char[]> uint16_array(long uid, int offset, int length);
+
+    CompletableFuture<char[]> uint16_array(String name, int offset, int length);
+
+    CompletableFuture<char[]> uint16_array(String name, long owner_uid, int offset, int length);
+
+    CompletableFuture<byte[]> int8_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<short[]> int16_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<int[]> int32_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<long[]> int64_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<float[]> fp32_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<double[]> fp64_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<boolean[]> bool_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<char[]> uint16_strided(String name, long array_uid, int offset, int length);
+
+    CompletableFuture<Serializable> resolve(PathExpression path);
+
+    CompletableFuture<Resolutions> resolve(PathExpression[] paths);
+
+    CompletableFuture<Long> subscribe(PathExpression[] paths, long interval_millis, WatchListener listener);
+
+    CompletableFuture<Boolean> unsubscribe(long subscription);
+
+    CompletableFuture<Long> watch_field(String name, int capacity);
+
+    CompletableFuture<FieldEvents> drain_field(long watch_id, long sequence, int max_events);
+
+    CompletableFuture<Boolean> unwatch_field(long watch_id);
+
+    CompletableFuture<Long> record_series(PathExpression path, long period_nanos, int capacity);
+
+    CompletableFuture<TimeSeries> drain_series(long series, long sequence, int max_samples);
+
+    CompletableFuture<Boolean> stop_series(long series);
+
+    CompletableFuture<Boolean> hot(String name);
+
+    CompletableFuture<Long> plan(PathExpression path);
+
+    CompletableFuture<Long> uid_plan(long plan);
+
+    CompletableFuture<Long> uid_plan(long plan, long owner_uid);
+
+    CompletableFuture<Byte> int8_plan(long plan);
+
+    CompletableFuture<Byte> int8_plan(long plan, long owner_uid);
+
+    CompletableFuture<Short> int16_plan(long plan);
+
+    CompletableFuture<Short> int16_plan(long plan, long owner_uid);
+
+    CompletableFuture<Integer> int32_plan(long plan);
+
+    CompletableFuture<Integer> int32_plan(long plan, long owner_uid);
+
+    CompletableFuture<Long> int64_plan(long plan);
+
+    CompletableFuture<Long> int64_plan(long plan, long owner_uid);
+
+    CompletableFuture<Float> fp32_plan(long plan);
+
+    CompletableFuture<Float> fp32_plan(long plan, long owner_uid);
+
+    CompletableFuture<Double> fp64_plan(long plan);
+
+    CompletableFuture<Double> fp64_plan(long plan, long owner_uid);
+
+    CompletableFuture<Boolean> bool_plan(long plan);
+
+    CompletableFuture<Boolean> bool_plan(long plan, long owner_uid);
+
+    CompletableFuture<Character> uint16_plan(long plan);
+
+    CompletableFuture<Character> uint16_plan(long plan, long owner_uid);
+}
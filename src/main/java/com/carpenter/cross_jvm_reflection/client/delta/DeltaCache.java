@@ -0,0 +1,172 @@
+package com.carpenter.cross_jvm_reflection.client.delta;
+
+import com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry;
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Delta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Re-reads arrays and encoded values through the delta reads of a stub, holding the payload of the last read of each value as the baseline
+ * the next delta is applied to. A delta that doesn't apply to the baseline is answered by reading the full payload again.
+ * <p>
+ * The server keeps one baseline per value and stub, so a stub should be read through one cache at a time, such as the stub of a session.
+ */
+public class DeltaCache {
+    private final ServerStub server;
+    private final Map<Object, byte[]> baselines = new ConcurrentHashMap<>();
+    private final Map<Object, String> types = new ConcurrentHashMap<>();
+    private long transported;
+    private long payload;
+
+    public DeltaCache(ServerStub server) {
+        this.server = server;
+    }
+
+    /**
+     * Reads the array with the given uid.
+     *
+     * @return The primitive array, a long[] of the uid's of the elements of an object array, or null if the object isn't an array.
+     */
+    public Object array(long uid) throws RemoteException {
+        Object key = Arrays.asList("array", uid);
+        byte[] bytes = read(key, checksum -> server.array_delta(uid, checksum));
+        return bytes == null ? null : toArray(types.get(key), bytes);
+    }
+
+    /**
+     * Reads the array at the end of the path, see {@link #array(long)}.
+     */
+    public Object array(PathExpression path) throws RemoteException {
+        Object key = Arrays.asList("array", path);
+        byte[] bytes = read(key, checksum -> server.array_delta(path, checksum));
+        return bytes == null ? null : toArray(types.get(key), bytes);
+    }
+
+    /**
+     * Reads the object with the given uid encoded as by {@link ServerStub#encode(long, int)}.
+     *
+     * @return The encoded value, or null if the object can't be resolved.
+     */
+    public byte[] encoded(long uid, int max_depth) throws RemoteException {
+        return read(Arrays.asList("encode", uid, max_depth), checksum -> server.encode_delta(uid, max_depth, checksum));
+    }
+
+    /**
+     * Reads the object at the end of the path encoded as by {@link ServerStub#encode(long, int)}.
+     */
+    public byte[] encoded(PathExpression path, int max_depth) throws RemoteException {
+        return read(Arrays.asList("encode", path, max_depth), checksum -> server.encode_delta(path, max_depth, checksum));
+    }
+
+    /**
+     * Reads and decodes the object with the given uid.
+     */
+    public Object decode(long uid, int max_depth, CodecRegistry codecs) throws RemoteException {
+        byte[] encoded = encoded(uid, max_depth);
+        return encoded == null ? null : codecs.decode(encoded);
+    }
+
+    /**
+     * Gets the number of bytes of payloads and changes that were transported.
+     */
+    public synchronized long getTransported() {
+        return transported;
+    }
+
+    /**
+     * Gets the number of bytes of the payloads that were read, what would have been transported without deltas.
+     */
+    public synchronized long getPayload() {
+        return payload;
+    }
+
+    /**
+     * Drops every baseline, the next read of each value transports it in full.
+     */
+    public void clear() {
+        baselines.clear();
+        types.clear();
+    }
+
+    private byte[] read(Object key, DeltaRead read) throws RemoteException {
+        byte[] baseline = baselines.get(key);
+        Delta delta = read.read(baseline == null ? 0 : Delta.checksum(baseline));
+        byte[] next = null;
+        if (delta != null) {
+            try {
+                next = delta.apply(baseline);
+            } catch (IllegalStateException ise) {
+                //The server made the changes against a baseline this cache doesn't hold, read the full payload.
+                delta = read.read(0);
+                next = delta == null ? null : delta.apply(null);
+            }
+        }
+        if (next == null) {
+            baselines.remove(key);
+            types.remove(key);
+            return null;
+        }
+        baselines.put(key, next);
+        types.put(key, delta.getType());
+        synchronized (this) {
+            transported += delta.getTransported();
+            payload += next.length;
+        }
+        return next;
+    }
+
+    private static Object toArray(String type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        switch (type) {
+            case "byte":
+                return payload.clone();
+            case "boolean": {
+                boolean[] array = new boolean[payload.length];
+                for (int index = 0; index < array.length; ++index) {
+                    array[index] = payload[index] != 0;
+                }
+                return array;
+            }
+            case "short": {
+                short[] array = new short[payload.length / 2];
+                buffer.asShortBuffer().get(array);
+                return array;
+            }
+            case "char": {
+                char[] array = new char[payload.length / 2];
+                buffer.asCharBuffer().get(array);
+                return array;
+            }
+            case "int": {
+                int[] array = new int[payload.length / 4];
+                buffer.asIntBuffer().get(array);
+                return array;
+            }
+            case "float": {
+                float[] array = new float[payload.length / 4];
+                buffer.asFloatBuffer().get(array);
+                return array;
+            }
+            case "double": {
+                double[] array = new double[payload.length / 8];
+                buffer.asDoubleBuffer().get(array);
+                return array;
+            }
+            default: {
+                long[] array = new long[payload.length / 8];
+                buffer.asLongBuffer().get(array);
+                return array;
+            }
+        }
+    }
+
+    private interface DeltaRead {
+        Delta read(long baseline_checksum) throws RemoteException;
+    }
+}
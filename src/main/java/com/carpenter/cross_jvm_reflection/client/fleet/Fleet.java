@@ -0,0 +1,336 @@
+package com.carpenter.cross_jvm_reflection.client.fleet;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Runs the same call against the servers of many JVMs at once. JVMs are discovered through the attach api, and a {@link FleetConnector}
+ * connects to each of them the first time it is called, reusing the agent of a JVM that already has one.
+ * <p>
+ * Each JVM gets a pool of connections that its calls are spread over. Calls run concurrently on a cached pool of daemon threads, so a slow JVM
+ * only holds up its own thread. A JVM that doesn't answer within the timeout of a call is reported as timed out and its thread is interrupted,
+ * a blocked rmi call may keep the thread until the socket times out but no other JVM waits on it. A connection whose call failed because the
+ * connection was lost is closed, and the next call reconnects.
+ * <pre>
+ * Fleet fleet = new Fleet(FleetConnector.rmi("/path/to/agent.jar", ""), 2);
+ * fleet.discover(vm -&gt; vm.displayName().startsWith("com.example.Worker"));
+ * for (FleetResult&lt;Integer&gt; result : fleet.run(server -&gt; server.int32("com.example.Queue.depth"), 500)) {
+ *     System.out.println(result.getId() + ": " + (result.isSuccess() ? result.getValue() : result.getFailure()));
+ * }
+ * </pre>
+ */
+public class Fleet implements Closeable {
+    private final FleetConnector connector;
+    private final int connections;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * @param connections The number of connections kept to each JVM.
+     */
+    public Fleet(FleetConnector connector, int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("A fleet requires at least one connection per JVM.");
+        }
+        this.connector = connector;
+        this.connections = connections;
+        AtomicInteger worker_ids = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread worker = new Thread(runnable, "CrossJVMReflection-Fleet-" + worker_ids.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "CrossJVMReflection-Fleet-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Adds the running JVMs that pass the filter, and removes the JVMs that stopped running. This JVM is never added.
+     *
+     * @return The JVMs that were added.
+     */
+    public List<VirtualMachineDescriptor> discover(Predicate<VirtualMachineDescriptor> filter) {
+        String self = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        Set<String> running = new HashSet<>();
+        List<VirtualMachineDescriptor> added = new ArrayList<>();
+        for (VirtualMachineDescriptor vm : VirtualMachine.list()) {
+            running.add(vm.id());
+            if (!vm.id().equals(self) && filter.test(vm) && add(vm)) {
+                added.add(vm);
+            }
+        }
+        for (String id : new ArrayList<>(targets.keySet())) {
+            if (!running.contains(id)) {
+                remove(id);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Adds a JVM, it is connected to the first time it is called.
+     *
+     * @return false if the JVM was already added.
+     */
+    public boolean add(VirtualMachineDescriptor vm) {
+        return targets.putIfAbsent(vm.id(), new Target(vm, connections)) == null;
+    }
+
+    /**
+     * Removes a JVM and closes its connections.
+     *
+     * @return false if there was no JVM with the id.
+     */
+    public boolean remove(String id) {
+        Target target = targets.remove(id);
+        if (target == null) {
+            return false;
+        }
+        target.close();
+        return true;
+    }
+
+    /**
+     * Gets the ids of the JVMs calls are made on.
+     */
+    public Set<String> getIds() {
+        return new HashSet<>(targets.keySet());
+    }
+
+    /**
+     * Makes the call on every JVM at once, connecting to the JVMs that aren't connected yet as part of their call.
+     *
+     * @param timeout_millis How long each JVM has to connect and answer before its result is a {@link TimeoutException}.
+     * @return The results, streamed as they arrive.
+     */
+    public <T> FleetResults<T> run(Call<T> call, long timeout_millis) {
+        List<Target> snapshot = new ArrayList<>(targets.values());
+        FleetResults<T> results = new FleetResults<>(snapshot.size());
+        for (Target target : snapshot) {
+            long start = System.nanoTime();
+            AtomicBoolean done = new AtomicBoolean();
+            ScheduledFuture<?>[] timeout = new ScheduledFuture<?>[1];
+            Future<?> future = workers.submit(() -> {
+                T value = null;
+                Throwable failure = null;
+                FleetConnection connection = null;
+                try {
+                    connection = target.connect(connector);
+                    value = call.call(connection.getStub());
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                    if (connection != null && isConnectionFailure(e)) {
+                        target.evict(connection);
+                    }
+                }
+                if (done.compareAndSet(false, true)) {
+                    synchronized (timeout) {
+                        if (timeout[0] != null) {
+                            timeout[0].cancel(false);
+                        }
+                    }
+                    results.add(new FleetResult<>(target.vm.id(), target.vm.displayName(), value, failure, System.nanoTime() - start));
+                }
+            });
+            synchronized (timeout) {
+                if (!done.get()) {
+                    timeout[0] = timer.schedule(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            future.cancel(true);
+                            results.add(new FleetResult<>(target.vm.id(), target.vm.displayName(), null,
+                                    new TimeoutException(target.vm.id() + " didn't answer within " + timeout_millis + "ms."), System.nanoTime() - start));
+                        }
+                    }, timeout_millis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Whether the call failed because the connection was lost or can't be used anymore, rather than because the server rejected the call.
+     */
+    private static boolean isConnectionFailure(Throwable failure) {
+        if (failure instanceof NoSuchObjectException) {
+            return true;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException && !(cause instanceof RemoteException)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the connections to every JVM, the agents stay deployed.
+     */
+    @Override
+    public void close() {
+        for (String id : new ArrayList<>(targets.keySet())) {
+            remove(id);
+        }
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * A call made on the server of each JVM.
+     */
+    public interface Call<T> {
+        T call(ServerStub server) throws RemoteException;
+    }
+
+    /**
+     * The connections to one JVM. A connection is made outside of the lock by the first call that needs it, and the other calls for its slot wait
+     * on its future, so a JVM whose attach hangs only holds up its own calls and closing never waits for a connection being made.
+     * Only one connection of a JVM is made at a time, a call whose slot isn't connected while another slot is connecting waits for that
+     * connection and shares it, so that the agent is never attached twice because the first attach hasn't bound the server yet.
+     */
+    private static final class Target {
+        private final VirtualMachineDescriptor vm;
+        private final AtomicReferenceArray<CompletableFuture<FleetConnection>> pool;
+        private final AtomicInteger next = new AtomicInteger();
+        private CompletableFuture<FleetConnection> in_flight;
+        private boolean closed;
+
+        private Target(VirtualMachineDescriptor vm, int connections) {
+            this.vm = vm;
+            this.pool = new AtomicReferenceArray<>(connections);
+        }
+
+        /**
+         * Gets the next connection of the pool, connecting it if it isn't connected.
+         */
+        private FleetConnection connect(FleetConnector connector) throws IOException {
+            int slot = (next.getAndIncrement() & Integer.MAX_VALUE) % pool.length();
+            CompletableFuture<FleetConnection> future;
+            boolean connecting = false;
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException(vm.id() + " was removed from the fleet.");
+                }
+                future = pool.get(slot);
+                if (future == null && in_flight != null) {
+                    future = in_flight;
+                } else if (future == null) {
+                    future = new CompletableFuture<>();
+                    pool.set(slot, future);
+                    in_flight = future;
+                    connecting = true;
+                }
+            }
+            if (connecting) {
+                FleetConnection connection;
+                try {
+                    connection = connector.connect(vm);
+                } catch (IOException | RuntimeException e) {
+                    synchronized (this) {
+                        in_flight = null;
+                    }
+                    pool.compareAndSet(slot, future, null);
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+                synchronized (this) {
+                    in_flight = null;
+                    if (!closed) {
+                        future.complete(connection);
+                        return connection;
+                    }
+                }
+                //Closed while connecting, the close left the connection to this call.
+                closeQuietly(connection);
+                IOException removed = new IOException(vm.id() + " was removed from the fleet.");
+                future.completeExceptionally(removed);
+                throw removed;
+            }
+            try {
+                return future.get();
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException("Failed to connect to " + vm.id() + ".", cause);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while connecting to " + vm.id() + ".");
+            }
+        }
+
+        private void evict(FleetConnection connection) {
+            for (int slot = 0; slot < pool.length(); ++slot) {
+                CompletableFuture<FleetConnection> future = pool.get(slot);
+                if (future != null && getConnected(future) == connection) {
+                    pool.compareAndSet(slot, future, null);
+                }
+            }
+            closeQuietly(connection);
+        }
+
+        /**
+         * Closes the connections that are made, a connection still being made is closed by the call making it once it is.
+         */
+        private void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            for (int slot = 0; slot < pool.length(); ++slot) {
+                CompletableFuture<FleetConnection> future = pool.getAndSet(slot, null);
+                if (future != null) {
+                    closeQuietly(getConnected(future));
+                }
+            }
+        }
+
+        /**
+         * Gets the connection of a future, null if it is still connecting or failed to connect.
+         */
+        private static FleetConnection getConnected(CompletableFuture<FleetConnection> future) {
+            return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+
+        private static void closeQuietly(FleetConnection connection) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                    //The connection is dropped either way.
+                }
+            }
+        }
+    }
+}
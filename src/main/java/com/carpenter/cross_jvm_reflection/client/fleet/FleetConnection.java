@@ -0,0 +1,33 @@
+package com.carpenter.cross_jvm_reflection.client.fleet;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A connection of a {@link Fleet} to the server of one JVM, the stub and whatever has to be closed with it.
+ */
+public final class FleetConnection implements Closeable {
+    private final ServerStub stub;
+    private final Closeable resource;
+
+    /**
+     * @param resource Closed with the connection, null if the stub holds nothing that has to be closed such as an rmi stub.
+     */
+    public FleetConnection(ServerStub stub, Closeable resource) {
+        this.stub = stub;
+        this.resource = resource;
+    }
+
+    public ServerStub getStub() {
+        return stub;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.carpenter.cross_jvm_reflection.client.fleet;
+
+import com.carpenter.cross_jvm_reflection.client.transport.BinaryClient;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.sun.tools.attach.AgentInitializationException;
+import com.sun.tools.attach.AgentLoadException;
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+
+/**
+ * Connects a {@link Fleet} to the server of a JVM, reusing the agent if it was already deployed into the JVM and attaching it otherwise.
+ */
+public interface FleetConnector {
+    /**
+     * Connects to the server of the JVM.
+     *
+     * @throws IOException if the agent couldn't be attached or the server couldn't be reached.
+     */
+    FleetConnection connect(VirtualMachineDescriptor vm) throws IOException;
+
+    /**
+     * Connects through the rmi registry on the default port, with the server of each JVM bound as "Server" followed by its pid.
+     * An rmi stub opens connections as its calls need them, so one stub serves any number of concurrent calls.
+     *
+     * @param agent_jar The absolute path to the agent jar.
+     * @param agent_args Arguments passed to the agent in addition to its name, may be empty, see {@link com.carpenter.cross_jvm_reflection.server.java_agent.JavaAgent}.
+     */
+    static FleetConnector rmi(String agent_jar, String agent_args) {
+        return vm -> {
+            String name = "Server" + vm.id();
+            try {
+                return new FleetConnection((ServerStub) LocateRegistry.getRegistry().lookup(name), null);
+            } catch (NotBoundException | RemoteException e) {
+                //Not deployed yet, or there is no registry until the agent creates it.
+            }
+            attach(vm, agent_jar, "name=" + name + (agent_args.isEmpty() ? "" : "," + agent_args));
+            try {
+                return new FleetConnection((ServerStub) LocateRegistry.getRegistry().lookup(name), null);
+            } catch (NotBoundException nbe) {
+                throw new IOException("The agent of " + vm.id() + " didn't bind " + name + ".", nbe);
+            }
+        };
+    }
+
+    /**
+     * Connects through a unix domain socket in the directory, named after the pid of each JVM. Calls are pipelined over the connection of a
+     * {@link BinaryClient}, so a connection serves any number of concurrent calls.
+     *
+     * @param agent_jar The absolute path to the agent jar.
+     * @param agent_args Arguments passed to the agent in addition to its transport and path, may be empty.
+     * @throws UnsupportedOperationException on connecting before Java 16.
+     */
+    static FleetConnector unix(String agent_jar, String agent_args, File socket_directory) {
+        return vm -> {
+            String path = new File(socket_directory, "cross-jvm-reflection-" + vm.id() + ".sock").getAbsolutePath();
+            if (new File(path).exists()) {
+                try {
+                    BinaryClient client = BinaryClient.connect(path);
+                    return new FleetConnection(client.getStub(), client);
+                } catch (IOException ioe) {
+                    //A socket file left behind by a previous process with the same pid.
+                }
+            }
+            attach(vm, agent_jar, "transport=unix,path=" + path + (agent_args.isEmpty() ? "" : "," + agent_args));
+            BinaryClient client = BinaryClient.connect(path);
+            return new FleetConnection(client.getStub(), client);
+        };
+    }
+
+    /**
+     * Attaches to the JVM and loads the agent into it.
+     */
+    static void attach(VirtualMachineDescriptor vm, String agent_jar, String agent_args) throws IOException {
+        VirtualMachine machine;
+        try {
+            machine = VirtualMachine.attach(vm);
+        } catch (AttachNotSupportedException anse) {
+            throw new IOException("Failed to attach to " + vm.id() + ".", anse);
+        }
+        try {
+            machine.loadAgent(agent_jar, agent_args);
+        } catch (AgentLoadException | AgentInitializationException e) {
+            throw new IOException("Failed to load the agent into " + vm.id() + ".", e);
+        } finally {
+            machine.detach();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.carpenter.cross_jvm_reflection.client.fleet;
+
+/**
+ * The outcome of a call on one JVM of a {@link Fleet}, either a value or the exception the call failed with.
+ */
+public final class FleetResult<T> {
+    private final String id;
+    private final String display_name;
+    private final T value;
+    private final Throwable failure;
+    private final long elapsed_nanos;
+
+    FleetResult(String id, String display_name, T value, Throwable failure, long elapsed_nanos) {
+        this.id = id;
+        this.display_name = display_name;
+        this.value = value;
+        this.failure = failure;
+        this.elapsed_nanos = elapsed_nanos;
+    }
+
+    /**
+     * Gets the id of the JVM, its pid.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the display name of the JVM, typically its main class or jar and arguments.
+     */
+    public String getDisplayName() {
+        return display_name;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Gets the value the call returned, null if it failed.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the exception the call failed with, a {@link java.util.concurrent.TimeoutException} if the JVM didn't answer in time, null if it succeeded.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the time from the start of the call until it completed, failed or timed out.
+     */
+    public long getElapsedNanos() {
+        return elapsed_nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "FleetResult{id=" + id + ", " + (failure == null ? "value=" + value : "failure=" + failure) + ", elapsed_nanos=" + elapsed_nanos + "}";
+    }
+}
@@ -0,0 +1,103 @@
+package com.carpenter.cross_jvm_reflection.client.fleet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a call on every JVM of a {@link Fleet}, in the order they arrive. Iterating blocks until the next result arrives and ends
+ * once every JVM has answered, failed or timed out, so it ends within the timeout of the call however slow the JVMs are.
+ */
+public final class FleetResults<T> implements Iterable<FleetResult<T>> {
+    private final int expected;
+    private final BlockingQueue<FleetResult<T>> arrived = new LinkedBlockingQueue<>();
+    private final CompletableFuture<List<FleetResult<T>>> completion = new CompletableFuture<>();
+    private final List<FleetResult<T>> results = new ArrayList<>();
+
+    FleetResults(int expected) {
+        this.expected = expected;
+        if (expected == 0) {
+            completion.complete(results);
+        }
+    }
+
+    void add(FleetResult<T> result) {
+        arrived.add(result);
+        synchronized (results) {
+            results.add(result);
+            if (results.size() == expected) {
+                completion.complete(new ArrayList<>(results));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of JVMs the call was made on.
+     */
+    public int size() {
+        return expected;
+    }
+
+    /**
+     * Gets a future of every result in the order they arrived, completed once the last result arrives.
+     */
+    public CompletableFuture<List<FleetResult<T>>> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Gets the next result that hasn't been taken yet, waiting up to the timeout for it to arrive.
+     *
+     * @return The result, or null if none arrived in time.
+     */
+    public FleetResult<T> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return arrived.poll(timeout, unit);
+    }
+
+    /**
+     * Iterates the results that haven't been taken yet as they arrive. Results are taken once, by whichever iterator or poll gets them first.
+     */
+    @Override
+    public Iterator<FleetResult<T>> iterator() {
+        return new Iterator<FleetResult<T>>() {
+            private FleetResult<T> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    next = arrived.poll();
+                    if (next != null) {
+                        break;
+                    }
+                    if (completion.isDone()) {
+                        //Every result arrived, one may have been queued after the poll.
+                        next = arrived.poll();
+                        return next != null;
+                    }
+                    try {
+                        next = arrived.poll(10, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public FleetResult<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                FleetResult<T> result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.carpenter.cross_jvm_reflection.client.proxy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a method of an interface to the value at the end of a path, see {@link RemoteProxies}.
+ * The method takes no arguments. A primitive, boxed or String method returns the value itself, a method returning an interface of remote
+ * fields returns a proxy of the object at the end of the path, and a long method of a path marked as uid returns its uid.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RemoteField {
+    /**
+     * The path expression resolved against the proxied object, or from its static first hop for a proxy of statics.
+     * Ex: "com.app.Player.health" or "com.app.Player.inventory -> com.app.Inventory.items -> [0]"
+     */
+    String value();
+
+    /**
+     * Whether the method returns the uid of the object at the end of the path rather than its value.
+     */
+    boolean uid() default false;
+}
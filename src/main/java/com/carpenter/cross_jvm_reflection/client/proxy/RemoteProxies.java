@@ -0,0 +1,300 @@
+package com.carpenter.cross_jvm_reflection.client.proxy;
+
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implements interfaces whose methods are annotated with {@link RemoteField} as proxies of remote objects. For example:
+ * <pre>
+ * interface Player extends RemoteProxy {
+ *     &#64;RemoteField("com.app.Player.health") int health();
+ *     &#64;RemoteField("com.app.Player.name") String name();
+ *     &#64;RemoteField("com.app.Player.inventory") Inventory inventory();
+ * }
+ * Player player = proxies.get(Player.class, player_uid);
+ * </pre>
+ * Getting a proxy reads every annotated path of the interface in one {@link ServerStub#resolve(PathExpression[])} request, and the methods
+ * answer from that snapshot until the proxy is refreshed. A method returning another interface of remote fields reads the uid of the object
+ * with the snapshot, and the proxy of that object is only created and read the first time the method is called. That read can fail after the
+ * proxy was returned, the method then throws a {@link RemoteProxyException} whose cause is the RemoteException.
+ * <p>
+ * A value that can't be resolved, or whose path failed to resolve, is returned the same way the reads of ServerStub return it: -1 for numbers
+ * and chars, false for booleans and null for any other type. Proxies implement {@link RemoteProxy} and compare equal when they proxy the same object with the same interface.
+ */
+public class RemoteProxies {
+    private final ServerStub server;
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    public RemoteProxies(ServerStub server) {
+        this.server = server;
+    }
+
+    /**
+     * Gets a proxy of the object with the uid, reading its fields.
+     *
+     * @return The proxy, or null if the uid is 0.
+     * @throws IllegalArgumentException if the type isn't an interface whose methods are all remote fields.
+     */
+    public <T> T get(Class<T> type, long uid) throws RemoteException {
+        if (uid == 0) {
+            return null;
+        }
+        return get(type, new long[]{uid}).get(0);
+    }
+
+    /**
+     * Gets proxies of the objects with the uid's, reading the fields of every object in one request.
+     *
+     * @return The proxies in the order of the uid's, null for a uid of 0.
+     */
+    public <T> List<T> get(Class<T> type, long[] uids) throws RemoteException {
+        Schema schema = getSchema(type);
+        List<PathExpression> paths = new ArrayList<>();
+        for (long uid : uids) {
+            if (uid != 0) {
+                paths.addAll(Arrays.asList(schema.getPaths(uid)));
+            }
+        }
+        Serializable[] values = paths.isEmpty() ? new Serializable[0] : server.resolve(paths.toArray(new PathExpression[0])).getValues();
+        List<T> proxies = new ArrayList<>(uids.length);
+        int offset = 0;
+        for (long uid : uids) {
+            if (uid == 0) {
+                proxies.add(null);
+                continue;
+            }
+            Handler handler = new Handler(schema, uid, Arrays.copyOfRange(values, offset, offset + schema.methods.length));
+            offset += schema.methods.length;
+            proxies.add(type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type, RemoteProxy.class}, handler)));
+        }
+        return proxies;
+    }
+
+    /**
+     * Gets a proxy whose paths all start at static fields, reading them.
+     */
+    public <T> T statics(Class<T> type) throws RemoteException {
+        Schema schema = getSchema(type);
+        Handler handler = new Handler(schema, 0, server.resolve(schema.getPaths(0)).getValues());
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type, RemoteProxy.class}, handler));
+    }
+
+    public ServerStub getServer() {
+        return server;
+    }
+
+    private Schema getSchema(Class<?> type) {
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            schema = new Schema(type);
+            schemas.put(type, schema);
+        }
+        return schema;
+    }
+
+    /**
+     * Whether the type is an interface of remote fields rather than a value such as a List.
+     */
+    private static boolean isRemoteInterface(Class<?> type) {
+        if (!type.isInterface()) {
+            return false;
+        }
+        for (Method method : type.getMethods()) {
+            if (method.isAnnotationPresent(RemoteField.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Converts a resolved value to the return type of a method.
+     */
+    private static Object convert(Serializable value, Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type.isInstance(value) ? value : null;
+        } else if (type == boolean.class) {
+            return value instanceof Boolean ? value : false;
+        } else if (type == char.class) {
+            return value instanceof Character ? value : (char) -1;
+        } else if (type == int.class) {
+            return value instanceof Integer ? value : -1;
+        } else if (type == long.class) {
+            return value instanceof Long ? value : -1L;
+        } else if (type == double.class) {
+            return value instanceof Double ? value : -1D;
+        } else if (type == float.class) {
+            return value instanceof Float ? value : -1F;
+        } else if (type == short.class) {
+            return value instanceof Short ? value : (short) -1;
+        } else if (type == byte.class) {
+            return value instanceof Byte ? value : (byte) -1;
+        }
+        throw new IllegalArgumentException("Unsupported return type " + type);
+    }
+
+    /**
+     * The remote fields of an interface, in the order they are read.
+     */
+    private static final class Schema {
+        private final Class<?> type;
+        private final Method[] methods;
+        private final String[] expressions;
+        private final boolean[] uid_terminal;
+        private final Class<?>[] nested;
+        private final Map<Method, Integer> indices = new HashMap<>();
+
+        private Schema(Class<?> type) {
+            if (!type.isInterface()) {
+                throw new IllegalArgumentException(type.getName() + " is not an interface.");
+            }
+            List<Method> methods = new ArrayList<>();
+            for (Method method : type.getMethods()) {
+                if (method.getDeclaringClass() == RemoteProxy.class || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                RemoteField field = method.getAnnotation(RemoteField.class);
+                if (field == null) {
+                    throw new IllegalArgumentException(method + " is not annotated with @RemoteField.");
+                } else if (method.getParameterCount() != 0) {
+                    throw new IllegalArgumentException(method + " is a remote field and can't take arguments.");
+                } else if (field.uid() && method.getReturnType() != long.class && method.getReturnType() != Long.class) {
+                    throw new IllegalArgumentException(method + " returns a uid and must return a long.");
+                }
+                methods.add(method);
+            }
+            this.type = type;
+            this.methods = methods.toArray(new Method[0]);
+            this.expressions = new String[this.methods.length];
+            this.uid_terminal = new boolean[this.methods.length];
+            this.nested = new Class<?>[this.methods.length];
+            for (int index = 0; index < this.methods.length; ++index) {
+                Method method = this.methods[index];
+                RemoteField field = method.getAnnotation(RemoteField.class);
+                //Compiled once here so a malformed expression fails when the schema is made.
+                PathExpression.compile(field.value());
+                if (isRemoteInterface(method.getReturnType())) {
+                    nested[index] = method.getReturnType();
+                }
+                expressions[index] = field.value();
+                uid_terminal[index] = nested[index] != null || field.uid();
+                indices.put(method, index);
+            }
+        }
+
+        /**
+         * Gets the paths of the fields of the object with the uid, 0 for the statics.
+         */
+        private PathExpression[] getPaths(long uid) {
+            PathExpression[] paths = new PathExpression[expressions.length];
+            for (int index = 0; index < expressions.length; ++index) {
+                PathExpression path = PathExpression.compile(expressions[index], uid);
+                paths[index] = uid_terminal[index] ? path.asUid() : path;
+            }
+            return paths;
+        }
+    }
+
+    private final class Handler implements InvocationHandler {
+        private final Schema schema;
+        private final long uid;
+        private final AtomicReferenceArray<Object> nested;
+        private volatile Serializable[] values;
+
+        private Handler(Schema schema, long uid, Serializable[] values) {
+            this.schema = schema;
+            this.uid = uid;
+            this.nested = new AtomicReferenceArray<>(values.length);
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals": {
+                        Object other = arguments[0];
+                        if (other == null || !Proxy.isProxyClass(other.getClass()) || !(Proxy.getInvocationHandler(other) instanceof Handler)) {
+                            return false;
+                        }
+                        Handler handler = (Handler) Proxy.getInvocationHandler(other);
+                        return handler.schema.type == schema.type && handler.uid == uid;
+                    }
+                    case "hashCode":
+                        return schema.type.hashCode() * 31 + Long.hashCode(uid);
+                    default:
+                        return schema.type.getSimpleName() + "{uid=" + uid + ", values=" + Arrays.toString(values) + "}";
+                }
+            } else if (method.getDeclaringClass() == RemoteProxy.class) {
+                if (method.getName().equals("refresh")) {
+                    refresh();
+                    return null;
+                }
+                return uid;
+            }
+            int index = schema.indices.get(method);
+            Serializable value = values[index];
+            Class<?> nested_type = schema.nested[index];
+            if (nested_type == null) {
+                return convert(value, method.getReturnType());
+            }
+            long nested_uid = value instanceof Long ? (long) value : 0;
+            if (nested_uid == 0) {
+                return null;
+            }
+            Object current = nested.get(index);
+            if (current != null && ((RemoteProxy) current).getRemoteUID() == nested_uid) {
+                return current;
+            }
+            Object created;
+            try {
+                created = get(nested_type, nested_uid);
+            } catch (RemoteException re) {
+                throw new RemoteProxyException("Failed to read " + nested_type.getName() + " " + nested_uid + " of " + method.getName() + ".", re);
+            }
+            nested.set(index, created);
+            return created;
+        }
+
+        /**
+         * Reads the fields of this proxy and of every nested proxy it created, directly or through its nested proxies, in one request.
+         */
+        private void refresh() throws RemoteException {
+            List<Handler> handlers = new ArrayList<>();
+            handlers.add(this);
+            for (int handler = 0; handler < handlers.size(); ++handler) {
+                AtomicReferenceArray<Object> created = handlers.get(handler).nested;
+                for (int index = 0; index < created.length(); ++index) {
+                    Object proxy = created.get(index);
+                    if (proxy != null) {
+                        handlers.add((Handler) Proxy.getInvocationHandler(proxy));
+                    }
+                }
+            }
+            List<PathExpression> paths = new ArrayList<>();
+            for (Handler handler : handlers) {
+                paths.addAll(Arrays.asList(handler.schema.getPaths(handler.uid)));
+            }
+            Serializable[] values = server.resolve(paths.toArray(new PathExpression[0])).getValues();
+            int offset = 0;
+            for (Handler handler : handlers) {
+                handler.values = Arrays.copyOfRange(values, offset, offset + handler.schema.methods.length);
+                offset += handler.schema.methods.length;
+            }
+        }
+    }
+}
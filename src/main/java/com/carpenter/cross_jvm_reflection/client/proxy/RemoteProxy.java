@@ -0,0 +1,19 @@
+package com.carpenter.cross_jvm_reflection.client.proxy;
+
+import java.rmi.RemoteException;
+
+/**
+ * Implemented by every proxy of {@link RemoteProxies}, an interface of remote fields may extend it to expose these methods directly.
+ */
+public interface RemoteProxy {
+    /**
+     * Gets the uid of the proxied object, 0 for a proxy of statics.
+     */
+    long getRemoteUID();
+
+    /**
+     * Reads every field of the proxy again in one request, along with the fields of the nested proxies it already created. A nested proxy whose
+     * uid changed is replaced by a proxy of the new object the next time its method is called.
+     */
+    void refresh() throws RemoteException;
+}
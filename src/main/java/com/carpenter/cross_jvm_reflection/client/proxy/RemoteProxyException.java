@@ -0,0 +1,20 @@
+package com.carpenter.cross_jvm_reflection.client.proxy;
+
+import java.rmi.RemoteException;
+
+/**
+ * Thrown by a method of a proxy of {@link RemoteProxies} that had to read the remote object it returns and failed to, its cause is the
+ * RemoteException of the read. The methods of remote field interfaces don't declare RemoteException, so the failure is unchecked.
+ */
+public class RemoteProxyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RemoteProxyException(String message, RemoteException cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public synchronized RemoteException getCause() {
+        return (RemoteException) super.getCause();
+    }
+}
@@ -0,0 +1,78 @@
+package com.carpenter.cross_jvm_reflection.client.schema;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ClassSchema;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local copy of the schemas of the remote jvm, downloaded once with {@link ServerStub#schema(String)}.
+ * Fields are resolved against the copy, including those inherited from superclasses, without a call to the server. The names it resolves to
+ * are qualified with the loader of the declaring class so that the server resolves them without ambiguity.
+ */
+public class SchemaCatalog {
+    private final Map<String, ClassSchema> by_id = new HashMap<>();
+    private final Map<String, List<ClassSchema>> by_name = new HashMap<>();
+
+    public SchemaCatalog(ClassSchema[] schemas) {
+        for (ClassSchema schema : schemas) {
+            by_id.put(schema.getId(), schema);
+            by_name.computeIfAbsent(schema.getName(), name -> new ArrayList<>(1)).add(schema);
+        }
+    }
+
+    /**
+     * Downloads the schemas of the classes whose names start with the prefix.
+     */
+    public static SchemaCatalog download(ServerStub server, String prefix) throws RemoteException {
+        return new SchemaCatalog(server.schema(prefix));
+    }
+
+    public int size() {
+        return by_id.size();
+    }
+
+    /**
+     * Gets the schema of the class with the name or id ("classname@loader").
+     *
+     * @return The schema, or null if there is none or the name is defined by several loaders.
+     */
+    public ClassSchema getClass(String name) {
+        ClassSchema schema = by_id.get(name);
+        if (schema == null) {
+            List<ClassSchema> schemas = by_name.get(name);
+            if (schemas != null && schemas.size() == 1) {
+                schema = schemas.get(0);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Gets the schemas of every loader's class with the name.
+     */
+    public List<ClassSchema> getClasses(String name) {
+        List<ClassSchema> schemas = by_name.get(name);
+        return schemas == null ? new ArrayList<>() : new ArrayList<>(schemas);
+    }
+
+    /**
+     * Resolves a field declared by the class or one of its superclasses that are in the catalog.
+     *
+     * @param class_name The name or id of the class.
+     * @return The name of the field in the format "classname@loader.fieldname", or null if it can't be resolved.
+     */
+    public String resolve(String class_name, String field_name) {
+        for (ClassSchema schema = getClass(class_name); schema != null; schema = schema.getSuperclass() == null ? null : by_id.get(schema.getSuperclass())) {
+            int field = schema.getField(field_name);
+            if (field != -1) {
+                return schema.getQualifiedName(field);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,217 @@
+package com.carpenter.cross_jvm_reflection.client.shm;
+
+import com.carpenter.cross_jvm_reflection.shared.shm.SharedMemoryLayout;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values a {@link com.carpenter.cross_jvm_reflection.server.shm.SharedMemoryPublisher} publishes into a memory mapped file.
+ * Reads are plain loads from the mapping, they never make a system call or involve the server. A reader may be shared between threads.
+ */
+public class SharedMemoryReader implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slot_count;
+    private final byte[] types;
+    private final String[] paths;
+    private final int sequence_offset;
+    private final int slots_offset;
+
+    /**
+     * Maps the file at the path.
+     *
+     * @throws IOException if the file isn't a published file or was written by a different version.
+     */
+    public SharedMemoryReader(String path) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        try {
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.capacity() < SharedMemoryLayout.DIRECTORY_OFFSET || buffer.getInt(SharedMemoryLayout.MAGIC_OFFSET) != SharedMemoryLayout.MAGIC) {
+                throw new IOException(path + " isn't a published shared memory file, or it is still being created.");
+            }
+            SharedMemoryLayout.loadFence();
+            if (buffer.getInt(SharedMemoryLayout.VERSION_OFFSET) != SharedMemoryLayout.VERSION) {
+                throw new IOException(path + " was published with version " + buffer.getInt(SharedMemoryLayout.VERSION_OFFSET) + " of the layout, expected " + SharedMemoryLayout.VERSION + ".");
+            }
+            this.slot_count = buffer.getInt(SharedMemoryLayout.SLOT_COUNT_OFFSET);
+            this.sequence_offset = buffer.getInt(SharedMemoryLayout.SEQUENCE_OFFSET_OFFSET);
+            this.slots_offset = SharedMemoryLayout.getSlotsOffset(sequence_offset);
+            this.types = new byte[slot_count];
+            this.paths = new String[slot_count];
+            int position = SharedMemoryLayout.DIRECTORY_OFFSET;
+            for (int slot = 0; slot < slot_count; ++slot) {
+                types[slot] = buffer.get(position);
+                int length = buffer.getInt(position + 1);
+                byte[] bytes = new byte[length];
+                for (int index = 0; index < length; ++index) {
+                    bytes[index] = buffer.get(position + 5 + index);
+                }
+                paths[slot] = new String(bytes, StandardCharsets.UTF_8);
+                position += 5 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getSlotCount() {
+        return slot_count;
+    }
+
+    /**
+     * Gets the slot the path expression was published into, -1 if it wasn't.
+     *
+     * @param path The textual form of the expression as produced by PathExpression.toString().
+     */
+    public int getSlot(String path) {
+        for (int slot = 0; slot < slot_count; ++slot) {
+            if (paths[slot].equals(path)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public String getPath(int slot) {
+        return paths[slot];
+    }
+
+    /**
+     * Gets the type of the slot, one of the type constants of {@link SharedMemoryLayout}.
+     */
+    public byte getType(int slot) {
+        return types[slot];
+    }
+
+    /**
+     * Gets the refresh interval of the publisher in microseconds.
+     */
+    public long getRefreshMicros() {
+        return buffer.getLong(SharedMemoryLayout.REFRESH_OFFSET);
+    }
+
+    /**
+     * Gets whether the publisher is still sampling, once it stops the values are never updated again.
+     */
+    public boolean isPublishing() {
+        return buffer.getInt(SharedMemoryLayout.STATE_OFFSET) == 1;
+    }
+
+    /**
+     * Gets the number of samples that have been published, it changes whenever the values may have changed.
+     */
+    public long getSamples() {
+        return buffer.getLong(sequence_offset) >>> 1;
+    }
+
+    /**
+     * Gets the time the last sample was taken at in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        long sequence;
+        long timestamp;
+        do {
+            sequence = begin();
+            timestamp = buffer.getLong(sequence_offset + 8);
+        } while (!validate(sequence));
+        return timestamp;
+    }
+
+    /**
+     * Gets the raw bits of the slot, see {@link SharedMemoryLayout} for their encoding.
+     */
+    public long bits(int slot) {
+        int offset = slots_offset + slot * SharedMemoryLayout.SLOT_SIZE;
+        long sequence;
+        long bits;
+        do {
+            sequence = begin();
+            bits = buffer.getLong(offset);
+        } while (!validate(sequence));
+        return bits;
+    }
+
+    /**
+     * Copies the raw bits of every slot from a single sample.
+     *
+     * @param bits An array of at least {@link #getSlotCount()} elements.
+     * @return The number of the sample that was copied, see {@link #getSamples()}.
+     */
+    public long snapshot(long[] bits) {
+        long sequence;
+        do {
+            sequence = begin();
+            for (int slot = 0; slot < slot_count; ++slot) {
+                bits[slot] = buffer.getLong(slots_offset + slot * SharedMemoryLayout.SLOT_SIZE);
+            }
+        } while (!validate(sequence));
+        return sequence >>> 1;
+    }
+
+    public byte int8(int slot) {
+        return (byte) bits(slot);
+    }
+
+    public short int16(int slot) {
+        return (short) bits(slot);
+    }
+
+    public int int32(int slot) {
+        return (int) bits(slot);
+    }
+
+    public long int64(int slot) {
+        return bits(slot);
+    }
+
+    public float fp32(int slot) {
+        return Float.intBitsToFloat((int) bits(slot));
+    }
+
+    public double fp64(int slot) {
+        return Double.longBitsToDouble(bits(slot));
+    }
+
+    public boolean bool(int slot) {
+        return bits(slot) != 0;
+    }
+
+    public char uint16(int slot) {
+        return (char) bits(slot);
+    }
+
+    /**
+     * Waits until the publisher isn't writing and gets the sequence to validate the read against.
+     */
+    private long begin() {
+        long sequence;
+        for (int spins = 0; ((sequence = buffer.getLong(sequence_offset)) & 1) != 0; ++spins) {
+            if (spins > 100) {
+                Thread.yield();
+            }
+        }
+        SharedMemoryLayout.loadFence();
+        return sequence;
+    }
+
+    /**
+     * Gets whether nothing was published since the sequence was read.
+     */
+    private boolean validate(long sequence) {
+        SharedMemoryLayout.loadFence();
+        return buffer.getLong(sequence_offset) == sequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,424 @@
+package com.carpenter.cross_jvm_reflection.client.transport;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchDelta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchListener;
+import com.carpenter.cross_jvm_reflection.shared.transport.BinaryProtocol;
+import com.carpenter.cross_jvm_reflection.shared.transport.FrameWriter;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A client of a {@link com.carpenter.cross_jvm_reflection.server.transport.BinaryServer}.
+ * Any number of threads may issue requests at once, they are pipelined over the single connection and a reader thread completes them by request id.
+ * {@link #getStub()} exposes the connection as a regular ServerStub, sessions opened through it share the connection.
+ * Listeners passed to subscribe don't have to be exported, their deltas are pushed over the connection and delivered in order on a single
+ * callback thread. A listener is held for the life of the connection and the exceptions it throws don't reach the server, unsubscribe instead.
+ * <p>
+ * Requests are queued and whichever thread takes the write lock writes every queued request with one gathering write, so requests issued at the
+ * same time share system calls and packets. With a batch window (see {@link #setBatchWindow(long)}) requests are held for up to the window and
+ * written together by a writer thread instead. Callers never hold a monitor while they write or wait, which keeps blocking calls cheap on virtual threads.
+ */
+public class BinaryClient implements Closeable {
+    private final SocketChannel channel;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong request_ids = new AtomicLong();
+    private final AtomicInteger listener_count = new AtomicInteger();
+    private final Map<WatchListener, Integer> listener_ids = new ConcurrentHashMap<>();
+    private final Map<Integer, WatchListener> listeners = new ConcurrentHashMap<>();
+    private final ExecutorService callbacks = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CrossJVMReflection-Client-Callbacks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock write_lock = new ReentrantLock();
+    private final AtomicBoolean flush_scheduled = new AtomicBoolean();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile ScheduledExecutorService writer;
+    private volatile long batch_window_micros;
+    private final Thread reader;
+    private final ServerStub stub;
+    private volatile IOException failure;
+
+    private BinaryClient(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        this.reader = new Thread(this::read, "CrossJVMReflection-Client-Reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+        this.stub = createStub(0);
+        try {
+            FrameWriter hello = new FrameWriter(32);
+            long request_id = request_ids.incrementAndGet();
+            hello.putLong(request_id).putInt(0).putShort(BinaryProtocol.HELLO).putInt(BinaryProtocol.MAGIC).putInt(BinaryProtocol.getSignature());
+            join(send(request_id, hello, void.class));
+        } catch (RemoteException re) {
+            close();
+            throw new IOException("The server rejected the connection.", re);
+        }
+    }
+
+    /**
+     * Connects to a server listening on a TCP socket.
+     */
+    public static BinaryClient connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return new BinaryClient(channel);
+    }
+
+    /**
+     * Connects to a server listening on a unix domain socket.
+     *
+     * @throws UnsupportedOperationException before Java 16.
+     */
+    public static BinaryClient connect(String unix_path) throws IOException {
+        ProtocolFamily family = BinaryProtocol.getUnixProtocolFamily();
+        if (family == null) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.");
+        }
+        SocketChannel channel;
+        try {
+            channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, family);
+        } catch (ReflectiveOperationException roe) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.", roe);
+        }
+        SocketAddress address = BinaryProtocol.getUnixAddress(unix_path);
+        channel.connect(address);
+        return new BinaryClient(channel);
+    }
+
+    /**
+     * Gets a ServerStub whose calls are sent over this connection.
+     */
+    public ServerStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Sets how long requests are held to be written together with the requests that follow them.
+     *
+     * @param batch_window_micros The window in microseconds, 0 to write requests as soon as they are issued.
+     */
+    public void setBatchWindow(long batch_window_micros) {
+        if (batch_window_micros < 0) {
+            throw new IllegalArgumentException("The batch window can't be negative.");
+        }
+        if (batch_window_micros > 0 && writer == null) {
+            synchronized (this) {
+                if (writer == null) {
+                    writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "CrossJVMReflection-Client-Writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        this.batch_window_micros = batch_window_micros;
+    }
+
+    public long getBatchWindow() {
+        return batch_window_micros;
+    }
+
+    /**
+     * Gets the number of writes that requests were sent with, see {@link #getRequests()}.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets the number of requests that were written.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Sends a call without waiting for its response.
+     *
+     * @param target 0 for the server, otherwise the id of a session opened on this connection.
+     * @param method A method of ServerStub.
+     * @return A future completed with the decoded result, or exceptionally with a RemoteException.
+     */
+    public CompletableFuture<Object> call(int target, Method method, Object[] arguments) {
+        CompletableFuture<Object> future = invoke(target, method, arguments);
+        if (method.getReturnType() == ServerStub.class) {
+            return future.thenApply(session -> createStub((Integer) session));
+        }
+        return future;
+    }
+
+    /**
+     * Sends a call without waiting for its response, like {@link #call(int, Method, Object[])} except that a method returning a ServerStub
+     * completes with the Integer id of the session instead, to be passed as the target of later calls.
+     */
+    public CompletableFuture<Object> invoke(int target, Method method, Object[] arguments) {
+        long request_id = request_ids.incrementAndGet();
+        FrameWriter request = new FrameWriter(64);
+        request.putLong(request_id).putInt(target).putShort(BinaryProtocol.getMethodId(method));
+        try {
+            Class<?>[] types = method.getParameterTypes();
+            for (int index = 0; index < types.length; ++index) {
+                if (types[index] == WatchListener.class) {
+                    request.putInt(register((WatchListener) arguments[index]));
+                } else {
+                    BinaryProtocol.write(request, types[index], arguments[index]);
+                }
+            }
+        } catch (IOException ioe) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(new RemoteException("Failed to encode the arguments of " + method.getName() + ".", ioe));
+            return future;
+        }
+        return send(request_id, request, method.getReturnType());
+    }
+
+    /**
+     * Creates a proxy that sends every call to the given target.
+     */
+    public ServerStub createStub(int target) {
+        InvocationHandler handler = (proxy, method, arguments) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "BinaryClient.Stub{target=" + target + ", channel=" + channel + "}";
+                }
+            }
+            return join(call(target, method, arguments == null ? new Object[0] : arguments));
+        };
+        return (ServerStub) Proxy.newProxyInstance(ServerStub.class.getClassLoader(), new Class<?>[]{ServerStub.class}, handler);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        reader.interrupt();
+        callbacks.shutdown();
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the id the listener is sent as, the same listener always has the same id and 0 is null.
+     */
+    private int register(WatchListener listener) {
+        if (listener == null) {
+            return 0;
+        }
+        return listener_ids.computeIfAbsent(listener, key -> {
+            int listener_id = listener_count.incrementAndGet();
+            listeners.put(listener_id, key);
+            return listener_id;
+        });
+    }
+
+    private void push(int listener_id, ByteBuffer frame) {
+        WatchListener listener = listeners.get(listener_id);
+        if (listener == null) {
+            return;
+        }
+        try {
+            WatchDelta delta = (WatchDelta) BinaryProtocol.read(frame, WatchDelta.class);
+            callbacks.execute(() -> {
+                try {
+                    listener.changed(delta);
+                } catch (RemoteException | RuntimeException ignored) {
+                    //There is no one to report to, the subscription is cancelled through unsubscribe.
+                }
+            });
+        } catch (IOException ignored) {
+            //The delta couldn't be deserialized, its values aren't on the class path of the client.
+        }
+    }
+
+    private CompletableFuture<Object> send(long request_id, FrameWriter request, Class<?> return_type) {
+        Pending entry = new Pending(return_type);
+        pending.put(request_id, entry);
+        if (failure != null) {
+            pending.remove(request_id);
+            entry.future.completeExceptionally(new RemoteException("Failed to send a request.", failure));
+            return entry.future;
+        }
+        outgoing.add(new Outgoing(request_id, request.finish()));
+        long batch_window_micros = this.batch_window_micros;
+        if (batch_window_micros == 0) {
+            flush();
+        } else if (flush_scheduled.compareAndSet(false, true)) {
+            writer.schedule(() -> {
+                flush_scheduled.set(false);
+                flush();
+            }, batch_window_micros, TimeUnit.MICROSECONDS);
+        }
+        return entry.future;
+    }
+
+    /**
+     * Writes every queued request. A thread that finds the lock taken returns at once, the holder writes its requests after the ones it took.
+     */
+    private void flush() {
+        while (!outgoing.isEmpty() && write_lock.tryLock()) {
+            try {
+                Outgoing[] batch = new Outgoing[Math.min(outgoing.size(), 1024)];
+                int count = 0;
+                Outgoing next;
+                while (count < batch.length && (next = outgoing.poll()) != null) {
+                    batch[count++] = next;
+                }
+                if (count > 0) {
+                    write(batch, count);
+                }
+            } finally {
+                write_lock.unlock();
+            }
+        }
+    }
+
+    private void write(Outgoing[] batch, int count) {
+        ByteBuffer[] frames = new ByteBuffer[count];
+        long remaining = 0;
+        for (int index = 0; index < count; ++index) {
+            frames[index] = batch[index].frame;
+            remaining += frames[index].remaining();
+        }
+        try {
+            while (remaining > 0) {
+                remaining -= channel.write(frames);
+            }
+            batches.incrementAndGet();
+            requests.addAndGet(count);
+        } catch (IOException ioe) {
+            for (int index = 0; index < count; ++index) {
+                Pending entry = pending.remove(batch[index].request_id);
+                if (entry != null) {
+                    entry.future.completeExceptionally(new RemoteException("Failed to send a request.", ioe));
+                }
+            }
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) throws RemoteException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for a response.", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RemoteException) {
+                throw (RemoteException) ee.getCause();
+            }
+            throw new RemoteException("The request failed.", ee.getCause());
+        }
+    }
+
+    /**
+     * Reads responses until the connection closes, then fails every pending request.
+     */
+    private void read() {
+        ByteBuffer length_buffer = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                length_buffer.clear();
+                fill(length_buffer);
+                int length = length_buffer.getInt(0);
+                if (length < 9 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Received a malformed frame of length " + length + ".");
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                fill(frame);
+                frame.flip();
+                long request_id = frame.getLong();
+                byte status = frame.get();
+                if (status == BinaryProtocol.STATUS_PUSH) {
+                    push((int) request_id, frame);
+                    continue;
+                }
+                Pending entry = pending.remove(request_id);
+                if (entry == null) {
+                    continue;
+                }
+                if (status == BinaryProtocol.STATUS_OK) {
+                    try {
+                        entry.future.complete(BinaryProtocol.read(frame, entry.return_type == ServerStub.class ? int.class : entry.return_type));
+                    } catch (IOException | RuntimeException e) {
+                        entry.future.completeExceptionally(new RemoteException("Failed to decode a response.", e));
+                    }
+                } else {
+                    entry.future.completeExceptionally(new RemoteException((String) BinaryProtocol.read(frame, String.class)));
+                }
+            }
+        } catch (IOException ioe) {
+            failure = ioe;
+        } finally {
+            if (failure == null) {
+                failure = new EOFException("The connection was closed.");
+            }
+            for (Long request_id : pending.keySet()) {
+                Pending entry = pending.remove(request_id);
+                if (entry != null) {
+                    entry.future.completeExceptionally(new RemoteException("The connection was closed.", failure));
+                }
+            }
+        }
+    }
+
+    private void fill(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("The connection was closed.");
+            }
+        }
+    }
+
+    private static final class Outgoing {
+        private final long request_id;
+        private final ByteBuffer frame;
+
+        private Outgoing(long request_id, ByteBuffer frame) {
+            this.request_id = request_id;
+            this.frame = frame;
+        }
+    }
+
+    private static final class Pending {
+        private final Class<?> return_type;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Pending(Class<?> return_type) {
+            this.return_type = return_type;
+        }
+    }
+}
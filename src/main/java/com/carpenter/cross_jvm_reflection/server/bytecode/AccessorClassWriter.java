@@ -0,0 +1,202 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the class file of an accessor for a single field.
+ * The accessor has one method, "public static T get(Object owner)" for an instance field or "public static T get()" for a static field,
+ * where T is the type of the field if it is primitive and Object otherwise. The method body is a plain getfield or getstatic.
+ */
+public final class AccessorClassWriter {
+    public static final String METHOD_NAME = "get";
+
+    private static final int VERSION = 52;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ALOAD_0 = 0x2A;
+    private static final int CHECKCAST = 0xC0;
+    private static final int GETFIELD = 0xB4;
+    private static final int GETSTATIC = 0xB2;
+    private static final int IRETURN = 0xAC;
+    private static final int LRETURN = 0xAD;
+    private static final int FRETURN = 0xAE;
+    private static final int DRETURN = 0xAF;
+    private static final int ARETURN = 0xB0;
+
+    private final ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(pool_bytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int pool_size = 1;
+
+    private AccessorClassWriter() {
+    }
+
+    /**
+     * Writes the class file of an accessor for the field.
+     *
+     * @param class_name The internal name of the accessor, ex: pkg/Owner$$Accessor
+     */
+    public static byte[] write(String class_name, Field field) {
+        try {
+            return new AccessorClassWriter().writeClass(class_name, field);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Failed to write an accessor for " + field, ioe);
+        }
+    }
+
+    /**
+     * Gets the descriptor of the accessor method for the field.
+     */
+    public static String getMethodDescriptor(Field field) {
+        Class<?> type = field.getType();
+        String return_descriptor = type.isPrimitive() ? getDescriptor(type) : "Ljava/lang/Object;";
+        return Modifier.isStatic(field.getModifiers()) ? "()" + return_descriptor : "(Ljava/lang/Object;)" + return_descriptor;
+    }
+
+    private byte[] writeClass(String class_name, Field field) throws IOException {
+        boolean is_static = Modifier.isStatic(field.getModifiers());
+        Class<?> type = field.getType();
+        String owner = field.getDeclaringClass().getName().replace('.', '/');
+        int this_class = classEntry(class_name);
+        int super_class = classEntry("java/lang/Object");
+        int owner_class = classEntry(owner);
+        int field_ref = fieldEntry(owner_class, field.getName(), getDescriptor(type));
+        int method_name = utf8Entry(METHOD_NAME);
+        int method_descriptor = utf8Entry(getMethodDescriptor(field));
+        int code_name = utf8Entry("Code");
+
+        ByteArrayOutputStream code_bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(code_bytes);
+        if (is_static) {
+            code.writeByte(GETSTATIC);
+            code.writeShort(field_ref);
+        } else {
+            code.writeByte(ALOAD_0);
+            code.writeByte(CHECKCAST);
+            code.writeShort(owner_class);
+            code.writeByte(GETFIELD);
+            code.writeShort(field_ref);
+        }
+        code.writeByte(getReturnOpcode(type));
+
+        ByteArrayOutputStream class_bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(class_bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(VERSION);
+        out.writeShort(pool_size);
+        pool.flush();
+        pool_bytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+        out.writeShort(this_class);
+        out.writeShort(super_class);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(ACC_PUBLIC | ACC_STATIC);
+        out.writeShort(method_name);
+        out.writeShort(method_descriptor);
+        out.writeShort(1);
+        out.writeShort(code_name);
+        out.writeInt(12 + code.size());
+        out.writeShort(type == long.class || type == double.class ? 2 : 1);
+        out.writeShort(is_static ? 0 : 1);
+        out.writeInt(code.size());
+        code_bytes.writeTo(out);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.flush();
+        return class_bytes.toByteArray();
+    }
+
+    private int utf8Entry(String value) throws IOException {
+        Integer index = entries.get("U" + value);
+        if (index == null) {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+            entries.put("U" + value, index = pool_size++);
+        }
+        return index;
+    }
+
+    private int classEntry(String internal_name) throws IOException {
+        Integer index = entries.get("C" + internal_name);
+        if (index == null) {
+            int name = utf8Entry(internal_name);
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(name);
+            entries.put("C" + internal_name, index = pool_size++);
+        }
+        return index;
+    }
+
+    private int fieldEntry(int owner_class, String name, String descriptor) throws IOException {
+        int name_index = utf8Entry(name);
+        int descriptor_index = utf8Entry(descriptor);
+        pool.writeByte(CONSTANT_NAME_AND_TYPE);
+        pool.writeShort(name_index);
+        pool.writeShort(descriptor_index);
+        int name_and_type = pool_size++;
+        pool.writeByte(CONSTANT_FIELDREF);
+        pool.writeShort(owner_class);
+        pool.writeShort(name_and_type);
+        return pool_size++;
+    }
+
+    private static int getReturnOpcode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return ARETURN;
+        } else if (type == long.class) {
+            return LRETURN;
+        } else if (type == float.class) {
+            return FRETURN;
+        } else if (type == double.class) {
+            return DRETURN;
+        }
+        return IRETURN;
+    }
+
+    /**
+     * Gets the JVM descriptor of the type, ex: I for int and [Ljava/lang/String; for String[].
+     */
+    public static String getDescriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        } else if (!type.isPrimitive()) {
+            return "L" + type.getName().replace('.', '/') + ";";
+        } else if (type == int.class) {
+            return "I";
+        } else if (type == long.class) {
+            return "J";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == byte.class) {
+            return "B";
+        } else if (type == short.class) {
+            return "S";
+        } else if (type == char.class) {
+            return "C";
+        } else if (type == float.class) {
+            return "F";
+        } else if (type == double.class) {
+            return "D";
+        }
+        return "V";
+    }
+}
@@ -0,0 +1,126 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines accessor classes (see {@link AccessorClassWriter}) next to the class that declares a field, so that reads of the field are a plain getfield
+ * or getstatic that the JIT can inline instead of a reflective MethodHandle.
+ * <p>
+ * On Java 15 and later the accessor is a hidden class in the nest of the declaring class, on Java 8 through 16 it is an anonymous class hosted by it.
+ * Either way it has private access to the declaring class. On Java 9 and later the agent's Instrumentation is used to open the package of the declaring
+ * class to the agent if its module doesn't already. These APIs are resolved reflectively so that the agent still runs on Java 8.
+ * If no strategy is permitted, {@link #generate(Field)} returns null and the caller keeps its reflective handle.
+ */
+public class AccessorGenerator {
+    private static final String ACCESSOR_SUFFIX = "$$CrossJVMAccessor";
+
+    private final Instrumentation instrumentation;
+    private final AtomicInteger accessor_ids = new AtomicInteger();
+
+    /**
+     * @param instrumentation The agent's instrumentation, may be null in which case modules are never opened.
+     */
+    public AccessorGenerator(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Generates an accessor for the field.
+     *
+     * @return A MethodHandle of the type ()T for a static field or (Object)T for an instance field, where T is the type of the field if it is primitive
+     * and Object otherwise, or null if class definition isn't permitted.
+     */
+    public MethodHandle generate(Field field) {
+        Class<?> host = field.getDeclaringClass();
+        String class_name = host.getName().replace('.', '/') + ACCESSOR_SUFFIX + accessor_ids.incrementAndGet();
+        byte[] bytes = AccessorClassWriter.write(class_name, field);
+        MethodType type = MethodType.fromMethodDescriptorString(AccessorClassWriter.getMethodDescriptor(field), AccessorGenerator.class.getClassLoader());
+        MethodHandle handle = defineHidden(host, bytes, type);
+        if (handle == null) {
+            handle = defineAnonymous(host, bytes, type);
+        }
+        return handle;
+    }
+
+    /**
+     * Defines the accessor as a hidden nestmate of the host, Java 15 and later.
+     */
+    private MethodHandle defineHidden(Class<?> host, byte[] bytes, MethodType type) {
+        try {
+            Class<?> option_class = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Object options = Array.newInstance(option_class, 1);
+            Array.set(options, 0, option_class.getField("NESTMATE").get(null));
+            open(instrumentation, host);
+            MethodHandles.Lookup host_lookup = (MethodHandles.Lookup) MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class)
+                    .invoke(null, host, MethodHandles.lookup());
+            MethodHandles.Lookup accessor_lookup = (MethodHandles.Lookup) MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass())
+                    .invoke(host_lookup, bytes, true, options);
+            return accessor_lookup.findStatic(accessor_lookup.lookupClass(), AccessorClassWriter.METHOD_NAME, type);
+        } catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException e) {
+            //Hidden classes aren't available before Java 15.
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException | LinkageError | RuntimeException e) {
+            //The host's package couldn't be opened to the agent or the accessor was rejected.
+            return null;
+        }
+    }
+
+    /**
+     * Defines the accessor as an anonymous class hosted by the host, Java 8 through 16.
+     */
+    private MethodHandle defineAnonymous(Class<?> host, byte[] bytes, MethodType type) {
+        try {
+            Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+            Method define = unsafe_class.getMethod("defineAnonymousClass", Class.class, byte[].class, Object[].class);
+            Field the_unsafe = unsafe_class.getDeclaredField("theUnsafe");
+            the_unsafe.setAccessible(true);
+            open(instrumentation, host);
+            Class<?> accessor = (Class<?>) define.invoke(the_unsafe.get(null), host, bytes, null);
+            return MethodHandles.lookup().findStatic(accessor, AccessorClassWriter.METHOD_NAME, type);
+        } catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException e) {
+            //Anonymous classes were removed in Java 17.
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException | LinkageError | RuntimeException e) {
+            //The accessor was rejected.
+            return null;
+        }
+    }
+
+    /**
+     * Opens the package of the host to the module of the agent through the instrumentation, it does nothing before Java 9.
+     */
+    static void open(Instrumentation instrumentation, Class<?> host) throws IllegalAccessException, InvocationTargetException {
+        if (instrumentation == null) {
+            return;
+        }
+        try {
+            Method get_module = Class.class.getMethod("getModule");
+            Class<?> module_class = get_module.getReturnType();
+            Object host_module = get_module.invoke(host);
+            Object agent_module = get_module.invoke(AccessorGenerator.class);
+            String package_name = host.getName().substring(0, Math.max(host.getName().lastIndexOf('.'), 0));
+            if ((boolean) module_class.getMethod("isOpen", String.class, module_class).invoke(host_module, package_name, agent_module)) {
+                return;
+            }
+            if (!(boolean) Instrumentation.class.getMethod("isModifiableModule", module_class).invoke(instrumentation, host_module)) {
+                return;
+            }
+            Map<String, Set<Object>> opens = Collections.singletonMap(package_name, Collections.singleton(agent_module));
+            Instrumentation.class.getMethod("redefineModule", module_class, Set.class, Map.class, Map.class, Set.class, Map.class)
+                    .invoke(instrumentation, host_module, Collections.emptySet(), Collections.emptyMap(), opens, Collections.emptySet(), Collections.emptyMap());
+        } catch (NoSuchMethodException nsme) {
+            //Modules aren't available before Java 9.
+        }
+    }
+}
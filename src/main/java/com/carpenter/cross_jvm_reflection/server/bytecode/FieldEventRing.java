@@ -0,0 +1,189 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded ring of the writes to a watched field, filled by the hook of the field on the writing threads without locks.
+ * <p>
+ * A writer claims the next sequence with a single atomic increment and publishes its slot with a stamp of the sequence plus one, a stamp of 0
+ * marks a slot being written. Readers check the stamp before and after reading a slot, so a slot that was overwritten while it was read is
+ * reported as dropped rather than torn. When writers lap readers the oldest writes are dropped.
+ * The ring holds the owners and values of the writes it holds strongly until they are overwritten.
+ */
+public final class FieldEventRing {
+    public static final int MAX_CAPACITY = 1 << 22;
+
+    private final Class<?> type;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray stamps;
+    private final AtomicReferenceArray<Object> owners;
+    private final AtomicReferenceArray<Object> objects;
+    private final AtomicLongArray bits;
+    private final AtomicLongArray times;
+
+    /**
+     * @param type The type of the field.
+     * @param capacity The number of writes the ring holds, rounded up to a power of 2.
+     * @throws IllegalArgumentException if the capacity is above {@link #MAX_CAPACITY}.
+     */
+    public FieldEventRing(Class<?> type, int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity " + capacity + " is above the maximum of " + MAX_CAPACITY + ".");
+        }
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.type = type;
+        this.mask = size - 1;
+        this.stamps = new AtomicLongArray(size);
+        this.owners = new AtomicReferenceArray<>(size);
+        this.objects = new AtomicReferenceArray<>(size);
+        this.bits = new AtomicLongArray(size);
+        this.times = new AtomicLongArray(size);
+    }
+
+    /**
+     * Records a write of a primitive value, floating point values are recorded as their raw bits.
+     */
+    public void record(Object owner, long value) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        stamps.set(slot, 0);
+        owners.lazySet(slot, owner);
+        bits.lazySet(slot, value);
+        times.lazySet(slot, System.nanoTime());
+        stamps.lazySet(slot, sequence + 1);
+    }
+
+    public void record(Object owner, Object value) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        stamps.set(slot, 0);
+        owners.lazySet(slot, owner);
+        objects.lazySet(slot, value);
+        times.lazySet(slot, System.nanoTime());
+        stamps.lazySet(slot, sequence + 1);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the sequence the next write will be recorded as, the number of writes recorded so far.
+     */
+    public long getNextSequence() {
+        return next.get();
+    }
+
+    /**
+     * Reads the writes recorded from the sequence on.
+     *
+     * @param max_events The maximum number of writes to read.
+     */
+    public Events read(long sequence, int max_events) {
+        long last = next.get();
+        long first = Math.max(Math.max(sequence, 0), last - capacity());
+        int count = (int) Math.max(Math.min(last - first, max_events), 0);
+        Events events = new Events(count, first - Math.max(sequence, 0));
+        long current = first;
+        for (; current < first + count; ++current) {
+            int slot = (int) current & mask;
+            long stamp = stamps.get(slot);
+            if (stamp < current + 1) {
+                //Claimed but not yet published, it is read by the next call.
+                break;
+            }
+            Object owner = owners.get(slot);
+            Object value = type.isPrimitive() ? box(bits.get(slot)) : objects.get(slot);
+            long time = times.get(slot);
+            if (stamp != current + 1 || stamps.get(slot) != stamp) {
+                ++events.dropped;
+                continue;
+            }
+            events.owners[events.size] = owner;
+            events.values[events.size] = value;
+            events.times[events.size++] = time;
+        }
+        events.next_sequence = current;
+        return events;
+    }
+
+    private Object box(long value) {
+        if (type == int.class) {
+            return (int) value;
+        } else if (type == long.class) {
+            return value;
+        } else if (type == double.class) {
+            return Double.longBitsToDouble(value);
+        } else if (type == float.class) {
+            return Float.intBitsToFloat((int) value);
+        } else if (type == boolean.class) {
+            return value != 0;
+        } else if (type == byte.class) {
+            return (byte) value;
+        } else if (type == short.class) {
+            return (short) value;
+        }
+        return (char) value;
+    }
+
+    /**
+     * The writes read from a ring, in the order they were recorded.
+     */
+    public static final class Events {
+        private final Object[] owners;
+        private final Object[] values;
+        private final long[] times;
+        private int size;
+        private long dropped;
+        private long next_sequence;
+
+        private Events(int capacity, long dropped) {
+            this.owners = new Object[capacity];
+            this.values = new Object[capacity];
+            this.times = new long[capacity];
+            this.dropped = dropped;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Gets the object whose field was written, null for a static field.
+         */
+        public Object getOwner(int event) {
+            return owners[event];
+        }
+
+        /**
+         * Gets the value that was written, primitive values are boxed.
+         */
+        public Object getValue(int event) {
+            return values[event];
+        }
+
+        /**
+         * Gets the System.nanoTime() of the write.
+         */
+        public long getTime(int event) {
+            return times[event];
+        }
+
+        /**
+         * Gets the number of writes from the requested sequence on that were lost because writers lapped the reader.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Gets the sequence to read from next.
+         */
+        public long getNextSequence() {
+            return next_sequence;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Writes the class file of the hook that writes to a watched field, see {@link FieldWatcher}.
+ * The hook has a "public static MethodHandle HANDLE" and one method, "public static void put(Object owner, T value)" for an instance field or
+ * "public static void put(T value)" for a static field, where T is the type of the field if it is primitive and Object otherwise.
+ * The method passes its arguments on to HANDLE with invokeExact. The descriptor of put consumes exactly what a putfield or putstatic of the
+ * field consumes from the operand stack, so a putfield or putstatic can be replaced by an invokestatic of put without changing the length of
+ * the code or its stack map frames.
+ */
+public final class FieldHookClassWriter {
+    public static final String METHOD_NAME = "put";
+    public static final String HANDLE_NAME = "HANDLE";
+
+    private static final int VERSION = 52;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int GETSTATIC = 0xB2;
+    private static final int INVOKEVIRTUAL = 0xB6;
+    private static final int RETURN = 0xB1;
+
+    private static final String HANDLE_DESCRIPTOR = "Ljava/lang/invoke/MethodHandle;";
+
+    private FieldHookClassWriter() {
+    }
+
+    /**
+     * Gets the descriptor of the put method of the hook for the field.
+     */
+    public static String getMethodDescriptor(Field field) {
+        Class<?> type = field.getType();
+        String value_descriptor = type.isPrimitive() ? AccessorClassWriter.getDescriptor(type) : "Ljava/lang/Object;";
+        return Modifier.isStatic(field.getModifiers()) ? "(" + value_descriptor + ")V" : "(Ljava/lang/Object;" + value_descriptor + ")V";
+    }
+
+    /**
+     * Writes the class file of a hook for the field.
+     *
+     * @param class_name The internal name of the hook, ex: pkg/Owner$$Hook
+     */
+    public static byte[] write(String class_name, Field field) {
+        try {
+            return writeClass(class_name, field);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Failed to write a hook for " + field, ioe);
+        }
+    }
+
+    private static byte[] writeClass(String class_name, Field field) throws IOException {
+        boolean is_static = Modifier.isStatic(field.getModifiers());
+        Class<?> type = field.getType();
+        String descriptor = getMethodDescriptor(field);
+        ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream();
+        DataOutputStream pool = new DataOutputStream(pool_bytes);
+        //1: this class, 3: super class, 5: the handle field, 8: MethodHandle.invokeExact, 11: put, 12: Code
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF(class_name);
+        pool.writeByte(CONSTANT_CLASS);
+        pool.writeShort(1);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF("java/lang/Object");
+        pool.writeByte(CONSTANT_CLASS);
+        pool.writeShort(3);
+        pool.writeByte(CONSTANT_FIELDREF);
+        pool.writeShort(2);
+        pool.writeShort(6);
+        pool.writeByte(CONSTANT_NAME_AND_TYPE);
+        pool.writeShort(13);
+        pool.writeShort(14);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF("java/lang/invoke/MethodHandle");
+        pool.writeByte(CONSTANT_METHODREF);
+        pool.writeShort(15);
+        pool.writeShort(9);
+        pool.writeByte(CONSTANT_NAME_AND_TYPE);
+        pool.writeShort(16);
+        pool.writeShort(10);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF(descriptor);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF(METHOD_NAME);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF("Code");
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF(HANDLE_NAME);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF(HANDLE_DESCRIPTOR);
+        pool.writeByte(CONSTANT_CLASS);
+        pool.writeShort(7);
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF("invokeExact");
+        int pool_size = 17;
+
+        ByteArrayOutputStream code_bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(code_bytes);
+        code.writeByte(GETSTATIC);
+        code.writeShort(5);
+        int local = 0;
+        if (!is_static) {
+            code.writeByte(ALOAD);
+            code.writeByte(local++);
+        }
+        code.writeByte(getLoadOpcode(type));
+        code.writeByte(local);
+        code.writeByte(INVOKEVIRTUAL);
+        code.writeShort(8);
+        code.writeByte(RETURN);
+        int value_size = type == long.class || type == double.class ? 2 : 1;
+
+        ByteArrayOutputStream class_bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(class_bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(VERSION);
+        out.writeShort(pool_size);
+        pool.flush();
+        pool_bytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(ACC_PUBLIC | ACC_STATIC);
+        out.writeShort(13);
+        out.writeShort(14);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(ACC_PUBLIC | ACC_STATIC);
+        out.writeShort(11);
+        out.writeShort(10);
+        out.writeShort(1);
+        out.writeShort(12);
+        out.writeInt(12 + code.size());
+        out.writeShort(1 + local + value_size);
+        out.writeShort(local + value_size);
+        out.writeInt(code.size());
+        code_bytes.writeTo(out);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.flush();
+        return class_bytes.toByteArray();
+    }
+
+    private static int getLoadOpcode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return ALOAD;
+        } else if (type == long.class) {
+            return LLOAD;
+        } else if (type == float.class) {
+            return FLOAD;
+        } else if (type == double.class) {
+            return DLOAD;
+        }
+        return ILOAD;
+    }
+}
@@ -0,0 +1,358 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import java.io.Closeable;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports the writes to chosen fields by retransforming the classes that write them. Each watched field gets a hook class (see
+ * {@link FieldHookClassWriter}) defined next to the class that declares it, and the putfield and putstatic instructions on the field are rewritten
+ * into calls of the hook (see {@link PutFieldRewriter}). The hook performs the write through a setter and records it in the {@link FieldEventRing}
+ * of the field. Fields that aren't watched are never rewritten and cost nothing.
+ * <p>
+ * The declaring class and the other members of its nest are rewritten, so writes made by the class itself, by its inner classes and by the
+ * synthetic accessors of older compilers are reported. Writes by other classes to non-private fields, writes qualified by a subclass and writes
+ * made by constructors aren't. When the last watch of a class is removed the class is retransformed back to its original bytecode.
+ * <p>
+ * The hook of a field is defined the first time the field is watched and is reused when it is watched again. Once a field has no watches its
+ * hook only performs the write, for a frame that was still running the rewritten bytecode, and no longer references the ring.
+ * <p>
+ * The transformer is only registered once the first field is watched, and is removed with every watch when the watcher is closed. Hooks are defined with Lookup.defineClass on Java 9 and later and with
+ * Unsafe.defineClass on Java 8, both resolved reflectively.
+ */
+public class FieldWatcher implements Closeable {
+    private static final String HOOK_SUFFIX = "$$CrossJVMHook";
+    private static final MethodHandle RECORD_PRIMITIVE;
+    private static final MethodHandle RECORD_OBJECT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            RECORD_PRIMITIVE = lookup.findVirtual(FieldEventRing.class, "record", MethodType.methodType(void.class, Object.class, long.class));
+            RECORD_OBJECT = lookup.findVirtual(FieldEventRing.class, "record", MethodType.methodType(void.class, Object.class, Object.class));
+        } catch (ReflectiveOperationException roe) {
+            throw new ExceptionInInitializerError(roe);
+        }
+    }
+
+    private final Instrumentation instrumentation;
+    private final Map<Long, Watch> watches = new ConcurrentHashMap<>();
+    private final Map<Field, Watch> watches_by_field = new HashMap<>();
+    private final Map<Class<?>, Map<String, String>> class_hooks = new ConcurrentHashMap<>();
+    private final ClassValue<Map<String, Class<?>>> field_hooks = new ClassValue<Map<String, Class<?>>>() {
+        @Override
+        protected Map<String, Class<?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private final AtomicLong watch_ids = new AtomicLong();
+    private final AtomicInteger hook_ids = new AtomicInteger();
+    private ClassFileTransformer transformer;
+
+    /**
+     * @param instrumentation The agent's instrumentation, may be null in which case no field can be watched.
+     */
+    public FieldWatcher(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Watches the writes to the field, a field that is already watched shares its ring with the existing watch.
+     *
+     * @param capacity The number of writes the ring of a new watch holds, at most {@link FieldEventRing#MAX_CAPACITY}.
+     * @return The id of the watch.
+     * @throws IllegalStateException if the field can't be watched.
+     */
+    public synchronized long watch(Field field, int capacity) {
+        Watch watch = watches_by_field.get(field);
+        if (watch != null) {
+            ++watch.count;
+            return watch.id;
+        }
+        if (instrumentation == null || !instrumentation.isRetransformClassesSupported()) {
+            throw new IllegalStateException("Watching fields requires an agent that can retransform classes.");
+        }
+        if (Modifier.isFinal(field.getModifiers())) {
+            throw new IllegalStateException(field + " is final, it is only written while its owner is constructed.");
+        }
+        if (capacity <= 0 || capacity > FieldEventRing.MAX_CAPACITY) {
+            throw new IllegalStateException("The capacity " + capacity + " isn't between 1 and " + FieldEventRing.MAX_CAPACITY + ".");
+        }
+        Class<?> host = field.getDeclaringClass();
+        FieldEventRing ring = new FieldEventRing(field.getType(), capacity);
+        Class<?> hook = field_hooks.get(host).get(field.getName());
+        if (hook == null) {
+            String hook_name = host.getName().replace('.', '/') + HOOK_SUFFIX + hook_ids.incrementAndGet();
+            hook = defineHook(host, hook_name, FieldHookClassWriter.write(hook_name, field));
+            field_hooks.get(host).put(field.getName(), hook);
+        }
+        link(hook, field, ring);
+        watch = new Watch(watch_ids.incrementAndGet(), field, ring, hook, getNest(host));
+        if (transformer == null) {
+            transformer = new Transformer();
+            instrumentation.addTransformer(transformer, true);
+        }
+        watches.put(watch.id, watch);
+        watches_by_field.put(field, watch);
+        try {
+            retransform(watch.classes);
+        } catch (IllegalStateException ise) {
+            watches.remove(watch.id);
+            watches_by_field.remove(field);
+            retransform(watch.classes);
+            link(hook, field, null);
+            throw ise;
+        }
+        return watch.id;
+    }
+
+    /**
+     * Removes a watch, once the field has no watches left the classes that write it are retransformed without its hook.
+     *
+     * @return Whether the watch existed.
+     */
+    public synchronized boolean unwatch(long watch_id) {
+        Watch watch = watches.get(watch_id);
+        if (watch == null) {
+            return false;
+        }
+        if (--watch.count == 0) {
+            watches.remove(watch_id);
+            watches_by_field.remove(watch.field);
+            retransform(watch.classes);
+            link(watch.hook, watch.field, null);
+        }
+        return true;
+    }
+
+    /**
+     * Removes every watch, retransforming the classes that write the fields back to their original bytecode, and removes the transformer.
+     */
+    @Override
+    public synchronized void close() {
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        List<Watch> removed = new ArrayList<>(watches.values());
+        for (Watch watch : removed) {
+            classes.addAll(watch.classes);
+        }
+        watches.clear();
+        watches_by_field.clear();
+        try {
+            if (!classes.isEmpty()) {
+                retransform(new ArrayList<>(classes));
+            }
+        } finally {
+            for (Watch watch : removed) {
+                link(watch.hook, watch.field, null);
+            }
+            if (transformer != null) {
+                instrumentation.removeTransformer(transformer);
+                transformer = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the ring of a watch, null if there is no such watch.
+     */
+    public FieldEventRing getRing(long watch_id) {
+        Watch watch = watches.get(watch_id);
+        return watch == null ? null : watch.ring;
+    }
+
+    /**
+     * Recomputes the hooks of the classes from the current watches and retransforms them. Called with the lock held.
+     */
+    private void retransform(List<Class<?>> classes) {
+        for (Class<?> type : classes) {
+            Map<String, String> hooks = new HashMap<>();
+            for (Watch watch : watches.values()) {
+                if (watch.classes.contains(type)) {
+                    Field field = watch.field;
+                    hooks.put(field.getDeclaringClass().getName().replace('.', '/') + '.' + field.getName() + ':' + AccessorClassWriter.getDescriptor(field.getType()),
+                            watch.hook.getName().replace('.', '/'));
+                }
+            }
+            if (hooks.isEmpty()) {
+                class_hooks.remove(type);
+            } else {
+                class_hooks.put(type, hooks);
+            }
+        }
+        try {
+            instrumentation.retransformClasses(classes.toArray(new Class<?>[0]));
+        } catch (UnmodifiableClassException | LinkageError | RuntimeException e) {
+            throw new IllegalStateException("Failed to retransform " + classes + ", " + e, e);
+        }
+    }
+
+    /**
+     * Points the handle of the hook at the ring, or at the setter alone if the ring is null.
+     */
+    private static void link(Class<?> hook, Field field, FieldEventRing ring) {
+        try {
+            hook.getField(FieldHookClassWriter.HANDLE_NAME).set(null, createHandle(field, ring));
+        } catch (ReflectiveOperationException roe) {
+            throw new IllegalStateException("Failed to link the hook of " + field, roe);
+        }
+    }
+
+    /**
+     * Composes the setter of the field with the recording of the write, in the type of the hook's handle. Only the setter if the ring is null.
+     */
+    private static MethodHandle createHandle(Field field, FieldEventRing ring) {
+        boolean is_static = Modifier.isStatic(field.getModifiers());
+        Class<?> type = field.getType();
+        Class<?> value_type = type.isPrimitive() ? type : Object.class;
+        MethodType hook_type = is_static ? MethodType.methodType(void.class, value_type) : MethodType.methodType(void.class, Object.class, value_type);
+        MethodHandle setter;
+        try {
+            field.setAccessible(true);
+            setter = MethodHandles.lookup().unreflectSetter(field).asType(hook_type);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalStateException("Failed to get a setter for " + field, e);
+        }
+        if (ring == null) {
+            return setter;
+        }
+        MethodHandle recorder;
+        if (!type.isPrimitive()) {
+            recorder = RECORD_OBJECT.bindTo(ring);
+        } else {
+            recorder = RECORD_PRIMITIVE.bindTo(ring);
+            MethodHandle to_bits = getBitsConverter(type);
+            if (to_bits != null) {
+                recorder = MethodHandles.filterArguments(recorder, 1, to_bits);
+            }
+        }
+        if (is_static) {
+            recorder = MethodHandles.insertArguments(recorder, 0, (Object) null);
+        }
+        return MethodHandles.foldArguments(recorder.asType(hook_type), setter);
+    }
+
+    /**
+     * Gets a converter of values of the type to long bits, null if the type widens to long.
+     */
+    private static MethodHandle getBitsConverter(Class<?> type) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            if (type == float.class) {
+                return lookup.findStatic(Float.class, "floatToRawIntBits", MethodType.methodType(int.class, float.class)).asType(MethodType.methodType(long.class, float.class));
+            } else if (type == double.class) {
+                return lookup.findStatic(Double.class, "doubleToRawLongBits", MethodType.methodType(long.class, double.class));
+            } else if (type == boolean.class) {
+                return lookup.findStatic(FieldWatcher.class, "booleanBits", MethodType.methodType(long.class, boolean.class));
+            }
+            return null;
+        } catch (ReflectiveOperationException roe) {
+            throw new IllegalStateException(roe);
+        }
+    }
+
+    private static long booleanBits(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    /**
+     * Gets the host and the other members of its nest on Java 11 and later, only the host before.
+     */
+    private static List<Class<?>> getNest(Class<?> host) {
+        Set<Class<?>> nest = new LinkedHashSet<>();
+        nest.add(host);
+        try {
+            Method get_nest_members = Class.class.getMethod("getNestMembers");
+            Collections.addAll(nest, (Class<?>[]) get_nest_members.invoke(host));
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            //Nests aren't available before Java 11, inner classes write private fields through accessors in the host.
+        }
+        return new ArrayList<>(nest);
+    }
+
+    /**
+     * Defines the hook in the package and class loader of the host, so that the host resolves it by name.
+     */
+    private Class<?> defineHook(Class<?> host, String hook_name, byte[] bytes) {
+        try {
+            AccessorGenerator.open(instrumentation, host);
+            Method private_lookup_in = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            MethodHandles.Lookup host_lookup = (MethodHandles.Lookup) private_lookup_in.invoke(null, host, MethodHandles.lookup());
+            return (Class<?>) MethodHandles.Lookup.class.getMethod("defineClass", byte[].class).invoke(host_lookup, (Object) bytes);
+        } catch (NoSuchMethodException nsme) {
+            return defineHookUnsafe(host, hook_name, bytes);
+        } catch (IllegalAccessException | InvocationTargetException | LinkageError | RuntimeException e) {
+            throw new IllegalStateException("Failed to define the hook " + hook_name + ", " + e, e);
+        }
+    }
+
+    /**
+     * Defines the hook with sun.misc.Unsafe, Java 8.
+     */
+    private static Class<?> defineHookUnsafe(Class<?> host, String hook_name, byte[] bytes) {
+        try {
+            Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+            Method define = unsafe_class.getMethod("defineClass", String.class, byte[].class, int.class, int.class, ClassLoader.class, ProtectionDomain.class);
+            Field the_unsafe = unsafe_class.getDeclaredField("theUnsafe");
+            the_unsafe.setAccessible(true);
+            return (Class<?>) define.invoke(the_unsafe.get(null), hook_name.replace('/', '.'), bytes, 0, bytes.length, host.getClassLoader(), host.getProtectionDomain());
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            throw new IllegalStateException("Failed to define the hook " + hook_name + ", " + e, e);
+        }
+    }
+
+    private static final class Watch {
+        private final long id;
+        private final Field field;
+        private final FieldEventRing ring;
+        private final Class<?> hook;
+        private final List<Class<?>> classes;
+        private int count = 1;
+
+        private Watch(long id, Field field, FieldEventRing ring, Class<?> hook, List<Class<?>> classes) {
+            this.id = id;
+            this.field = field;
+            this.ring = ring;
+            this.hook = hook;
+            this.classes = classes;
+        }
+    }
+
+    private final class Transformer implements ClassFileTransformer {
+        @Override
+        public byte[] transform(ClassLoader loader, String class_name, Class<?> class_being_redefined, ProtectionDomain protection_domain, byte[] class_file) {
+            if (class_being_redefined == null) {
+                return null;
+            }
+            Map<String, String> hooks = class_hooks.get(class_being_redefined);
+            if (hooks == null) {
+                //Not watched anymore, returning null leaves the original bytecode.
+                return null;
+            }
+            try {
+                return PutFieldRewriter.rewrite(class_file, hooks);
+            } catch (IllegalArgumentException iae) {
+                return null;
+            }
+        }
+    }
+}
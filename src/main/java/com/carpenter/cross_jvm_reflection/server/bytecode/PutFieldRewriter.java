@@ -0,0 +1,326 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Rewrites a class file so that its putfield and putstatic instructions on watched fields are invokestatic instructions of the hooks of the
+ * fields (see {@link FieldHookClassWriter}). Both instructions are 3 bytes long and the hook consumes the same operands, so the code is patched in
+ * place and only the constant pool grows. Putfield instructions in constructors are left alone because the owner may still be uninitialized
+ * there, which the verifier doesn't allow to be passed to a method.
+ */
+public final class PutFieldRewriter {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int PUTSTATIC = 0xB3;
+    private static final int PUTFIELD = 0xB5;
+    private static final int INVOKESTATIC = 0xB8;
+    private static final int TABLESWITCH = 0xAA;
+    private static final int LOOKUPSWITCH = 0xAB;
+    private static final int WIDE = 0xC4;
+    private static final int IINC = 0x84;
+
+    /**
+     * The lengths of the instructions with a fixed length, indexed by opcode.
+     */
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        Arrays.fill(LENGTHS, (byte) 1);
+        for (int opcode : new int[]{0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3A, 0xA9, 0xBC}) {
+            LENGTHS[opcode] = 2;
+        }
+        for (int opcode = 0x99; opcode <= 0xA8; ++opcode) {
+            LENGTHS[opcode] = 3;
+        }
+        for (int opcode = 0xB2; opcode <= 0xB8; ++opcode) {
+            LENGTHS[opcode] = 3;
+        }
+        for (int opcode : new int[]{0x11, 0x13, 0x14, IINC, 0xBB, 0xBD, 0xC0, 0xC1, 0xC6, 0xC7}) {
+            LENGTHS[opcode] = 3;
+        }
+        LENGTHS[0xC5] = 4;
+        for (int opcode : new int[]{0xB9, 0xBA, 0xC8, 0xC9}) {
+            LENGTHS[opcode] = 5;
+        }
+    }
+
+    private final byte[] bytes;
+    private final ByteBuffer in;
+    private final Map<String, String> hooks;
+    private String[] utf8s;
+    private String[] watched;
+    private int[] hook_refs;
+    private int pool_end;
+    private int pool_size;
+    private final ByteArrayOutputStream added_bytes = new ByteArrayOutputStream();
+    private final DataOutputStream added = new DataOutputStream(added_bytes);
+    private int added_size;
+    private boolean rewritten;
+
+    private PutFieldRewriter(byte[] bytes, Map<String, String> hooks) {
+        this.bytes = bytes.clone();
+        this.in = ByteBuffer.wrap(this.bytes);
+        this.hooks = hooks;
+    }
+
+    /**
+     * Rewrites the writes of the watched fields in the class file.
+     *
+     * @param hooks The internal names of the hooks keyed by the fields they hook in the format "owner.name:descriptor", ex: "pkg/Owner.count:I".
+     *              The descriptors of the hooks are derived from the descriptors of the fields.
+     * @return The rewritten class file, or null if it doesn't write any of the fields.
+     * @throws IllegalArgumentException if the class file is malformed.
+     */
+    public static byte[] rewrite(byte[] class_file, Map<String, String> hooks) {
+        try {
+            return new PutFieldRewriter(class_file, hooks).rewrite();
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Failed to rewrite the class file, " + e, e);
+        }
+    }
+
+    private byte[] rewrite() throws IOException {
+        if (in.getInt() != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file.");
+        }
+        in.position(8);
+        readPool();
+        in.position(in.position() + 6);
+        int interfaces = in.getShort() & 0xFFFF;
+        in.position(in.position() + 2 * interfaces);
+        skipMembers();
+        int methods = in.getShort() & 0xFFFF;
+        for (int method = 0; method < methods; ++method) {
+            in.getShort();
+            boolean constructor = "<init>".equals(utf8s[in.getShort() & 0xFFFF]);
+            in.getShort();
+            int attributes = in.getShort() & 0xFFFF;
+            for (int attribute = 0; attribute < attributes; ++attribute) {
+                String name = utf8s[in.getShort() & 0xFFFF];
+                int length = in.getInt();
+                int end = in.position() + length;
+                if ("Code".equals(name)) {
+                    patchCode(in.position() + 8, in.getInt(in.position() + 4), constructor);
+                }
+                in.position(end);
+            }
+        }
+        if (!rewritten) {
+            return null;
+        }
+        added.flush();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + added_bytes.size());
+        out.write(bytes, 0, 8);
+        out.write((pool_size + added_size) >>> 8);
+        out.write(pool_size + added_size);
+        out.write(bytes, 10, pool_end - 10);
+        added_bytes.writeTo(out);
+        out.write(bytes, pool_end, bytes.length - pool_end);
+        return out.toByteArray();
+    }
+
+    private void readPool() {
+        pool_size = in.getShort() & 0xFFFF;
+        utf8s = new String[pool_size];
+        int[] classes = new int[pool_size];
+        int[] name_and_types = new int[pool_size];
+        int[] refs = new int[pool_size];
+        for (int index = 1; index < pool_size; ++index) {
+            int tag = in.get();
+            switch (tag) {
+                case CONSTANT_UTF8: {
+                    int length = in.getShort() & 0xFFFF;
+                    utf8s[index] = decodeUtf8(in.position(), length);
+                    in.position(in.position() + length);
+                    break;
+                }
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_INVOKE_DYNAMIC:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                    in.getInt();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.getLong();
+                    ++index;
+                    break;
+                case CONSTANT_CLASS:
+                    classes[index] = in.getShort() & 0xFFFF;
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.getShort();
+                    break;
+                case CONSTANT_FIELDREF:
+                    refs[index] = in.getInt();
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    name_and_types[index] = in.getInt();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.get();
+                    in.getShort();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag + ".");
+            }
+        }
+        pool_end = in.position();
+        //Resolve the fieldrefs once every entry they refer to was read.
+        watched = new String[pool_size];
+        hook_refs = new int[pool_size];
+        for (int index = 1; index < pool_size; ++index) {
+            if (refs[index] != 0) {
+                int name_and_type = name_and_types[refs[index] & 0xFFFF];
+                String key = utf8s[classes[refs[index] >>> 16]] + '.' + utf8s[name_and_type >>> 16] + ':' + utf8s[name_and_type & 0xFFFF];
+                if (hooks.containsKey(key)) {
+                    watched[index] = key;
+                }
+            }
+        }
+    }
+
+    private void skipMembers() {
+        int fields = in.getShort() & 0xFFFF;
+        for (int field = 0; field < fields; ++field) {
+            in.position(in.position() + 6);
+            int attributes = in.getShort() & 0xFFFF;
+            for (int attribute = 0; attribute < attributes; ++attribute) {
+                in.getShort();
+                int length = in.getInt();
+                in.position(in.position() + length);
+            }
+        }
+    }
+
+    private void patchCode(int start, int length, boolean constructor) throws IOException {
+        int offset = start;
+        int end = start + length;
+        while (offset < end) {
+            int opcode = bytes[offset] & 0xFF;
+            if ((opcode == PUTFIELD && !constructor) || opcode == PUTSTATIC) {
+                int fieldref = ((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] & 0xFF);
+                if (watched[fieldref] != null) {
+                    int hook = getHookRef(fieldref, opcode == PUTSTATIC);
+                    bytes[offset] = (byte) INVOKESTATIC;
+                    bytes[offset + 1] = (byte) (hook >>> 8);
+                    bytes[offset + 2] = (byte) hook;
+                    rewritten = true;
+                }
+            }
+            offset += getLength(opcode, offset - start, offset);
+        }
+    }
+
+    private int getLength(int opcode, int code_offset, int offset) {
+        switch (opcode) {
+            case TABLESWITCH: {
+                int padded = offset + 1 + (3 - (code_offset & 3));
+                int low = in.getInt(padded + 4);
+                int high = in.getInt(padded + 8);
+                return padded - offset + 12 + 4 * (high - low + 1);
+            }
+            case LOOKUPSWITCH: {
+                int padded = offset + 1 + (3 - (code_offset & 3));
+                return padded - offset + 8 + 8 * in.getInt(padded + 4);
+            }
+            case WIDE:
+                return (bytes[offset + 1] & 0xFF) == IINC ? 6 : 4;
+            default:
+                return LENGTHS[opcode];
+        }
+    }
+
+    /**
+     * Gets the methodref of the hook of the field, adding it to the constant pool the first time.
+     */
+    private int getHookRef(int fieldref, boolean is_static) throws IOException {
+        if (hook_refs[fieldref] != 0) {
+            return hook_refs[fieldref];
+        }
+        String key = watched[fieldref];
+        String value_descriptor = key.substring(key.indexOf(':') + 1);
+        if (value_descriptor.charAt(0) == 'L' || value_descriptor.charAt(0) == '[') {
+            value_descriptor = "Ljava/lang/Object;";
+        }
+        String descriptor = is_static ? "(" + value_descriptor + ")V" : "(Ljava/lang/Object;" + value_descriptor + ")V";
+        int hook_name = addUtf8(hooks.get(key));
+        int hook_class = addEntry(CONSTANT_CLASS, hook_name);
+        int name_and_type = addEntry(CONSTANT_NAME_AND_TYPE, (addUtf8(FieldHookClassWriter.METHOD_NAME) << 16) | addUtf8(descriptor));
+        int methodref = addEntry(CONSTANT_METHODREF, (hook_class << 16) | name_and_type);
+        if (pool_size + added_size > 0xFFFF) {
+            throw new IllegalArgumentException("The constant pool is full.");
+        }
+        return hook_refs[fieldref] = methodref;
+    }
+
+    private int addUtf8(String value) throws IOException {
+        added.writeByte(CONSTANT_UTF8);
+        added.writeUTF(value);
+        return pool_size + added_size++;
+    }
+
+    /**
+     * Adds an entry of a class (a 2 byte value) or of a reference (a 4 byte value).
+     */
+    private int addEntry(int tag, int value) throws IOException {
+        added.writeByte(tag);
+        if (tag == CONSTANT_CLASS) {
+            added.writeShort(value);
+        } else {
+            added.writeInt(value);
+        }
+        return pool_size + added_size++;
+    }
+
+    /**
+     * Decodes modified UTF-8, which differs from UTF-8 only in how it encodes the null character and supplementary characters.
+     */
+    private String decodeUtf8(int offset, int length) {
+        for (int index = offset; index < offset + length; ++index) {
+            if (bytes[index] < 0) {
+                char[] chars = new char[length];
+                int count = 0;
+                for (int position = offset; position < offset + length; ) {
+                    int first = bytes[position++] & 0xFF;
+                    if (first < 0x80) {
+                        chars[count++] = (char) first;
+                    } else if (first < 0xE0) {
+                        chars[count++] = (char) (((first & 0x1F) << 6) | (bytes[position++] & 0x3F));
+                    } else {
+                        chars[count++] = (char) (((first & 0x0F) << 12) | ((bytes[position++] & 0x3F) << 6) | (bytes[position++] & 0x3F));
+                    }
+                }
+                return new String(chars, 0, count);
+            }
+        }
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,355 @@
+package com.carpenter.cross_jvm_reflection.server.execution;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the work clients can make the server do inside the monitored jvm. Calls through a limited stub (see {@link #limit(ServerStub, boolean)})
+ * are admitted before they run on the thread of the transport that received them:
+ * <ul>
+ * <li>At most max_concurrent calls run at once.</li>
+ * <li>With a cpu limit, the cpu time of the calls is accounted in windows of {@link #WINDOW_MILLIS} and once a window's budget is spent
+ * calls wait for the next window. Only the cpu time of the thread running the call is accounted, not that of work it hands to the query pool.</li>
+ * <li>Calls that can't run wait in a queue per client, and the queues are served round robin so that one busy client can't starve the others.</li>
+ * <li>A call is rejected with a RemoteException if its client already has max_queued calls waiting, or if it waited longer than max_wait_millis.</li>
+ * </ul>
+ * A client is the connection of the binary transport (see {@link #setClient(String)}), the connection of an rmi call, or "local" for calls
+ * made in process. Rmi doesn't expose its connections, they are told apart by the name of the thread rmi serves each one on and only the remote
+ * host is used when the thread isn't named that way. Waiting parks the thread without holding a monitor.
+ */
+public class ExecutionGate {
+    public static final long WINDOW_MILLIS = 100;
+
+    private static final ThreadLocal<String> CLIENT = new ThreadLocal<>();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int max_concurrent;
+    private final int max_queued;
+    private final long max_wait_millis;
+    private final long cpu_budget_nanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, ArrayDeque<Waiter>> queues = new HashMap<>();
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    private final ScheduledExecutorService windows;
+    private int running;
+    private int queued;
+    private long cpu_used_nanos;
+    private long admitted;
+    private long rejected;
+    private boolean closed;
+
+    /**
+     * @param max_concurrent The number of calls that may run at once.
+     * @param max_queued The number of calls of a single client that may wait to run.
+     * @param max_wait_millis How long a call may wait to run before it is rejected.
+     * @param cpu_percent The cpu time the calls may use as a percentage of one processor, 0 for no limit. It may exceed 100 on a machine with
+     *                    several processors.
+     */
+    public ExecutionGate(int max_concurrent, int max_queued, long max_wait_millis, int cpu_percent) {
+        if (max_concurrent <= 0 || max_queued < 0 || max_wait_millis < 0 || cpu_percent < 0) {
+            throw new IllegalArgumentException("The concurrency limit must be positive and the other limits can't be negative.");
+        }
+        this.max_concurrent = max_concurrent;
+        this.max_queued = max_queued;
+        this.max_wait_millis = max_wait_millis;
+        if (cpu_percent > 0 && THREADS.isCurrentThreadCpuTimeSupported()) {
+            if (!THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            this.cpu_budget_nanos = TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS) * cpu_percent / 100;
+            this.windows = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "CrossJVMReflection-Execution");
+                thread.setDaemon(true);
+                return thread;
+            });
+            windows.scheduleAtFixedRate(this::nextWindow, WINDOW_MILLIS, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            this.cpu_budget_nanos = 0;
+            this.windows = null;
+        }
+    }
+
+    /**
+     * Sets the client the calls of the current thread are made on behalf of, null to fall back to the rmi client host.
+     */
+    public static void setClient(String client) {
+        if (client == null) {
+            CLIENT.remove();
+        } else {
+            CLIENT.set(client);
+        }
+    }
+
+    /**
+     * Wraps the stub in a stub whose calls are admitted by this gate, sessions opened through it are limited as well.
+     *
+     * @param export Whether the stub is served over rmi, in which case the limited stub and its sessions are exported and sessions are unexported when released.
+     */
+    public ServerStub limit(ServerStub stub, boolean export) throws RemoteException {
+        ServerStub limited = (ServerStub) Proxy.newProxyInstance(ServerStub.class.getClassLoader(), new Class<?>[]{ServerStub.class}, new Limiter(stub, export));
+        if (export) {
+            UnicastRemoteObject.exportObject(limited, 0);
+        }
+        return limited;
+    }
+
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of calls that were admitted.
+     */
+    public long getAdmitted() {
+        lock.lock();
+        try {
+            return admitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of calls that were rejected because their client's queue was full or they waited too long.
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lifts the cpu limit and stops accounting cpu windows, the concurrency limit still applies.
+     */
+    public void close() {
+        if (windows != null) {
+            windows.shutdownNow();
+        }
+        lock.lock();
+        try {
+            closed = true;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String getClient() {
+        String client = CLIENT.get();
+        if (client != null) {
+            return client;
+        }
+        try {
+            String host = RemoteServer.getClientHost();
+            //The rmi runtime serves each connection on a thread named "RMI TCP Connection(id)-host".
+            String thread = Thread.currentThread().getName();
+            int start = thread.indexOf('(');
+            int end = thread.indexOf(')', start + 1);
+            if (thread.startsWith("RMI TCP Connection(") && end > start) {
+                return "rmi:" + host + '#' + thread.substring(start + 1, end);
+            }
+            return "rmi:" + host;
+        } catch (ServerNotActiveException snae) {
+            return "local";
+        }
+    }
+
+    /**
+     * Waits until the call may run.
+     *
+     * @throws RemoteException if the call was rejected.
+     */
+    private void admit(String client, String method) throws RemoteException {
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (queued == 0 && canRun()) {
+                ++running;
+                ++admitted;
+                return;
+            }
+            ArrayDeque<Waiter> queue = queues.get(client);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(client, queue);
+            }
+            if (queue.size() >= max_queued) {
+                ++rejected;
+                throw new RemoteException("The server is busy, " + client + " already has " + queue.size() + " calls waiting. Rejected " + method + ".");
+            }
+            waiter = new Waiter(Thread.currentThread());
+            if (queue.isEmpty()) {
+                ready.add(client);
+            }
+            queue.add(waiter);
+            ++queued;
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(max_wait_millis);
+        boolean interrupted = false;
+        while (!waiter.admitted) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (waiter.admitted) {
+                return;
+            }
+            ArrayDeque<Waiter> queue = queues.get(client);
+            queue.remove(waiter);
+            --queued;
+            if (queue.isEmpty()) {
+                ready.remove(client);
+                queues.remove(client);
+            }
+            ++rejected;
+        } finally {
+            lock.unlock();
+        }
+        throw new RemoteException("The server is busy, " + method + " waited more than " + max_wait_millis + "ms to run.");
+    }
+
+    private void complete(long cpu_nanos) {
+        lock.lock();
+        try {
+            --running;
+            cpu_used_nanos += cpu_nanos;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void nextWindow() {
+        lock.lock();
+        try {
+            cpu_used_nanos = Math.max(0, cpu_used_nanos - cpu_budget_nanos);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canRun() {
+        return running < max_concurrent && (cpu_budget_nanos == 0 || closed || cpu_used_nanos < cpu_budget_nanos);
+    }
+
+    /**
+     * Admits waiting calls while there is capacity, taking one call from each client in turn. Called with the lock held.
+     */
+    private void dispatch() {
+        while (!ready.isEmpty() && canRun()) {
+            String client = ready.poll();
+            ArrayDeque<Waiter> queue = queues.get(client);
+            Waiter waiter = queue.poll();
+            --queued;
+            if (queue.isEmpty()) {
+                queues.remove(client);
+            } else {
+                ready.add(client);
+            }
+            ++running;
+            ++admitted;
+            waiter.admitted = true;
+            LockSupport.unpark(waiter.thread);
+        }
+    }
+
+    private static final class Waiter {
+        private final Thread thread;
+        private volatile boolean admitted;
+
+        private Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private final class Limiter implements InvocationHandler {
+        private final ServerStub stub;
+        private final boolean export;
+
+        private Limiter(ServerStub stub, boolean export) {
+            this.stub = stub;
+            this.export = export;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "ExecutionGate.Limiter{" + stub + "}";
+                }
+            }
+            admit(getClient(), method.getName());
+            long cpu_start = cpu_budget_nanos != 0 ? THREADS.getCurrentThreadCpuTime() : 0;
+            try {
+                Object result = method.invoke(stub, arguments);
+                if (result instanceof ServerStub) {
+                    return limit((ServerStub) result, export);
+                }
+                if (export && method.getName().equals("release") && method.getParameterCount() == 0) {
+                    try {
+                        UnicastRemoteObject.unexportObject((ServerStub) proxy, true);
+                    } catch (NoSuchObjectException ignored) {
+                        //The root stub, or a session that was already released.
+                    }
+                }
+                return result;
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            } finally {
+                complete(cpu_budget_nanos != 0 ? THREADS.getCurrentThreadCpuTime() - cpu_start : 0);
+            }
+        }
+    }
+}
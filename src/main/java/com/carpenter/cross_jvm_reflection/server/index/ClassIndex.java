@@ -0,0 +1,284 @@
+package com.carpenter.cross_jvm_reflection.server.index;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ClassSchema;
+
+import java.io.Closeable;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An index of the classes loaded by every class loader of the jvm, keyed by name and loader.
+ * <p>
+ * With an Instrumentation the index is seeded from getAllLoadedClasses() and kept current by a ClassFileTransformer that records the name and
+ * loader of every class that is defined afterwards. The transformer never changes the bytes and does no work beyond the record, the class is looked up
+ * through its loader the next time the index is read, by which point it has been defined. Without an Instrumentation only the classes that are
+ * added explicitly are indexed. At most {@link #MAX_PENDING} defined classes are recorded between reads, past that the records are dropped and the
+ * next read seeds the index from getAllLoadedClasses() again. The transformer is removed when the index is closed.
+ * <p>
+ * Classes and their loaders are held weakly so that the index never prevents a loader from being unloaded. Schemas are built once per class on demand.
+ */
+public class ClassIndex implements Closeable {
+    public static final String BOOTSTRAP_LOADER = "bootstrap";
+    public static final int MAX_PENDING = 1 << 16;
+
+    private static final Map<ClassLoader, String> LOADER_IDS = new WeakHashMap<>();
+    private static long next_loader_id;
+
+    private final Map<String, List<Entry>> classes = new ConcurrentHashMap<>();
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending_count = new AtomicInteger();
+    private final Instrumentation instrumentation;
+    private final ClassFileTransformer transformer;
+    private volatile boolean overflowed;
+
+    /**
+     * @param instrumentation The agent's instrumentation, may be null in which case only the classes passed to {@link #add(Class)} are indexed.
+     */
+    public ClassIndex(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        if (instrumentation != null) {
+            //Loaded up front, a class first loaded inside transform would be passed to the transformer while it is being loaded.
+            pending.add(new Pending(null, ""));
+            pending.clear();
+            this.transformer = new ClassFileTransformer() {
+                @Override
+                public byte[] transform(ClassLoader loader, String class_name, Class<?> class_being_redefined, ProtectionDomain protection_domain, byte[] class_bytes) {
+                    if (class_being_redefined == null && class_name != null && !overflowed) {
+                        if (pending_count.incrementAndGet() > MAX_PENDING) {
+                            overflowed = true;
+                        } else {
+                            pending.add(new Pending(loader, class_name));
+                        }
+                    }
+                    return null;
+                }
+            };
+            instrumentation.addTransformer(transformer, false);
+            seed();
+        } else {
+            this.transformer = null;
+        }
+    }
+
+    /**
+     * Gets the id of a class loader, a number in hexadecimal assigned the first time the loader is seen that no other loader of the jvm gets,
+     * or {@link #BOOTSTRAP_LOADER}.
+     */
+    public static String getLoaderId(ClassLoader loader) {
+        if (loader == null) {
+            return BOOTSTRAP_LOADER;
+        }
+        synchronized (LOADER_IDS) {
+            String id = LOADER_IDS.get(loader);
+            if (id == null) {
+                id = Long.toHexString(++next_loader_id);
+                LOADER_IDS.put(loader, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Stops recording the classes that are defined, the classes already indexed can still be found.
+     */
+    @Override
+    public void close() {
+        if (transformer != null) {
+            instrumentation.removeTransformer(transformer);
+        }
+    }
+
+    /**
+     * Indexes the class, arrays and primitives are ignored.
+     */
+    public void add(Class<?> type) {
+        if (type.isArray() || type.isPrimitive()) {
+            return;
+        }
+        List<Entry> entries = classes.computeIfAbsent(type.getName(), name -> new CopyOnWriteArrayList<>());
+        synchronized (entries) {
+            for (Entry entry : entries) {
+                if (entry.get() == type) {
+                    return;
+                }
+            }
+            entries.add(new Entry(type));
+        }
+    }
+
+    /**
+     * Gets the class with the name, the one defined by the given loader when several loaders define a class of that name.
+     *
+     * @return The class, or null if no class with the name is indexed or several are and none was defined by the loader.
+     */
+    public Class<?> find(String name, ClassLoader preferred) {
+        drain();
+        List<Entry> entries = classes.get(name);
+        if (entries == null) {
+            return null;
+        }
+        Class<?> found = null;
+        int live = 0;
+        for (Entry entry : entries) {
+            Class<?> type = entry.get();
+            if (type == null) {
+                entries.remove(entry);
+            } else if (type.getClassLoader() == preferred) {
+                return type;
+            } else {
+                found = type;
+                ++live;
+            }
+        }
+        return live == 1 ? found : null;
+    }
+
+    /**
+     * Gets the class with the name defined by the loader with the id.
+     *
+     * @return The class, or null if the loader didn't define a class with the name.
+     */
+    public Class<?> find(String name, String loader) {
+        drain();
+        List<Entry> entries = classes.get(name);
+        if (entries != null) {
+            for (Entry entry : entries) {
+                Class<?> type = entry.get();
+                if (type != null && getLoaderId(type.getClassLoader()).equals(loader)) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the schemas of the indexed classes whose names start with the prefix.
+     *
+     * @param prefix A prefix of the class names such as a package name, empty for every class.
+     */
+    public ClassSchema[] schema(String prefix) {
+        drain();
+        List<ClassSchema> schemas = new ArrayList<>();
+        for (Map.Entry<String, List<Entry>> named : classes.entrySet()) {
+            if (!named.getKey().startsWith(prefix)) {
+                continue;
+            }
+            for (Entry entry : named.getValue()) {
+                ClassSchema schema = entry.getSchema();
+                if (schema != null) {
+                    schemas.add(schema);
+                }
+            }
+        }
+        return schemas.toArray(new ClassSchema[0]);
+    }
+
+    /**
+     * Gets the number of classes that are indexed, including those that have been unloaded but not yet removed.
+     */
+    public int size() {
+        drain();
+        int size = 0;
+        for (List<Entry> entries : classes.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    /**
+     * Indexes the classes defined since the index was last read. Classes that can no longer be found, because their definition failed, their loader
+     * was collected or they are hidden classes, are dropped.
+     */
+    private void drain() {
+        if (overflowed) {
+            synchronized (pending) {
+                if (overflowed) {
+                    pending.clear();
+                    pending_count.set(0);
+                    overflowed = false;
+                    seed();
+                }
+            }
+        }
+        Pending next;
+        while ((next = pending.poll()) != null) {
+            pending_count.decrementAndGet();
+            ClassLoader loader = next.loader.get();
+            if (loader == null && !next.bootstrap) {
+                continue;
+            }
+            try {
+                add(Class.forName(next.name, false, loader));
+            } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+                //The class isn't reachable by name through the loader that defined it.
+            }
+        }
+    }
+
+    private void seed() {
+        for (Class<?> type : instrumentation.getAllLoadedClasses()) {
+            add(type);
+        }
+    }
+
+    private static final class Pending {
+        private final WeakReference<ClassLoader> loader;
+        private final boolean bootstrap;
+        private final String name;
+
+        private Pending(ClassLoader loader, String internal_name) {
+            this.loader = new WeakReference<>(loader);
+            this.bootstrap = loader == null;
+            this.name = internal_name.replace('/', '.');
+        }
+    }
+
+    private static final class Entry extends WeakReference<Class<?>> {
+        private volatile ClassSchema schema;
+
+        private Entry(Class<?> type) {
+            super(type);
+        }
+
+        /**
+         * Gets the schema of the class, null if it has been unloaded or its fields can't be resolved.
+         */
+        private ClassSchema getSchema() {
+            ClassSchema schema = this.schema;
+            Class<?> type = get();
+            if (schema == null && type != null) {
+                try {
+                    Field[] fields = type.getDeclaredFields();
+                    String[] names = new String[fields.length];
+                    String[] types = new String[fields.length];
+                    int[] modifiers = new int[fields.length];
+                    for (int field = 0; field < fields.length; ++field) {
+                        names[field] = fields[field].getName();
+                        types[field] = fields[field].getType().getName();
+                        modifiers[field] = fields[field].getModifiers();
+                    }
+                    Class<?> superclass = type.getSuperclass();
+                    String superclass_id = superclass == null ? null : superclass.getName() + '@' + getLoaderId(superclass.getClassLoader());
+                    schema = new ClassSchema(type.getName(), getLoaderId(type.getClassLoader()), superclass_id, names, types, modifiers);
+                    this.schema = schema;
+                } catch (LinkageError | RuntimeException e) {
+                    return null;
+                }
+            }
+            return schema;
+        }
+    }
+}
@@ -1,35 +1,170 @@
 package com.carpenter.cross_jvm_reflection.server.java_agent;
 
+import com.carpenter.cross_jvm_reflection.server.execution.ExecutionGate;
+import com.carpenter.cross_jvm_reflection.server.metrics.ServerMetricsBean;
 import com.carpenter.cross_jvm_reflection.server.rmi.impl.DefaultServerImpl;
+import com.carpenter.cross_jvm_reflection.server.shm.SharedMemoryPublisher;
+import com.carpenter.cross_jvm_reflection.server.transport.BinaryServer;
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.shm.SharedMemoryLayout;
+import com.carpenter.cross_jvm_reflection.shared.transport.BinaryProtocol;
 
+import javax.management.JMException;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
 import java.rmi.ConnectException;
-import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 
+/**
+ * Deploys the server. The args are a comma separated list of key=value pairs:
+ * <ul>
+ * <li>transport: rmi (the default), tcp, unix or none to only publish the shm_fields.</li>
+ * <li>name: the name to bind in the rmi registry, required by the rmi transport.</li>
+ * <li>host and port: the address the tcp transport binds, the host defaults to the loopback address and the port is required.</li>
+ * <li>path: the path of the socket file the unix transport binds, required by the unix transport.</li>
+ * <li>workers: the number of threads that serve requests of the tcp and unix transports, defaults to the number of processors.</li>
+ * <li>max_request: the maximum length in bytes of a request of the tcp and unix transports, defaults to 16 MiB. A connection that sends a
+ * longer request is closed.</li>
+ * <li>max_pending: the maximum number of requests of a connection of the tcp and unix transports that wait for a worker, defaults to 1024.
+ * The connection isn't read while it has that many, and requests that were already read past the limit are rejected.</li>
+ * <li>max_uids: the maximum number of uid's the server may register at once.</li>
+ * <li>shm_path: the path of a file to publish the shm_fields into, see {@link SharedMemoryPublisher}. It is published alongside any transport.</li>
+ * <li>shm_fields: the fields to publish separated by '|', each in the format "type@path expression" where the type is int8, int16, int32,
+ * int64, fp32, fp64, bool or uint16, for example "int64@pkg.Stats.count|fp64@pkg.Stats.instance -> pkg.Stats.rate".</li>
+ * <li>shm_refresh: the interval between samples of the shm_fields in microseconds, defaults to 1000.</li>
+ * <li>metrics: whether the latency of every call is measured, defaults to true. Cache and store metrics are always kept and registered as
+ * a platform MXBean named after the rmi name, or the transport and its address.</li>
+ * <li>max_concurrent, max_queued, max_wait and cpu: limits on the calls of clients, see {@link ExecutionGate}. Calls are only limited if one of
+ * them is given. At most max_concurrent calls run at once, defaulting to the number of processors. A client may have max_queued calls waiting,
+ * defaulting to 64, and a call waits at most max_wait milliseconds, defaulting to 1000. The calls may use cpu percent of one processor,
+ * defaulting to no limit.</li>
+ * </ul>
+ */
 public class JavaAgent {
-    public static void agentmain(String args, Instrumentation instrumentation) throws RemoteException {
+    public static void agentmain(String args, Instrumentation instrumentation) throws IOException {
+        String transport = "rmi";
         String name = null;
+        String host = "127.0.0.1";
+        int port = -1;
+        String path = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int max_request = BinaryProtocol.DEFAULT_MAX_REQUEST_LENGTH;
+        int max_pending = BinaryServer.DEFAULT_MAX_PENDING;
+        int max_uids = Integer.MAX_VALUE - 1;
+        String shm_path = null;
+        String shm_fields = null;
+        long shm_refresh = 1000;
+        boolean metrics = true;
+        boolean limited = false;
+        int max_concurrent = Runtime.getRuntime().availableProcessors();
+        int max_queued = 64;
+        long max_wait = 1000;
+        int cpu = 0;
         for (String arg : args.split(",")) {
-            if (arg.startsWith("name=")) {
+            if (arg.startsWith("transport=")) {
+                transport = arg.replace("transport=", "");
+            } else if (arg.startsWith("name=")) {
                 name = arg.replace("name=", "");
+            } else if (arg.startsWith("host=")) {
+                host = arg.replace("host=", "");
+            } else if (arg.startsWith("port=")) {
+                port = Integer.parseInt(arg.replace("port=", ""));
+            } else if (arg.startsWith("path=")) {
+                path = arg.replace("path=", "");
+            } else if (arg.startsWith("workers=")) {
+                workers = Integer.parseInt(arg.replace("workers=", ""));
+            } else if (arg.startsWith("max_request=")) {
+                max_request = Integer.parseInt(arg.replace("max_request=", ""));
+            } else if (arg.startsWith("max_pending=")) {
+                max_pending = Integer.parseInt(arg.replace("max_pending=", ""));
+            } else if (arg.startsWith("max_uids=")) {
+                max_uids = Integer.parseInt(arg.replace("max_uids=", ""));
+            } else if (arg.startsWith("shm_path=")) {
+                shm_path = arg.replace("shm_path=", "");
+            } else if (arg.startsWith("shm_fields=")) {
+                shm_fields = arg.replace("shm_fields=", "");
+            } else if (arg.startsWith("shm_refresh=")) {
+                shm_refresh = Long.parseLong(arg.replace("shm_refresh=", ""));
+            } else if (arg.startsWith("metrics=")) {
+                metrics = Boolean.parseBoolean(arg.replace("metrics=", ""));
+            } else if (arg.startsWith("max_concurrent=")) {
+                max_concurrent = Integer.parseInt(arg.replace("max_concurrent=", ""));
+                limited = true;
+            } else if (arg.startsWith("max_queued=")) {
+                max_queued = Integer.parseInt(arg.replace("max_queued=", ""));
+                limited = true;
+            } else if (arg.startsWith("max_wait=")) {
+                max_wait = Long.parseLong(arg.replace("max_wait=", ""));
+                limited = true;
+            } else if (arg.startsWith("cpu=")) {
+                cpu = Integer.parseInt(arg.replace("cpu=", ""));
+                limited = true;
             }
         }
-        if (name == null) {
-            throw new IllegalArgumentException("The name to use for the rmi server was not provided as an argument to the java agent.");
+        boolean rmi = transport.equals("rmi");
+        //Only the stub bound to the registry is exported, the server isn't when it is wrapped by the metrics or the limits.
+        DefaultServerImpl server = new DefaultServerImpl(ClassLoader.getSystemClassLoader(), max_uids, instrumentation, rmi && !metrics && !limited);
+        ServerStub exposed = metrics && !transport.equals("none") ? server.getMetrics().meter(server, rmi && !limited) : server;
+        if (limited && !transport.equals("none")) {
+            exposed = new ExecutionGate(max_concurrent, max_queued, max_wait, cpu).limit(exposed, rmi);
         }
-        Registry registry = LocateRegistry.getRegistry();
-        if (registry != null) {
-            DefaultServerImpl rmi = new DefaultServerImpl(ClassLoader.getSystemClassLoader());
-            try {
-                //Attempt to bind to the registry stub that was returned.
-                registry.rebind(name, rmi);
-            } catch (ConnectException ce) {
-                //Couldn't bind to it (perhaps it doesn't exist), creating a new one.
-                registry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
-                registry.rebind(name, rmi);
+        switch (transport) {
+            case "rmi":
+                if (name == null) {
+                    throw new IllegalArgumentException("The name to use for the rmi server was not provided as an argument to the java agent.");
+                }
+                Registry registry = LocateRegistry.getRegistry();
+                if (registry != null) {
+                    try {
+                        //Attempt to bind to the registry stub that was returned.
+                        registry.rebind(name, exposed);
+                    } catch (ConnectException ce) {
+                        //Couldn't bind to it (perhaps it doesn't exist), creating a new one.
+                        registry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+                        registry.rebind(name, exposed);
+                    }
+                }
+                break;
+            case "tcp":
+                if (port < 0) {
+                    throw new IllegalArgumentException("The port to use for the tcp server was not provided as an argument to the java agent.");
+                }
+                BinaryServer.tcp(exposed, host, port, workers, max_request, max_pending);
+                break;
+            case "unix":
+                if (path == null) {
+                    throw new IllegalArgumentException("The path to use for the unix server was not provided as an argument to the java agent.");
+                }
+                BinaryServer.unix(exposed, path, workers, max_request, max_pending);
+                break;
+            case "none":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transport " + transport + ", expected rmi, tcp, unix or none.");
+        }
+        try {
+            ServerMetricsBean.register(server, name != null ? name : transport + (port >= 0 ? ":" + port : path != null ? ":" + path : ""));
+        } catch (JMException jme) {
+            throw new IOException("Failed to register the metrics of the server.", jme);
+        }
+        if (shm_path != null) {
+            if (shm_fields == null) {
+                throw new IllegalArgumentException("The fields to publish into " + shm_path + " were not provided as an argument to the java agent.");
+            }
+            String[] specs = shm_fields.split("\\|");
+            PathExpression[] paths = new PathExpression[specs.length];
+            byte[] types = new byte[specs.length];
+            for (int index = 0; index < specs.length; ++index) {
+                int separator = specs[index].indexOf('@');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Malformed shared memory field " + specs[index] + ", expected the format type@path.");
+                }
+                types[index] = SharedMemoryLayout.getType(specs[index].substring(0, separator).trim());
+                paths[index] = PathExpression.compile(specs[index].substring(separator + 1));
             }
+            server.closeWith(new SharedMemoryPublisher(server, shm_path, paths, types, shm_refresh));
         }
     }
 }
@@ -0,0 +1,44 @@
+package com.carpenter.cross_jvm_reflection.server.metrics;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.MethodStatistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed bucket latency histogram of a single method, see {@link MethodStatistics} for the buckets.
+ * Recording a call is a few LongAdder increments and never allocates.
+ */
+final class LatencyHistogram {
+    private final String method;
+    private final LongAdder[] buckets = new LongAdder[MethodStatistics.BUCKETS];
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder total_nanos = new LongAdder();
+
+    LatencyHistogram(String method) {
+        this.method = method;
+        for (int bucket = 0; bucket < buckets.length; ++bucket) {
+            buckets[bucket] = new LongAdder();
+        }
+    }
+
+    void record(long nanos, boolean failed) {
+        buckets[MethodStatistics.getBucket(nanos)].increment();
+        total_nanos.add(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the histogram, the count is the sum of the buckets so that it agrees with them when calls are recorded concurrently.
+     */
+    MethodStatistics snapshot() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int bucket = 0; bucket < buckets.length; ++bucket) {
+            counts[bucket] = buckets[bucket].sum();
+            count += counts[bucket];
+        }
+        return new MethodStatistics(method, count, errors.sum(), total_nanos.sum(), counts);
+    }
+}
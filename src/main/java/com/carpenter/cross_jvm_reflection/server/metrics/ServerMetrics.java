@@ -0,0 +1,127 @@
+package com.carpenter.cross_jvm_reflection.server.metrics;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.MethodStatistics;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics of a server: a latency histogram for each ServerStub method and the hit counters of its caches.
+ * Methods are measured by a metered stub (see {@link #meter(ServerStub, boolean)}) that the transports expose instead of the server itself,
+ * so that calls the server makes internally, such as subscription samples, aren't counted.
+ */
+public class ServerMetrics {
+    private final Map<Method, LatencyHistogram> methods = new ConcurrentHashMap<>();
+    private final CacheCounter class_cache = new CacheCounter();
+    private final CacheCounter class_name_cache = new CacheCounter();
+    private final CacheCounter handle_cache = new CacheCounter();
+
+    public CacheCounter getClassCache() {
+        return class_cache;
+    }
+
+    public CacheCounter getClassNameCache() {
+        return class_name_cache;
+    }
+
+    public CacheCounter getHandleCache() {
+        return handle_cache;
+    }
+
+    /**
+     * Gets the statistics of each method that has been called, sorted by method.
+     */
+    public MethodStatistics[] getMethodStatistics() {
+        MethodStatistics[] statistics = methods.values().stream().map(LatencyHistogram::snapshot).toArray(MethodStatistics[]::new);
+        Arrays.sort(statistics, Comparator.comparing(MethodStatistics::getMethod));
+        return statistics;
+    }
+
+    /**
+     * Wraps the stub in a stub that records the latency of every call, sessions opened through it are metered as well.
+     *
+     * @param export Whether the stub is served over rmi, in which case the metered stub and its sessions are exported and sessions are unexported when released.
+     */
+    public ServerStub meter(ServerStub stub, boolean export) throws RemoteException {
+        ServerStub metered = (ServerStub) Proxy.newProxyInstance(ServerStub.class.getClassLoader(), new Class<?>[]{ServerStub.class}, new Meter(stub, export));
+        if (export) {
+            UnicastRemoteObject.exportObject(metered, 0);
+        }
+        return metered;
+    }
+
+    private void record(Method method, long nanos, boolean failed) {
+        LatencyHistogram histogram = methods.get(method);
+        if (histogram == null) {
+            histogram = methods.computeIfAbsent(method, key -> new LatencyHistogram(getName(key)));
+        }
+        histogram.record(nanos, failed);
+    }
+
+    private static String getName(Method method) {
+        StringBuilder builder = new StringBuilder(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int index = 0; index < types.length; ++index) {
+            if (index > 0) {
+                builder.append(", ");
+            }
+            builder.append(types[index].getSimpleName());
+        }
+        return builder.append(')').toString();
+    }
+
+    private final class Meter implements InvocationHandler {
+        private final ServerStub stub;
+        private final boolean export;
+
+        private Meter(ServerStub stub, boolean export) {
+            this.stub = stub;
+            this.export = export;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "ServerMetrics.Meter{" + stub + "}";
+                }
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = method.invoke(stub, arguments);
+                failed = false;
+                if (result instanceof ServerStub) {
+                    return meter((ServerStub) result, export);
+                }
+                if (export && method.getName().equals("release") && method.getParameterCount() == 0) {
+                    try {
+                        UnicastRemoteObject.unexportObject((ServerStub) proxy, true);
+                    } catch (NoSuchObjectException ignored) {
+                        //The root stub, or a session that was already released.
+                    }
+                }
+                return result;
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            } finally {
+                record(method, System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
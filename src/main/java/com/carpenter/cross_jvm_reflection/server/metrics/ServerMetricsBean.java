@@ -0,0 +1,112 @@
+package com.carpenter.cross_jvm_reflection.server.metrics;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.MethodStatistics;
+import com.carpenter.cross_jvm_reflection.shared.rmi.MetricsSnapshot;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the metrics of a server through the platform MBean server.
+ * Taking a snapshot scans the object store, so the attributes read within {@link #SNAPSHOT_MILLIS} of each other, such as those of one poll
+ * of a monitoring tool, share a snapshot.
+ */
+public class ServerMetricsBean implements ServerMetricsMXBean {
+    public static final long SNAPSHOT_MILLIS = 1000;
+
+    private final ServerStub server;
+    private MetricsSnapshot snapshot;
+    private long taken;
+
+    public ServerMetricsBean(ServerStub server) {
+        this.server = server;
+    }
+
+    /**
+     * Registers a bean for the server with the platform MBean server, replacing a bean previously registered under the same name.
+     *
+     * @param name The value of the name key of the ObjectName, for example the name the server is bound to.
+     */
+    public static ObjectName register(ServerStub server, String name) throws JMException {
+        ObjectName object_name = new ObjectName("com.carpenter.cross_jvm_reflection:type=ServerMetrics,name=" + ObjectName.quote(name));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetricsBean(server), object_name);
+        } catch (InstanceAlreadyExistsException iaee) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(object_name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetricsBean(server), object_name);
+        }
+        return object_name;
+    }
+
+    @Override
+    public synchronized MetricsSnapshot getSnapshot() {
+        long now = System.nanoTime();
+        if (snapshot == null || now - taken >= TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_MILLIS)) {
+            try {
+                snapshot = server.metrics();
+            } catch (RemoteException re) {
+                throw new IllegalStateException("Failed to take a snapshot of the metrics.", re);
+            }
+            taken = now;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public long getCalls() {
+        long calls = 0;
+        for (MethodStatistics method : getSnapshot().getMethods()) {
+            calls += method.getCount();
+        }
+        return calls;
+    }
+
+    @Override
+    public long getErrors() {
+        long errors = 0;
+        for (MethodStatistics method : getSnapshot().getMethods()) {
+            errors += method.getErrors();
+        }
+        return errors;
+    }
+
+    @Override
+    public int getStoreLive() {
+        return getSnapshot().getStore().getLive();
+    }
+
+    @Override
+    public int getStoreDead() {
+        return getSnapshot().getDead();
+    }
+
+    @Override
+    public int getSessions() {
+        return getSnapshot().getStore().getSessions();
+    }
+
+    @Override
+    public long getBaselineBytes() {
+        return getSnapshot().getBaselineBytes();
+    }
+
+    @Override
+    public double getClassCacheHitRate() {
+        return getSnapshot().getClassCacheHitRate();
+    }
+
+    @Override
+    public double getClassNameCacheHitRate() {
+        return getSnapshot().getClassNameCacheHitRate();
+    }
+
+    @Override
+    public double getHandleCacheHitRate() {
+        return getSnapshot().getHandleCacheHitRate();
+    }
+}
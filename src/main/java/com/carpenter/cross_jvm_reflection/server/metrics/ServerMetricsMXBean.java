@@ -0,0 +1,30 @@
+package com.carpenter.cross_jvm_reflection.server.metrics;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.MetricsSnapshot;
+
+/**
+ * The metrics of a server as a platform MXBean, registered by the agent under the domain com.carpenter.cross_jvm_reflection.
+ * The attributes are read from one snapshot shared for {@link ServerMetricsBean#SNAPSHOT_MILLIS} (one second), so the attributes read by one
+ * poll are consistent and a poll scans the object store once. The snapshot attribute holds all of them at once.
+ */
+public interface ServerMetricsMXBean {
+    MetricsSnapshot getSnapshot();
+
+    long getCalls();
+
+    long getErrors();
+
+    int getStoreLive();
+
+    int getStoreDead();
+
+    int getSessions();
+
+    long getBaselineBytes();
+
+    double getClassCacheHitRate();
+
+    double getClassNameCacheHitRate();
+
+    double getHandleCacheHitRate();
+}
@@ -0,0 +1,150 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A path whose hops have been composed into a single MethodHandle.
+ * The handle has the type ()R for a path that starts at a static field and (Object)R for a path that starts at an owner.
+ * A null intermediate value short circuits the remaining hops to the same value the unchecked reads use for an unresolvable value.
+ * Type exact variants of the handle are created once per return type so that reads can use invokeExact without boxing.
+ */
+public class AccessorPlan {
+    private static final MethodHandle INDEX;
+    private static final MethodHandle KEY;
+    private static final MethodHandle IS_NULL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            INDEX = lookup.findStatic(AccessorPlan.class, "index", MethodType.methodType(Object.class, Object.class, int.class));
+            KEY = lookup.findStatic(AccessorPlan.class, "key", MethodType.methodType(Object.class, Object.class, Object.class));
+            IS_NULL = lookup.findStatic(AccessorPlan.class, "isNull", MethodType.methodType(boolean.class, Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final PathExpression path;
+    private final MethodHandle handle;
+    private final Map<Class<?>, MethodHandle> typed_handles = new ConcurrentHashMap<>();
+
+    AccessorPlan(PathExpression path, MethodHandle handle) {
+        this.path = path;
+        this.handle = handle;
+    }
+
+    public PathExpression getPath() {
+        return path;
+    }
+
+    /**
+     * Whether the plan takes the owner the path starts at as its only argument.
+     */
+    public boolean isOwned() {
+        return handle.type().parameterCount() == 1;
+    }
+
+    /**
+     * Gets the composed handle, either ()R or (Object)R.
+     */
+    public MethodHandle getHandle() {
+        return handle;
+    }
+
+    /**
+     * Gets the composed handle adapted to return the given type, the result is cached.
+     *
+     * @throws java.lang.invoke.WrongMethodTypeException if the terminal value can't be converted to the type.
+     */
+    public MethodHandle getHandle(Class<?> type) {
+        MethodHandle typed = typed_handles.get(type);
+        if (typed == null) {
+            typed = handle.asType(handle.type().changeReturnType(type));
+            typed_handles.put(type, typed);
+        }
+        return typed;
+    }
+
+    /**
+     * Composes a hop onto the handle of the previous hops.
+     *
+     * @param previous The handle of the previous hops, its return type must be a reference type.
+     * @param hop A handle with a single parameter that receives the value of the previous hops.
+     */
+    static MethodHandle compose(MethodHandle previous, MethodHandle hop) {
+        Class<?> input = previous.type().returnType();
+        hop = hop.asType(hop.type().changeParameterType(0, input));
+        Class<?> output = hop.type().returnType();
+        MethodHandle fallback = MethodHandles.dropArguments(MethodHandles.constant(output, unresolvable(output)), 0, input);
+        hop = MethodHandles.guardWithTest(IS_NULL.asType(MethodType.methodType(boolean.class, input)), fallback, hop);
+        return MethodHandles.filterReturnValue(previous, hop);
+    }
+
+    /**
+     * Gets a handle for an index hop, (Object)Object or (T[])T if the static type of the previous hops is an array.
+     * The array variant throws an ArrayIndexOutOfBoundsException for an index outside of the array.
+     */
+    static MethodHandle index(Class<?> input, int index) {
+        if (input.isArray()) {
+            return MethodHandles.insertArguments(MethodHandles.arrayElementGetter(input), 1, index);
+        }
+        return MethodHandles.insertArguments(INDEX, 1, index);
+    }
+
+    /**
+     * Gets a handle for a map key hop, (Object)Object.
+     */
+    static MethodHandle key(Object key) {
+        return MethodHandles.insertArguments(KEY, 1, key);
+    }
+
+    /**
+     * Gets the value the unchecked reads use for a value that can't be resolved.
+     */
+    static Object unresolvable(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return (char) -1;
+        } else if (type == byte.class) {
+            return (byte) -1;
+        } else if (type == short.class) {
+            return (short) -1;
+        } else if (type == int.class) {
+            return -1;
+        } else if (type == long.class) {
+            return -1L;
+        } else if (type == float.class) {
+            return -1F;
+        }
+        return -1D;
+    }
+
+    private static Object index(Object object, int index) {
+        if (object instanceof List) {
+            List<?> list = (List<?>) object;
+            return index >= 0 && index < list.size() ? list.get(index) : null;
+        } else if (object.getClass().isArray()) {
+            return index >= 0 && index < Array.getLength(object) ? Array.get(object, index) : null;
+        }
+        return null;
+    }
+
+    private static Object key(Object object, Object key) {
+        return object instanceof Map ? ((Map<?, ?>) object).get(key) : null;
+    }
+
+    private static boolean isNull(Object object) {
+        return object == null;
+    }
+}
@@ -0,0 +1,248 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry;
+
+import java.lang.reflect.Array;
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes a 64 bit structural hash of the contents of an object, for detecting whether a graph changed without transferring it.
+ * The hash isn't cryptographic and equal hashes only make it very likely that the contents are equal.
+ * <p>
+ * Primitive values, Strings, boxes and enums are hashed by value. Primitive arrays are hashed in chunks of {@link #CHUNK} elements, the chunks
+ * of arrays with more than one are hashed in parallel on a ForkJoin pool and combined in order, so the hash doesn't depend on the parallelism.
+ * Object arrays, collections and maps are hashed by their elements in iteration order, and other objects by their class and the values of their
+ * instance fields, read through {@link SnapshotWalk#readFields(Object)}. Objects past the depth limit and objects whose fields can't be read
+ * contribute only their class, an object reached again contributes the order it was first reached in. The depth limit is at most
+ * {@link CodecRegistry#MAX_DEPTH} so that hashing a deep graph can't overflow the stack.
+ * <p>
+ * Like a snapshot, the hash doesn't stop the threads that mutate the graph.
+ */
+final class ContentHash {
+    static final int CHUNK = 1 << 16;
+
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+    private static final long NULL = 1;
+    private static final long BACK_REFERENCE = 2;
+    private static final long TRUNCATED = 3;
+    private static final long ELEMENTS = 4;
+    private static final long MAP = 5;
+    private static final long OBJECT = 6;
+    private static final long STRING = 7;
+
+    private final ForkJoinPool pool;
+    private final int max_depth;
+    private final Map<Object, Integer> visited = new IdentityHashMap<>();
+
+    /**
+     * @param pool The pool the chunks of large primitive arrays are hashed on.
+     * @param max_depth The number of levels of the graph whose contents are hashed, the root being the first level, clamped to
+     *                  {@link CodecRegistry#MAX_DEPTH}.
+     */
+    ContentHash(ForkJoinPool pool, int max_depth) {
+        this.pool = pool;
+        this.max_depth = Math.min(max_depth, CodecRegistry.MAX_DEPTH);
+    }
+
+    /**
+     * Hashes the object, 0 for null.
+     */
+    long hash(Object root) throws RemoteException {
+        return root == null ? 0 : finish(hash(0, root, 1));
+    }
+
+    private long hash(long hash, Object value, int depth) throws RemoteException {
+        if (value == null) {
+            return mix(hash, NULL);
+        }
+        Class<?> type = value.getClass();
+        if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            return mix(mix(hash, type.getName().hashCode()), ((Number) value).longValue());
+        } else if (type == Double.class) {
+            return mix(mix(hash, type.getName().hashCode()), Double.doubleToLongBits((Double) value));
+        } else if (type == Float.class) {
+            return mix(mix(hash, type.getName().hashCode()), Float.floatToIntBits((Float) value));
+        } else if (type == Boolean.class) {
+            return mix(mix(hash, type.getName().hashCode()), (Boolean) value ? 1 : 0);
+        } else if (type == Character.class) {
+            return mix(mix(hash, type.getName().hashCode()), (Character) value);
+        } else if (type == String.class) {
+            return hashString(mix(hash, STRING), (String) value);
+        } else if (value instanceof Enum) {
+            return hashString(mix(hash, type.getName().hashCode()), ((Enum<?>) value).name());
+        } else if (type.isArray() && type.getComponentType().isPrimitive()) {
+            return mix(hash, hashArray(value));
+        }
+        Integer reached = visited.get(value);
+        if (reached != null) {
+            return mix(mix(hash, BACK_REFERENCE), reached);
+        }
+        hash = mix(hash, type.getName().hashCode());
+        if (depth > max_depth) {
+            return mix(hash, TRUNCATED);
+        }
+        visited.put(value, visited.size());
+        if (value instanceof Object[] || value instanceof Collection) {
+            Object[] elements;
+            try {
+                elements = value instanceof Object[] ? (Object[]) value : ((Collection<?>) value).toArray();
+            } catch (RuntimeException e) {
+                //Modified concurrently, hashed like an object whose fields can't be read.
+                return mix(hash, TRUNCATED);
+            }
+            hash = mix(mix(hash, ELEMENTS), elements.length);
+            for (Object element : elements) {
+                hash = hash(hash, element, depth + 1);
+            }
+            return hash;
+        } else if (value instanceof Map) {
+            Object[] entries;
+            try {
+                entries = ((Map<?, ?>) value).entrySet().toArray();
+            } catch (RuntimeException e) {
+                return mix(hash, TRUNCATED);
+            }
+            hash = mix(mix(hash, MAP), entries.length);
+            for (Object entry : entries) {
+                hash = hash(hash, ((Map.Entry<?, ?>) entry).getKey(), depth + 1);
+                hash = hash(hash, ((Map.Entry<?, ?>) entry).getValue(), depth + 1);
+            }
+            return hash;
+        }
+        Object[] fields = SnapshotWalk.readFields(value);
+        if (fields == null) {
+            //Numbers of modules that aren't open to the agent, such as atomics, are still hashed by their value.
+            return value instanceof Number ? hashString(mix(hash, TRUNCATED), value.toString()) : mix(hash, TRUNCATED);
+        }
+        hash = mix(hash, OBJECT);
+        for (Object field : fields) {
+            hash = hash(hash, field, depth + 1);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the length of the array and the hashes of its chunks in order.
+     */
+    private long hashArray(Object array) {
+        int length = Array.getLength(array);
+        int chunks = (length + CHUNK - 1) / CHUNK;
+        long hash = mix(array.getClass().getName().hashCode(), length);
+        if (chunks <= 1) {
+            return mix(hash, hashRange(array, 0, length));
+        }
+        long[] hashes = new long[chunks];
+        pool.invoke(new ChunkTask(array, hashes, 0, chunks));
+        for (long chunk : hashes) {
+            hash = mix(hash, chunk);
+        }
+        return hash;
+    }
+
+    private static long hashRange(Object array, int from, int to) {
+        long hash = from;
+        if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, values[index]);
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, values[index]);
+            }
+        } else if (array instanceof double[]) {
+            double[] values = (double[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, Double.doubleToLongBits(values[index]));
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, Float.floatToIntBits(values[index]));
+            }
+        } else if (array instanceof byte[]) {
+            byte[] values = (byte[]) array;
+            int index = from;
+            for (; index + 8 <= to; index += 8) {
+                hash = mix(hash, (values[index] & 0xFFL) | (values[index + 1] & 0xFFL) << 8 | (values[index + 2] & 0xFFL) << 16 | (values[index + 3] & 0xFFL) << 24
+                        | (values[index + 4] & 0xFFL) << 32 | (values[index + 5] & 0xFFL) << 40 | (values[index + 6] & 0xFFL) << 48 | (values[index + 7] & 0xFFL) << 56);
+            }
+            for (; index < to; ++index) {
+                hash = mix(hash, values[index]);
+            }
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, values[index]);
+            }
+        } else if (array instanceof char[]) {
+            char[] values = (char[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, values[index]);
+            }
+        } else {
+            boolean[] values = (boolean[]) array;
+            for (int index = from; index < to; ++index) {
+                hash = mix(hash, values[index] ? 1 : 0);
+            }
+        }
+        return finish(hash);
+    }
+
+    private static long hashString(long hash, String value) {
+        hash = mix(hash, value.length());
+        for (int index = 0; index < value.length(); ++index) {
+            hash = mix(hash, value.charAt(index));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft(hash ^ Long.rotateLeft(value * C1, 31) * C2, 27) * 5 + 0x52DCE729;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ hash >>> 33;
+    }
+
+    /**
+     * Hashes a range of the chunks of an array, splitting it until it is a single chunk.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Object array;
+        private final long[] hashes;
+        private final int from;
+        private final int to;
+
+        private ChunkTask(Object array, long[] hashes, int from, int to) {
+            this.array = array;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(array, hashes, from, middle), new ChunkTask(array, hashes, middle, to));
+                return;
+            }
+            int length = Array.getLength(array);
+            hashes[from] = hashRange(array, from * CHUNK, Math.min(length, (from + 1) * CHUNK));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A position in an Iterable, a Map or an array on the server, advanced a page at a time by the cursor methods of the server.
+ * Map cursors iterate the entries of the map. The iterator of the source is used as is, so a cursor over a collection that isn't concurrent
+ * fails with a ConcurrentModificationException if the collection is modified between pages.
+ */
+public class Cursor {
+    private final long id;
+    private final long owner_uid;
+    private final HandleSession session;
+    private final boolean entries;
+    private final Iterator<?> iterator;
+    private volatile long last_access;
+
+    /**
+     * @param source An object for which {@link #supports(Object)} is true.
+     * @param session The session the cursor was opened by, null for the root stub.
+     */
+    public Cursor(long id, long owner_uid, HandleSession session, Object source) {
+        this.id = id;
+        this.owner_uid = owner_uid;
+        this.session = session;
+        this.entries = source instanceof Map;
+        if (source instanceof Map) {
+            this.iterator = ((Map<?, ?>) source).entrySet().iterator();
+        } else if (source instanceof Iterable) {
+            this.iterator = ((Iterable<?>) source).iterator();
+        } else {
+            this.iterator = new ArrayIterator(source);
+        }
+        touch();
+    }
+
+    /**
+     * Gets whether a cursor can be opened on the object.
+     */
+    public static boolean supports(Object source) {
+        return source instanceof Map || source instanceof Iterable || (source != null && source.getClass().isArray());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the uid of the source, the uid's of the elements are registered as its children.
+     */
+    public long getOwnerUID() {
+        return owner_uid;
+    }
+
+    public HandleSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets whether the elements are map entries, each of which is returned as its key followed by its value.
+     */
+    public boolean isEntries() {
+        return entries;
+    }
+
+    boolean hasNext() {
+        return iterator.hasNext();
+    }
+
+    Object next() {
+        return iterator.next();
+    }
+
+    void touch() {
+        last_access = System.currentTimeMillis();
+    }
+
+    boolean isIdle(long now_millis, long idle_millis) {
+        return now_millis - last_access > idle_millis;
+    }
+
+    private static final class ArrayIterator implements Iterator<Object> {
+        private final Object array;
+        private final int length;
+        private int index;
+
+        private ArrayIterator(Object array) {
+            this.array = array;
+            this.length = Array.getLength(array);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < length;
+        }
+
+        @Override
+        public Object next() {
+            if (index >= length) {
+                throw new NoSuchElementException();
+            }
+            return array instanceof Object[] ? ((Object[]) array)[index++] : Array.get(array, index++);
+        }
+    }
+}
@@ -1,56 +1,375 @@
 package com.carpenter.cross_jvm_reflection.server.rmi.impl;
 
+import com.carpenter.cross_jvm_reflection.server.bytecode.AccessorGenerator;
+import com.carpenter.cross_jvm_reflection.server.bytecode.FieldEventRing;
+import com.carpenter.cross_jvm_reflection.server.bytecode.FieldWatcher;
+import com.carpenter.cross_jvm_reflection.server.index.ClassIndex;
+import com.carpenter.cross_jvm_reflection.server.metrics.ServerMetrics;
+import com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry;
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.query.Query;
+import com.carpenter.cross_jvm_reflection.shared.query.QueryResult;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ClassSchema;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Delta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.FieldEvents;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Invocations;
+import com.carpenter.cross_jvm_reflection.shared.rmi.MetricsSnapshot;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Resolutions;
 import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.rmi.Snapshot;
+import com.carpenter.cross_jvm_reflection.shared.rmi.StoreStatistics;
+import com.carpenter.cross_jvm_reflection.shared.rmi.TimeSeries;
+import com.carpenter.cross_jvm_reflection.shared.rmi.UidArgument;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchDelta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchListener;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.instrument.Instrumentation;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
-import java.lang.ref.WeakReference;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * The default server implementation.
- * The upper 32 bits of a uid corresponds to the owner and the lower 32 bits correspond to the child.
+ * Uid's are handles into a {@link HandleTable}, the upper 32 bits are a generation and the lower 32 bits are a slot index.
  * Uid's are weakly linked to their objects to allow the remote jvm to garbage collect normally.
  * Resolved classes and method handles are stored in concurrent hash maps are are NOT held with weak references.
- * Classes are resolved via the provided class loader and initialize is set to false in the Class resolution.
+ * Compiled plans are stored in a list indexed by their id and are never released.
+ * Fields marked as hot are read through generated accessor classes instead of reflective method handles when class definition is permitted.
+ * Classes are looked up in a {@link ClassIndex} of every loaded class first, falling back to resolution via the provided class loader with initialize set to false.
+ * A class of a particular loader is named "classname@loader", see {@link ClassSchema#getId()}.
+ * Session stubs share all of the state of the server they were opened from, only the uid's they register are held on behalf of the session
+ * and the baselines of delta reads are kept per stub, within a budget of bytes shared by the server and its sessions.
+ * Sessions are handed out as proxies that renew the lease of the session on every call, collected objects and expired sessions are reclaimed by a daemon thread.
+ * Subscriptions are sampled on a pool of daemon threads shared by the server and its sessions, recorded series on a single daemon thread, queries over large collections are split across a
+ * ForkJoin pool that is shared in the same way, as are the chunks of large arrays whose contents are hashed.
+ * Cache hits and misses are always counted, the latency of calls is only measured when the server is exposed through {@link ServerMetrics#meter(ServerStub, boolean)}.
+ * The server and its sessions are only exported over rmi when it is created to be, a server that is wrapped or served over another transport isn't.
+ * The threads and pools are stopped when the server is closed.
  */
-public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub {
+public class DefaultServerImpl implements ServerStub, Closeable {
+    private static final long RECLAIM_INTERVAL_MILLIS = 1000;
+    private static final long CURSOR_IDLE_MILLIS = 5 * 60 * 1000;
+    private static final long MIN_SERIES_PERIOD_NANOS = 1000;
+    private static final int MAX_SERIES_CAPACITY = 1 << 22;
+    /**
+     * The owner that the plans of paths starting at an owner are keyed by, a plan is read with its owner so the same hops share a plan.
+     */
+    private static final long PLAN_OWNER = -1;
+    private static final MethodHandle RESOLVE_ARGUMENT;
+
+    static {
+        try {
+            RESOLVE_ARGUMENT = MethodHandles.lookup().findStatic(DefaultServerImpl.class, "resolveArgument", MethodType.methodType(Object.class, HandleTable.class, Object.class));
+        } catch (ReflectiveOperationException roe) {
+            throw new ExceptionInInitializerError(roe);
+        }
+    }
+
     private final ClassLoader class_loader;
-    private Map<String, Class<?>> class_cache = new ConcurrentHashMap<>();
-    private Map<Class<?>, String> class_name_cache = new ConcurrentHashMap<>();
-    private Map<String, MethodHandle> cached_handles = new ConcurrentHashMap<>();
-    private Map<Long, WeakReference<Object>> object_store = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> class_cache;
+    private final Map<Class<?>, String> class_name_cache;
+    private final Map<String, MethodHandle> cached_handles;
+    private final List<AccessorPlan> plans;
+    private final Map<PathExpression, Long> plan_ids;
+    private final Set<String> hot_fields;
+    private final AccessorGenerator accessor_generator;
+    private final ClassIndex class_index;
+    private final HandleTable object_store;
+    private final Map<Long, DefaultServerImpl> sessions;
+    private final AtomicLong session_ids;
+    private final HandleSession session;
+    private final ScheduledThreadPoolExecutor watch_scheduler;
+    private final ExecutorService deliveries;
+    private final Map<Long, WatchSubscription> subscriptions;
+    private final AtomicLong subscription_ids;
+    private final ServerMetrics metrics;
+    private final Map<Long, Cursor> cursors;
+    private final AtomicLong cursor_ids;
+    private final ForkJoinPool query_pool;
+    private final CodecRegistry codecs;
+    private final DeltaBaselines baselines;
+    private final FieldWatcher field_watcher;
+    private final SeriesSampler sampler;
+    private final boolean exported;
+    private final ServerStub remote;
+    private final Thread reclaimer;
+    private final List<Closeable> resources;
 
     public DefaultServerImpl(ClassLoader class_loader) throws RemoteException {
+        this(class_loader, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * @param max_uids The maximum number of uid's that may be registered at once, bounding the memory used by the object store.
+     */
+    public DefaultServerImpl(ClassLoader class_loader, int max_uids) throws RemoteException {
+        this(class_loader, max_uids, null);
+    }
+
+    /**
+     * @param max_uids The maximum number of uid's that may be registered at once, bounding the memory used by the object store.
+     * @param instrumentation The instrumentation of the agent that deployed the server, null if it wasn't deployed by an agent.
+     */
+    public DefaultServerImpl(ClassLoader class_loader, int max_uids, Instrumentation instrumentation) throws RemoteException {
+        this(class_loader, max_uids, instrumentation, true);
+    }
+
+    /**
+     * @param max_uids The maximum number of uid's that may be registered at once, bounding the memory used by the object store.
+     * @param instrumentation The instrumentation of the agent that deployed the server, null if it wasn't deployed by an agent.
+     * @param export Whether the server and its sessions are exported over rmi, only needed when the server itself is bound to a registry.
+     */
+    public DefaultServerImpl(ClassLoader class_loader, int max_uids, Instrumentation instrumentation, boolean export) throws RemoteException {
         this.class_loader = class_loader;
+        this.class_cache = new ConcurrentHashMap<>();
+        this.class_name_cache = new ConcurrentHashMap<>();
+        this.cached_handles = new ConcurrentHashMap<>();
+        this.plans = new CopyOnWriteArrayList<>();
+        this.plan_ids = new ConcurrentHashMap<>();
+        this.hot_fields = new HashSet<>();
+        this.accessor_generator = new AccessorGenerator(instrumentation);
+        this.class_index = new ClassIndex(instrumentation);
+        this.object_store = new HandleTable(max_uids);
+        this.sessions = new ConcurrentHashMap<>();
+        this.session_ids = new AtomicLong();
+        this.session = null;
+        AtomicInteger watcher_ids = new AtomicInteger();
+        this.watch_scheduler = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread watcher = new Thread(runnable, "CrossJVMReflection-Watcher-" + watcher_ids.incrementAndGet());
+            watcher.setDaemon(true);
+            return watcher;
+        });
+        this.watch_scheduler.setRemoveOnCancelPolicy(true);
+        AtomicInteger delivery_ids = new AtomicInteger();
+        this.deliveries = Executors.newCachedThreadPool(runnable -> {
+            Thread delivery = new Thread(runnable, "CrossJVMReflection-Delivery-" + delivery_ids.incrementAndGet());
+            delivery.setDaemon(true);
+            return delivery;
+        });
+        this.subscriptions = new ConcurrentHashMap<>();
+        this.subscription_ids = new AtomicLong();
+        this.metrics = new ServerMetrics();
+        this.cursors = new ConcurrentHashMap<>();
+        this.cursor_ids = new AtomicLong();
+        AtomicInteger query_worker_ids = new AtomicInteger();
+        this.query_pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("CrossJVMReflection-Query-" + query_worker_ids.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        }, null, false);
+        this.codecs = new CodecRegistry();
+        this.baselines = new DeltaBaselines();
+        this.field_watcher = new FieldWatcher(instrumentation);
+        this.sampler = new SeriesSampler();
+        this.exported = export;
+        this.remote = this;
+        this.resources = new CopyOnWriteArrayList<>();
+        this.reclaimer = new Thread(this::reclaim, "CrossJVMReflection-Reclaimer");
+        this.reclaimer.setDaemon(true);
+        this.reclaimer.start();
+        if (export) {
+            UnicastRemoteObject.exportObject(this, 0);
+        }
+    }
+
+    /**
+     * Creates a session stub that shares the state of the given server.
+     */
+    protected DefaultServerImpl(DefaultServerImpl server, HandleSession session) throws RemoteException {
+        this.class_loader = server.class_loader;
+        this.class_cache = server.class_cache;
+        this.class_name_cache = server.class_name_cache;
+        this.cached_handles = server.cached_handles;
+        this.plans = server.plans;
+        this.plan_ids = server.plan_ids;
+        this.hot_fields = server.hot_fields;
+        this.accessor_generator = server.accessor_generator;
+        this.class_index = server.class_index;
+        this.object_store = server.object_store;
+        this.sessions = server.sessions;
+        this.session_ids = server.session_ids;
+        this.session = session;
+        this.watch_scheduler = server.watch_scheduler;
+        this.deliveries = server.deliveries;
+        this.subscriptions = server.subscriptions;
+        this.subscription_ids = server.subscription_ids;
+        this.metrics = server.metrics;
+        this.cursors = server.cursors;
+        this.cursor_ids = server.cursor_ids;
+        this.query_pool = server.query_pool;
+        this.codecs = server.codecs;
+        this.baselines = server.baselines;
+        this.field_watcher = server.field_watcher;
+        this.sampler = server.sampler;
+        this.exported = server.exported;
+        this.remote = (ServerStub) Proxy.newProxyInstance(ServerStub.class.getClassLoader(), new Class<?>[]{ServerStub.class}, new LeaseRenewer(this));
+        this.reclaimer = null;
+        this.resources = server.resources;
+        if (exported) {
+            UnicastRemoteObject.exportObject(remote, 0);
+        }
+    }
+
+    /**
+     * Closes the resource first when the server is closed, for what is deployed alongside the server and reads through it such as a
+     * {@link com.carpenter.cross_jvm_reflection.server.shm.SharedMemoryPublisher}.
+     */
+    public void closeWith(Closeable resource) {
+        resources.add(resource);
+    }
+
+    /**
+     * Gets the metrics shared by this server and its sessions.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the codecs the values returned by the encode methods are encoded with, shared by this server and its sessions.
+     */
+    public CodecRegistry getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Gets a util for decomposing the uid's issued by this server.
+     */
+    public DefaultServerImplUtil getUtil() {
+        return new DefaultServerImplUtil(object_store);
     }
 
     @Override
-    public long uid(String field) throws RemoteException {
-        Object object = getUncheckedObject(field);
-        long uid = System.identityHashCode(object);
-        if (uid != 0) {
-            object_store.put(uid, new WeakReference<>(object));
+    public ServerStub session(long lease_millis) throws RemoteException {
+        DefaultServerImpl stub = new DefaultServerImpl(this, new HandleSession(session_ids.incrementAndGet(), lease_millis));
+        sessions.put(stub.session.getId(), stub);
+        return stub.remote;
+    }
+
+    @Override
+    public void release() throws RemoteException {
+        if (session != null && sessions.remove(session.getId(), this)) {
+            for (WatchSubscription subscription : subscriptions.values()) {
+                if (subscription.getSession() == session && subscriptions.remove(subscription.getId(), subscription)) {
+                    subscription.cancel();
+                }
+            }
+            cursors.values().removeIf(cursor -> cursor.getSession() == session);
+            sampler.release(session);
+            baselines.release(session);
+            object_store.release(session);
+            if (exported) {
+                UnicastRemoteObject.unexportObject(remote, true);
+            }
         }
-        return uid;
     }
 
+    /**
+     * Releases every session and subscription of the server and stops its threads and pools, then unexports it if it was exported.
+     * The server can't be used once it is closed. Closing a session stub only releases the session.
+     */
     @Override
-    public long uid(String field, long owner_uid) throws RemoteException {
-        Object object = getUncheckedObject(field, owner_uid);
-        long uid = System.identityHashCode(object);
-        if (uid != 0) {
-            uid += (owner_uid << 32);
-            object_store.put(uid, new WeakReference<>(object));
+    public void close() throws RemoteException {
+        if (session != null) {
+            release();
+            return;
+        }
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException ignored) {
+                //The server is closed either way.
+            }
+        }
+        reclaimer.interrupt();
+        for (DefaultServerImpl stub : sessions.values()) {
+            stub.release();
+        }
+        for (WatchSubscription subscription : subscriptions.values()) {
+            if (subscriptions.remove(subscription.getId(), subscription)) {
+                subscription.cancel();
+            }
+        }
+        cursors.clear();
+        watch_scheduler.shutdownNow();
+        deliveries.shutdownNow();
+        query_pool.shutdownNow();
+        sampler.close();
+        class_index.close();
+        if (exported) {
+            try {
+                UnicastRemoteObject.unexportObject(this, true);
+            } catch (NoSuchObjectException ignored) {
+                //The server was already closed.
+            }
+        }
+        field_watcher.close();
+    }
+
+    @Override
+    public void renew() throws RemoteException {
+        if (session != null) {
+            session.renew();
         }
-        return uid;
+    }
+
+    @Override
+    public StoreStatistics store_statistics() throws RemoteException {
+        return new StoreStatistics(object_store.size(), object_store.capacity(), object_store.maxCapacity(),
+                object_store.reclaimed(), object_store.released(), sessions.size());
+    }
+
+    @Override
+    public ClassSchema[] schema(String prefix) throws RemoteException {
+        return class_index.schema(prefix);
+    }
+
+    @Override
+    public MetricsSnapshot metrics() throws RemoteException {
+        return new MetricsSnapshot(metrics.getMethodStatistics(),
+                metrics.getClassCache().hits(), metrics.getClassCache().misses(),
+                metrics.getClassNameCache().hits(), metrics.getClassNameCache().misses(),
+                metrics.getHandleCache().hits(), metrics.getHandleCache().misses(),
+                store_statistics(), object_store.dead(), baselines.bytes());
+    }
+
+    @Override
+    public long uid(String field) throws RemoteException {
+        return register(getUncheckedObject(field), 0);
+    }
+
+    @Override
+    public long uid(String field, long owner_uid) throws RemoteException {
+        return register(getUncheckedObject(field, owner_uid), owner_uid);
     }
 
     @Override
@@ -66,13 +385,7 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
     public long index(int index, long uid) throws RemoteException {
         Object object = getUncheckedObject(uid);
         if (object != null) {
-            Object child = Array.get(object, index);
-            long child_uid = System.identityHashCode(child);
-            if (child_uid != 0) {
-                child_uid += (uid << 32);
-                object_store.put(child_uid, new WeakReference<>(child));
-                return child_uid;
-            }
+            return register(Array.get(object, index), uid);
         }
         return 0;
     }
@@ -82,23 +395,16 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
         Object object = getUncheckedObject(uid);
         if (object != null) {
             int length = Array.getLength(object);
-            List<Long> list = new ArrayList<>(length);
+            long[] uids = new long[length];
+            int count = 0;
             for (int index = 0; index < length; ++index) {
-                Object child = Array.get(object, index);
-                long child_uid = System.identityHashCode(child);
+                long child_uid = register(Array.get(object, index), uid);
                 if (child_uid != 0) {
-                    child_uid += (uid << 32);
-                    object_store.put(child_uid, new WeakReference<>(child));
-                    list.add(child_uid);
+                    uids[count++] = child_uid;
                 }
             }
-            length = list.size();
-            if (length > 0) {
-                long[] uids = new long[length];
-                for (int index = 0; index < length; ++index) {
-                    uids[index] = list.get(index);
-                }
-                return uids;
+            if (count > 0) {
+                return count == length ? uids : Arrays.copyOf(uids, count);
             }
         }
         return null;
@@ -130,13 +436,7 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
             if (length > 0) {
                 long[] array = new long[length];
                 for (int index = 0; index < length; ++index) {
-                    Object child = Array.get(object, index);
-                    long child_uid = System.identityHashCode(child);
-                    if (child_uid != 0) {
-                        child_uid += (uid << 32);
-                        object_store.put(child_uid, new WeakReference<>(child));
-                    }
-                    array[index] = child_uid;
+                    array[index] = register(Array.get(object, index), uid);
                 }
                 return array;
             }
@@ -162,6 +462,18 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
         return null;
     }
 
+    @Override
+    public Delta array_delta(long uid, long baseline_checksum) throws RemoteException {
+        Object array = getUncheckedObject(uid);
+        return baselines.read(session, Arrays.asList("array", uid), getArrayType(array), getArrayPayload(array, uid), baseline_checksum);
+    }
+
+    @Override
+    public Delta array_delta(PathExpression path, long baseline_checksum) throws RemoteException {
+        Object array = getUncheckedObject(path);
+        return baselines.read(session, Arrays.asList("array", path), getArrayType(array), getArrayPayload(array, path.getOwnerUID()), baseline_checksum);
+    }
+
     @Override
     public long[] map_keys(long map_uid) throws RemoteException {
         Object object = getUncheckedObject(map_uid);
@@ -170,13 +482,7 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
             long[] uids = new long[keys.size()];
             Iterator iterator = keys.iterator();
             for (int index = 0; iterator.hasNext(); ++index) {
-                Object key = iterator.next();
-                long key_uid = System.identityHashCode(key);
-                if (key_uid != 0) {
-                    key_uid += (map_uid << 32);
-                    object_store.put(key_uid, new WeakReference<>(key));
-                }
-                uids[index] = key_uid;
+                uids[index] = register(iterator.next(), map_uid);
             }
             return uids;
         }
@@ -196,17 +502,166 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
     public long map_value(Object key, long map_uid) throws RemoteException {
         Object object = getUncheckedObject(map_uid);
         if (object instanceof Map) {
-            Object child = ((Map) object).get(key);
-            long child_uid = System.identityHashCode(child);
-            if (child_uid != 0) {
-                child_uid += (map_uid << 32);
-                object_store.put(child_uid, new WeakReference<>(child));
-                return child_uid;
-            }
+            return register(((Map<?, ?>) object).get(key), map_uid);
         }
         return 0;
     }
 
+    @Override
+    public long cursor(long uid) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        if (!Cursor.supports(object)) {
+            return 0;
+        }
+        Cursor cursor = new Cursor(cursor_ids.incrementAndGet(), uid, session, object);
+        cursors.put(cursor.getId(), cursor);
+        return cursor.getId();
+    }
+
+    @Override
+    public long[] cursor_uids(long cursor_id, int count) throws RemoteException {
+        Cursor cursor = getCursor(cursor_id);
+        Object[] page = page(cursor, count);
+        long[] uids = new long[page.length];
+        for (int index = 0; index < page.length; ++index) {
+            uids[index] = register(page[index], cursor.getOwnerUID());
+        }
+        return uids;
+    }
+
+    @Override
+    public Serializable[] cursor_values(long cursor_id, int count) throws RemoteException {
+        Object[] page = page(getCursor(cursor_id), count);
+        Serializable[] values = new Serializable[page.length];
+        for (int index = 0; index < page.length; ++index) {
+            values[index] = page[index] instanceof Serializable ? (Serializable) page[index] : null;
+        }
+        return values;
+    }
+
+    @Override
+    public long[] cursor_int64(long cursor_id, int count) throws RemoteException {
+        Object[] page = page(getCursor(cursor_id), count);
+        long[] values = new long[page.length];
+        for (int index = 0; index < page.length; ++index) {
+            Object element = page[index];
+            if (element instanceof Number) {
+                values[index] = ((Number) element).longValue();
+            } else if (element instanceof Character) {
+                values[index] = (Character) element;
+            } else if (element instanceof Boolean) {
+                values[index] = (Boolean) element ? 1 : 0;
+            } else {
+                values[index] = -1;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public double[] cursor_fp64(long cursor_id, int count) throws RemoteException {
+        Object[] page = page(getCursor(cursor_id), count);
+        double[] values = new double[page.length];
+        for (int index = 0; index < page.length; ++index) {
+            Object element = page[index];
+            if (element instanceof Number) {
+                values[index] = ((Number) element).doubleValue();
+            } else if (element instanceof Character) {
+                values[index] = (Character) element;
+            } else if (element instanceof Boolean) {
+                values[index] = (Boolean) element ? 1 : 0;
+            } else {
+                values[index] = -1;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean cursor_close(long cursor_id) throws RemoteException {
+        return cursors.remove(cursor_id) != null;
+    }
+
+    @Override
+    public Serializable invoke(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments) throws RemoteException {
+        Object result = invokeUnchecked(method, parameter_types, receiver_uid, arguments);
+        return result instanceof Serializable ? (Serializable) result : null;
+    }
+
+    @Override
+    public long invoke_uid(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments) throws RemoteException {
+        return register(invokeUnchecked(method, parameter_types, receiver_uid, arguments), receiver_uid);
+    }
+
+    @Override
+    public Invocations invoke_all(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments) throws RemoteException {
+        return invokeAll(method, parameter_types, receiver_uids, arguments, false);
+    }
+
+    @Override
+    public Invocations invoke_all_uids(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments) throws RemoteException {
+        return invokeAll(method, parameter_types, receiver_uids, arguments, true);
+    }
+
+    @Override
+    public QueryResult query(Query query) throws RemoteException {
+        if (query.getAggregate() == Query.TOP && query.getLimit() <= 0) {
+            throw new RemoteException("The k of " + query + " must be positive.");
+        }
+        Object source = getUncheckedObject(query.getSourceUID());
+        Object elements = elements(source);
+        if (elements == null) {
+            return null;
+        }
+        QueryTask.Condition[] conditions = new QueryTask.Condition[query.getConditionCount()];
+        for (int index = 0; index < conditions.length; ++index) {
+            conditions[index] = new QueryTask.Condition(getReader(query.getField(index)), query.getOperator(index), query.getOperand(index));
+        }
+        QueryTask.Reader value = query.getAggregate() == Query.COUNT ? null : getReader(query.getValueField());
+        int length = Array.getLength(elements);
+        QueryTask task = new QueryTask(elements, 0, length, conditions, value, query.getAggregate(), query.getLimit());
+        QueryTask.Partial result;
+        try {
+            result = length > QueryTask.THRESHOLD ? query_pool.invoke(task) : task.compute();
+        } catch (IllegalStateException ise) {
+            throw new RemoteException("Failed to evaluate " + query, ise);
+        }
+        QueryTask.Candidate[] top = result.top();
+        Object[] top_elements = new Object[top.length];
+        double[] top_values = new double[top.length];
+        for (int index = 0; index < top.length; ++index) {
+            top_elements[index] = Array.get(elements, top[index].index);
+            top_values[index] = top[index].value;
+        }
+        long[] top_uids;
+        try {
+            top_uids = object_store.register(top_elements, query.getSourceUID(), session);
+        } catch (IllegalStateException ise) {
+            throw new RemoteException("Failed to register the uid's of the top " + top.length + " elements.", ise);
+        }
+        return new QueryResult(result.scanned, result.matched, result.aggregated, result.value(), top_uids, top_values);
+    }
+
+    @Override
+    public Snapshot snapshot(long root_uid, int max_depth, String[] includes, String[] excludes) throws RemoteException {
+        Object root = getUncheckedObject(root_uid);
+        try {
+            return new SnapshotWalk(object -> register(object, root_uid), max_depth, includes, excludes).walk(root);
+        } catch (PatternSyntaxException pse) {
+            throw new RemoteException("Failed to compile the field patterns of the snapshot.", pse);
+        }
+    }
+
+    @Override
+    public long hash(long uid, int max_depth) throws RemoteException {
+        return new ContentHash(query_pool, max_depth).hash(getUncheckedObject(uid));
+    }
+
+    @Override
+    public long hash(PathExpression path, int max_depth) throws RemoteException {
+        return new ContentHash(query_pool, max_depth).hash(getUncheckedObject(path));
+    }
+
     @Override
     public boolean validate(long uid) throws RemoteException {
         return getUncheckedObject(uid) != null;
@@ -231,8 +686,10 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
             Class<?> type = object.getClass();
             String name = class_name_cache.get(type);
             if (name != null) {
+                metrics.getClassNameCache().hit();
                 return name;
             }
+            metrics.getClassNameCache().miss();
             class_name_cache.put(type, name = type.getName());
             return name;
         }
@@ -257,6 +714,33 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
         return evaluated instanceof Serializable ? (Serializable) evaluated : null;
     }
 
+    @Override
+    public byte[] encode(long uid, int max_depth) throws RemoteException {
+        return encodeUnchecked(getUncheckedObject(uid), max_depth);
+    }
+
+    @Override
+    public byte[] encode(String name, int max_depth) throws RemoteException {
+        return encodeUnchecked(getUncheckedObject(name), max_depth);
+    }
+
+    @Override
+    public byte[] encode(String name, long owner_uid, int max_depth) throws RemoteException {
+        return encodeUnchecked(getUncheckedObject(name, owner_uid), max_depth);
+    }
+
+    @Override
+    public Delta encode_delta(long uid, int max_depth, long baseline_checksum) throws RemoteException {
+        Object value = getUncheckedObject(uid);
+        return baselines.read(session, Arrays.asList("encode", uid, max_depth), "encoded", value == null ? null : encodeUnchecked(value, max_depth), baseline_checksum);
+    }
+
+    @Override
+    public Delta encode_delta(PathExpression path, int max_depth, long baseline_checksum) throws RemoteException {
+        Object value = getUncheckedObject(path);
+        return baselines.read(session, Arrays.asList("encode", path, max_depth), "encoded", value == null ? null : encodeUnchecked(value, max_depth), baseline_checksum);
+    }
+
     @Override
     public byte int8(long uid) throws RemoteException {
         Object evaluated = getUncheckedObject(uid);
@@ -401,97 +885,1513 @@ public class DefaultServerImpl extends UnicastRemoteObject implements ServerStub
         return (char) (evaluated instanceof Character ? evaluated : -1);
     }
 
-    /**
-     * Gets an Object that may not be Serializable and as a result couldn't be transported over the rmi socket.
-     */
-    private Object getUncheckedObject(long uid) {
-        WeakReference ref = object_store.get(uid);
-        if (ref != null) {
-            Object object = ref.get();
-            if (object != null) {
-                return object;
-            } else {
-                object_store.remove(uid);
-            }
-        }
-        return null;
+    @Override
+    public byte[] int8_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof byte[] ? (byte[]) slice(object, offset, length) : null;
     }
 
-    /**
-     * Gets an Object that may not be Serializable and as a result couldn't be transported over the rmi socket.
-     */
-    private Object getUncheckedObject(String field) throws RemoteException {
-        MethodHandle handle = getMethodHandle(field);
-        if (handle != null) {
-            try {
-                return handle.invoke();
-            } catch (Throwable t) {
-                throw new RemoteException("Failed to retrieve the value of " + field + ".", t);
-            }
-        }
-        return null;
+    @Override
+    public byte[] int8_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof byte[] ? (byte[]) slice(object, offset, length) : null;
     }
 
-    /**
-     * Gets an Object that may not be Serializable and as a result couldn't be transported over the rmi socket.
-     */
-    private Object getUncheckedObject(String field, long owner_uid) throws RemoteException {
-        Object object = getUncheckedObject(owner_uid);
-        if (object != null) {
-            MethodHandle handle = getMethodHandle(field);
-            if (handle != null) {
-                try {
-                    return handle.invoke(object);
-                } catch (Throwable t) {
-                    throw new RemoteException("Failed to retrieve the value of " + field + " as the child of " + owner_uid + ".", t);
-                }
-            }
-        }
-        return null;
+    @Override
+    public byte[] int8_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof byte[] ? (byte[]) slice(object, offset, length) : null;
     }
 
-    /**
-     * Gets a MethodHandle for a field and caches it.
-     *
-     * @param name A String in the format "classname.fieldname"
-     * @return A MethodHandle if the name was properly formatted.
-     * @throws RemoteException if the name was unable to be resolved to a class and field.
-     */
-    private MethodHandle getMethodHandle(String name) throws RemoteException {
-        MethodHandle handle = cached_handles.get(name);
-        if (handle == null) {
-            int name_separator = name.lastIndexOf(".");
-            if (name_separator != -1) {
-                try {
-                    Class<?> c = getClassObject(name.substring(0, name_separator));
-                    if (c != null) {
-                        Field f = c.getDeclaredField(name.substring(name_separator + 1));
-                        if ((f.getModifiers() & Modifier.PUBLIC) != Modifier.PUBLIC) {
-                            f.setAccessible(true);
-                        }
-                        handle = MethodHandles.lookup().unreflectGetter(f);
-                        cached_handles.put(name, handle);
-                    }
-                } catch (NoSuchFieldException | IllegalAccessException e) {
-                    throw new RemoteException("Failed to get a MethodHandle for " + name, e);
-                }
-            }
-        }
-        return handle;
+    @Override
+    public short[] int16_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof short[] ? (short[]) slice(object, offset, length) : null;
     }
 
-    /**
-     * Gets a Class for the given type name and caches it. The resolution passes false for initialize.
-     */
-    private Class<?> getClassObject(String type_name) throws RemoteException {
-        Class<?> type = class_cache.get(type_name);
-        if (type == null) {
-            try {
-                type = Class.forName(type_name, false, class_loader);
-                class_cache.put(type_name, type);
-            } catch (ClassNotFoundException cnfe) {
-                throw new RemoteException("Unable to find a Class<?> for " + type_name, cnfe);
+    @Override
+    public short[] int16_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof short[] ? (short[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public short[] int16_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof short[] ? (short[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public int[] int32_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof int[] ? (int[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public int[] int32_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof int[] ? (int[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public int[] int32_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof int[] ? (int[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public long[] int64_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof long[] ? (long[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public long[] int64_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof long[] ? (long[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public long[] int64_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof long[] ? (long[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public float[] fp32_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof float[] ? (float[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public float[] fp32_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof float[] ? (float[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public float[] fp32_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof float[] ? (float[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public double[] fp64_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof double[] ? (double[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public double[] fp64_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof double[] ? (double[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public double[] fp64_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof double[] ? (double[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public boolean[] bool_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof boolean[] ? (boolean[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public boolean[] bool_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof boolean[] ? (boolean[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public boolean[] bool_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof boolean[] ? (boolean[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public char[] uint16_array(long uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(uid);
+        return object instanceof char[] ? (char[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public char[] uint16_array(String field, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field);
+        return object instanceof char[] ? (char[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public char[] uint16_array(String field, long owner_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(field, owner_uid);
+        return object instanceof char[] ? (char[]) slice(object, offset, length) : null;
+    }
+
+    @Override
+    public byte[] int8_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, byte.class);
+            int from = sliceStart(elements.length, offset);
+            byte[] values = new byte[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (byte) handle.invokeExact(element) : -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public short[] int16_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, short.class);
+            int from = sliceStart(elements.length, offset);
+            short[] values = new short[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (short) handle.invokeExact(element) : -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public int[] int32_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, int.class);
+            int from = sliceStart(elements.length, offset);
+            int[] values = new int[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (int) handle.invokeExact(element) : -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public long[] int64_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, long.class);
+            int from = sliceStart(elements.length, offset);
+            long[] values = new long[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (long) handle.invokeExact(element) : -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public float[] fp32_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, float.class);
+            int from = sliceStart(elements.length, offset);
+            float[] values = new float[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (float) handle.invokeExact(element) : -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public double[] fp64_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, double.class);
+            int from = sliceStart(elements.length, offset);
+            double[] values = new double[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (double) handle.invokeExact(element) : -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean[] bool_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, boolean.class);
+            int from = sliceStart(elements.length, offset);
+            boolean[] values = new boolean[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (boolean) handle.invokeExact(element) : false;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public char[] uint16_strided(String field, long array_uid, int offset, int length) throws RemoteException {
+        Object object = getUncheckedObject(array_uid);
+        if (object instanceof Object[]) {
+            Object[] elements = (Object[]) object;
+            MethodHandle handle = getMethodHandle(field, char.class);
+            int from = sliceStart(elements.length, offset);
+            char[] values = new char[sliceEnd(elements.length, from, length) - from];
+            try {
+                for (int index = 0; index < values.length; ++index) {
+                    Object element = elements[from + index];
+                    values[index] = element != null ? (char) handle.invokeExact(element) : (char) -1;
+                }
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + " for the elements of " + array_uid + ".", t);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public Serializable resolve(PathExpression path) throws RemoteException {
+        Object evaluated = getUncheckedObject(path);
+        if (path.isUidTerminal()) {
+            return register(evaluated, path.getOwnerUID());
+        }
+        return evaluated instanceof Serializable ? (Serializable) evaluated : null;
+    }
+
+    @Override
+    public Resolutions resolve(PathExpression[] paths) throws RemoteException {
+        Serializable[] values = new Serializable[paths.length];
+        String[] failures = new String[paths.length];
+        for (int index = 0; index < paths.length; ++index) {
+            try {
+                values[index] = resolve(paths[index]);
+            } catch (RemoteException re) {
+                failures[index] = re.getMessage();
+            }
+        }
+        return new Resolutions(values, failures);
+    }
+
+    @Override
+    public long subscribe(PathExpression[] paths, long interval_millis, WatchListener listener) throws RemoteException {
+        if (interval_millis <= 0) {
+            throw new RemoteException("The interval of a subscription must be positive.");
+        }
+        if (listener == null) {
+            throw new RemoteException("A subscription requires a listener.");
+        }
+        WatchSubscription subscription = new WatchSubscription(subscription_ids.incrementAndGet(), paths.clone(), listener, session);
+        subscriptions.put(subscription.getId(), subscription);
+        subscription.schedule(watch_scheduler.scheduleWithFixedDelay(() -> sample(subscription), 0, interval_millis, TimeUnit.MILLISECONDS));
+        return subscription.getId();
+    }
+
+    @Override
+    public boolean unsubscribe(long subscription_id) throws RemoteException {
+        WatchSubscription subscription = subscriptions.remove(subscription_id);
+        if (subscription == null) {
+            return false;
+        }
+        subscription.cancel();
+        return true;
+    }
+
+    @Override
+    public long watch_field(String field, int capacity) throws RemoteException {
+        if (capacity <= 0 || capacity > FieldEventRing.MAX_CAPACITY) {
+            throw new RemoteException("The capacity of a field watch must be between 1 and " + FieldEventRing.MAX_CAPACITY + ".");
+        }
+        Field f = getField(field);
+        if (f == null) {
+            throw new RemoteException("Failed to watch " + field + ", it is not in the format classname.fieldname.");
+        }
+        try {
+            return field_watcher.watch(f, capacity);
+        } catch (IllegalStateException ise) {
+            throw new RemoteException("Failed to watch " + field + ", " + ise.getMessage(), ise);
+        }
+    }
+
+    @Override
+    public FieldEvents drain_field(long watch_id, long sequence, int max_events) throws RemoteException {
+        FieldEventRing ring = field_watcher.getRing(watch_id);
+        if (ring == null) {
+            return null;
+        }
+        FieldEventRing.Events events = ring.read(sequence, Math.max(max_events, 0));
+        long[] owner_uids = new long[events.size()];
+        long[] times = new long[events.size()];
+        Serializable[] values = new Serializable[events.size()];
+        long[] value_uids = new long[events.size()];
+        for (int event = 0; event < events.size(); ++event) {
+            Object owner = events.getOwner(event);
+            Object value = events.getValue(event);
+            owner_uids[event] = owner == null ? 0 : register(owner, 0);
+            times[event] = events.getTime(event);
+            if (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character) {
+                values[event] = (Serializable) value;
+            } else if (value != null) {
+                value_uids[event] = register(value, 0);
+            }
+        }
+        return new FieldEvents(events.getNextSequence(), events.getDropped(), owner_uids, times, values, value_uids);
+    }
+
+    @Override
+    public boolean unwatch_field(long watch_id) throws RemoteException {
+        try {
+            return field_watcher.unwatch(watch_id);
+        } catch (IllegalStateException ise) {
+            throw new RemoteException("Failed to unwatch " + watch_id + ", " + ise.getMessage(), ise);
+        }
+    }
+
+    @Override
+    public long record_series(PathExpression path, long period_nanos, int capacity) throws RemoteException {
+        if (period_nanos < MIN_SERIES_PERIOD_NANOS) {
+            throw new RemoteException("The period of a series must be at least " + MIN_SERIES_PERIOD_NANOS + " nanoseconds.");
+        }
+        if (capacity <= 0 || capacity > MAX_SERIES_CAPACITY) {
+            throw new RemoteException("The capacity of a series must be between 1 and " + MAX_SERIES_CAPACITY + ".");
+        }
+        AccessorPlan plan = compilePlan(path);
+        Class<?> type = plan.getHandle().type().returnType();
+        if (!type.isPrimitive() || type == boolean.class) {
+            throw new RemoteException("Failed to record " + path + ", it ends at a " + type.getName() + " rather than a number.");
+        }
+        MethodHandle handle = plan.getHandle(type == float.class || type == double.class ? double.class : long.class);
+        if (plan.isOwned()) {
+            Object owner = getUncheckedObject(path.getOwnerUID());
+            if (owner == null) {
+                throw new RemoteException("Failed to record " + path + ", its owner " + path.getOwnerUID() + " can't be resolved.");
+            }
+            handle = handle.bindTo(owner);
+        }
+        SeriesRecorder recorder = new SeriesRecorder(sampler.nextId(), handle, session, period_nanos, capacity);
+        sampler.add(recorder);
+        return recorder.getId();
+    }
+
+    @Override
+    public TimeSeries drain_series(long series, long sequence, int max_samples) throws RemoteException {
+        SeriesRecorder recorder = sampler.get(series);
+        return recorder == null ? null : recorder.read(sequence, max_samples);
+    }
+
+    @Override
+    public boolean stop_series(long series) throws RemoteException {
+        return sampler.remove(series);
+    }
+
+    @Override
+    public boolean hot(String field) throws RemoteException {
+        synchronized (hot_fields) {
+            if (hot_fields.contains(field)) {
+                return true;
+            }
+            Field f = getField(field);
+            if (f == null) {
+                throw new RemoteException("Failed to mark " + field + " as hot, it is not in the format classname.fieldname.");
+            }
+            MethodHandle handle = accessor_generator.generate(f);
+            if (handle == null) {
+                return false;
+            }
+            MethodType type = Modifier.isStatic(f.getModifiers()) ? MethodType.methodType(f.getType()) : MethodType.methodType(f.getType(), f.getDeclaringClass());
+            cached_handles.put(field, handle.asType(type));
+            cached_handles.keySet().removeIf(key -> key.startsWith(field + ':'));
+            hot_fields.add(field);
+            synchronized (plans) {
+                for (int index = 0; index < plans.size(); ++index) {
+                    PathExpression path = plans.get(index).getPath();
+                    for (int hop = 0; hop < path.getHopCount(); ++hop) {
+                        if (path.getKind(hop) == PathExpression.FIELD && field.equals(path.getField(hop))) {
+                            plans.set(index, compilePlan(path));
+                            break;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public long plan(PathExpression path) throws RemoteException {
+        PathExpression key = path.getOwnerUID() == 0 ? path : path.withOwner(PLAN_OWNER);
+        synchronized (plans) {
+            Long plan = plan_ids.get(key);
+            if (plan == null) {
+                plans.add(compilePlan(key));
+                plan_ids.put(key, plan = (long) plans.size());
+            }
+            return plan;
+        }
+    }
+
+    @Override
+    public long uid_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, Object.class, false);
+        try {
+            return register((Object) handle.invokeExact(), 0);
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return 0;
+        } catch (RemoteException re) {
+            throw re;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public long uid_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, Object.class, true);
+            try {
+                return register((Object) handle.invokeExact(owner), owner_uid);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return 0;
+            } catch (RemoteException re) {
+                throw re;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public byte int8_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, byte.class, false);
+        try {
+            return (byte) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public byte int8_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, byte.class, true);
+            try {
+                return (byte) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public short int16_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, short.class, false);
+        try {
+            return (short) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public short int16_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, short.class, true);
+            try {
+                return (short) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int int32_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, int.class, false);
+        try {
+            return (int) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public int int32_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, int.class, true);
+            try {
+                return (int) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long int64_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, long.class, false);
+        try {
+            return (long) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public long int64_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, long.class, true);
+            try {
+                return (long) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public float fp32_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, float.class, false);
+        try {
+            return (float) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public float fp32_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, float.class, true);
+            try {
+                return (float) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double fp64_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, double.class, false);
+        try {
+            return (double) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public double fp64_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, double.class, true);
+            try {
+                return (double) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean bool_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, boolean.class, false);
+        try {
+            return (boolean) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return false;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public boolean bool_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, boolean.class, true);
+            try {
+                return (boolean) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return false;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public char uint16_plan(long plan) throws RemoteException {
+        MethodHandle handle = getPlanHandle(plan, char.class, false);
+        try {
+            return (char) handle.invokeExact();
+        } catch (NullPointerException | IndexOutOfBoundsException e) {
+            return (char) -1;
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to read plan " + plan + ".", t);
+        }
+    }
+
+    @Override
+    public char uint16_plan(long plan, long owner_uid) throws RemoteException {
+        Object owner = getUncheckedObject(owner_uid);
+        if (owner != null) {
+            MethodHandle handle = getPlanHandle(plan, char.class, true);
+            try {
+                return (char) handle.invokeExact(owner);
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                return (char) -1;
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read plan " + plan + " as the child of " + owner_uid + ".", t);
+            }
+        }
+        return (char) -1;
+    }
+
+    /**
+     * Registers the object on behalf of the session of this stub.
+     *
+     * @return The uid of the object, 0 if it is null.
+     * @throws RemoteException if the object store is full.
+     */
+    private long register(Object object, long owner_uid) throws RemoteException {
+        try {
+            return object_store.register(object, owner_uid, session);
+        } catch (IllegalStateException ise) {
+            throw new RemoteException("Failed to register a uid.", ise);
+        }
+    }
+
+    private Cursor getCursor(long cursor_id) throws RemoteException {
+        Cursor cursor = cursors.get(cursor_id);
+        if (cursor == null) {
+            throw new RemoteException("The cursor " + cursor_id + " is closed.");
+        }
+        return cursor;
+    }
+
+    /**
+     * Advances the cursor by up to count elements, map entries are flattened into their key and value.
+     * The cursor is closed by its first short page or when it fails.
+     */
+    private Object[] page(Cursor cursor, int count) throws RemoteException {
+        if (count <= 0) {
+            throw new RemoteException("The page size must be positive.");
+        }
+        synchronized (cursor) {
+            cursor.touch();
+            List<Object> page = new ArrayList<>(Math.min(count, 1024) * (cursor.isEntries() ? 2 : 1));
+            try {
+                int read = 0;
+                for (; read < count && cursor.hasNext(); ++read) {
+                    Object element = cursor.next();
+                    if (cursor.isEntries()) {
+                        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+                        page.add(entry.getKey());
+                        page.add(entry.getValue());
+                    } else {
+                        page.add(element);
+                    }
+                }
+                if (read < count) {
+                    cursors.remove(cursor.getId(), cursor);
+                }
+            } catch (ConcurrentModificationException | NoSuchElementException e) {
+                cursors.remove(cursor.getId(), cursor);
+                throw new RemoteException("The source of cursor " + cursor.getId() + " was modified while it was iterated.", e);
+            }
+            return page.toArray();
+        }
+    }
+
+    /**
+     * Releases the uid's of collected objects and the sessions whose lease has expired until the thread is interrupted.
+     */
+    private void reclaim() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                object_store.reclaim(RECLAIM_INTERVAL_MILLIS);
+                long now = System.currentTimeMillis();
+                cursors.values().removeIf(cursor -> cursor.isIdle(now, CURSOR_IDLE_MILLIS));
+                for (DefaultServerImpl stub : sessions.values()) {
+                    if (stub.session.isExpired(now)) {
+                        try {
+                            stub.release();
+                        } catch (RemoteException ignored) {
+                            //The session was already unexported.
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Renews the lease of a session on every call made through its stub, so that only a session that isn't used expires.
+     */
+    private static final class LeaseRenewer implements InvocationHandler {
+        private final DefaultServerImpl stub;
+
+        private LeaseRenewer(DefaultServerImpl stub) {
+            this.stub = stub;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Session " + stub.session.getId() + " of " + stub.class_loader;
+                }
+            }
+            stub.session.renew();
+            try {
+                return method.invoke(stub, arguments);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+    }
+
+    /**
+     * Resolves the paths of a subscription and hands the changes to a delivery thread. A subscription whose listener hasn't returned from a
+     * delivery within {@link WatchSubscription#DELIVERY_TIMEOUT_MILLIS} is cancelled.
+     */
+    private void sample(WatchSubscription subscription) {
+        if (subscription.isStalled()) {
+            cancel(subscription);
+            return;
+        }
+        PathExpression[] paths = subscription.getPaths();
+        Serializable[] values = new Serializable[paths.length];
+        for (int index = 0; index < paths.length; ++index) {
+            try {
+                values[index] = resolve(paths[index]);
+            } catch (RemoteException re) {
+                //An unresolvable path is delivered as null, the same as a path with a null hop.
+            }
+        }
+        WatchDelta delta = subscription.diff(values, object_store, query_pool);
+        if (delta != null && subscription.offer(delta)) {
+            try {
+                deliveries.execute(() -> deliver(subscription));
+            } catch (RejectedExecutionException ree) {
+                //The server is closing.
+                cancel(subscription);
+            }
+        }
+    }
+
+    /**
+     * Delivers the deltas of a subscription until none is pending, a listener that fails cancels its subscription.
+     */
+    private void deliver(WatchSubscription subscription) {
+        for (WatchDelta delta; (delta = subscription.next()) != null; ) {
+            try {
+                subscription.getListener().changed(delta);
+            } catch (RemoteException | RuntimeException e) {
+                cancel(subscription);
+            }
+        }
+    }
+
+    private void cancel(WatchSubscription subscription) {
+        subscriptions.remove(subscription.getId(), subscription);
+        subscription.cancel();
+    }
+
+    private static String getArrayType(Object array) {
+        if (array == null || !array.getClass().isArray()) {
+            return null;
+        }
+        Class<?> component = array.getClass().getComponentType();
+        return component.isPrimitive() ? component.getName() : "uid";
+    }
+
+    /**
+     * Gets the elements of a primitive array as big endian bytes, or the uid's of the elements of an object array as longs.
+     *
+     * @return The payload, or null if the object isn't an array.
+     */
+    private byte[] getArrayPayload(Object array, long owner_uid) throws RemoteException {
+        if (array == null || !array.getClass().isArray()) {
+            return null;
+        }
+        if (array instanceof Object[]) {
+            Object[] objects = (Object[]) array;
+            ByteBuffer payload = ByteBuffer.allocate(objects.length * 8);
+            for (Object object : objects) {
+                payload.putLong(register(object, owner_uid));
+            }
+            return payload.array();
+        }
+        if (array instanceof byte[]) {
+            return ((byte[]) array).clone();
+        }
+        if (array instanceof boolean[]) {
+            boolean[] booleans = (boolean[]) array;
+            byte[] payload = new byte[booleans.length];
+            for (int index = 0; index < booleans.length; ++index) {
+                payload[index] = (byte) (booleans[index] ? 1 : 0);
+            }
+            return payload;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(Array.getLength(array) * getElementSize(array));
+        if (array instanceof int[]) {
+            payload.asIntBuffer().put((int[]) array);
+        } else if (array instanceof long[]) {
+            payload.asLongBuffer().put((long[]) array);
+        } else if (array instanceof double[]) {
+            payload.asDoubleBuffer().put((double[]) array);
+        } else if (array instanceof float[]) {
+            payload.asFloatBuffer().put((float[]) array);
+        } else if (array instanceof short[]) {
+            payload.asShortBuffer().put((short[]) array);
+        } else {
+            payload.asCharBuffer().put((char[]) array);
+        }
+        return payload.array();
+    }
+
+    private static int getElementSize(Object array) {
+        return array instanceof long[] || array instanceof double[] ? 8 : array instanceof int[] || array instanceof float[] ? 4 : 2;
+    }
+
+    private byte[] encodeUnchecked(Object value, int max_depth) throws RemoteException {
+        try {
+            return codecs.encode(value, max_depth);
+        } catch (RuntimeException e) {
+            throw new RemoteException("Failed to encode " + value.getClass().getName() + ".", e);
+        }
+    }
+
+    /**
+     * Gets an Object that may not be Serializable and as a result couldn't be transported over the rmi socket.
+     */
+    private Object getUncheckedObject(long uid) {
+        return object_store.resolve(uid);
+    }
+
+    /**
+     * Gets an Object that may not be Serializable and as a result couldn't be transported over the rmi socket.
+     */
+    private Object getUncheckedObject(String field) throws RemoteException {
+        MethodHandle handle = getMethodHandle(field);
+        if (handle != null) {
+            try {
+                return handle.invoke();
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to retrieve the value of " + field + ".", t);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets an Object that may not be Serializable and as a result couldn't be transported over the rmi socket.
+     */
+    private Object getUncheckedObject(String field, long owner_uid) throws RemoteException {
+        Object object = getUncheckedObject(owner_uid);
+        if (object != null) {
+            MethodHandle handle = getMethodHandle(field);
+            if (handle != null) {
+                try {
+                    return handle.invoke(object);
+                } catch (Throwable t) {
+                    throw new RemoteException("Failed to retrieve the value of " + field + " as the child of " + owner_uid + ".", t);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the terminal Object of the path without registering any of the intermediate objects.
+     */
+    private Object getUncheckedObject(PathExpression path) throws RemoteException {
+        Object object = null;
+        int hops = path.getHopCount();
+        if (path.getOwnerUID() != 0) {
+            object = getUncheckedObject(path.getOwnerUID());
+            if (object == null) {
+                return null;
+            }
+        }
+        for (int hop = 0; hop < hops; ++hop) {
+            switch (path.getKind(hop)) {
+                case PathExpression.FIELD:
+                    MethodHandle handle = getMethodHandle(path.getField(hop));
+                    if (handle == null) {
+                        return null;
+                    }
+                    boolean first = hop == 0 && path.getOwnerUID() == 0;
+                    if (handle.type().parameterCount() == 0 && !first) {
+                        throw new RemoteException("Failed to resolve " + path + ", the static field " + path.getField(hop) + " can only be the first hop.");
+                    } else if (handle.type().parameterCount() != 0 && first) {
+                        throw new RemoteException("Failed to resolve " + path + ", the first hop must be a static field when there is no owner.");
+                    }
+                    try {
+                        object = first ? handle.invoke() : handle.invoke(object);
+                    } catch (Throwable t) {
+                        throw new RemoteException("Failed to retrieve the value of " + path.getField(hop) + " in " + path + ".", t);
+                    }
+                    break;
+                case PathExpression.INDEX:
+                    int index = path.getIndex(hop);
+                    if (object instanceof List) {
+                        List<?> list = (List<?>) object;
+                        object = index >= 0 && index < list.size() ? list.get(index) : null;
+                    } else if (object != null && object.getClass().isArray()) {
+                        object = index >= 0 && index < Array.getLength(object) ? Array.get(object, index) : null;
+                    } else {
+                        return null;
+                    }
+                    break;
+                case PathExpression.KEY:
+                    if (!(object instanceof Map)) {
+                        return null;
+                    }
+                    object = ((Map<?, ?>) object).get(path.getKey(hop));
+                    break;
+            }
+            if (object == null) {
+                return null;
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Gets a MethodHandle for a field and caches it.
+     *
+     * @param name A String in the format "classname.fieldname"
+     * @return A MethodHandle if the name was properly formatted.
+     * @throws RemoteException if the name was unable to be resolved to a class and field.
+     */
+    private MethodHandle getMethodHandle(String name) throws RemoteException {
+        MethodHandle handle = cached_handles.get(name);
+        if (handle != null) {
+            metrics.getHandleCache().hit();
+        } else {
+            metrics.getHandleCache().miss();
+            Field f = getField(name);
+            if (f != null) {
+                try {
+                    handle = MethodHandles.lookup().unreflectGetter(f);
+                    cached_handles.put(name, handle);
+                } catch (IllegalAccessException iae) {
+                    throw new RemoteException("Failed to get a MethodHandle for " + name, iae);
+                }
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * Gets an accessible Field for the given name.
+     *
+     * @param name A String in the format "classname.fieldname"
+     * @return A Field if the name was properly formatted.
+     * @throws RemoteException if the name was unable to be resolved to a class and field.
+     */
+    private Field getField(String name) throws RemoteException {
+        int name_separator = name.lastIndexOf(".");
+        if (name_separator != -1) {
+            try {
+                Class<?> c = getClassObject(name.substring(0, name_separator));
+                if (c != null) {
+                    Field f = c.getDeclaredField(name.substring(name_separator + 1));
+                    if ((f.getModifiers() & Modifier.PUBLIC) != Modifier.PUBLIC) {
+                        f.setAccessible(true);
+                    }
+                    return f;
+                }
+            } catch (NoSuchFieldException | RuntimeException e) {
+                throw new RemoteException("Failed to get a Field for " + name, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Composes the hops of the path into a plan.
+     *
+     * @throws RemoteException if a hop couldn't be resolved or can't be applied to the value of the previous hops.
+     */
+    private AccessorPlan compilePlan(PathExpression path) throws RemoteException {
+        MethodHandle handle = path.getOwnerUID() != 0 ? MethodHandles.identity(Object.class) : null;
+        try {
+            for (int hop = 0; hop < path.getHopCount(); ++hop) {
+                if (handle != null && handle.type().returnType().isPrimitive()) {
+                    throw new RemoteException("Failed to compile " + path + ", hop " + hop + " follows a primitive value.");
+                }
+                switch (path.getKind(hop)) {
+                    case PathExpression.FIELD:
+                        MethodHandle getter = getMethodHandle(path.getField(hop));
+                        if (getter == null) {
+                            throw new RemoteException("Failed to compile " + path + ", " + path.getField(hop) + " is not in the format classname.fieldname.");
+                        } else if (getter.type().parameterCount() == 0) {
+                            if (handle != null) {
+                                throw new RemoteException("Failed to compile " + path + ", the static field " + path.getField(hop) + " can only be the first hop.");
+                            }
+                            handle = getter;
+                        } else if (handle == null) {
+                            throw new RemoteException("Failed to compile " + path + ", the first hop must be a static field when there is no owner.");
+                        } else {
+                            handle = AccessorPlan.compose(handle, getter);
+                        }
+                        break;
+                    case PathExpression.INDEX:
+                        if (handle == null) {
+                            throw new RemoteException("Failed to compile " + path + ", the first hop must be a static field when there is no owner.");
+                        }
+                        handle = AccessorPlan.compose(handle, AccessorPlan.index(handle.type().returnType(), path.getIndex(hop)));
+                        break;
+                    case PathExpression.KEY:
+                        if (handle == null) {
+                            throw new RemoteException("Failed to compile " + path + ", the first hop must be a static field when there is no owner.");
+                        }
+                        handle = AccessorPlan.compose(handle, AccessorPlan.key(path.getKey(hop)));
+                        break;
+                }
+            }
+        } catch (WrongMethodTypeException | ClassCastException e) {
+            throw new RemoteException("Failed to compile " + path + ".", e);
+        }
+        if (handle == null) {
+            throw new RemoteException("Failed to compile " + path + ", it has no hops.");
+        }
+        return new AccessorPlan(path, handle);
+    }
+
+    /**
+     * Gets the handle of a plan adapted to return the given type.
+     *
+     * @param owned Whether the caller provides an owner.
+     * @throws RemoteException if there is no plan with the id, the plan doesn't match owned, or its terminal value can't be converted to the type.
+     */
+    private MethodHandle getPlanHandle(long plan, Class<?> type, boolean owned) throws RemoteException {
+        if (plan <= 0 || plan > plans.size()) {
+            throw new RemoteException("There is no plan with the id " + plan + ".");
+        }
+        AccessorPlan accessor_plan = plans.get((int) plan - 1);
+        if (accessor_plan.isOwned() != owned) {
+            throw new RemoteException("Plan " + plan + " " + (owned ? "starts at a static field and can't be read with an owner." : "starts at an owner and can't be read without one."));
+        }
+        try {
+            return accessor_plan.getHandle(type);
+        } catch (WrongMethodTypeException wmte) {
+            throw new RemoteException("Plan " + plan + " can't be read as a " + type.getName() + ".", wmte);
+        }
+    }
+
+    /**
+     * Gets a MethodHandle for an instance field adapted to the type (Object)type so that it can be invoked with invokeExact, and caches it.
+     *
+     * @param name A String in the format "classname.fieldname"
+     * @throws RemoteException if the name couldn't be resolved or the field can't be converted to the given type.
+     */
+    private MethodHandle getMethodHandle(String name, Class<?> type) throws RemoteException {
+        String key = name + ':' + type.getName();
+        MethodHandle handle = cached_handles.get(key);
+        if (handle != null) {
+            metrics.getHandleCache().hit();
+        } else {
+            handle = getMethodHandle(name);
+            if (handle == null || handle.type().parameterCount() != 1) {
+                throw new RemoteException("Failed to get a MethodHandle for " + name + ", it is not an instance field.");
+            }
+            try {
+                handle = handle.asType(MethodType.methodType(type, Object.class));
+            } catch (WrongMethodTypeException wmte) {
+                throw new RemoteException("Failed to get a MethodHandle for " + name + " as a " + type.getName(), wmte);
+            }
+            cached_handles.put(key, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * Invokes a method on the receiver with the uid, or a static method if the uid is 0.
+     *
+     * @return The result, or null if the receiver can't be resolved.
+     */
+    private Object invokeUnchecked(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments) throws RemoteException {
+        MethodHandle handle = getInvoker(method, parameter_types, arguments);
+        Object receiver = null;
+        if (receiver_uid != 0) {
+            receiver = getUncheckedObject(receiver_uid);
+            if (receiver == null) {
+                return null;
+            }
+        }
+        return invokeExact(handle, method, receiver, arguments);
+    }
+
+    /**
+     * Invokes a method on each of the receivers, a receiver the method throws for gets a failure and the others are still invoked.
+     *
+     * @param register Whether the results are registered as children of their receivers rather than returned.
+     */
+    private Invocations invokeAll(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments, boolean register) throws RemoteException {
+        MethodHandle handle = getInvoker(method, parameter_types, arguments);
+        Serializable[] values = new Serializable[receiver_uids.length];
+        long[] uids = new long[receiver_uids.length];
+        String[] failures = new String[receiver_uids.length];
+        for (int index = 0; index < receiver_uids.length; ++index) {
+            Object receiver = getUncheckedObject(receiver_uids[index]);
+            if (receiver == null) {
+                continue;
+            }
+            Object result;
+            try {
+                result = invokeExact(handle, method, receiver, arguments);
+            } catch (RemoteException re) {
+                failures[index] = re.getMessage();
+                continue;
+            }
+            if (register) {
+                uids[index] = register(result, receiver_uids[index]);
+            } else if (result instanceof Serializable) {
+                values[index] = (Serializable) result;
+            }
+        }
+        return new Invocations(values, uids, failures);
+    }
+
+    /**
+     * Invokes a handle returned by {@link #getInvoker(String, String[], Serializable[])} with a call site of its exact arity.
+     *
+     * @throws RemoteException if the method threw, only the description of what it threw is sent since its class may not be known to the client.
+     */
+    private static Object invokeExact(MethodHandle handle, String method, Object receiver, Serializable[] arguments) throws RemoteException {
+        try {
+            switch (arguments.length) {
+                case 0:
+                    return (Object) handle.invokeExact(receiver);
+                case 1:
+                    return (Object) handle.invokeExact(receiver, (Object) arguments[0]);
+                case 2:
+                    return (Object) handle.invokeExact(receiver, (Object) arguments[0], (Object) arguments[1]);
+                case 3:
+                    return (Object) handle.invokeExact(receiver, (Object) arguments[0], (Object) arguments[1], (Object) arguments[2]);
+                case 4:
+                    return (Object) handle.invokeExact(receiver, (Object) arguments[0], (Object) arguments[1], (Object) arguments[2], (Object) arguments[3]);
+                default:
+                    Object[] spread = new Object[arguments.length + 1];
+                    spread[0] = receiver;
+                    System.arraycopy(arguments, 0, spread, 1, arguments.length);
+                    return handle.invokeWithArguments(spread);
+            }
+        } catch (Throwable t) {
+            throw new RemoteException("Failed to invoke " + method + ", " + t);
+        }
+    }
+
+    /**
+     * Gets a MethodHandle for a method adapted to the generic type (Object receiver, Object... arguments)Object, and caches it under its signature.
+     * A static method ignores its receiver. Arguments of reference types are resolved first when they are passed as a {@link UidArgument}.
+     *
+     * @param name A String in the format "classname.methodname"
+     * @throws RemoteException if the method can't be resolved or the number of arguments doesn't match its parameters.
+     */
+    private MethodHandle getInvoker(String name, String[] parameter_types, Serializable[] arguments) throws RemoteException {
+        if (parameter_types.length != arguments.length) {
+            throw new RemoteException("Expected " + parameter_types.length + " arguments for " + name + " but got " + arguments.length + ".");
+        }
+        String key = name + '(' + String.join(",", parameter_types) + ')';
+        MethodHandle handle = cached_handles.get(key);
+        if (handle != null) {
+            metrics.getHandleCache().hit();
+            return handle;
+        }
+        metrics.getHandleCache().miss();
+        Method method = getMethod(name, parameter_types);
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException iae) {
+            throw new RemoteException("Failed to get a MethodHandle for " + key, iae);
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        Class<?>[] types = method.getParameterTypes();
+        for (int index = 0; index < types.length; ++index) {
+            if (!types[index].isPrimitive()) {
+                MethodHandle resolve = RESOLVE_ARGUMENT.bindTo(object_store).asType(MethodType.methodType(types[index], Object.class));
+                handle = MethodHandles.filterArguments(handle, index + 1, resolve);
+            }
+        }
+        handle = handle.asType(MethodType.genericMethodType(types.length + 1));
+        cached_handles.put(key, handle);
+        return handle;
+    }
+
+    /**
+     * Gets an accessible Method for the given name and parameter types, declared by the class or inherited from a superclass or interface.
+     */
+    private Method getMethod(String name, String[] parameter_types) throws RemoteException {
+        int name_separator = name.lastIndexOf(".");
+        if (name_separator == -1) {
+            throw new RemoteException("Failed to get a Method for " + name + ", expected the format classname.methodname.");
+        }
+        Class<?> type = getClassObject(name.substring(0, name_separator));
+        String method_name = name.substring(name_separator + 1);
+        Class<?>[] types = new Class<?>[parameter_types.length];
+        for (int index = 0; index < types.length; ++index) {
+            types[index] = getParameterType(parameter_types[index]);
+        }
+        try {
+            Method method;
+            try {
+                method = type.getMethod(method_name, types);
+            } catch (NoSuchMethodException nsme) {
+                method = null;
+                for (Class<?> declaring = type; method == null && declaring != null; declaring = declaring.getSuperclass()) {
+                    try {
+                        method = declaring.getDeclaredMethod(method_name, types);
+                    } catch (NoSuchMethodException ignored) {
+                        //Declared by a superclass.
+                    }
+                }
+                if (method == null) {
+                    throw nsme;
+                }
+            }
+            if ((method.getModifiers() & Modifier.PUBLIC) != Modifier.PUBLIC || (method.getDeclaringClass().getModifiers() & Modifier.PUBLIC) != Modifier.PUBLIC) {
+                method.setAccessible(true);
+            }
+            return method;
+        } catch (NoSuchMethodException | RuntimeException e) {
+            throw new RemoteException("Failed to get a Method for " + name + '(' + String.join(",", parameter_types) + ')', e);
+        }
+    }
+
+    private Class<?> getParameterType(String type_name) throws RemoteException {
+        switch (type_name) {
+            case "boolean":
+                return boolean.class;
+            case "byte":
+                return byte.class;
+            case "short":
+                return short.class;
+            case "char":
+                return char.class;
+            case "int":
+                return int.class;
+            case "long":
+                return long.class;
+            case "float":
+                return float.class;
+            case "double":
+                return double.class;
+            default:
+                return getClassObject(type_name);
+        }
+    }
+
+    /**
+     * Resolves an argument passed as a {@link UidArgument}, other arguments are passed as they are.
+     *
+     * @throws IllegalArgumentException if the uid can't be resolved.
+     */
+    private static Object resolveArgument(HandleTable object_store, Object argument) {
+        if (!(argument instanceof UidArgument)) {
+            return argument;
+        }
+        long uid = ((UidArgument) argument).getUID();
+        if (uid == 0) {
+            return null;
+        }
+        Object resolved = object_store.resolve(uid);
+        if (resolved == null) {
+            throw new IllegalArgumentException("The argument uid " + uid + " can't be resolved.");
+        }
+        return resolved;
+    }
+
+    /**
+     * Gets a reader for the field of the elements of a query, the field is read as a long, double or boolean when it is of a primitive type.
+     *
+     * @param name A String in the format "classname.fieldname", or empty for the element itself.
+     */
+    private QueryTask.Reader getReader(String name) throws RemoteException {
+        if (name.isEmpty()) {
+            return new QueryTask.Reader(QueryTask.Reader.ELEMENT, null);
+        }
+        MethodHandle handle = getMethodHandle(name);
+        if (handle == null) {
+            throw new RemoteException("Failed to get a MethodHandle for " + name + ", expected the format classname.fieldname.");
+        }
+        byte kind = QueryTask.Reader.getKind(handle.type().returnType());
+        return new QueryTask.Reader(kind, getMethodHandle(name, QueryTask.Reader.getType(kind)));
+    }
+
+    /**
+     * Gets the elements a query is evaluated on: the array itself, a snapshot of a Collection or Iterable, or of the values of a Map.
+     *
+     * @return The elements, or null if the object is neither.
+     */
+    private static Object elements(Object object) {
+        if (object == null) {
+            return null;
+        } else if (object.getClass().isArray()) {
+            return object;
+        } else if (object instanceof Map) {
+            return ((Map<?, ?>) object).values().toArray();
+        } else if (object instanceof Collection) {
+            return ((Collection<?>) object).toArray();
+        } else if (object instanceof Iterable) {
+            List<Object> elements = new ArrayList<>();
+            for (Object element : (Iterable<?>) object) {
+                elements.add(element);
+            }
+            return elements.toArray();
+        }
+        return null;
+    }
+
+    /**
+     * Gets a copy of a slice of the array, the bounds of the slice are clamped to the bounds of the array.
+     *
+     * @param length The maximum length of the slice, negative for the rest of the array.
+     */
+    private static Object slice(Object array, int offset, int length) {
+        int array_length = Array.getLength(array);
+        int from = sliceStart(array_length, offset);
+        int to = sliceEnd(array_length, from, length);
+        Object slice = Array.newInstance(array.getClass().getComponentType(), to - from);
+        System.arraycopy(array, from, slice, 0, to - from);
+        return slice;
+    }
+
+    private static int sliceStart(int array_length, int offset) {
+        return Math.min(Math.max(offset, 0), array_length);
+    }
+
+    private static int sliceEnd(int array_length, int from, int length) {
+        return length < 0 ? array_length : (int) Math.min((long) from + length, array_length);
+    }
+
+    /**
+     * Gets a Class for the given type name and caches it. Names in the format "classname@loader" are only looked up in the index, other names are
+     * resolved via the class loader with initialize set to false if the index doesn't have a single class of that name.
+     */
+    private Class<?> getClassObject(String type_name) throws RemoteException {
+        Class<?> type = class_cache.get(type_name);
+        if (type != null) {
+            metrics.getClassCache().hit();
+        } else {
+            metrics.getClassCache().miss();
+            int loader_separator = type_name.lastIndexOf('@');
+            if (loader_separator != -1) {
+                type = class_index.find(type_name.substring(0, loader_separator), type_name.substring(loader_separator + 1));
+                if (type == null) {
+                    throw new RemoteException("Unable to find a Class<?> for " + type_name + ", the loader didn't define a class of that name.");
+                }
+            } else {
+                type = class_index.find(type_name, class_loader);
+                if (type == null) {
+                    try {
+                        type = Class.forName(type_name, false, class_loader);
+                        class_index.add(type);
+                    } catch (ClassNotFoundException cnfe) {
+                        throw new RemoteException("Unable to find a Class<?> for " + type_name + ", if it is defined by several loaders qualify it as classname@loader.", cnfe);
+                    }
+                }
             }
+            class_cache.put(type_name, type);
         }
         return type;
     }
@@ -1,18 +1,34 @@
 package com.carpenter.cross_jvm_reflection.server.rmi.impl;
 
 public class DefaultServerImplUtil {
+    private final HandleTable object_store;
+
+    public DefaultServerImplUtil(HandleTable object_store) {
+        this.object_store = object_store;
+    }
+
     /**
-     * Gets the owner component of the uid.
+     * Gets the uid of the owner the object was first reached through.
+     * Owners are no longer packed into the uid, they are recorded by the object store when the object is registered.
+     *
+     * @return 0 if the uid is stale or the object was reached through a static field.
      */
     public long getOwnerUID(long uid) {
-        return uid >>> 32;
+        return object_store.owner(uid);
     }
 
     /**
-     * Gets the child component of the uid.
-     * This is necessary for comparison within circular lists and other data structures.
+     * Gets the child component of the uid, the slot index of the object in the object store.
+     * A live object only ever occupies one slot, so this is necessary for comparison within circular lists and other data structures.
      */
     public long getChildUID(long uid) {
         return uid & 0xFFFFFFFFL;
     }
+
+    /**
+     * Gets the generation component of the uid, it changes whenever the slot of the object is released and reused.
+     */
+    public long getGeneration(long uid) {
+        return uid >>> 32;
+    }
 }
@@ -0,0 +1,120 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.Delta;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last payload sent for each value read through the delta reads of the stubs of a server, see {@link Delta}. The baselines of the server and
+ * of all of its sessions share one budget of at most {@link #MAX_BASELINES} baselines and {@link #MAX_BYTES} bytes of payloads, the least
+ * recently read are dropped first. A payload larger than the budget isn't kept at all, and a client whose baseline was dropped gets the full
+ * payload on its next read.
+ */
+class DeltaBaselines {
+    static final int MAX_BASELINES = 4096;
+    static final long MAX_BYTES = 256L * 1024 * 1024;
+
+    private final Map<Key, Baseline> baselines = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * Gets the changes to the payload from the baseline of the key if the client holds that baseline, otherwise the full payload, and makes
+     * the payload the baseline of the key.
+     *
+     * @param session The session of the stub the value is read through, null for the server itself.
+     * @param baseline_checksum The checksum of the payload the client holds, 0 if it holds none.
+     * @return The delta, or null if the payload is null in which case the baseline is dropped.
+     */
+    Delta read(HandleSession session, Object key, String type, byte[] payload, long baseline_checksum) {
+        Key baseline_key = new Key(session, key);
+        long checksum = payload == null ? 0 : Delta.checksum(payload);
+        Baseline baseline;
+        synchronized (baselines) {
+            baseline = baselines.remove(baseline_key);
+            if (baseline != null) {
+                bytes -= baseline.payload.length;
+            }
+            if (payload != null && payload.length <= MAX_BYTES) {
+                baselines.put(baseline_key, new Baseline(payload, checksum));
+                bytes += payload.length;
+                evict();
+            }
+        }
+        if (payload == null) {
+            return null;
+        }
+        if (baseline != null && baseline_checksum != 0 && baseline.checksum == baseline_checksum && baseline.payload.length == payload.length) {
+            byte[] changes = Delta.diff(baseline.payload, payload);
+            if (changes != null) {
+                return new Delta(type, false, payload.length, checksum, changes);
+            }
+        }
+        return new Delta(type, true, payload.length, checksum, payload);
+    }
+
+    /**
+     * Drops the baselines of the values read through the stub of the session.
+     */
+    void release(HandleSession session) {
+        synchronized (baselines) {
+            for (Iterator<Map.Entry<Key, Baseline>> iterator = baselines.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<Key, Baseline> entry = iterator.next();
+                if (entry.getKey().session == session) {
+                    bytes -= entry.getValue().payload.length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes of payloads kept as baselines.
+     */
+    long bytes() {
+        synchronized (baselines) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Drops the least recently read baselines until the budget is met, the baseline that was just read is the most recent and always fits.
+     */
+    private void evict() {
+        for (Iterator<Baseline> iterator = baselines.values().iterator(); (bytes > MAX_BYTES || baselines.size() > MAX_BASELINES) && iterator.hasNext(); ) {
+            bytes -= iterator.next().payload.length;
+            iterator.remove();
+        }
+    }
+
+    private static final class Key {
+        private final HandleSession session;
+        private final Object key;
+
+        private Key(HandleSession session, Object key) {
+            this.session = session;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).session == session && ((Key) o).key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(session) * 31 + key.hashCode();
+        }
+    }
+
+    private static final class Baseline {
+        private final byte[] payload;
+        private final long checksum;
+
+        private Baseline(byte[] payload, long checksum) {
+            this.payload = payload;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import java.util.Arrays;
+
+/**
+ * A client session that holds handles in a {@link HandleTable}, releasing the session releases every handle only it holds.
+ * A session expires if it isn't renewed within its lease.
+ */
+public class HandleSession {
+    private final long id;
+    private final long lease_millis;
+    private volatile long deadline;
+    private long[] handles = new long[16];
+    private int size;
+
+    /**
+     * @param lease_millis The time after the last renewal at which the session expires, 0 or less never expires.
+     */
+    public HandleSession(long id, long lease_millis) {
+        this.id = id;
+        this.lease_millis = lease_millis;
+        renew();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getLeaseMillis() {
+        return lease_millis;
+    }
+
+    /**
+     * Extends the lease of the session from now.
+     */
+    public void renew() {
+        deadline = lease_millis > 0 ? System.currentTimeMillis() + lease_millis : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired(long now_millis) {
+        return now_millis > deadline;
+    }
+
+    /**
+     * Gets the number of handles held by the session.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Records that the session holds the handle.
+     *
+     * @return false if the session already held the handle.
+     */
+    synchronized boolean hold(long handle) {
+        if ((size + 1) * 2 > handles.length) {
+            long[] previous = handles;
+            handles = new long[previous.length * 2];
+            for (long existing : previous) {
+                if (existing != 0) {
+                    place(existing);
+                }
+            }
+        }
+        if (place(handle)) {
+            ++size;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes and gets every handle held by the session.
+     */
+    synchronized long[] drain() {
+        long[] drained = new long[size];
+        int count = 0;
+        for (long handle : handles) {
+            if (handle != 0) {
+                drained[count++] = handle;
+            }
+        }
+        Arrays.fill(handles, 0);
+        size = 0;
+        return drained;
+    }
+
+    private boolean place(long handle) {
+        int mask = handles.length - 1;
+        for (int position = (int) (handle * 0x9E3779B97F4A7C15L >>> 40) & mask; ; position = (position + 1) & mask) {
+            if (handles[position] == handle) {
+                return false;
+            }
+            if (handles[position] == 0) {
+                handles[position] = handle;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A generation tagged table of weakly referenced objects, used as the object store of the server.
+ * A handle is a long with the upper 32 bits containing the generation of its slot and the lower 32 bits containing the slot index.
+ * Slot 0 is never used so that a handle of 0 always represents null.
+ * <p>
+ * Resolving a handle is an array access followed by a generation check, a handle whose slot has since been released
+ * (and possibly reused) resolves to null instead of to an unrelated object.
+ * Slots are allocated without locking from a free list or by bumping the slot counter.
+ * Registering the same live object twice yields the same handle, the identity index used for that is striped by identity hash.
+ * <p>
+ * A slot is held either by the table itself (a registration made outside of any session) or by one or more sessions.
+ * Slots held by the table live until their object is garbage collected, slots held only by sessions are also released
+ * when the last of those sessions is released. Collected objects are reclaimed through a ReferenceQueue by {@link #reclaim(long)}.
+ */
+public class HandleTable {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int STRIPES = 64;
+    private static final int HELD_BY_TABLE = 0x80000000;
+
+    private final int max_slots;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final LongAdder reclaimed = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger next_slot = new AtomicInteger(1);
+    private final AtomicInteger live = new AtomicInteger();
+    /**
+     * The head of the free list, the upper 32 bits are a tag that is incremented on every update to avoid ABA.
+     */
+    private final AtomicLong free_head = new AtomicLong();
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    public HandleTable() {
+        this(Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * @param max_slots The maximum number of slots that may be allocated, registrations beyond it fail until slots are released.
+     */
+    public HandleTable(int max_slots) {
+        if (max_slots <= 0) {
+            throw new IllegalArgumentException("max_slots must be positive, was " + max_slots);
+        }
+        this.max_slots = max_slots;
+        for (int index = 0; index < STRIPES; ++index) {
+            stripes[index] = new Stripe();
+        }
+    }
+
+    /**
+     * Gets the handle of the object, registering it if it isn't already registered.
+     *
+     * @param owner The handle of the object the given object was reached through, it is only recorded on the first registration.
+     * @return 0 if the object is null, otherwise its handle.
+     */
+    public long register(Object object, long owner) {
+        return register(object, owner, null);
+    }
+
+    /**
+     * Gets the handle of the object, registering it if it isn't already registered, and holds it on behalf of the session.
+     *
+     * @param session The session to hold the slot on behalf of, null for the table itself.
+     * @return 0 if the object is null, otherwise its handle.
+     * @throws IllegalStateException if the object isn't registered and no more slots may be allocated.
+     */
+    public long register(Object object, long owner, HandleSession session) {
+        return register(object, owner, session, null);
+    }
+
+    /**
+     * Registers each of the objects like {@link #register(Object, long, HandleSession)}, or none of those that weren't already registered.
+     *
+     * @return The handles in the order of the objects, 0 for null.
+     * @throws IllegalStateException if no more slots may be allocated, the slots allocated by this call are released before it is thrown.
+     */
+    public long[] register(Object[] objects, long owner, HandleSession session) {
+        long[] handles = new long[objects.length];
+        boolean[] allocated = new boolean[objects.length];
+        boolean[] slot_allocated = new boolean[1];
+        try {
+            for (int index = 0; index < objects.length; ++index) {
+                slot_allocated[0] = false;
+                handles[index] = register(objects[index], owner, session, slot_allocated);
+                allocated[index] = slot_allocated[0];
+            }
+        } catch (IllegalStateException ise) {
+            for (int index = 0; index < objects.length; ++index) {
+                if (allocated[index]) {
+                    release(handles[index]);
+                }
+            }
+            throw ise;
+        }
+        return handles;
+    }
+
+    /**
+     * @param allocated Set to whether a slot was allocated for the object in its first element, may be null.
+     */
+    private long register(Object object, long owner, HandleSession session, boolean[] allocated) {
+        if (object == null) {
+            return 0;
+        }
+        int hash = System.identityHashCode(object);
+        Stripe stripe = stripes[stripe(hash)];
+        synchronized (stripe) {
+            int slot = stripe.find(object, hash);
+            if (slot == 0) {
+                slot = allocate();
+                Chunk chunk = chunk(slot);
+                int index = slot & CHUNK_MASK;
+                chunk.hashes.set(index, hash);
+                chunk.owners.set(index, owner);
+                chunk.references.set(index, new SlotReference(object, slot, queue));
+                stripe.insert(slot, hash);
+                live.incrementAndGet();
+                if (allocated != null) {
+                    allocated[0] = true;
+                }
+            }
+            Chunk chunk = chunk(slot);
+            int index = slot & CHUNK_MASK;
+            long handle = handle(slot);
+            if (session == null) {
+                chunk.holders[index] |= HELD_BY_TABLE;
+            } else if (session.hold(handle)) {
+                ++chunk.holders[index];
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * Gets the object with the given handle.
+     *
+     * @return null if the handle is 0, stale, or its object has been garbage collected.
+     */
+    public Object resolve(long handle) {
+        Chunk chunk = chunk(handle);
+        if (chunk != null) {
+            int index = (int) handle & CHUNK_MASK;
+            int generation = (int) (handle >>> 32);
+            if (chunk.generations.get(index) == generation) {
+                WeakReference<Object> reference = chunk.references.get(index);
+                Object object = reference != null ? reference.get() : null;
+                if (object != null && chunk.generations.get(index) == generation) {
+                    return object;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the handle of the owner that was recorded when the object with the given handle was first registered.
+     *
+     * @return 0 if the handle is stale or the object was registered without an owner.
+     */
+    public long owner(long handle) {
+        Chunk chunk = chunk(handle);
+        if (chunk != null) {
+            int index = (int) handle & CHUNK_MASK;
+            long owner = chunk.owners.get(index);
+            if (chunk.generations.get(index) == (int) (handle >>> 32)) {
+                return owner;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Releases the slot of the handle regardless of who holds it, the handle and any copies of it become stale.
+     *
+     * @return true if the handle was live and this call released it.
+     */
+    public boolean release(long handle) {
+        Chunk chunk = chunk(handle);
+        if (chunk == null) {
+            return false;
+        }
+        int index = (int) handle & CHUNK_MASK;
+        if (chunk.references.get(index) == null) {
+            return false;
+        }
+        Stripe stripe = stripes[stripe(chunk.hashes.get(index))];
+        synchronized (stripe) {
+            if (chunk.generations.get(index) != (int) (handle >>> 32) || !clear(stripe, (int) handle)) {
+                return false;
+            }
+        }
+        released.increment();
+        free((int) handle);
+        return true;
+    }
+
+    /**
+     * Releases every handle held by the session, slots that are no longer held by anything are released.
+     *
+     * @return The number of slots that were released.
+     */
+    public int release(HandleSession session) {
+        int count = 0;
+        for (long handle : session.drain()) {
+            Chunk chunk = chunk(handle);
+            if (chunk == null) {
+                continue;
+            }
+            int index = (int) handle & CHUNK_MASK;
+            Stripe stripe = stripes[stripe(chunk.hashes.get(index))];
+            synchronized (stripe) {
+                if (chunk.generations.get(index) != (int) (handle >>> 32) || --chunk.holders[index] != 0 || !clear(stripe, (int) handle)) {
+                    continue;
+                }
+            }
+            released.increment();
+            free((int) handle);
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Releases the slots of objects that have been garbage collected, waiting up to the timeout for the first one.
+     *
+     * @param timeout_millis The time to wait for a collected object, 0 waits indefinitely.
+     * @return The number of slots that were released.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public int reclaim(long timeout_millis) throws InterruptedException {
+        int count = 0;
+        for (Reference<?> reference = queue.remove(timeout_millis); reference != null; reference = queue.poll()) {
+            int slot = ((SlotReference) reference).slot;
+            Chunk chunk = chunk(slot);
+            int index = slot & CHUNK_MASK;
+            Stripe stripe = stripes[stripe(chunk.hashes.get(index))];
+            synchronized (stripe) {
+                if (chunk.references.get(index) != reference || !clear(stripe, slot)) {
+                    continue;
+                }
+            }
+            reclaimed.increment();
+            free(slot);
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Invalidates every handle of the slot and removes it from the index, the caller must hold the lock of the stripe and free the slot afterwards.
+     *
+     * @return false if the slot had already been cleared.
+     */
+    private boolean clear(Stripe stripe, int slot) {
+        Chunk chunk = chunk(slot);
+        int index = slot & CHUNK_MASK;
+        int generation = chunk.generations.get(index);
+        if (chunk.references.get(index) == null || !chunk.generations.compareAndSet(index, generation, generation + 1)) {
+            return false;
+        }
+        stripe.remove(slot, chunk.hashes.get(index));
+        chunk.references.set(index, null);
+        chunk.owners.set(index, 0);
+        chunk.holders[index] = 0;
+        live.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Gets the number of slots that currently hold a registration, including registrations whose object has been collected but not yet released.
+     */
+    public int size() {
+        return live.get();
+    }
+
+    /**
+     * Counts the registrations whose object has been collected but that haven't been reclaimed yet.
+     * It scans every allocated slot, so it is meant for diagnostics rather than for the hot path.
+     */
+    public int dead() {
+        Chunk[] chunks = this.chunks;
+        int allocated = capacity();
+        int dead = 0;
+        for (int slot = 1; slot <= allocated; ++slot) {
+            int chunk = slot >>> CHUNK_SHIFT;
+            if (chunk >= chunks.length) {
+                break;
+            }
+            WeakReference<Object> reference = chunks[chunk].references.get(slot & CHUNK_MASK);
+            if (reference != null && reference.get() == null) {
+                ++dead;
+            }
+        }
+        return dead;
+    }
+
+    /**
+     * Gets the number of slots that have been allocated, in use or free.
+     */
+    public int capacity() {
+        return Math.min(next_slot.get() - 1, max_slots);
+    }
+
+    /**
+     * Gets the maximum number of slots that may be allocated.
+     */
+    public int maxCapacity() {
+        return max_slots;
+    }
+
+    /**
+     * Gets the number of slots that have been released because their object was garbage collected.
+     */
+    public long reclaimed() {
+        return reclaimed.sum();
+    }
+
+    /**
+     * Gets the number of slots that have been released explicitly or by the release of their sessions.
+     */
+    public long released() {
+        return released.sum();
+    }
+
+    private long handle(int slot) {
+        return ((long) chunk(slot).generations.get(slot & CHUNK_MASK) << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private int allocate() {
+        while (true) {
+            long head = free_head.get();
+            int slot = (int) head;
+            if (slot == 0) {
+                slot = next_slot.getAndIncrement();
+                if (slot <= 0 || slot > max_slots) {
+                    next_slot.decrementAndGet();
+                    throw new IllegalStateException("The handle table is full, all " + max_slots + " slots are in use.");
+                }
+                grow(slot);
+                return slot;
+            }
+            int next = chunk(slot).next_free.get(slot & CHUNK_MASK);
+            if (free_head.compareAndSet(head, (((head >>> 32) + 1) << 32) | (next & 0xFFFFFFFFL))) {
+                return slot;
+            }
+        }
+    }
+
+    private void free(int slot) {
+        Chunk chunk = chunk(slot);
+        while (true) {
+            long head = free_head.get();
+            chunk.next_free.set(slot & CHUNK_MASK, (int) head);
+            if (free_head.compareAndSet(head, (((head >>> 32) + 1) << 32) | (slot & 0xFFFFFFFFL))) {
+                return;
+            }
+        }
+    }
+
+    private void grow(int slot) {
+        int required = (slot >>> CHUNK_SHIFT) + 1;
+        if (chunks.length < required) {
+            synchronized (this) {
+                Chunk[] current = chunks;
+                if (current.length < required) {
+                    Chunk[] grown = new Chunk[Math.max(required, current.length * 2)];
+                    System.arraycopy(current, 0, grown, 0, current.length);
+                    for (int index = current.length; index < grown.length; ++index) {
+                        grown[index] = new Chunk();
+                    }
+                    chunks = grown;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the chunk of an allocated slot.
+     */
+    private Chunk chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Gets the chunk of a handle that came from outside of the table, null if the slot has never been allocated.
+     */
+    private Chunk chunk(long handle) {
+        int slot = (int) handle;
+        if (slot <= 0) {
+            return null;
+        }
+        Chunk[] chunks = this.chunks;
+        int chunk = slot >>> CHUNK_SHIFT;
+        return chunk < chunks.length ? chunks[chunk] : null;
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class SlotReference extends WeakReference<Object> {
+        private final int slot;
+
+        private SlotReference(Object referent, int slot, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.slot = slot;
+        }
+    }
+
+    private static final class Chunk {
+        private final AtomicReferenceArray<WeakReference<Object>> references = new AtomicReferenceArray<>(CHUNK_SIZE);
+        /**
+         * The number of sessions holding each slot, with {@link #HELD_BY_TABLE} set if the table itself holds it. Guarded by the stripe of the slot.
+         */
+        private final int[] holders = new int[CHUNK_SIZE];
+        private final AtomicIntegerArray generations = new AtomicIntegerArray(CHUNK_SIZE);
+        private final AtomicIntegerArray hashes = new AtomicIntegerArray(CHUNK_SIZE);
+        private final AtomicLongArray owners = new AtomicLongArray(CHUNK_SIZE);
+        private final AtomicIntegerArray next_free = new AtomicIntegerArray(CHUNK_SIZE);
+    }
+
+    /**
+     * A linear probing identity index from objects to slots, all access is guarded by the monitor of the stripe.
+     */
+    private final class Stripe {
+        private int[] slots = new int[16];
+        private int size;
+
+        private int find(Object object, int hash) {
+            int mask = slots.length - 1;
+            for (int position = position(hash, mask); ; position = (position + 1) & mask) {
+                int slot = slots[position];
+                if (slot == 0) {
+                    return 0;
+                }
+                Chunk chunk = chunk(slot);
+                int index = slot & CHUNK_MASK;
+                if (chunk.hashes.get(index) == hash) {
+                    WeakReference<Object> reference = chunk.references.get(index);
+                    if (reference != null && reference.get() == object) {
+                        return slot;
+                    }
+                }
+            }
+        }
+
+        private void insert(int slot, int hash) {
+            if ((size + 1) * 2 > slots.length) {
+                int[] previous = slots;
+                slots = new int[previous.length * 2];
+                for (int existing : previous) {
+                    if (existing != 0) {
+                        place(existing, chunk(existing).hashes.get(existing & CHUNK_MASK));
+                    }
+                }
+            }
+            place(slot, hash);
+            ++size;
+        }
+
+        private void place(int slot, int hash) {
+            int mask = slots.length - 1;
+            int position = position(hash, mask);
+            while (slots[position] != 0) {
+                position = (position + 1) & mask;
+            }
+            slots[position] = slot;
+        }
+
+        private void remove(int slot, int hash) {
+            int mask = slots.length - 1;
+            int position = position(hash, mask);
+            while (slots[position] != slot) {
+                if (slots[position] == 0) {
+                    return;
+                }
+                position = (position + 1) & mask;
+            }
+            --size;
+            //Shift the following entries of the cluster back so that probing never stops early.
+            int gap = position;
+            for (position = (gap + 1) & mask; slots[position] != 0; position = (position + 1) & mask) {
+                int existing = slots[position];
+                int home = position(chunk(existing).hashes.get(existing & CHUNK_MASK), mask);
+                if (((position - home) & mask) >= ((position - gap) & mask)) {
+                    slots[gap] = existing;
+                    gap = position;
+                }
+            }
+            slots[gap] = 0;
+        }
+
+        private int position(int hash, int mask) {
+            return (hash * 0x9E3779B9 >>> 6) & mask;
+        }
+    }
+}
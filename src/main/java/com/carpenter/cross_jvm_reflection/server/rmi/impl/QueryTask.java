@@ -0,0 +1,353 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.query.Query;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates a {@link Query} over a range of elements, splitting ranges larger than {@link #THRESHOLD} across the ForkJoin pool it runs in.
+ * Fields are read through MethodHandles adapted to (Object)long, (Object)double, (Object)boolean or (Object)Object depending on the type of
+ * the field, so reading a primitive field doesn't box it.
+ */
+class QueryTask extends RecursiveTask<QueryTask.Partial> {
+    private static final long serialVersionUID = 1L;
+
+    static final int THRESHOLD = 4096;
+
+    private final Object elements;
+    private final int from;
+    private final int to;
+    private final Condition[] conditions;
+    private final Reader value;
+    private final byte aggregate;
+    private final int limit;
+
+    QueryTask(Object elements, int from, int to, Condition[] conditions, Reader value, byte aggregate, int limit) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.conditions = conditions;
+        this.value = value;
+        this.aggregate = aggregate;
+        this.limit = limit;
+    }
+
+    @Override
+    protected Partial compute() {
+        if (to - from > THRESHOLD) {
+            int middle = (from + to) >>> 1;
+            QueryTask left = new QueryTask(elements, from, middle, conditions, value, aggregate, limit);
+            left.fork();
+            Partial right = new QueryTask(elements, middle, to, conditions, value, aggregate, limit).compute();
+            return left.join().merge(right);
+        }
+        Partial partial = new Partial(aggregate, limit, to - from);
+        Object[] objects = elements instanceof Object[] ? (Object[]) elements : null;
+        for (int index = from; index < to; ++index) {
+            Object element = objects != null ? objects[index] : Array.get(elements, index);
+            if (element == null || !matches(element)) {
+                continue;
+            }
+            ++partial.matched;
+            if (value != null) {
+                partial.add(index, value.number(element));
+            }
+        }
+        partial.scanned = to - from;
+        return partial;
+    }
+
+    private boolean matches(Object element) {
+        for (Condition condition : conditions) {
+            if (!condition.matches(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a field of an element, or the element itself if it has no handle.
+     */
+    static final class Reader {
+        static final byte ELEMENT = 0;
+        static final byte LONG = 1;
+        static final byte DOUBLE = 2;
+        static final byte BOOLEAN = 3;
+        static final byte OBJECT = 4;
+
+        private final byte kind;
+        private final MethodHandle handle;
+
+        /**
+         * @param handle A handle of the type (Object)long, (Object)double, (Object)boolean or (Object)Object matching the kind, null for {@link #ELEMENT}.
+         */
+        Reader(byte kind, MethodHandle handle) {
+            this.kind = kind;
+            this.handle = handle;
+        }
+
+        /**
+         * Gets the kind a field of the type is read as.
+         */
+        static byte getKind(Class<?> type) {
+            if (type == long.class || type == int.class || type == short.class || type == byte.class || type == char.class) {
+                return LONG;
+            } else if (type == double.class || type == float.class) {
+                return DOUBLE;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            }
+            return OBJECT;
+        }
+
+        static Class<?> getType(byte kind) {
+            switch (kind) {
+                case LONG:
+                    return long.class;
+                case DOUBLE:
+                    return double.class;
+                case BOOLEAN:
+                    return boolean.class;
+                default:
+                    return Object.class;
+            }
+        }
+
+        /**
+         * Gets the value as a double, NaN if it isn't numeric or the element isn't an instance of the class of the field.
+         */
+        double number(Object element) {
+            try {
+                switch (kind) {
+                    case LONG:
+                        return (long) handle.invokeExact(element);
+                    case DOUBLE:
+                        return (double) handle.invokeExact(element);
+                    case BOOLEAN:
+                        return (boolean) handle.invokeExact(element) ? 1 : 0;
+                    case OBJECT:
+                        return toDouble((Object) handle.invokeExact(element));
+                    default:
+                        return toDouble(element);
+                }
+            } catch (ClassCastException cce) {
+                return Double.NaN;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to read a field of " + element.getClass().getName() + ".", t);
+            }
+        }
+
+        private static double toDouble(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else if (value instanceof Character) {
+                return (Character) value;
+            }
+            return Double.NaN;
+        }
+    }
+
+    static final class Condition {
+        private final Reader reader;
+        private final byte operator;
+        private final Serializable operand;
+        private final boolean numeric;
+        private final boolean integral;
+        private final long operand_long;
+        private final double operand_double;
+
+        Condition(Reader reader, byte operator, Serializable operand) {
+            this.reader = reader;
+            this.operator = operator;
+            this.operand = operand;
+            this.numeric = operand instanceof Number || operand instanceof Character;
+            this.integral = operand instanceof Long || operand instanceof Integer || operand instanceof Short || operand instanceof Byte || operand instanceof Character;
+            this.operand_long = integral ? toLong(operand) : 0;
+            this.operand_double = numeric ? (operand instanceof Character ? (Character) operand : ((Number) operand).doubleValue()) : Double.NaN;
+        }
+
+        boolean matches(Object element) {
+            try {
+                switch (reader.kind) {
+                    case Reader.LONG:
+                        long long_value = (long) reader.handle.invokeExact(element);
+                        if (!numeric) {
+                            return false;
+                        }
+                        return test(integral ? Long.compare(long_value, operand_long) : Double.compare(long_value, operand_double));
+                    case Reader.DOUBLE:
+                        double double_value = (double) reader.handle.invokeExact(element);
+                        return numeric && test(Double.compare(double_value, operand_double));
+                    case Reader.BOOLEAN:
+                        boolean boolean_value = (boolean) reader.handle.invokeExact(element);
+                        return (operator == Query.EQ || operator == Query.NE) && operand instanceof Boolean
+                                && (boolean_value == (Boolean) operand) == (operator == Query.EQ);
+                    case Reader.OBJECT:
+                        return matchesObject((Object) reader.handle.invokeExact(element));
+                    default:
+                        return matchesObject(element);
+                }
+            } catch (ClassCastException cce) {
+                return false;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to read a field of " + element.getClass().getName() + ".", t);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private boolean matchesObject(Object value) {
+            if (numeric && (value instanceof Number || value instanceof Character)) {
+                boolean value_integral = value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Character;
+                if (integral && value_integral) {
+                    return test(Long.compare(toLong(value), operand_long));
+                }
+                return test(Double.compare(value instanceof Character ? (Character) value : ((Number) value).doubleValue(), operand_double));
+            }
+            if (operator == Query.EQ) {
+                return Objects.equals(value, operand);
+            } else if (operator == Query.NE) {
+                return !Objects.equals(value, operand);
+            } else if (value instanceof Comparable && operand != null && value.getClass() == operand.getClass()) {
+                return test(((Comparable) value).compareTo(operand));
+            }
+            return false;
+        }
+
+        private boolean test(int comparison) {
+            switch (operator) {
+                case Query.EQ:
+                    return comparison == 0;
+                case Query.NE:
+                    return comparison != 0;
+                case Query.LT:
+                    return comparison < 0;
+                case Query.LE:
+                    return comparison <= 0;
+                case Query.GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        private static long toLong(Object value) {
+            return value instanceof Character ? (Character) value : ((Number) value).longValue();
+        }
+    }
+
+    /**
+     * The aggregate of a range of elements.
+     */
+    static final class Partial {
+        private final byte aggregate;
+        private final int limit;
+        long scanned;
+        long matched;
+        long aggregated;
+        double sum;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        final PriorityQueue<Candidate> top;
+
+        /**
+         * @param elements The number of elements of the range, a range never holds more candidates than that so the queue is sized for the fewest.
+         */
+        Partial(byte aggregate, int limit, int elements) {
+            this.aggregate = aggregate;
+            this.limit = limit;
+            this.top = aggregate == Query.TOP ? new PriorityQueue<>(Math.min(limit, elements) + 1) : null;
+        }
+
+        void add(int index, double value) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            ++aggregated;
+            sum += value;
+            min = Double.isNaN(min) ? value : Math.min(min, value);
+            max = Double.isNaN(max) ? value : Math.max(max, value);
+            if (top != null) {
+                offer(new Candidate(index, value));
+            }
+        }
+
+        private void offer(Candidate candidate) {
+            if (top.size() < limit) {
+                top.add(candidate);
+            } else if (top.peek().value < candidate.value) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+
+        Partial merge(Partial other) {
+            scanned += other.scanned;
+            matched += other.matched;
+            aggregated += other.aggregated;
+            sum += other.sum;
+            min = Double.isNaN(min) ? other.min : Double.isNaN(other.min) ? min : Math.min(min, other.min);
+            max = Double.isNaN(max) ? other.max : Double.isNaN(other.max) ? max : Math.max(max, other.max);
+            if (top != null) {
+                for (Candidate candidate : other.top) {
+                    offer(candidate);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Gets the value of the aggregation.
+         */
+        double value() {
+            switch (aggregate) {
+                case Query.COUNT:
+                    return matched;
+                case Query.SUM:
+                    return aggregated == 0 ? Double.NaN : sum;
+                case Query.MIN:
+                    return min;
+                case Query.MAX:
+                    return max;
+                case Query.AVG:
+                    return aggregated == 0 ? Double.NaN : sum / aggregated;
+                default:
+                    return Double.NaN;
+            }
+        }
+
+        /**
+         * Gets the selected candidates in descending order of their values.
+         */
+        Candidate[] top() {
+            if (top == null) {
+                return new Candidate[0];
+            }
+            Candidate[] candidates = new Candidate[top.size()];
+            for (int index = candidates.length - 1; index >= 0; --index) {
+                candidates[index] = top.poll();
+            }
+            return candidates;
+        }
+    }
+
+    static final class Candidate implements Comparable<Candidate> {
+        final int index;
+        final double value;
+
+        Candidate(int index, double value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(value, other.value);
+        }
+    }
+}
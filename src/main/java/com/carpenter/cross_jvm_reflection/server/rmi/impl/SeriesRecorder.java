@@ -0,0 +1,125 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.TimeSeries;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+
+/**
+ * A ring of the timestamped samples of a primitive path, written by the {@link SeriesSampler} and drained by clients.
+ * The path is read through a ()long or ()double handle with invokeExact and the sample is stored in preallocated primitive arrays, so taking
+ * a sample doesn't allocate. Doubles are stored as their raw bits.
+ * <p>
+ * The sampler is the only writer, it publishes each sample by a volatile write of the number of samples written. Readers copy a window and
+ * then discard the part of it the sampler may have overwritten while it was copied.
+ */
+public class SeriesRecorder {
+    private final long id;
+    private final MethodHandle long_handle;
+    private final MethodHandle double_handle;
+    private final HandleSession session;
+    private final long period_nanos;
+    private final long[] times;
+    private final long[] values;
+    private final int mask;
+    private volatile long written;
+    private volatile long missed;
+    private long deadline;
+
+    /**
+     * @param handle The handle of the path, either ()long or ()double.
+     * @param session The session the recorder was started by, null for the root stub.
+     * @param capacity The number of samples the ring holds, rounded up to a power of 2.
+     */
+    public SeriesRecorder(long id, MethodHandle handle, HandleSession session, long period_nanos, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.id = id;
+        this.long_handle = handle.type().returnType() == long.class ? handle : null;
+        this.double_handle = long_handle == null ? handle : null;
+        this.session = session;
+        this.period_nanos = period_nanos;
+        this.times = new long[size];
+        this.values = new long[size];
+        this.mask = size - 1;
+        this.deadline = System.nanoTime();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public HandleSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the System.nanoTime() the next sample is due at, only read by the sampler.
+     */
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Takes a sample and schedules the next one, periods that have already passed are counted as missed. Only called by the sampler.
+     */
+    void sample() {
+        long now = System.nanoTime();
+        long value;
+        try {
+            value = long_handle != null ? (long) long_handle.invokeExact() : Double.doubleToRawLongBits((double) double_handle.invokeExact());
+        } catch (Throwable t) {
+            //The path can't be read right now, the period is counted as missed.
+            missed++;
+            schedule(now);
+            return;
+        }
+        long sequence = written;
+        int slot = (int) sequence & mask;
+        times[slot] = now;
+        values[slot] = value;
+        written = sequence + 1;
+        schedule(now);
+    }
+
+    private void schedule(long now) {
+        deadline += period_nanos;
+        long behind = now - deadline;
+        if (behind >= 0) {
+            long skipped = behind / period_nanos + 1;
+            deadline += skipped * period_nanos;
+            missed += skipped;
+        }
+    }
+
+    /**
+     * Reads the samples from the sequence on.
+     *
+     * @param max_samples The maximum number of samples to read.
+     */
+    public TimeSeries read(long sequence, int max_samples) {
+        sequence = Math.max(sequence, 0);
+        long last = written;
+        long first = Math.max(sequence, last - times.length);
+        int count = (int) Math.max(Math.min(last - first, max_samples), 0);
+        long[] read_times = new long[count];
+        long[] read_values = new long[count];
+        for (int index = 0; index < count; ++index) {
+            int slot = (int) (first + index) & mask;
+            read_times[index] = times[slot];
+            read_values[index] = values[slot];
+        }
+        //The sample being written may reuse the slot of the oldest sample held.
+        int overwritten = (int) Math.min(Math.max(written + 1 - times.length - first, 0), count);
+        long[] window_times = Arrays.copyOfRange(read_times, overwritten, count);
+        long[] window_values = Arrays.copyOfRange(read_values, overwritten, count);
+        double[] doubles = null;
+        if (double_handle != null) {
+            doubles = new double[window_values.length];
+            for (int index = 0; index < doubles.length; ++index) {
+                doubles[index] = Double.longBitsToDouble(window_values[index]);
+            }
+            window_values = null;
+        }
+        return new TimeSeries(first + count, first + overwritten - sequence, missed, window_times, window_values, doubles);
+    }
+}
@@ -0,0 +1,110 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes the samples of every {@link SeriesRecorder} of a server on a single daemon thread, which is started with the first recorder.
+ * The thread parks until the earliest deadline of its recorders, so the shortest period that is kept is bounded by the resolution of the
+ * platform's timer, typically around 50 microseconds. The recorders are held in an array that is replaced when one is added or removed, so the
+ * sampling loop doesn't allocate. The thread is stopped when the sampler is closed.
+ */
+public class SeriesSampler {
+    private static final SeriesRecorder[] NONE = new SeriesRecorder[0];
+
+    private final Map<Long, SeriesRecorder> recorders = new ConcurrentHashMap<>();
+    private final AtomicLong recorder_ids = new AtomicLong();
+    private volatile SeriesRecorder[] sampled = NONE;
+    private Thread thread;
+    private boolean closed;
+
+    /**
+     * Gets the id the next recorder is created with.
+     */
+    public long nextId() {
+        return recorder_ids.incrementAndGet();
+    }
+
+    /**
+     * Starts sampling the recorder.
+     *
+     * @throws IllegalStateException if the sampler was closed.
+     */
+    public synchronized void add(SeriesRecorder recorder) {
+        if (closed) {
+            throw new IllegalStateException("The sampler was closed.");
+        }
+        recorders.put(recorder.getId(), recorder);
+        sampled = recorders.values().toArray(NONE);
+        if (thread == null) {
+            thread = new Thread(this::run, "CrossJVMReflection-Sampler");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Gets the recorder with the id, null if there is none.
+     */
+    public SeriesRecorder get(long id) {
+        return recorders.get(id);
+    }
+
+    /**
+     * Stops sampling the recorder with the id.
+     *
+     * @return Whether there was such a recorder.
+     */
+    public synchronized boolean remove(long id) {
+        if (recorders.remove(id) == null) {
+            return false;
+        }
+        sampled = recorders.values().toArray(NONE);
+        return true;
+    }
+
+    /**
+     * Stops sampling the recorders started by the session.
+     */
+    public synchronized void release(HandleSession session) {
+        if (recorders.values().removeIf(recorder -> recorder.getSession() == session)) {
+            sampled = recorders.values().toArray(NONE);
+        }
+    }
+
+    /**
+     * Stops sampling every recorder and stops the thread.
+     */
+    public synchronized void close() {
+        closed = true;
+        recorders.clear();
+        sampled = NONE;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            SeriesRecorder[] current = sampled;
+            if (current.length == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            long next = Long.MAX_VALUE;
+            for (SeriesRecorder recorder : current) {
+                if (recorder.getDeadline() - System.nanoTime() <= 0) {
+                    recorder.sample();
+                }
+                next = Math.min(next, recorder.getDeadline() - System.nanoTime());
+            }
+            if (next > 0) {
+                LockSupport.parkNanos(this, next);
+            }
+        }
+    }
+}
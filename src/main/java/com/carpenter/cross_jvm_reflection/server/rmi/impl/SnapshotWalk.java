@@ -0,0 +1,278 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.Snapshot;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Walks the graph reachable from a root breadth first and writes it into a {@link Snapshot}, so that every object is a node at the smallest
+ * depth it was reached at. The fields of a class are resolved once per jvm into getters adapted to (Object)Object, the include and exclude
+ * patterns are applied to them once per walk.
+ * <p>
+ * The walk reads each object once but doesn't stop the threads that mutate the graph, objects read later in the walk may reflect writes
+ * made after those read earlier.
+ */
+final class SnapshotWalk {
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return Layout.of(type);
+        }
+    };
+
+    private final Registrar registrar;
+    private final int max_depth;
+    private final Pattern include;
+    private final Pattern exclude;
+    private final Snapshot.Writer writer = new Snapshot.Writer();
+    private final Map<Object, Integer> indices = new IdentityHashMap<>();
+    private final List<Object> objects = new ArrayList<>();
+    private final List<Integer> depths = new ArrayList<>();
+    private final Map<Class<?>, boolean[]> masks = new HashMap<>();
+
+    /**
+     * @param max_depth The number of levels of the graph that are expanded, the root being the first level.
+     * @param includes Patterns of the fields to read, null or empty to read every field not excluded.
+     * @param excludes Patterns of the fields not to read, may be null.
+     */
+    SnapshotWalk(Registrar registrar, int max_depth, String[] includes, String[] excludes) {
+        this.registrar = registrar;
+        this.max_depth = max_depth;
+        this.include = compile(includes);
+        this.exclude = compile(excludes);
+    }
+
+    /**
+     * Reads the values of every instance field of an object, in the order of the fields of its layout.
+     *
+     * @return The values, or null if any of the fields of its class can't be made accessible.
+     * @throws RemoteException if a field couldn't be read.
+     */
+    static Object[] readFields(Object object) throws RemoteException {
+        Layout layout = LAYOUTS.get(object.getClass());
+        if (layout.getters == null) {
+            return null;
+        }
+        Object[] values = new Object[layout.getters.length];
+        for (int field = 0; field < values.length; ++field) {
+            try {
+                values[field] = (Object) layout.getters[field].invokeExact(object);
+            } catch (Throwable t) {
+                throw new RemoteException("Failed to read " + layout.names[field] + " of " + object.getClass().getName() + ", " + t);
+            }
+        }
+        return values;
+    }
+
+    Snapshot walk(Object root) throws RemoteException {
+        if (root != null) {
+            add(root, 1);
+        }
+        for (int node = 0; node < objects.size(); ++node) {
+            if (depths.get(node) <= max_depth) {
+                expand(node, objects.get(node), depths.get(node) + 1);
+            }
+        }
+        return writer.finish();
+    }
+
+    private void expand(int node, Object object, int child_depth) throws RemoteException {
+        Object[] values;
+        if (object instanceof Object[]) {
+            values = ((Object[]) object).clone();
+        } else if (object instanceof Collection || object instanceof Map) {
+            try {
+                values = object instanceof Map ? entries((Map<?, ?>) object) : ((Collection<?>) object).toArray();
+            } catch (RuntimeException e) {
+                //Modified concurrently, left unexpanded like an object whose fields can't be read.
+                return;
+            }
+        } else {
+            Layout layout = LAYOUTS.get(object.getClass());
+            if (layout.getters == null) {
+                return;
+            }
+            boolean[] mask = getMask(object.getClass(), layout);
+            values = new Object[layout.names.length];
+            int count = 0;
+            for (int field = 0; field < mask.length; ++field) {
+                if (mask[field]) {
+                    try {
+                        values[count++] = (Object) layout.getters[field].invokeExact(object);
+                    } catch (Throwable t) {
+                        throw new RemoteException("Failed to read " + layout.names[field] + " of " + object.getClass().getName() + ", " + t);
+                    }
+                }
+            }
+            values = count == values.length ? values : Arrays.copyOf(values, count);
+        }
+        writer.expand(node, values.length);
+        for (Object value : values) {
+            put(value, child_depth);
+        }
+    }
+
+    private void put(Object value, int depth) throws RemoteException {
+        if (isInline(value)) {
+            writer.putValue(value);
+        } else if (value instanceof Enum) {
+            writer.putValue(((Enum<?>) value).name());
+        } else {
+            Integer node = indices.get(value);
+            writer.putNode(node != null ? node : add(value, depth));
+        }
+    }
+
+    private int add(Object object, int depth) throws RemoteException {
+        Class<?> type = object.getClass();
+        int kind = type.isArray() || object instanceof Collection ? Snapshot.ELEMENTS : object instanceof Map ? Snapshot.MAP : Snapshot.OBJECT;
+        String[] fields = null;
+        if (kind == Snapshot.OBJECT) {
+            Layout layout = LAYOUTS.get(type);
+            if (layout.getters != null) {
+                boolean[] mask = getMask(type, layout);
+                List<String> included = new ArrayList<>();
+                for (int field = 0; field < mask.length; ++field) {
+                    if (mask[field]) {
+                        included.add(layout.names[field]);
+                    }
+                }
+                fields = included.toArray(new String[0]);
+            }
+        }
+        int node = writer.node(registrar.register(object), writer.type(type, type.getName(), kind, fields));
+        indices.put(object, node);
+        objects.add(object);
+        depths.add(depth);
+        return node;
+    }
+
+    private boolean[] getMask(Class<?> type, Layout layout) {
+        boolean[] mask = masks.get(type);
+        if (mask == null) {
+            mask = new boolean[layout.names.length];
+            for (int field = 0; field < mask.length; ++field) {
+                String name = layout.names[field];
+                String qualified = layout.qualified_names[field];
+                mask[field] = (include == null || include.matcher(name).matches() || include.matcher(qualified).matches())
+                        && (exclude == null || !(exclude.matcher(name).matches() || exclude.matcher(qualified).matches()));
+            }
+            masks.put(type, mask);
+        }
+        return mask;
+    }
+
+    private static Object[] entries(Map<?, ?> map) {
+        Object[] entries = map.entrySet().toArray();
+        Object[] values = new Object[entries.length * 2];
+        for (int index = 0; index < entries.length; ++index) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entries[index];
+            values[index * 2] = entry.getKey();
+            values[index * 2 + 1] = entry.getValue();
+        }
+        return values;
+    }
+
+    private static boolean isInline(Object value) {
+        if (value == null) {
+            return true;
+        }
+        Class<?> type = value.getClass();
+        return type == String.class || (type.isArray() && type.getComponentType().isPrimitive())
+                || type == Integer.class || type == Long.class || type == Boolean.class || type == Double.class
+                || type == Float.class || type == Short.class || type == Character.class || type == Byte.class;
+    }
+
+    /**
+     * Compiles patterns in which '*' matches any characters into one regular expression, null if there are none.
+     */
+    private static Pattern compile(String[] patterns) {
+        if (patterns == null || patterns.length == 0) {
+            return null;
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String pattern : patterns) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            String[] parts = pattern.split("\\*", -1);
+            for (int part = 0; part < parts.length; ++part) {
+                if (part > 0) {
+                    regex.append(".*");
+                }
+                if (!parts[part].isEmpty()) {
+                    regex.append(Pattern.quote(parts[part]));
+                }
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Registers the objects of the snapshot as uid's.
+     */
+    interface Registrar {
+        long register(Object object) throws RemoteException;
+    }
+
+    /**
+     * The instance fields of a class and its superclasses, in declaration order starting with the class itself.
+     */
+    private static final class Layout {
+        private final String[] names;
+        private final String[] qualified_names;
+        private final MethodHandle[] getters;
+
+        private Layout(String[] names, String[] qualified_names, MethodHandle[] getters) {
+            this.names = names;
+            this.qualified_names = qualified_names;
+            this.getters = getters;
+        }
+
+        /**
+         * Gets the layout of a class, without getters if any of the fields can't be made accessible.
+         */
+        private static Layout of(Class<?> type) {
+            List<String> names = new ArrayList<>();
+            List<String> qualified_names = new ArrayList<>();
+            List<MethodHandle> getters = new ArrayList<>();
+            Set<String> declared = new HashSet<>();
+            boolean accessible = true;
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    String qualified_name = current.getName() + '.' + field.getName();
+                    names.add(declared.add(field.getName()) ? field.getName() : qualified_name);
+                    qualified_names.add(qualified_name);
+                    if (accessible) {
+                        try {
+                            field.setAccessible(true);
+                            getters.add(MethodHandles.lookup().unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)));
+                        } catch (IllegalAccessException | RuntimeException e) {
+                            //Fields of classes in modules that aren't open to the agent.
+                            accessible = false;
+                        }
+                    }
+                }
+            }
+            return new Layout(names.toArray(new String[0]), qualified_names.toArray(new String[0]), accessible ? getters.toArray(new MethodHandle[0]) : null);
+        }
+    }
+}
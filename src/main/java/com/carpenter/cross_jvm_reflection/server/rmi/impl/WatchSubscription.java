@@ -0,0 +1,263 @@
+package com.carpenter.cross_jvm_reflection.server.rmi.impl;
+
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchDelta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchListener;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * The state of a subscription between samples: the values last delivered and the uid's it watches for invalidation.
+ * Samples of one subscription never overlap, so the state is only guarded against cancellation.
+ * <p>
+ * Deltas are delivered off the sampling threads, one at a time. A delta sampled while the previous one is still being delivered waits, and
+ * the deltas sampled meanwhile are merged into it, so a slow listener holds at most one pending delta whatever its interval.
+ * <p>
+ * Immutable values are kept as they are and primitive arrays as copies, any other value is kept as a {@link ContentHash} of its contents so that
+ * an object mutated in place is seen as changed. Changes deeper than {@link #HASH_DEPTH} levels into such a value aren't seen.
+ */
+public class WatchSubscription {
+    static final int HASH_DEPTH = 32;
+    static final long DELIVERY_TIMEOUT_MILLIS = 30_000;
+
+    private final long id;
+    private final PathExpression[] paths;
+    private final WatchListener listener;
+    private final HandleSession session;
+    private final Object[] previous;
+    private final Set<Long> uids = new HashSet<>();
+    private long sample;
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean cancelled;
+    private WatchDelta pending;
+    private boolean delivering;
+    private long delivery_start;
+    private Thread delivery_thread;
+
+    /**
+     * @param session The session uid paths are registered on behalf of, null for the root stub.
+     */
+    public WatchSubscription(long id, PathExpression[] paths, WatchListener listener, HandleSession session) {
+        this.id = id;
+        this.paths = paths;
+        this.listener = listener;
+        this.session = session;
+        this.previous = new Object[paths.length];
+        for (PathExpression path : paths) {
+            if (path.getOwnerUID() != 0) {
+                uids.add(path.getOwnerUID());
+            }
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public PathExpression[] getPaths() {
+        return paths;
+    }
+
+    public WatchListener getListener() {
+        return listener;
+    }
+
+    public HandleSession getSession() {
+        return session;
+    }
+
+    void schedule(ScheduledFuture<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Stops the sampling of the subscription and interrupts a delivery in progress.
+     */
+    void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> future = this.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+        synchronized (this) {
+            pending = null;
+            if (delivery_thread != null) {
+                delivery_thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues a delta for delivery, merging it into the delta that is already waiting.
+     *
+     * @return true if no delivery is in progress and the caller has to start one.
+     */
+    synchronized boolean offer(WatchDelta delta) {
+        pending = pending == null ? delta : merge(pending, delta);
+        if (delivering) {
+            return false;
+        }
+        delivering = true;
+        delivery_start = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Takes the delta to deliver next on the delivering thread.
+     *
+     * @return The delta, or null once there is none and the delivery ended.
+     */
+    synchronized WatchDelta next() {
+        WatchDelta delta = pending;
+        pending = null;
+        if (delta == null || cancelled) {
+            delivering = false;
+            delivery_thread = null;
+            return null;
+        }
+        delivery_start = System.nanoTime();
+        delivery_thread = Thread.currentThread();
+        return delta;
+    }
+
+    /**
+     * Whether a delivery has been in progress for longer than {@link #DELIVERY_TIMEOUT_MILLIS}.
+     */
+    synchronized boolean isStalled() {
+        return delivering && System.nanoTime() - delivery_start > TimeUnit.MILLISECONDS.toNanos(DELIVERY_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Merges two deltas of the subscription into one holding the latest value of every path changed by either, and every invalidated uid.
+     */
+    private static WatchDelta merge(WatchDelta older, WatchDelta newer) {
+        Map<Integer, Serializable> values = new TreeMap<>();
+        for (int index = 0; index < older.getIndices().length; ++index) {
+            values.put(older.getIndices()[index], older.getValues()[index]);
+        }
+        for (int index = 0; index < newer.getIndices().length; ++index) {
+            values.put(newer.getIndices()[index], newer.getValues()[index]);
+        }
+        int[] indices = new int[values.size()];
+        int count = 0;
+        for (int index : values.keySet()) {
+            indices[count++] = index;
+        }
+        long[] invalidated = LongStream.concat(Arrays.stream(older.getInvalidated()), Arrays.stream(newer.getInvalidated())).distinct().toArray();
+        return new WatchDelta(newer.getSubscription(), newer.getSample(), indices, values.values().toArray(new Serializable[0]), invalidated);
+    }
+
+    /**
+     * Compares the sampled values with those last delivered and removes the watched uid's that no longer resolve.
+     *
+     * @param pool The pool large arrays inside of the values are hashed on.
+     * @return The delta to deliver, or null if nothing changed.
+     */
+    WatchDelta diff(Serializable[] values, HandleTable object_store, ForkJoinPool pool) {
+        int[] indices = new int[values.length];
+        int changed = 0;
+        boolean first = sample++ == 0;
+        for (int index = 0; index < values.length; ++index) {
+            Serializable value = values[index];
+            Object current = isComparable(value) ? value : hash(value, pool);
+            if (first || !Objects.deepEquals(previous[index], current)) {
+                indices[changed++] = index;
+                previous[index] = current == value ? copy(value) : current;
+                if (paths[index].isUidTerminal() && value instanceof Long && (Long) value != 0) {
+                    uids.add((Long) value);
+                }
+            }
+        }
+        long[] invalidated = new long[uids.size()];
+        int stale = 0;
+        for (Iterator<Long> iterator = uids.iterator(); iterator.hasNext(); ) {
+            long uid = iterator.next();
+            if (object_store.resolve(uid) == null) {
+                invalidated[stale++] = uid;
+                iterator.remove();
+            }
+        }
+        if (changed == 0 && stale == 0) {
+            return null;
+        }
+        Serializable[] changed_values = new Serializable[changed];
+        for (int index = 0; index < changed; ++index) {
+            changed_values[index] = values[indices[index]];
+        }
+        return new WatchDelta(id, sample, Arrays.copyOf(indices, changed), changed_values, Arrays.copyOf(invalidated, stale));
+    }
+
+    /**
+     * Whether the value can be kept and compared as it is, or as a copy for a primitive array.
+     */
+    private static boolean isComparable(Serializable value) {
+        if (value == null) {
+            return true;
+        }
+        Class<?> type = value.getClass();
+        return type == String.class || type == Integer.class || type == Long.class || type == Double.class || type == Float.class
+                || type == Short.class || type == Byte.class || type == Character.class || type == Boolean.class || value instanceof Enum
+                || type.isArray() && type.getComponentType().isPrimitive();
+    }
+
+    /**
+     * Hashes the contents of a value that may be mutated in place, a value that can't be hashed is kept as a new object so that it is
+     * delivered by every sample.
+     */
+    private static Object hash(Serializable value, ForkJoinPool pool) {
+        try {
+            return new ContentKey(value.getClass(), new ContentHash(pool, HASH_DEPTH).hash(value));
+        } catch (RemoteException | RuntimeException e) {
+            return new Object();
+        }
+    }
+
+    /**
+     * Copies arrays so that an array mutated in place is still seen as changed by the next sample.
+     */
+    private static Serializable copy(Serializable value) {
+        if (value == null || !value.getClass().isArray()) {
+            return value;
+        }
+        int length = Array.getLength(value);
+        Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return (Serializable) copy;
+    }
+
+    /**
+     * The class and content hash of a value that was last delivered.
+     */
+    private static final class ContentKey {
+        private final Class<?> type;
+        private final long hash;
+
+        private ContentKey(Class<?> type, long hash) {
+            this.type = type;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ContentKey && ((ContentKey) o).type == type && ((ContentKey) o).hash == hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.carpenter.cross_jvm_reflection.server.shm;
+
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.shm.SharedMemoryLayout;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.rmi.RemoteException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples a fixed set of path expressions at a fixed rate and publishes their values into a memory mapped file (see {@link SharedMemoryLayout}),
+ * so that processes on the same host can poll them without a round trip to the server.
+ * The paths are compiled into plans of the server once, a sample reads every plan into a scratch array first so that the seqlock is only held while
+ * the values are copied into the file. A path that can't be resolved publishes the unresolvable value of its type.
+ * <p>
+ * A file is never rewritten in place, since readers that mapped it keep its directory and offsets. A new file is written under a temporary
+ * name and renamed over the path once it is complete, and a file previously published at the path is first marked as stopped so that its
+ * readers know to map the path again.
+ */
+public class SharedMemoryPublisher implements Closeable {
+    private final ServerStub server;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long[] plans;
+    private final byte[] types;
+    private final long[] values;
+    private final int sequence_offset;
+    private final int slots_offset;
+    private final ScheduledExecutorService sampler;
+    private long sequence;
+    private boolean closed;
+
+    /**
+     * Creates the file, replacing any existing file at the path, and starts sampling.
+     *
+     * @param types The type of each path, see {@link SharedMemoryLayout#getType(String)}.
+     * @param refresh_micros The interval between samples in microseconds.
+     */
+    public SharedMemoryPublisher(ServerStub server, String path, PathExpression[] paths, byte[] types, long refresh_micros) throws IOException {
+        if (paths.length != types.length) {
+            throw new IllegalArgumentException("Expected a type for each of the " + paths.length + " paths but got " + types.length + ".");
+        }
+        if (refresh_micros <= 0) {
+            throw new IllegalArgumentException("The refresh interval must be positive.");
+        }
+        this.server = server;
+        this.plans = new long[paths.length];
+        this.types = types.clone();
+        this.values = new long[paths.length];
+        byte[][] directory = new byte[paths.length][];
+        int directory_length = 0;
+        for (int slot = 0; slot < paths.length; ++slot) {
+            plans[slot] = server.plan(paths[slot]);
+            directory[slot] = paths[slot].toString().getBytes(StandardCharsets.UTF_8);
+            directory_length += 5 + directory[slot].length;
+        }
+        this.sequence_offset = SharedMemoryLayout.align(SharedMemoryLayout.DIRECTORY_OFFSET + directory_length);
+        this.slots_offset = SharedMemoryLayout.getSlotsOffset(sequence_offset);
+        int length = SharedMemoryLayout.align(slots_offset + paths.length * SharedMemoryLayout.SLOT_SIZE);
+
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        this.file = new RandomAccessFile(temporary.toFile(), "rw");
+        try {
+            file.setLength(length);
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException ioe) {
+            file.close();
+            Files.deleteIfExists(temporary);
+            throw ioe;
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.position(SharedMemoryLayout.DIRECTORY_OFFSET);
+        for (int slot = 0; slot < paths.length; ++slot) {
+            buffer.put(types[slot]);
+            buffer.putInt(directory[slot].length);
+            buffer.put(directory[slot]);
+        }
+        buffer.putInt(SharedMemoryLayout.VERSION_OFFSET, SharedMemoryLayout.VERSION);
+        buffer.putInt(SharedMemoryLayout.SLOT_COUNT_OFFSET, paths.length);
+        buffer.putInt(SharedMemoryLayout.SEQUENCE_OFFSET_OFFSET, sequence_offset);
+        buffer.putLong(SharedMemoryLayout.REFRESH_OFFSET, refresh_micros);
+        buffer.putInt(SharedMemoryLayout.STATE_OFFSET, 1);
+        sample();
+        //The magic is written last so that a reader never maps a file whose header is incomplete.
+        SharedMemoryLayout.storeFence();
+        buffer.putInt(SharedMemoryLayout.MAGIC_OFFSET, SharedMemoryLayout.MAGIC);
+        try {
+            stop(target);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ioe) {
+            file.close();
+            Files.deleteIfExists(temporary);
+            throw ioe;
+        }
+
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CrossJVMReflection-SharedMemory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, refresh_micros, refresh_micros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Marks a file previously published at the path as stopped, a file that isn't a published file is left as it is.
+     */
+    private static void stop(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try (RandomAccessFile previous = new RandomAccessFile(path.toFile(), "rw")) {
+            if (previous.length() < SharedMemoryLayout.DIRECTORY_OFFSET) {
+                return;
+            }
+            MappedByteBuffer mapped = previous.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SharedMemoryLayout.DIRECTORY_OFFSET);
+            mapped.order(ByteOrder.nativeOrder());
+            if (mapped.getInt(SharedMemoryLayout.MAGIC_OFFSET) == SharedMemoryLayout.MAGIC) {
+                mapped.putInt(SharedMemoryLayout.STATE_OFFSET, 0);
+                mapped.force();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of samples that have been published.
+     */
+    public synchronized long getSamples() {
+        return sequence >>> 1;
+    }
+
+    /**
+     * Reads every plan and publishes the values under the seqlock.
+     */
+    private synchronized void sample() {
+        if (closed) {
+            return;
+        }
+        for (int slot = 0; slot < plans.length; ++slot) {
+            values[slot] = read(slot);
+        }
+        buffer.putLong(sequence_offset, ++sequence);
+        SharedMemoryLayout.storeFence();
+        for (int slot = 0; slot < values.length; ++slot) {
+            buffer.putLong(slots_offset + slot * SharedMemoryLayout.SLOT_SIZE, values[slot]);
+        }
+        buffer.putLong(sequence_offset + 8, System.currentTimeMillis());
+        SharedMemoryLayout.storeFence();
+        buffer.putLong(sequence_offset, ++sequence);
+    }
+
+    private long read(int slot) {
+        long plan = plans[slot];
+        try {
+            switch (types[slot]) {
+                case SharedMemoryLayout.INT8:
+                    return server.int8_plan(plan);
+                case SharedMemoryLayout.INT16:
+                    return server.int16_plan(plan);
+                case SharedMemoryLayout.INT32:
+                    return server.int32_plan(plan);
+                case SharedMemoryLayout.INT64:
+                    return server.int64_plan(plan);
+                case SharedMemoryLayout.FP32:
+                    return Float.floatToRawIntBits(server.fp32_plan(plan));
+                case SharedMemoryLayout.FP64:
+                    return Double.doubleToRawLongBits(server.fp64_plan(plan));
+                case SharedMemoryLayout.BOOL:
+                    return server.bool_plan(plan) ? 1 : 0;
+                default:
+                    return server.uint16_plan(plan);
+            }
+        } catch (RemoteException re) {
+            return unresolvable(types[slot]);
+        }
+    }
+
+    private static long unresolvable(byte type) {
+        switch (type) {
+            case SharedMemoryLayout.FP32:
+                return Float.floatToRawIntBits(-1);
+            case SharedMemoryLayout.FP64:
+                return Double.doubleToRawLongBits(-1);
+            case SharedMemoryLayout.BOOL:
+                return 0;
+            case SharedMemoryLayout.UINT16:
+                return Character.MAX_VALUE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Stops sampling and marks the file as stopped, the file itself is left in place for readers that still have it mapped.
+     */
+    @Override
+    public void close() throws IOException {
+        sampler.shutdownNow();
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                buffer.putInt(SharedMemoryLayout.STATE_OFFSET, 0);
+                buffer.force();
+                file.close();
+            }
+        }
+    }
+}
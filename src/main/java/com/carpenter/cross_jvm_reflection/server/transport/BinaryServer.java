@@ -0,0 +1,529 @@
+package com.carpenter.cross_jvm_reflection.server.transport;
+
+import com.carpenter.cross_jvm_reflection.server.execution.ExecutionGate;
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchDelta;
+import com.carpenter.cross_jvm_reflection.shared.rmi.WatchListener;
+import com.carpenter.cross_jvm_reflection.shared.transport.BinaryProtocol;
+import com.carpenter.cross_jvm_reflection.shared.transport.FrameWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a {@link ServerStub} over the {@link BinaryProtocol} on a TCP or unix domain socket.
+ * A single selector thread reads every connection, requests are decoded and invoked on a pool of worker threads so that
+ * pipelined requests from one connection are served concurrently. Workers take the queued requests of the connections in turn, so a connection
+ * that pipelines many requests doesn't hold up the requests of the others. Workers write their responses directly and only leave the rest of a
+ * response to the selector thread when the socket is full. Sessions opened through a connection are released when it closes.
+ * Subscription deltas are pushed over the connection of the subscriber, a subscription is cancelled by the server once its connection is gone,
+ * or once the subscriber leaves {@link #MAX_PENDING_PUSHES} deltas or {@link #MAX_PENDING_PUSH_BYTES} bytes of deltas unread.
+ * Each connection is a separate client of an {@link ExecutionGate} the served stub may be limited by.
+ * The transport isn't authenticated, so request frames are limited in length and a connection that announces a longer frame is closed
+ * before anything is allocated for it. A connection may also only have a limited number of requests waiting for a worker, the connection isn't
+ * read while it has that many and the requests that were already read past the limit are answered with an error.
+ */
+public class BinaryServer implements Closeable {
+    public static final int DEFAULT_MAX_PENDING = 1024;
+    public static final int MAX_PENDING_PUSHES = 64;
+    public static final int MAX_PENDING_PUSH_BYTES = 16 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final ServerStub server;
+    private final ServerSocketChannel channel;
+    private final String unix_path;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final int max_request_length;
+    private final int max_pending;
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> resumes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connection_ids = new AtomicInteger();
+    private final ArrayDeque<Connection> ready = new ArrayDeque<>();
+    private final Thread thread;
+
+    private BinaryServer(ServerStub server, ServerSocketChannel channel, String unix_path, int worker_threads, int max_request_length, int max_pending) throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.unix_path = unix_path;
+        this.selector = Selector.open();
+        AtomicInteger worker_ids = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(worker_threads, runnable -> {
+            Thread worker = new Thread(runnable, "CrossJVMReflection-Transport-Worker-" + worker_ids.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        this.max_request_length = max_request_length;
+        this.max_pending = max_pending;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "CrossJVMReflection-Transport");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Serves the server on a TCP socket.
+     *
+     * @param host The address to bind, usually the loopback address since the transport isn't authenticated.
+     * @param port The port to bind, 0 for an ephemeral port (see {@link #getAddress()}).
+     */
+    public static BinaryServer tcp(ServerStub server, String host, int port, int worker_threads) throws IOException {
+        return tcp(server, host, port, worker_threads, BinaryProtocol.DEFAULT_MAX_REQUEST_LENGTH, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Serves the server on a TCP socket.
+     *
+     * @param host The address to bind, usually the loopback address since the transport isn't authenticated.
+     * @param port The port to bind, 0 for an ephemeral port (see {@link #getAddress()}).
+     * @param max_request_length The maximum length of a request frame in bytes, a connection that sends a longer frame is closed.
+     * @param max_pending The maximum number of requests of a connection that wait for a worker.
+     */
+    public static BinaryServer tcp(ServerStub server, String host, int port, int worker_threads, int max_request_length, int max_pending) throws IOException {
+        checkLimits(max_request_length, max_pending);
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(host, port));
+        return new BinaryServer(server, channel, null, worker_threads, max_request_length, max_pending);
+    }
+
+    /**
+     * Serves the server on a unix domain socket, any existing file at the path is replaced.
+     *
+     * @throws UnsupportedOperationException before Java 16.
+     */
+    public static BinaryServer unix(ServerStub server, String path, int worker_threads) throws IOException {
+        return unix(server, path, worker_threads, BinaryProtocol.DEFAULT_MAX_REQUEST_LENGTH, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Serves the server on a unix domain socket, any existing file at the path is replaced.
+     *
+     * @param max_request_length The maximum length of a request frame in bytes, a connection that sends a longer frame is closed.
+     * @param max_pending The maximum number of requests of a connection that wait for a worker.
+     * @throws UnsupportedOperationException before Java 16.
+     */
+    public static BinaryServer unix(ServerStub server, String path, int worker_threads, int max_request_length, int max_pending) throws IOException {
+        checkLimits(max_request_length, max_pending);
+        ProtocolFamily family = BinaryProtocol.getUnixProtocolFamily();
+        if (family == null) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.");
+        }
+        ServerSocketChannel channel;
+        try {
+            channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, family);
+        } catch (ReflectiveOperationException roe) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.", roe);
+        }
+        Files.deleteIfExists(Paths.get(path));
+        channel.bind(BinaryProtocol.getUnixAddress(path));
+        return new BinaryServer(server, channel, path, worker_threads, max_request_length, max_pending);
+    }
+
+    private static void checkLimits(int max_request_length, int max_pending) {
+        if (max_request_length < 14) {
+            throw new IllegalArgumentException("The maximum request length " + max_request_length + " is shorter than the header of a request.");
+        } else if (max_pending <= 0) {
+            throw new IllegalArgumentException("A connection must be allowed at least one pending request.");
+        }
+    }
+
+    /**
+     * Gets the address the server is bound to.
+     */
+    public SocketAddress getAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        selector.wakeup();
+        workers.shutdown();
+        channel.close();
+        if (unix_path != null) {
+            Files.deleteIfExists(Paths.get(unix_path));
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted() && channel.isOpen()) {
+                selector.select();
+                for (Connection connection; (connection = flushes.poll()) != null; ) {
+                    if (connection.key.isValid()) {
+                        updateInterest(connection, !connection.flush());
+                    }
+                }
+                for (Connection connection; (connection = resumes.poll()) != null; ) {
+                    if (connection.key.isValid()) {
+                        updateInterest(connection, (connection.key.interestOps() & SelectionKey.OP_WRITE) != 0);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable() && connection.flush()) {
+                                updateInterest(connection, false);
+                            } else if (key.isValid()) {
+                                updateInterest(connection, (key.interestOps() & SelectionKey.OP_WRITE) != 0);
+                            }
+                        }
+                    } catch (IOException ioe) {
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            //The selector was closed.
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                //Nothing to clean up.
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = channel.accept();
+        if (client != null) {
+            client.configureBlocking(false);
+            Connection connection = new Connection(client);
+            connection.key = client.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    /**
+     * Reads the connection unless it is paused, and waits for it to be writable if responses are left. Runs on the selector thread.
+     */
+    private void updateInterest(Connection connection, boolean write) {
+        boolean paused;
+        synchronized (ready) {
+            paused = connection.paused;
+        }
+        connection.key.interestOps((paused ? 0 : SelectionKey.OP_READ) | (write ? SelectionKey.OP_WRITE : 0));
+    }
+
+    /**
+     * Queues a request of the connection and submits a task to serve the next request, the connection is paused once max_pending requests are
+     * queued and a request past that is rejected. Runs on the selector thread.
+     */
+    private void dispatch(Connection connection, ByteBuffer frame) {
+        boolean queued;
+        synchronized (ready) {
+            queued = connection.requests.size() < max_pending;
+            if (queued) {
+                connection.requests.add(frame);
+                if (!connection.ready) {
+                    connection.ready = true;
+                    ready.add(connection);
+                }
+            }
+            connection.paused = connection.requests.size() >= max_pending;
+        }
+        if (!queued) {
+            FrameWriter response = new FrameWriter(64);
+            response.putLong(frame.getLong());
+            response.putByte(BinaryProtocol.STATUS_ERROR);
+            response.putString(new RemoteException("The server is busy, the connection already has " + max_pending + " requests waiting.").toString());
+            write(connection, response);
+            return;
+        }
+        workers.execute(this::serveNext);
+    }
+
+    /**
+     * Serves the next request of the connection at the head of the ready queue, and moves the connection to the back if it has more.
+     * There is a task for every queued request, so every request is served, and connections take turns regardless of how many requests each queued.
+     */
+    private void serveNext() {
+        Connection connection;
+        ByteBuffer frame;
+        boolean resumed;
+        synchronized (ready) {
+            connection = ready.poll();
+            frame = connection.requests.poll();
+            if (connection.requests.isEmpty()) {
+                connection.ready = false;
+            } else {
+                ready.add(connection);
+            }
+            resumed = connection.paused;
+            connection.paused = false;
+        }
+        if (resumed) {
+            resumes.add(connection);
+            selector.wakeup();
+        }
+        serve(connection, frame);
+    }
+
+    /**
+     * Decodes and invokes a request, then queues the response on the connection. Runs on a worker thread.
+     */
+    private void serve(Connection connection, ByteBuffer frame) {
+        long request_id = frame.getLong();
+        int target = frame.getInt();
+        short method_id = frame.getShort();
+        FrameWriter response = new FrameWriter(64);
+        response.putLong(request_id);
+        try {
+            if (method_id == BinaryProtocol.HELLO) {
+                if (frame.getInt() != BinaryProtocol.MAGIC || frame.getInt() != BinaryProtocol.getSignature()) {
+                    throw new RemoteException("The client and server were built from different versions of " + ServerStub.class.getName() + ".");
+                }
+                connection.greeted = true;
+                response.putByte(BinaryProtocol.STATUS_OK);
+            } else {
+                if (!connection.greeted) {
+                    throw new RemoteException("The client didn't send a hello frame.");
+                }
+                Method method = BinaryProtocol.getMethod(method_id);
+                ServerStub stub = target == 0 ? server : connection.sessions.get(target);
+                if (stub == null) {
+                    throw new RemoteException("The session " + target + " has been released.");
+                }
+                Class<?>[] types = method.getParameterTypes();
+                Object[] arguments = new Object[types.length];
+                for (int index = 0; index < types.length; ++index) {
+                    if (types[index] == WatchListener.class) {
+                        int listener_id = frame.getInt();
+                        arguments[index] = listener_id == 0 ? null : new PushListener(connection, listener_id);
+                    } else {
+                        arguments[index] = BinaryProtocol.read(frame, types[index]);
+                    }
+                }
+                Object result;
+                ExecutionGate.setClient(connection.name);
+                try {
+                    result = method.invoke(stub, arguments);
+                } catch (InvocationTargetException ite) {
+                    throw ite.getCause();
+                } finally {
+                    ExecutionGate.setClient(null);
+                }
+                response.putByte(BinaryProtocol.STATUS_OK);
+                if (result instanceof ServerStub) {
+                    int session = connection.session_ids.incrementAndGet();
+                    connection.sessions.put(session, (ServerStub) result);
+                    response.putInt(session);
+                } else {
+                    BinaryProtocol.write(response, method.getReturnType(), result);
+                }
+                if (target != 0 && method.getName().equals("release") && types.length == 0) {
+                    connection.sessions.remove(target);
+                }
+            }
+        } catch (Throwable t) {
+            response = new FrameWriter(64);
+            response.putLong(request_id);
+            response.putByte(BinaryProtocol.STATUS_ERROR);
+            response.putString(t.toString());
+        }
+        write(connection, response);
+    }
+
+    private void write(Connection connection, FrameWriter frame) {
+        write(connection, frame.finish());
+    }
+
+    private void write(Connection connection, ByteBuffer frame) {
+        connection.writes.add(frame);
+        if (!connection.flush()) {
+            flushes.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Pushes the deltas of a subscription to the client that subscribed over a connection, failing once too many of its pushes are unwritten
+     * so that the server cancels the subscription of a client that stopped reading.
+     */
+    private final class PushListener implements WatchListener {
+        private final Connection connection;
+        private final int listener_id;
+        private final ArrayDeque<ByteBuffer> unwritten = new ArrayDeque<>();
+
+        private PushListener(Connection connection, int listener_id) {
+            this.connection = connection;
+            this.listener_id = listener_id;
+        }
+
+        @Override
+        public void changed(WatchDelta delta) throws RemoteException {
+            if (!connection.channel.isOpen()) {
+                throw new RemoteException("The connection of the subscriber was closed.");
+            }
+            FrameWriter push = new FrameWriter(256);
+            push.putLong(listener_id);
+            push.putByte(BinaryProtocol.STATUS_PUSH);
+            try {
+                BinaryProtocol.write(push, WatchDelta.class, delta);
+            } catch (IOException ioe) {
+                throw new RemoteException("Failed to encode a delta.", ioe);
+            }
+            ByteBuffer frame = push.finish();
+            synchronized (connection) {
+                long bytes = frame.remaining();
+                for (Iterator<ByteBuffer> iterator = unwritten.iterator(); iterator.hasNext(); ) {
+                    ByteBuffer buffer = iterator.next();
+                    if (buffer.hasRemaining()) {
+                        bytes += buffer.remaining();
+                    } else {
+                        iterator.remove();
+                    }
+                }
+                if (!unwritten.isEmpty() && (unwritten.size() >= MAX_PENDING_PUSHES || bytes > MAX_PENDING_PUSH_BYTES)) {
+                    unwritten.clear();
+                    throw new RemoteException("The subscriber left " + bytes + " bytes of deltas unread.");
+                }
+                unwritten.add(frame);
+            }
+            write(connection, frame);
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final String name;
+        private final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<ByteBuffer> requests = new ArrayDeque<>();
+        private boolean ready;
+        private boolean paused;
+        private final Map<Integer, ServerStub> sessions = new ConcurrentHashMap<>();
+        private final AtomicInteger session_ids = new AtomicInteger();
+        private ByteBuffer read_buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private volatile boolean greeted;
+        private SelectionKey key;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.name = "connection-" + connection_ids.incrementAndGet();
+        }
+
+        /**
+         * Reads whatever is available and dispatches every complete frame. Runs on the selector thread.
+         */
+        private void read() throws IOException {
+            if (channel.read(read_buffer) < 0) {
+                close();
+                return;
+            }
+            read_buffer.flip();
+            while (read_buffer.remaining() >= 4) {
+                int length = read_buffer.getInt(read_buffer.position());
+                if (length < 14) {
+                    throw new IOException("Received a malformed frame of length " + length + ".");
+                } else if (length > max_request_length) {
+                    throw new IOException("Received a frame of length " + length + ", longer than the limit of " + max_request_length + ".");
+                }
+                if (read_buffer.remaining() - 4 < length) {
+                    break;
+                }
+                read_buffer.position(read_buffer.position() + 4);
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                int limit = read_buffer.limit();
+                read_buffer.limit(read_buffer.position() + length);
+                frame.put(read_buffer);
+                read_buffer.limit(limit);
+                frame.flip();
+                dispatch(this, frame);
+            }
+            if (read_buffer.remaining() >= 4) {
+                int required = read_buffer.getInt(read_buffer.position()) + 4;
+                if (required > read_buffer.capacity()) {
+                    ByteBuffer grown = ByteBuffer.allocate(required);
+                    grown.put(read_buffer);
+                    read_buffer = grown;
+                    return;
+                }
+            }
+            read_buffer.compact();
+        }
+
+        /**
+         * Writes as many queued responses as the socket accepts, workers call this directly so that a response usually doesn't wait for the selector.
+         *
+         * @return false if responses are left that the selector thread has to write once the socket is writable.
+         */
+        private synchronized boolean flush() {
+            if (!key.isValid()) {
+                return true;
+            }
+            try {
+                for (ByteBuffer buffer; (buffer = writes.peek()) != null; writes.poll()) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException ioe) {
+                close();
+                return true;
+            }
+        }
+
+        private void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                //The connection is gone either way.
+            }
+            for (ServerStub session : sessions.values()) {
+                try {
+                    session.release();
+                } catch (RemoteException ignored) {
+                    //The session was already released.
+                }
+            }
+            sessions.clear();
+        }
+    }
+}
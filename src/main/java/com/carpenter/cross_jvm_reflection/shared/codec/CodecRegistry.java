@@ -0,0 +1,569 @@
+package com.carpenter.cross_jvm_reflection.shared.codec;
+
+import com.carpenter.cross_jvm_reflection.shared.transport.FrameWriter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes object graphs into a compact tagged binary format and decodes them again, without java.io serialization. Every value starts with a tag byte:
+ * <ul>
+ * <li>null, booleans, bytes, floats and doubles are written as they are, shorts, chars, ints and longs as zigzag varints.</li>
+ * <li>Strings are the varint length of their UTF-8 bytes followed by the bytes.</li>
+ * <li>Primitive arrays are written in bulk, an int length followed by the elements.</li>
+ * <li>Object arrays, Lists, Sets and Maps are a varint size followed by their elements, or keys and values, and decode as an Object[], ArrayList,
+ * LinkedHashSet and LinkedHashMap. Other Collections are written as Lists.</li>
+ * <li>Enums are the name of their constant and decode as a String.</li>
+ * <li>Values of a type with a registered {@link ValueCodec} are the name of the codec followed by the replacement value.</li>
+ * <li>Any other object is written reflectively: its class name, the number of its instance fields and each field's name and value.
+ * It decodes as an {@link EncodedObject}, the object doesn't need to be Serializable.</li>
+ * </ul>
+ * Names of classes, fields and codecs are written once per value and referred to by index afterwards. Arrays, collections and objects that
+ * are reached again are written as a reference to their first occurrence, so shared and cyclic graphs keep their shape. A container deeper
+ * than the maximum depth, or an object whose fields aren't accessible, is written as a truncated {@link EncodedObject} with only its class name.
+ * The maximum depth is at most {@link #MAX_DEPTH} so that encoding a deep graph can't overflow the stack. Collections and maps are copied into an
+ * array before they are written so that the size matches the elements, one that is modified while it is copied is written truncated.
+ * <p>
+ * Registries are thread safe, the same registry may encode and decode on any number of threads.
+ */
+public class CodecRegistry {
+    public static final int MAX_DEPTH = 256;
+
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte CHAR = 5;
+    static final byte INT = 6;
+    static final byte LONG = 7;
+    static final byte FLOAT = 8;
+    static final byte DOUBLE = 9;
+    static final byte STRING = 10;
+    static final byte BOOLEAN_ARRAY = 11;
+    static final byte BYTE_ARRAY = 12;
+    static final byte SHORT_ARRAY = 13;
+    static final byte CHAR_ARRAY = 14;
+    static final byte INT_ARRAY = 15;
+    static final byte LONG_ARRAY = 16;
+    static final byte FLOAT_ARRAY = 17;
+    static final byte DOUBLE_ARRAY = 18;
+    static final byte OBJECT_ARRAY = 19;
+    static final byte LIST = 20;
+    static final byte SET = 21;
+    static final byte MAP = 22;
+    static final byte ENUM = 23;
+    static final byte OBJECT = 24;
+    static final byte REFERENCE = 25;
+    static final byte TRUNCATED = 26;
+    static final byte CUSTOM = 27;
+
+    private static final ClassValue<FieldReader[]> FIELDS = new ClassValue<FieldReader[]>() {
+        @Override
+        protected FieldReader[] computeValue(Class<?> type) {
+            return FieldReader.of(type);
+        }
+    };
+
+    private final Map<Class<?>, ValueCodec<?>> codecs_by_type = new ConcurrentHashMap<>();
+    private final Map<String, ValueCodec<?>> codecs_by_name = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a codec, replacing any codec registered for the same type or name.
+     */
+    public void register(ValueCodec<?> codec) {
+        codecs_by_type.put(codec.getType(), codec);
+        codecs_by_name.put(codec.getName(), codec);
+    }
+
+    /**
+     * Encodes the value and everything it references up to the maximum depth.
+     *
+     * @param max_depth The number of levels of arrays, collections and objects that are written, the value itself being the first level.
+     * It is clamped to between 1 and {@link #MAX_DEPTH}.
+     */
+    public byte[] encode(Object value, int max_depth) {
+        Encoder encoder = new Encoder(Math.min(Math.max(max_depth, 1), MAX_DEPTH));
+        encoder.write(value, 1);
+        ByteBuffer frame = encoder.out.finish();
+        return Arrays.copyOfRange(frame.array(), 4, frame.limit());
+    }
+
+    /**
+     * Decodes a value encoded by any registry.
+     *
+     * @throws IllegalArgumentException if the bytes aren't a value of the format.
+     */
+    public Object decode(byte[] bytes) {
+        try {
+            Decoder decoder = new Decoder(ByteBuffer.wrap(bytes));
+            Object value = decoder.read();
+            if (decoder.in.hasRemaining()) {
+                throw new IllegalArgumentException(decoder.in.remaining() + " bytes were left after the value.");
+            }
+            return value;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IllegalArgumentException("The bytes aren't a complete value.", e);
+        }
+    }
+
+    private ValueCodec<?> getCodec(Class<?> type) {
+        if (codecs_by_type.isEmpty()) {
+            return null;
+        }
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            ValueCodec<?> codec = codecs_by_type.get(current);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private final class Encoder {
+        private final FrameWriter out = new FrameWriter(256);
+        private final int max_depth;
+        private final Map<Object, Integer> references = new IdentityHashMap<>();
+        private final Map<String, Integer> names = new HashMap<>();
+
+        private Encoder(int max_depth) {
+            this.max_depth = max_depth;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void write(Object value, int depth) {
+            if (value == null) {
+                out.putByte(NULL);
+                return;
+            }
+            Class<?> type = value.getClass();
+            if (type == String.class) {
+                out.putByte(STRING);
+                putString((String) value);
+            } else if (type == Integer.class) {
+                out.putByte(INT);
+                putVarLong((Integer) value);
+            } else if (type == Long.class) {
+                out.putByte(LONG);
+                putVarLong((Long) value);
+            } else if (type == Boolean.class) {
+                out.putByte((Boolean) value ? TRUE : FALSE);
+            } else if (type == Double.class) {
+                out.putByte(DOUBLE).putDouble((Double) value);
+            } else if (type == Float.class) {
+                out.putByte(FLOAT).putFloat((Float) value);
+            } else if (type == Short.class) {
+                out.putByte(SHORT);
+                putVarLong((Short) value);
+            } else if (type == Character.class) {
+                out.putByte(CHAR);
+                putVarLong((Character) value);
+            } else if (type == Byte.class) {
+                out.putByte(BYTE).putByte((Byte) value);
+            } else if (type.isArray() && type.getComponentType().isPrimitive()) {
+                writePrimitiveArray(value);
+            } else if (value instanceof Enum) {
+                out.putByte(ENUM);
+                putString(((Enum<?>) value).name());
+            } else {
+                ValueCodec codec = getCodec(type);
+                if (codec != null) {
+                    out.putByte(CUSTOM);
+                    putName(codec.getName());
+                    write(codec.replace(value), depth);
+                } else {
+                    writeContainer(value, type, depth);
+                }
+            }
+        }
+
+        private void writeContainer(Object value, Class<?> type, int depth) {
+            Integer reference = references.get(value);
+            if (reference != null) {
+                out.putByte(REFERENCE);
+                putVarInt(reference);
+                return;
+            }
+            FieldReader[] fields = null;
+            if (depth <= max_depth && !type.isArray() && !(value instanceof Collection) && !(value instanceof Map)) {
+                fields = FIELDS.get(type);
+            }
+            Object[] elements = null;
+            boolean modified = false;
+            if (depth <= max_depth && (value instanceof Collection || value instanceof Map)) {
+                try {
+                    elements = value instanceof Map ? ((Map<?, ?>) value).entrySet().toArray() : ((Collection<?>) value).toArray();
+                } catch (RuntimeException e) {
+                    modified = true;
+                }
+            }
+            if (depth > max_depth || fields == FieldReader.INACCESSIBLE || modified) {
+                out.putByte(TRUNCATED);
+                putName(type.getName());
+                return;
+            }
+            references.put(value, references.size());
+            if (type.isArray()) {
+                Object[] array = (Object[]) value;
+                out.putByte(OBJECT_ARRAY);
+                putVarInt(array.length);
+                for (Object element : array) {
+                    write(element, depth + 1);
+                }
+            } else if (value instanceof Map) {
+                out.putByte(MAP);
+                putVarInt(elements.length);
+                for (Object element : elements) {
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+                    write(entry.getKey(), depth + 1);
+                    write(entry.getValue(), depth + 1);
+                }
+            } else if (value instanceof Collection) {
+                out.putByte(value instanceof Set ? SET : LIST);
+                putVarInt(elements.length);
+                for (Object element : elements) {
+                    write(element, depth + 1);
+                }
+            } else {
+                out.putByte(OBJECT);
+                putName(type.getName());
+                putVarInt(fields.length);
+                for (FieldReader field : fields) {
+                    putName(field.name);
+                    write(field.read(value), depth + 1);
+                }
+            }
+        }
+
+        private void writePrimitiveArray(Object value) {
+            if (value instanceof int[]) {
+                out.putByte(INT_ARRAY).putInts((int[]) value);
+            } else if (value instanceof long[]) {
+                out.putByte(LONG_ARRAY).putLongs((long[]) value);
+            } else if (value instanceof double[]) {
+                out.putByte(DOUBLE_ARRAY).putDoubles((double[]) value);
+            } else if (value instanceof byte[]) {
+                out.putByte(BYTE_ARRAY).putBytes((byte[]) value);
+            } else if (value instanceof char[]) {
+                out.putByte(CHAR_ARRAY).putChars((char[]) value);
+            } else if (value instanceof float[]) {
+                out.putByte(FLOAT_ARRAY).putFloats((float[]) value);
+            } else if (value instanceof short[]) {
+                out.putByte(SHORT_ARRAY).putShorts((short[]) value);
+            } else {
+                out.putByte(BOOLEAN_ARRAY).putBooleans((boolean[]) value);
+            }
+        }
+
+        /**
+         * Writes the index of a name written before plus one, or 0 followed by the name the first time.
+         */
+        private void putName(String name) {
+            Integer index = names.get(name);
+            if (index != null) {
+                putVarInt(index + 1);
+            } else {
+                names.put(name, names.size());
+                putVarInt(0);
+                putString(name);
+            }
+        }
+
+        private void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length);
+            out.putRaw(bytes, 0, bytes.length);
+        }
+
+        private void putVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                out.putByte((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.putByte((byte) value);
+        }
+
+        private void putVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.putByte((byte) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.putByte((byte) zigzag);
+        }
+    }
+
+    private final class Decoder {
+        private final ByteBuffer in;
+        private final List<Object> references = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+
+        private Decoder(ByteBuffer in) {
+            this.in = in;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object read() {
+            byte tag = in.get();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case BYTE:
+                    return in.get();
+                case SHORT:
+                    return (short) getVarLong();
+                case CHAR:
+                    return (char) getVarLong();
+                case INT:
+                    return (int) getVarLong();
+                case LONG:
+                    return getVarLong();
+                case FLOAT:
+                    return in.getFloat();
+                case DOUBLE:
+                    return in.getDouble();
+                case STRING:
+                case ENUM:
+                    return getString();
+                case BOOLEAN_ARRAY: {
+                    boolean[] value = new boolean[getLength(1)];
+                    for (int index = 0; index < value.length; ++index) {
+                        value[index] = in.get() != 0;
+                    }
+                    return value;
+                }
+                case BYTE_ARRAY: {
+                    byte[] value = new byte[getLength(1)];
+                    in.get(value);
+                    return value;
+                }
+                case SHORT_ARRAY: {
+                    short[] value = new short[getLength(2)];
+                    in.asShortBuffer().get(value);
+                    in.position(in.position() + value.length * 2);
+                    return value;
+                }
+                case CHAR_ARRAY: {
+                    char[] value = new char[getLength(2)];
+                    in.asCharBuffer().get(value);
+                    in.position(in.position() + value.length * 2);
+                    return value;
+                }
+                case INT_ARRAY: {
+                    int[] value = new int[getLength(4)];
+                    in.asIntBuffer().get(value);
+                    in.position(in.position() + value.length * 4);
+                    return value;
+                }
+                case LONG_ARRAY: {
+                    long[] value = new long[getLength(8)];
+                    in.asLongBuffer().get(value);
+                    in.position(in.position() + value.length * 8);
+                    return value;
+                }
+                case FLOAT_ARRAY: {
+                    float[] value = new float[getLength(4)];
+                    in.asFloatBuffer().get(value);
+                    in.position(in.position() + value.length * 4);
+                    return value;
+                }
+                case DOUBLE_ARRAY: {
+                    double[] value = new double[getLength(8)];
+                    in.asDoubleBuffer().get(value);
+                    in.position(in.position() + value.length * 8);
+                    return value;
+                }
+                case OBJECT_ARRAY: {
+                    Object[] value = new Object[getCount()];
+                    references.add(value);
+                    for (int index = 0; index < value.length; ++index) {
+                        value[index] = read();
+                    }
+                    return value;
+                }
+                case LIST: {
+                    int size = getCount();
+                    List<Object> value = new ArrayList<>(size);
+                    references.add(value);
+                    for (int index = 0; index < size; ++index) {
+                        value.add(read());
+                    }
+                    return value;
+                }
+                case SET: {
+                    int size = getCount();
+                    Set<Object> value = new LinkedHashSet<>();
+                    references.add(value);
+                    for (int index = 0; index < size; ++index) {
+                        value.add(read());
+                    }
+                    return value;
+                }
+                case MAP: {
+                    int size = getCount();
+                    Map<Object, Object> value = new LinkedHashMap<>();
+                    references.add(value);
+                    for (int index = 0; index < size; ++index) {
+                        Object key = read();
+                        value.put(key, read());
+                    }
+                    return value;
+                }
+                case OBJECT: {
+                    EncodedObject value = new EncodedObject(getName(), false);
+                    references.add(value);
+                    int fields = getCount();
+                    for (int index = 0; index < fields; ++index) {
+                        String field = getName();
+                        value.put(field, read());
+                    }
+                    return value;
+                }
+                case REFERENCE:
+                    return references.get(getVarInt());
+                case TRUNCATED:
+                    return new EncodedObject(getName(), true);
+                case CUSTOM: {
+                    ValueCodec codec = codecs_by_name.get(getName());
+                    Object replacement = read();
+                    return codec == null ? replacement : codec.resolve(replacement);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown tag " + tag + " at " + (in.position() - 1) + ".");
+            }
+        }
+
+        /**
+         * Gets the length of a primitive array, checked against the remaining bytes so that a corrupt length can't allocate a huge array.
+         */
+        private int getLength(int element_size) {
+            int length = in.getInt();
+            if (length < 0 || (long) length * element_size > in.remaining()) {
+                throw new IllegalArgumentException("Malformed array length " + length + ".");
+            }
+            return length;
+        }
+
+        /**
+         * Gets the size of a container, every element takes at least a byte.
+         */
+        private int getCount() {
+            int count = getVarInt();
+            if (count < 0 || count > in.remaining()) {
+                throw new IllegalArgumentException("Malformed size " + count + ".");
+            }
+            return count;
+        }
+
+        private String getName() {
+            int index = getVarInt();
+            if (index == 0) {
+                String name = getString();
+                names.add(name);
+                return name;
+            }
+            return names.get(index - 1);
+        }
+
+        private String getString() {
+            int length = getCount();
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+
+        private int getVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte next = in.get();
+                value |= (next & 0x7F) << shift;
+                if (next >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+        private long getVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte next = in.get();
+                zigzag |= (long) (next & 0x7F) << shift;
+                if (next >= 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+    }
+
+    /**
+     * Reads an instance field of a class that is encoded reflectively.
+     */
+    private static final class FieldReader {
+        private static final FieldReader[] INACCESSIBLE = new FieldReader[0];
+
+        private final String name;
+        private final MethodHandle getter;
+
+        private FieldReader(String name, MethodHandle getter) {
+            this.name = name;
+            this.getter = getter;
+        }
+
+        /**
+         * Gets the readers of the instance fields of the class and its superclasses, or {@link #INACCESSIBLE} if any of them can't be made accessible.
+         */
+        private static FieldReader[] of(Class<?> type) {
+            List<FieldReader> readers = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            try {
+                for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                    for (Field field : current.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        String name = names.add(field.getName()) ? field.getName() : current.getName() + '.' + field.getName();
+                        MethodHandle getter = MethodHandles.lookup().unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                        readers.add(new FieldReader(name, getter));
+                    }
+                }
+            } catch (IllegalAccessException | RuntimeException e) {
+                //Fields of classes in modules that aren't open to the agent.
+                return INACCESSIBLE;
+            }
+            return readers.toArray(new FieldReader[0]);
+        }
+
+        private Object read(Object object) {
+            try {
+                return (Object) getter.invokeExact(object);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to read " + name + " of " + object.getClass().getName() + ".", t);
+            }
+        }
+    }
+}
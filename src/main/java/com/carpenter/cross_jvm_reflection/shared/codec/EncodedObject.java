@@ -0,0 +1,74 @@
+package com.carpenter.cross_jvm_reflection.shared.codec;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An object that was encoded field by field because the format has no fast path or codec for its type, or a placeholder for an object that
+ * wasn't encoded because it was deeper than the maximum depth or its fields aren't accessible.
+ */
+public final class EncodedObject {
+    private final String class_name;
+    private final Map<String, Object> fields;
+    private final boolean truncated;
+
+    EncodedObject(String class_name, boolean truncated) {
+        this.class_name = class_name;
+        this.fields = truncated ? Collections.emptyMap() : new LinkedHashMap<>();
+        this.truncated = truncated;
+    }
+
+    public String getClassName() {
+        return class_name;
+    }
+
+    /**
+     * Gets the decoded values of the instance fields in declaration order, starting with the fields of the class itself followed by those it inherits.
+     * A field hidden by a field of the same name in a subclass is named "superclass.field".
+     */
+    public Map<String, Object> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    public Object get(String field) {
+        return fields.get(field);
+    }
+
+    /**
+     * Gets whether the object was left out, in which case it has no fields.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    void put(String field, Object value) {
+        fields.put(field, value);
+    }
+
+    /**
+     * Lists the fields with their values if they are scalars, and only the class of other values since the graph may be cyclic.
+     */
+    @Override
+    public String toString() {
+        if (truncated) {
+            return class_name + "{...}";
+        }
+        StringBuilder builder = new StringBuilder(class_name).append('{');
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (builder.charAt(builder.length() - 1) != '{') {
+                builder.append(", ");
+            }
+            Object value = field.getValue();
+            builder.append(field.getKey()).append('=');
+            if (value == null || value instanceof Number || value instanceof String || value instanceof Boolean || value instanceof Character) {
+                builder.append(value);
+            } else if (value instanceof EncodedObject) {
+                builder.append(((EncodedObject) value).class_name).append("{...}");
+            } else {
+                builder.append(value.getClass().getSimpleName()).append("{...}");
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
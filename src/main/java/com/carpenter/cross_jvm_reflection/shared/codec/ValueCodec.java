@@ -0,0 +1,22 @@
+package com.carpenter.cross_jvm_reflection.shared.codec;
+
+/**
+ * Encodes values of a type by replacing them with a value the format encodes natively, such as a String, a primitive array, a List or a Map.
+ * The replacement is encoded under the name of the codec, a registry with a codec of that name resolves it back into the type and any other
+ * registry decodes the replacement itself. Codecs must be stateless, they are shared between threads.
+ */
+public interface ValueCodec<T> {
+    /**
+     * Gets the type the codec encodes, subclasses of the type that have no codec of their own are encoded by it as well.
+     */
+    Class<T> getType();
+
+    /**
+     * Gets the name the replacement is tagged with, usually the name of the type.
+     */
+    String getName();
+
+    Object replace(T value);
+
+    T resolve(Object replacement);
+}
@@ -0,0 +1,212 @@
+package com.carpenter.cross_jvm_reflection.shared.path;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A chain of hops that is resolved entirely on the server in a single call.
+ * Intermediate objects are never registered with the server, only the terminal value is returned.
+ * <p>
+ * The textual form separates hops with "->", for example:
+ * <pre>
+ * pkg.Outer.inner -> pkg.Inner.list -> [3] -> pkg.Item.value
+ * </pre>
+ * A hop is either a field in the format "classname.fieldname", an index in the format "[index]" (arrays and lists)
+ * or a String map key in the format "{key}". Expressions are immutable, the builder methods return a new expression.
+ */
+public final class PathExpression implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final byte FIELD = 0;
+    public static final byte INDEX = 1;
+    public static final byte KEY = 2;
+
+    private final long owner_uid;
+    private final byte[] kinds;
+    private final String[] fields;
+    private final int[] indices;
+    private final Serializable[] keys;
+    private final boolean uid_terminal;
+
+    private PathExpression(long owner_uid, byte[] kinds, String[] fields, int[] indices, Serializable[] keys, boolean uid_terminal) {
+        this.owner_uid = owner_uid;
+        this.kinds = kinds;
+        this.fields = fields;
+        this.indices = indices;
+        this.keys = keys;
+        this.uid_terminal = uid_terminal;
+    }
+
+    /**
+     * Creates an empty expression rooted at the object with the given uid, hops are then appended with the builder methods.
+     */
+    public static PathExpression from(long owner_uid) {
+        return new PathExpression(owner_uid, new byte[0], new String[0], new int[0], new Serializable[0], false);
+    }
+
+    /**
+     * Compiles an expression whose first hop is a static field.
+     */
+    public static PathExpression compile(String expression) {
+        return compile(expression, 0);
+    }
+
+    /**
+     * Compiles an expression whose first hop is resolved against the object with the given uid.
+     *
+     * @throws IllegalArgumentException if the expression is empty or a hop is malformed.
+     */
+    public static PathExpression compile(String expression, long owner_uid) {
+        PathExpression path = from(owner_uid);
+        for (String hop : expression.split("->")) {
+            hop = hop.trim();
+            if (hop.isEmpty()) {
+                throw new IllegalArgumentException("Empty hop in path expression " + expression);
+            }
+            if (hop.startsWith("[") && hop.endsWith("]")) {
+                try {
+                    path = path.index(Integer.parseInt(hop.substring(1, hop.length() - 1).trim()));
+                } catch (NumberFormatException nfe) {
+                    throw new IllegalArgumentException("Malformed index " + hop + " in path expression " + expression, nfe);
+                }
+            } else if (hop.startsWith("{") && hop.endsWith("}")) {
+                path = path.key(hop.substring(1, hop.length() - 1));
+            } else if (hop.lastIndexOf('.') > 0) {
+                path = path.field(hop);
+            } else {
+                throw new IllegalArgumentException("Malformed field " + hop + " in path expression " + expression);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Appends a field hop in the format "classname.fieldname".
+     */
+    public PathExpression field(String name) {
+        return append(FIELD, name, 0, null);
+    }
+
+    /**
+     * Appends an index hop, applicable to arrays and lists.
+     */
+    public PathExpression index(int index) {
+        return append(INDEX, null, index, null);
+    }
+
+    /**
+     * Appends a map key hop, the key is compared with equals on the server.
+     */
+    public PathExpression key(Serializable key) {
+        return append(KEY, null, 0, key);
+    }
+
+    /**
+     * Marks the terminal value to be returned as a uid (a Long) instead of its Serializable value.
+     */
+    public PathExpression asUid() {
+        return new PathExpression(owner_uid, kinds, fields, indices, keys, true);
+    }
+
+    /**
+     * Gets the same hops resolved against the object with the given uid, 0 if the first hop is a static field.
+     */
+    public PathExpression withOwner(long owner_uid) {
+        return owner_uid == this.owner_uid ? this : new PathExpression(owner_uid, kinds, fields, indices, keys, uid_terminal);
+    }
+
+    private PathExpression append(byte kind, String field, int index, Serializable key) {
+        int length = kinds.length;
+        byte[] kinds = Arrays.copyOf(this.kinds, length + 1);
+        String[] fields = Arrays.copyOf(this.fields, length + 1);
+        int[] indices = Arrays.copyOf(this.indices, length + 1);
+        Serializable[] keys = Arrays.copyOf(this.keys, length + 1);
+        kinds[length] = kind;
+        fields[length] = field;
+        indices[length] = index;
+        keys[length] = key;
+        return new PathExpression(owner_uid, kinds, fields, indices, keys, uid_terminal);
+    }
+
+    /**
+     * Gets the uid of the object the first hop is resolved against, 0 if the first hop is a static field.
+     */
+    public long getOwnerUID() {
+        return owner_uid;
+    }
+
+    public int getHopCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Gets the kind of the hop, one of {@link #FIELD}, {@link #INDEX} or {@link #KEY}.
+     */
+    public byte getKind(int hop) {
+        return kinds[hop];
+    }
+
+    public String getField(int hop) {
+        return fields[hop];
+    }
+
+    public int getIndex(int hop) {
+        return indices[hop];
+    }
+
+    public Serializable getKey(int hop) {
+        return keys[hop];
+    }
+
+    public boolean isUidTerminal() {
+        return uid_terminal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PathExpression)) {
+            return false;
+        }
+        PathExpression other = (PathExpression) o;
+        return owner_uid == other.owner_uid && uid_terminal == other.uid_terminal && Arrays.equals(kinds, other.kinds)
+                && Arrays.equals(fields, other.fields) && Arrays.equals(indices, other.indices) && Arrays.equals(keys, other.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Long.hashCode(owner_uid);
+        hash = 31 * hash + Arrays.hashCode(kinds);
+        hash = 31 * hash + Arrays.hashCode(fields);
+        hash = 31 * hash + Arrays.hashCode(indices);
+        hash = 31 * hash + Arrays.hashCode(keys);
+        return 31 * hash + (uid_terminal ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (owner_uid != 0) {
+            builder.append('@').append(owner_uid).append(" -> ");
+        }
+        for (int hop = 0; hop < kinds.length; ++hop) {
+            if (hop > 0) {
+                builder.append(" -> ");
+            }
+            switch (kinds[hop]) {
+                case FIELD:
+                    builder.append(fields[hop]);
+                    break;
+                case INDEX:
+                    builder.append('[').append(indices[hop]).append(']');
+                    break;
+                default:
+                    builder.append('{').append(keys[hop]).append('}');
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package com.carpenter.cross_jvm_reflection.shared.query;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A filter and an aggregation evaluated on the server over the elements of an array, an Iterable or the values of a Map, so that only the
+ * result is sent back. For example, the number of sessions whose state is 3:
+ * <pre>
+ * Query.over(sessions_uid).where("pkg.Session.state", Query.EQ, 3).count()
+ * </pre>
+ * Fields are in the format "classname.fieldname" and are read from each element, an empty field refers to the element itself.
+ * Conditions are combined with and, elements that are null or aren't instances of the class of a field never match.
+ * Queries are immutable, the builder methods return a new query.
+ */
+public final class Query implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final byte EQ = 0;
+    public static final byte NE = 1;
+    public static final byte LT = 2;
+    public static final byte LE = 3;
+    public static final byte GT = 4;
+    public static final byte GE = 5;
+
+    public static final byte COUNT = 0;
+    public static final byte SUM = 1;
+    public static final byte MIN = 2;
+    public static final byte MAX = 3;
+    public static final byte AVG = 4;
+    public static final byte TOP = 5;
+
+    private final long source_uid;
+    private final String[] fields;
+    private final byte[] operators;
+    private final Serializable[] operands;
+    private final byte aggregate;
+    private final String value_field;
+    private final int limit;
+
+    private Query(long source_uid, String[] fields, byte[] operators, Serializable[] operands, byte aggregate, String value_field, int limit) {
+        this.source_uid = source_uid;
+        this.fields = fields;
+        this.operators = operators;
+        this.operands = operands;
+        this.aggregate = aggregate;
+        this.value_field = value_field;
+        this.limit = limit;
+    }
+
+    /**
+     * Creates a query that counts every element of the array, Iterable or Map with the given uid.
+     */
+    public static Query over(long source_uid) {
+        return new Query(source_uid, new String[0], new byte[0], new Serializable[0], COUNT, "", 0);
+    }
+
+    /**
+     * Adds a condition. Numbers and chars are compared by value, other operands are compared with equals or, for the ordering operators,
+     * with compareTo when the value has the same class as the operand.
+     *
+     * @param operator One of {@link #EQ}, {@link #NE}, {@link #LT}, {@link #LE}, {@link #GT} or {@link #GE}.
+     */
+    public Query where(String field, byte operator, Serializable operand) {
+        if (operator < EQ || operator > GE) {
+            throw new IllegalArgumentException("Unknown operator " + operator);
+        }
+        int length = fields.length;
+        String[] fields = Arrays.copyOf(this.fields, length + 1);
+        byte[] operators = Arrays.copyOf(this.operators, length + 1);
+        Serializable[] operands = Arrays.copyOf(this.operands, length + 1);
+        fields[length] = field == null ? "" : field;
+        operators[length] = operator;
+        operands[length] = operand;
+        return new Query(source_uid, fields, operators, operands, aggregate, value_field, limit);
+    }
+
+    public Query count() {
+        return aggregate(COUNT, "", 0);
+    }
+
+    /**
+     * Sums the numeric values of the field over the matching elements, elements whose value isn't numeric are skipped.
+     */
+    public Query sum(String field) {
+        return aggregate(SUM, field, 0);
+    }
+
+    public Query min(String field) {
+        return aggregate(MIN, field, 0);
+    }
+
+    public Query max(String field) {
+        return aggregate(MAX, field, 0);
+    }
+
+    public Query avg(String field) {
+        return aggregate(AVG, field, 0);
+    }
+
+    /**
+     * Selects the k matching elements with the largest numeric values of the field, returned as uid's with their values.
+     */
+    public Query top(String field, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        return aggregate(TOP, field, k);
+    }
+
+    private Query aggregate(byte aggregate, String field, int limit) {
+        return new Query(source_uid, fields, operators, operands, aggregate, field == null ? "" : field, limit);
+    }
+
+    public long getSourceUID() {
+        return source_uid;
+    }
+
+    public int getConditionCount() {
+        return fields.length;
+    }
+
+    public String getField(int condition) {
+        return fields[condition];
+    }
+
+    public byte getOperator(int condition) {
+        return operators[condition];
+    }
+
+    public Serializable getOperand(int condition) {
+        return operands[condition];
+    }
+
+    /**
+     * Gets the aggregation, one of {@link #COUNT}, {@link #SUM}, {@link #MIN}, {@link #MAX}, {@link #AVG} or {@link #TOP}.
+     */
+    public byte getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * Gets the field that is aggregated, it is empty for a count.
+     */
+    public String getValueField() {
+        return value_field;
+    }
+
+    /**
+     * Gets the k of a top query.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Query)) {
+            return false;
+        }
+        Query other = (Query) o;
+        return source_uid == other.source_uid && aggregate == other.aggregate && limit == other.limit && value_field.equals(other.value_field)
+                && Arrays.equals(fields, other.fields) && Arrays.equals(operators, other.operators) && Arrays.equals(operands, other.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Long.hashCode(source_uid);
+        hash = 31 * hash + Arrays.hashCode(fields);
+        hash = 31 * hash + Arrays.hashCode(operators);
+        hash = 31 * hash + Arrays.hashCode(operands);
+        hash = 31 * hash + aggregate;
+        hash = 31 * hash + value_field.hashCode();
+        return 31 * hash + limit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("@").append(source_uid);
+        String[] symbols = {"==", "!=", "<", "<=", ">", ">="};
+        for (int condition = 0; condition < fields.length; ++condition) {
+            builder.append(condition == 0 ? " where " : " and ").append(fields[condition].isEmpty() ? "element" : fields[condition])
+                    .append(' ').append(symbols[operators[condition]]).append(' ').append(operands[condition]);
+        }
+        String[] aggregates = {"count", "sum", "min", "max", "avg", "top"};
+        builder.append(' ').append(aggregates[aggregate]);
+        if (aggregate == TOP) {
+            builder.append(' ').append(limit);
+        }
+        if (aggregate != COUNT) {
+            builder.append(' ').append(value_field.isEmpty() ? "element" : value_field);
+        }
+        return builder.toString();
+    }
+}
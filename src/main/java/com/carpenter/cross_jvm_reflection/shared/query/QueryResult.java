@@ -0,0 +1,72 @@
+package com.carpenter.cross_jvm_reflection.shared.query;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The result of a {@link Query}.
+ */
+public final class QueryResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long scanned;
+    private final long matched;
+    private final long aggregated;
+    private final double value;
+    private final long[] top_uids;
+    private final double[] top_values;
+
+    public QueryResult(long scanned, long matched, long aggregated, double value, long[] top_uids, double[] top_values) {
+        this.scanned = scanned;
+        this.matched = matched;
+        this.aggregated = aggregated;
+        this.value = value;
+        this.top_uids = top_uids;
+        this.top_values = top_values;
+    }
+
+    /**
+     * Gets the number of elements the query was evaluated on.
+     */
+    public long getScanned() {
+        return scanned;
+    }
+
+    /**
+     * Gets the number of elements that matched every condition, the result of a count.
+     */
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * Gets the number of matching elements whose value field was numeric and was aggregated.
+     */
+    public long getAggregated() {
+        return aggregated;
+    }
+
+    /**
+     * Gets the result of a sum, min, max or avg, NaN if no value was aggregated. For a count it is the count.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the uid's of the elements selected by a top query, in descending order of their values, empty for other queries.
+     */
+    public long[] getTopUIDs() {
+        return top_uids;
+    }
+
+    public double[] getTopValues() {
+        return top_values;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResult{scanned=" + scanned + ", matched=" + matched + ", aggregated=" + aggregated + ", value=" + value
+                + ", top_uids=" + Arrays.toString(top_uids) + ", top_values=" + Arrays.toString(top_values) + "}";
+    }
+}
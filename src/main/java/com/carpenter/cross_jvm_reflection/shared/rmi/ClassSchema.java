@@ -0,0 +1,112 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.lang.reflect.Modifier;
+
+/**
+ * The field layout of a class loaded by the remote jvm, as returned in bulk by {@link ServerStub#schema(String)}.
+ * Only the fields declared by the class itself are listed, inherited fields are in the schema of the superclass.
+ * <p>
+ * A class is identified by its name and the id of its class loader. The id of a class can be used wherever the server expects a class name,
+ * which makes classes of the same name in different loaders distinguishable, for example "pkg.Item@3.value".
+ */
+public final class ClassSchema implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final String loader;
+    private final String superclass;
+    private final String[] field_names;
+    private final String[] field_types;
+    private final int[] field_modifiers;
+
+    /**
+     * @param superclass The id of the superclass, null if there is none.
+     */
+    public ClassSchema(String name, String loader, String superclass, String[] field_names, String[] field_types, int[] field_modifiers) {
+        this.name = name;
+        this.loader = loader;
+        this.superclass = superclass;
+        this.field_names = field_names;
+        this.field_types = field_types;
+        this.field_modifiers = field_modifiers;
+    }
+
+    /**
+     * Gets the binary name of the class.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the id of the class loader that defined the class, "bootstrap" for the bootstrap loader.
+     */
+    public String getLoader() {
+        return loader;
+    }
+
+    /**
+     * Gets the name of the class qualified with the id of its loader, in the format "classname@loader".
+     */
+    public String getId() {
+        return name + '@' + loader;
+    }
+
+    /**
+     * Gets the id of the superclass, null for interfaces and java.lang.Object.
+     */
+    public String getSuperclass() {
+        return superclass;
+    }
+
+    public int getFieldCount() {
+        return field_names.length;
+    }
+
+    public String getFieldName(int field) {
+        return field_names[field];
+    }
+
+    /**
+     * Gets the name of the type of the field as returned by Class.getName().
+     */
+    public String getFieldType(int field) {
+        return field_types[field];
+    }
+
+    /**
+     * Gets the modifiers of the field, see {@link Modifier}.
+     */
+    public int getFieldModifiers(int field) {
+        return field_modifiers[field];
+    }
+
+    public boolean isStatic(int field) {
+        return Modifier.isStatic(field_modifiers[field]);
+    }
+
+    /**
+     * Gets the index of the declared field with the name, -1 if the class doesn't declare it.
+     */
+    public int getField(String field_name) {
+        for (int field = 0; field < field_names.length; ++field) {
+            if (field_names[field].equals(field_name)) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the name of the field in the format "classname@loader.fieldname" expected by the readers of {@link ServerStub}.
+     */
+    public String getQualifiedName(int field) {
+        return getId() + '.' + field_names[field];
+    }
+
+    @Override
+    public String toString() {
+        return "ClassSchema{" + getId() + ", " + field_names.length + " fields}";
+    }
+}
@@ -0,0 +1,174 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A payload returned by a delta read such as {@link ServerStub#array_delta(long, long)}, either in full or as the changes to the payload the
+ * client read last. The server keeps the last payload it sent for each value as a baseline, and sends changes only when the checksum the
+ * client passes matches its baseline, so a client that lost its baseline or never had one gets the full payload.
+ * <p>
+ * Changes are the XOR of the changed byte ranges with the baseline, a range ends at a run of {@link #GAP} unchanged bytes. A change is written as
+ * the varint distance from the end of the previous change, the varint length of the range, and the XOR of the range.
+ */
+public final class Delta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of unchanged bytes that ends a changed range, shorter runs are carried inside the XOR of the range.
+     */
+    public static final int GAP = 8;
+
+    private final String type;
+    private final boolean full;
+    private final int length;
+    private final long checksum;
+    private final byte[] bytes;
+
+    /**
+     * @param type What the payload encodes, see {@link #getType()}.
+     * @param full Whether the bytes are the payload itself rather than its changes.
+     * @param length The length of the payload.
+     * @param checksum The checksum of the payload, see {@link #checksum(byte[])}.
+     */
+    public Delta(String type, boolean full, int length, long checksum, byte[] bytes) {
+        this.type = type;
+        this.full = full;
+        this.length = length;
+        this.checksum = checksum;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Gets the checksum of a payload, its length in the upper 32 bits and its CRC32 in the lower ones. 0 stands for no baseline.
+     */
+    public static long checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (long) payload.length << 32 | crc.getValue();
+    }
+
+    /**
+     * Encodes the changes from the baseline to the payload, which must be of the same length.
+     *
+     * @return The changes, or null if they wouldn't be smaller than half of the payload.
+     */
+    public static byte[] diff(byte[] baseline, byte[] payload) {
+        ByteBuffer out = ByteBuffer.allocate(payload.length / 2);
+        int end = 0;
+        int index = 0;
+        try {
+            while (index < payload.length) {
+                if (baseline[index] == payload[index]) {
+                    ++index;
+                    continue;
+                }
+                int start = index;
+                int last_changed = index;
+                for (++index; index < payload.length && index - last_changed <= GAP; ++index) {
+                    if (baseline[index] != payload[index]) {
+                        last_changed = index;
+                    }
+                }
+                int range = last_changed + 1 - start;
+                putVarInt(out, start - end);
+                putVarInt(out, range);
+                for (int offset = start; offset <= last_changed; ++offset) {
+                    out.put((byte) (baseline[offset] ^ payload[offset]));
+                }
+                end = index = last_changed + 1;
+            }
+        } catch (BufferOverflowException boe) {
+            return null;
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Gets what the payload encodes: the name of the primitive component type of an array, "uid" for the uid's of the elements of an object
+     * array as longs, or "encoded" for a value encoded by a {@link com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry}.
+     * Multibyte values are big endian.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the checksum of the payload, to be passed to the next delta read of the same value.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Gets the number of bytes that were transported for the payload.
+     */
+    public int getTransported() {
+        return bytes.length;
+    }
+
+    /**
+     * Gets the payload by applying the changes to the baseline, or the payload itself if it was sent in full.
+     *
+     * @param baseline The payload of the previous read, it isn't modified.
+     * @throws IllegalStateException if the payload doesn't match its checksum, the baseline differs from the one the server held.
+     */
+    public byte[] apply(byte[] baseline) {
+        if (full) {
+            return bytes;
+        }
+        if (baseline == null || baseline.length != length) {
+            throw new IllegalStateException("The baseline isn't the one the changes were made against.");
+        }
+        byte[] payload = baseline.clone();
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int end = 0;
+        while (in.hasRemaining()) {
+            int start = end + getVarInt(in);
+            int range = getVarInt(in);
+            for (int offset = start; offset < start + range; ++offset) {
+                payload[offset] ^= in.get();
+            }
+            end = start + range;
+        }
+        if (checksum(payload) != checksum) {
+            throw new IllegalStateException("The payload doesn't match its checksum, the baseline isn't the one the changes were made against.");
+        }
+        return payload;
+    }
+
+    private static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = in.get();
+            value |= (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Delta{type=" + type + ", full=" + full + ", length=" + length + ", transported=" + bytes.length + "}";
+    }
+}
@@ -0,0 +1,79 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A batch of the writes to a watched field, in the order they were made.
+ */
+public final class FieldEvents implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long next_sequence;
+    private final long dropped;
+    private final long[] owner_uids;
+    private final long[] times;
+    private final Serializable[] values;
+    private final long[] value_uids;
+
+    public FieldEvents(long next_sequence, long dropped, long[] owner_uids, long[] times, Serializable[] values, long[] value_uids) {
+        this.next_sequence = next_sequence;
+        this.dropped = dropped;
+        this.owner_uids = owner_uids;
+        this.times = times;
+        this.values = values;
+        this.value_uids = value_uids;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Gets the sequence to drain from next.
+     */
+    public long getNextSequence() {
+        return next_sequence;
+    }
+
+    /**
+     * Gets the number of writes that were lost since the drained sequence because the ring of the field was overrun.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Gets the uid's of the objects whose field was written, 0 for a static field.
+     */
+    public long[] getOwnerUIDs() {
+        return owner_uids;
+    }
+
+    /**
+     * Gets the System.nanoTime() of each write in the server's JVM.
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * Gets the values that were written if they are primitives or Strings, null otherwise.
+     */
+    public Serializable[] getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the uid's of the values that were written if they are other objects, 0 otherwise.
+     */
+    public long[] getValueUIDs() {
+        return value_uids;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldEvents{next_sequence=" + next_sequence + ", dropped=" + dropped + ", owner_uids=" + Arrays.toString(owner_uids)
+                + ", values=" + Arrays.toString(values) + ", value_uids=" + Arrays.toString(value_uids) + "}";
+    }
+}
@@ -0,0 +1,61 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The results of invoking a method on each of several receivers, in the order of the receivers.
+ * A receiver whose invocation threw has a failure instead of a result, the invocations of the other receivers are unaffected.
+ */
+public final class Invocations implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Serializable[] values;
+    private final long[] uids;
+    private final String[] failures;
+
+    public Invocations(Serializable[] values, long[] uids, String[] failures) {
+        this.values = values;
+        this.uids = uids;
+        this.failures = failures;
+    }
+
+    public int size() {
+        return failures.length;
+    }
+
+    /**
+     * Gets the result for each receiver, null where it isn't Serializable, the receiver can't be resolved, the invocation failed or the
+     * results were registered as uid's.
+     */
+    public Serializable[] getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the uid of the result for each receiver when the results were registered, 0 where it is null, the receiver can't be resolved,
+     * the invocation failed or the results weren't registered.
+     */
+    public long[] getUIDs() {
+        return uids;
+    }
+
+    /**
+     * Gets a description of what the invocation threw for each receiver, null where it didn't throw.
+     */
+    public String[] getFailures() {
+        return failures;
+    }
+
+    /**
+     * Whether the invocation on the receiver at the index threw.
+     */
+    public boolean isFailed(int index) {
+        return failures[index] != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Invocations{values=" + Arrays.toString(values) + ", uids=" + Arrays.toString(uids) + ", failures=" + Arrays.toString(failures) + "}";
+    }
+}
@@ -0,0 +1,121 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the latency histogram of a single ServerStub method.
+ * The histogram has fixed buckets whose upper bounds double from 1024ns, the last bucket holds every call slower than about a second.
+ * Percentiles are the upper bound of the bucket they fall in, so they overestimate the latency by at most a factor of 2.
+ */
+public final class MethodStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int BUCKETS = 22;
+    private static final int FIRST_BUCKET_SHIFT = 10;
+
+    private final String method;
+    private final long count;
+    private final long errors;
+    private final long total_nanos;
+    private final long[] buckets;
+
+    public MethodStatistics(String method, long count, long errors, long total_nanos, long[] buckets) {
+        this.method = method;
+        this.count = count;
+        this.errors = errors;
+        this.total_nanos = total_nanos;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Gets the bucket a latency is counted in.
+     */
+    public static int getBucket(long nanos) {
+        if (nanos <= 1L << FIRST_BUCKET_SHIFT) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros((nanos - 1) >> FIRST_BUCKET_SHIFT), BUCKETS - 1);
+    }
+
+    /**
+     * Gets the inclusive upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the last bucket.
+     */
+    public static long getBucketBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << (bucket + FIRST_BUCKET_SHIFT);
+    }
+
+    /**
+     * Gets the name and parameter types of the method, for example "int32(java.lang.String)".
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of calls that threw an exception, they are included in the count and the histogram.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getTotalNanos() {
+        return total_nanos;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : total_nanos / count;
+    }
+
+    public long getP50Nanos() {
+        return getPercentileNanos(0.5);
+    }
+
+    public long getP99Nanos() {
+        return getPercentileNanos(0.99);
+    }
+
+    public long getP999Nanos() {
+        return getPercentileNanos(0.999);
+    }
+
+    /**
+     * Gets the number of calls counted in each bucket, see {@link #getBucketBound(int)}.
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * Gets the upper bound of the bucket the percentile falls in, 0 if the method was never called.
+     *
+     * @param percentile A fraction between 0 and 1.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length; ++bucket) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return getBucketBound(bucket);
+            }
+        }
+        return getBucketBound(buckets.length - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "MethodStatistics{method=" + method + ", count=" + count + ", errors=" + errors + ", mean_nanos=" + getMeanNanos()
+                + ", p50_nanos=" + getP50Nanos() + ", p99_nanos=" + getP99Nanos() + "}";
+    }
+}
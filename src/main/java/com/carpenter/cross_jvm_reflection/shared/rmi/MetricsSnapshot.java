@@ -0,0 +1,113 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A snapshot of the metrics of the server: the latency of each ServerStub method that has been called, the hit rates of its caches
+ * and the size of its object store.
+ */
+public final class MetricsSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final MethodStatistics[] methods;
+    private final long class_cache_hits;
+    private final long class_cache_misses;
+    private final long class_name_cache_hits;
+    private final long class_name_cache_misses;
+    private final long handle_cache_hits;
+    private final long handle_cache_misses;
+    private final StoreStatistics store;
+    private final int dead;
+    private final long baseline_bytes;
+
+    public MetricsSnapshot(MethodStatistics[] methods, long class_cache_hits, long class_cache_misses, long class_name_cache_hits, long class_name_cache_misses,
+                           long handle_cache_hits, long handle_cache_misses, StoreStatistics store, int dead, long baseline_bytes) {
+        this.methods = methods;
+        this.class_cache_hits = class_cache_hits;
+        this.class_cache_misses = class_cache_misses;
+        this.class_name_cache_hits = class_name_cache_hits;
+        this.class_name_cache_misses = class_name_cache_misses;
+        this.handle_cache_hits = handle_cache_hits;
+        this.handle_cache_misses = handle_cache_misses;
+        this.store = store;
+        this.dead = dead;
+        this.baseline_bytes = baseline_bytes;
+    }
+
+    /**
+     * Gets the statistics of each method that has been called, sorted by method.
+     * Methods are only measured when the server is exported through a metered stub, calls made within the server aren't counted.
+     */
+    public MethodStatistics[] getMethods() {
+        return methods.clone();
+    }
+
+    public long getClassCacheHits() {
+        return class_cache_hits;
+    }
+
+    public long getClassCacheMisses() {
+        return class_cache_misses;
+    }
+
+    public double getClassCacheHitRate() {
+        return rate(class_cache_hits, class_cache_misses);
+    }
+
+    public long getClassNameCacheHits() {
+        return class_name_cache_hits;
+    }
+
+    public long getClassNameCacheMisses() {
+        return class_name_cache_misses;
+    }
+
+    public double getClassNameCacheHitRate() {
+        return rate(class_name_cache_hits, class_name_cache_misses);
+    }
+
+    /**
+     * Gets the number of field lookups that found a cached MethodHandle.
+     */
+    public long getHandleCacheHits() {
+        return handle_cache_hits;
+    }
+
+    public long getHandleCacheMisses() {
+        return handle_cache_misses;
+    }
+
+    public double getHandleCacheHitRate() {
+        return rate(handle_cache_hits, handle_cache_misses);
+    }
+
+    public StoreStatistics getStore() {
+        return store;
+    }
+
+    /**
+     * Gets the number of registrations whose object has been collected but that haven't been reclaimed yet, they are included in the live count of the store.
+     */
+    public int getDead() {
+        return dead;
+    }
+
+    /**
+     * Gets the number of bytes of payloads the server keeps as the baselines of delta reads, across the server and all of its sessions.
+     */
+    public long getBaselineBytes() {
+        return baseline_bytes;
+    }
+
+    private static double rate(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{methods=" + Arrays.toString(methods) + ", class_cache_hit_rate=" + getClassCacheHitRate()
+                + ", class_name_cache_hit_rate=" + getClassNameCacheHitRate() + ", handle_cache_hit_rate=" + getHandleCacheHitRate()
+                + ", store=" + store + ", dead=" + dead + ", baseline_bytes=" + baseline_bytes + "}";
+    }
+}
@@ -0,0 +1,51 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The terminal values of several paths resolved in a single call, in the order of the paths.
+ * A path whose resolution threw has a failure instead of a value, the resolutions of the other paths are unaffected.
+ */
+public final class Resolutions implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Serializable[] values;
+    private final String[] failures;
+
+    public Resolutions(Serializable[] values, String[] failures) {
+        this.values = values;
+        this.failures = failures;
+    }
+
+    public int size() {
+        return failures.length;
+    }
+
+    /**
+     * Gets the value of each path, with the same meaning as the value returned by {@link ServerStub#resolve(com.carpenter.cross_jvm_reflection.shared.path.PathExpression)},
+     * null where the resolution failed.
+     */
+    public Serializable[] getValues() {
+        return values;
+    }
+
+    /**
+     * Gets a description of what the resolution threw for each path, null where it didn't throw.
+     */
+    public String[] getFailures() {
+        return failures;
+    }
+
+    /**
+     * Whether the resolution of the path at the index threw.
+     */
+    public boolean isFailed(int index) {
+        return failures[index] != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Resolutions{values=" + Arrays.toString(values) + ", failures=" + Arrays.toString(failures) + "}";
+    }
+}
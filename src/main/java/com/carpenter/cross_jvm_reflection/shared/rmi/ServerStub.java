@@ -1,21 +1,65 @@
 package com.carpenter.cross_jvm_reflection.shared.rmi;
 
+import com.carpenter.cross_jvm_reflection.shared.path.PathExpression;
+import com.carpenter.cross_jvm_reflection.shared.query.Query;
+import com.carpenter.cross_jvm_reflection.shared.query.QueryResult;
+
 import java.io.Serializable;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
 public interface ServerStub extends Remote {
+    /**
+     * Opens a session, the uid's registered through the returned stub are held on behalf of the session.
+     * Releasing the session releases every uid that isn't also held by the server itself or by another session.
+     *
+     * @param lease_millis The time after the last use or renewal of the session at which it expires and is released, 0 or less never expires.
+     * @return A stub scoped to the new session that shares everything else with this stub.
+     */
+    ServerStub session(long lease_millis) throws RemoteException;
+
+    /**
+     * Releases the session of this stub and unexports it, it has no effect on a stub that isn't scoped to a session.
+     */
+    void release() throws RemoteException;
+
+    /**
+     * Extends the lease of the session of this stub, it has no effect on a stub that isn't scoped to a session.
+     */
+    void renew() throws RemoteException;
+
+    /**
+     * Gets the size and reclamation counters of the object store.
+     */
+    StoreStatistics store_statistics() throws RemoteException;
+
+    /**
+     * Gets the latency of each method, the hit rates of the caches and the size of the object store of the server.
+     */
+    MetricsSnapshot metrics() throws RemoteException;
+
+    /**
+     * Gets the field layouts of the loaded classes whose names start with the prefix, across every class loader, in a single call.
+     * A client can resolve names against the schemas locally, see {@link ClassSchema#getQualifiedName(int)}.
+     * Classes are only known to the server in full when it was deployed by the agent, otherwise only the classes it has resolved are listed.
+     *
+     * @param prefix A prefix of the class names such as a package name, empty for every class.
+     */
+    ClassSchema[] schema(String prefix) throws RemoteException;
+
     /**
      * Gets the uid of the specified field, it's value is implementation specific.
      *
-     * @return If the field has a null value, 0, otherwise a long with the lower 32 bits being a uid for the resolved object.
+     * @return If the field has a null value, 0, otherwise a long with the upper 32 bits being a generation and the lower 32 bits being a slot for the resolved object.
+     * The same live object always has the same uid, a uid whose object has been released or collected is stale and resolves to nothing.
      */
     long uid(String name) throws RemoteException;
 
     /**
      * Gets the uid of the specified field, it's value is implementation specific.
      *
-     * @return If the field has a null value, 0, otherwise a long with the upper 32 bits containing the value of owner_uid and the lower 32 bits being an implementation specific uid for the resolved object.
+     * @return If the field has a null value, 0, otherwise a long with the upper 32 bits being a generation and the lower 32 bits being a slot for the resolved object.
+     * The owner is recorded by the server instead of being packed into the uid.
      */
     long uid(String name, long owner_uid) throws RemoteException;
 
@@ -59,6 +103,20 @@ public interface ServerStub extends Remote {
      */
     long[] array(String name, long owner_uid) throws RemoteException;
 
+    /**
+     * Reads the array with the given uid as the changes since the last read of it through this stub, see {@link Delta}.
+     * Primitive arrays are read as their elements and object arrays as the uid's of their elements, registered as children of the array.
+     *
+     * @param baseline_checksum The checksum of the payload of the last read, 0 for the full payload.
+     * @return The delta, or null if the object isn't an array.
+     */
+    Delta array_delta(long uid, long baseline_checksum) throws RemoteException;
+
+    /**
+     * Reads the array at the end of the path as the changes since the last read of the path through this stub, see {@link #array_delta(long, long)}.
+     */
+    Delta array_delta(PathExpression path, long baseline_checksum) throws RemoteException;
+
     /**
      * Gets an array of the uid's of the keys of the given map.
      */
@@ -75,6 +133,121 @@ public interface ServerStub extends Remote {
      */
     long map_value(Object key, long map_uid) throws RemoteException;
 
+    /**
+     * Opens a cursor over the Map, Iterable or array with the given uid, its elements are then read a page at a time.
+     * Map cursors return each entry as its key followed by its value. A page shorter than requested is the last page and closes the cursor,
+     * cursors that are left open are closed with the session that opened them or after 5 minutes without a read.
+     *
+     * @return The id of the cursor, 0 if the uid couldn't be resolved to a Map, Iterable or array.
+     */
+    long cursor(long uid) throws RemoteException;
+
+    /**
+     * Gets the uid's of the next elements of the cursor, registered as children of the object the cursor was opened on.
+     *
+     * @param count The maximum number of elements (map entries) in the page.
+     * @throws RemoteException if the cursor is closed or its source was modified in a way its iterator doesn't tolerate.
+     */
+    long[] cursor_uids(long cursor, int count) throws RemoteException;
+
+    /**
+     * Gets the next elements of the cursor as Serializable values, elements that aren't Serializable are null.
+     */
+    Serializable[] cursor_values(long cursor, int count) throws RemoteException;
+
+    /**
+     * Gets the next elements of the cursor as longs: numbers, chars and booleans are converted and any other element is -1.
+     */
+    long[] cursor_int64(long cursor, int count) throws RemoteException;
+
+    /**
+     * Gets the next elements of the cursor as doubles: numbers, chars and booleans are converted and any other element is -1.
+     */
+    double[] cursor_fp64(long cursor, int count) throws RemoteException;
+
+    /**
+     * Closes a cursor before its last page.
+     *
+     * @return false if there was no open cursor with the id.
+     */
+    boolean cursor_close(long cursor) throws RemoteException;
+
+    /**
+     * Invokes a method on the object with the given uid.
+     * The method is resolved once per signature and cached. Arguments of primitive parameters are passed boxed in the type of the parameter.
+     * An object registered on the server is passed as a {@link UidArgument} of its uid, any other argument is passed as it is.
+     *
+     * @param method The method in the format "classname.methodname".
+     * @param parameter_types The names of the parameter types as returned by Class.getName(), "int" for an int parameter.
+     * @param receiver_uid The uid of the receiver, 0 to invoke a static method.
+     * @return The result if it is Serializable, null otherwise, if the method is void or if the receiver can't be resolved.
+     * @throws RemoteException if the method can't be resolved or it threw.
+     */
+    Serializable invoke(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments) throws RemoteException;
+
+    /**
+     * Invokes a method like {@link #invoke(String, String[], long, Serializable[])} and registers the result as a child of the receiver.
+     *
+     * @return The uid of the result, 0 if it is null or the receiver can't be resolved.
+     */
+    long invoke_uid(String method, String[] parameter_types, long receiver_uid, Serializable[] arguments) throws RemoteException;
+
+    /**
+     * Invokes a method with the same arguments on each of the receivers in a single call.
+     *
+     * @return The result for each receiver, see {@link Invocations#getValues()}, and what the method threw for each receiver it threw for.
+     * @throws RemoteException if the method can't be resolved.
+     */
+    Invocations invoke_all(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments) throws RemoteException;
+
+    /**
+     * Invokes a method with the same arguments on each of the receivers in a single call, registering each result as a child of its receiver.
+     *
+     * @return The uid of the result for each receiver, see {@link Invocations#getUIDs()}, and what the method threw for each receiver it threw for.
+     * @throws RemoteException if the method can't be resolved.
+     */
+    Invocations invoke_all_uids(String method, String[] parameter_types, long[] receiver_uids, Serializable[] arguments) throws RemoteException;
+
+    /**
+     * Evaluates the query over the elements of its source on the server, only the result is sent back.
+     * Sources of more than a few thousand elements are split across a pool of threads.
+     * The elements selected by a top query are registered as children of the source.
+     *
+     * @return The result, or null if the source can't be resolved or isn't an array, an Iterable or a Map.
+     * @throws RemoteException if a field of the query can't be resolved.
+     */
+    QueryResult query(Query query) throws RemoteException;
+
+    /**
+     * Reads the graph reachable from the object with the given uid in a single walk, see {@link Snapshot}.
+     * Every object of the snapshot is registered as a child of the root.
+     *
+     * @param max_depth The number of levels of the graph that are expanded, the root being the first level.
+     * @param includes Patterns of the fields to read, matched against the field name and against "classname.fieldname", '*' matches any characters.
+     *                 Null or empty to read every field that isn't excluded.
+     * @param excludes Patterns of the fields not to read, may be null.
+     * @return The snapshot, without nodes if the root can't be resolved.
+     * @throws RemoteException if the object store is full.
+     */
+    Snapshot snapshot(long root_uid, int max_depth, String[] includes, String[] excludes) throws RemoteException;
+
+    /**
+     * Computes a structural hash of the contents of the object with the given uid inside the server, so that a client can tell whether a graph
+     * or array changed before fetching it again. Primitive values, Strings, primitive arrays and the fields of nested objects are hashed, large
+     * primitive arrays in parallel. The hash is 64 bits and non-cryptographic, and it is only comparable within the same server JVM.
+     *
+     * @param max_depth The number of levels of the graph whose contents are hashed, the root being the first level. Objects past it only
+     *                  contribute their class.
+     * @return The hash, or 0 if the object can't be resolved.
+     * @throws RemoteException if a field couldn't be read.
+     */
+    long hash(long uid, int max_depth) throws RemoteException;
+
+    /**
+     * Computes a structural hash of the contents of the object at the end of the path, see {@link #hash(long, int)}.
+     */
+    long hash(PathExpression path, int max_depth) throws RemoteException;
+
     /**
      * Checks whether the given uid can be resolved to an object. Resolution my fail if the jvm has garbage collected the object.
      */
@@ -108,6 +281,38 @@ public interface ServerStub extends Remote {
      */
     Serializable serialize(String name, long owner_uid) throws RemoteException;
 
+    /**
+     * Gets the object with the given uid in the compact format of a {@link com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry},
+     * which unlike serialize also covers objects that aren't Serializable.
+     *
+     * @param max_depth The number of levels of arrays, collections and objects that are encoded, deeper ones are truncated.
+     */
+    byte[] encode(long uid, int max_depth) throws RemoteException;
+
+    /**
+     * Gets the object with the given name in the compact format of a {@link com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry}
+     */
+    byte[] encode(String name, int max_depth) throws RemoteException;
+
+    /**
+     * Gets the object with the given name and owner in the compact format of a {@link com.carpenter.cross_jvm_reflection.shared.codec.CodecRegistry}
+     */
+    byte[] encode(String name, long owner_uid, int max_depth) throws RemoteException;
+
+    /**
+     * Encodes the object with the given uid as by {@link #encode(long, int)} and returns the changes since the last read of it at the same
+     * depth through this stub, see {@link Delta}.
+     *
+     * @param baseline_checksum The checksum of the payload of the last read, 0 for the full payload.
+     * @return The delta, or null if the object can't be resolved.
+     */
+    Delta encode_delta(long uid, int max_depth, long baseline_checksum) throws RemoteException;
+
+    /**
+     * Encodes the object at the end of the path and returns the changes since the last read of the path, see {@link #encode_delta(long, int, long)}.
+     */
+    Delta encode_delta(PathExpression path, int max_depth, long baseline_checksum) throws RemoteException;
+
     /**
      * Gets the object with the given uid as a byte
      */
@@ -173,4 +378,329 @@ public interface ServerStub extends Remote {
      * Gets the object with the given name and owner as a char (an unsigned short)
      */
     char uint16(String name, long owner_uid) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the byte[] with the given uid, the elements are copied without boxing.
+     *
+     * @param offset The index of the first element of the slice, it is clamped to the bounds of the array.
+     * @param length The maximum number of elements in the slice, a negative length reads to the end of the array.
+     * @return null if the uid couldn't be resolved to a byte[].
+     */
+    byte[] int8_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the byte[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    byte[] int8_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the byte[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    byte[] int8_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the short[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    short[] int16_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the short[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    short[] int16_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the short[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    short[] int16_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the int[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    int[] int32_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the int[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    int[] int32_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the int[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    int[] int32_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the long[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    long[] int64_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the long[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    long[] int64_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the long[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    long[] int64_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the float[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    float[] fp32_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the float[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    float[] fp32_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the float[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    float[] fp32_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the double[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    double[] fp64_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the double[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    double[] fp64_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the double[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    double[] fp64_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the boolean[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    boolean[] bool_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the boolean[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    boolean[] bool_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the boolean[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    boolean[] bool_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the char[] with the given uid, see {@link #int8_array(long, int, int)}.
+     */
+    char[] uint16_array(long uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the char[] with the given name, see {@link #int8_array(long, int, int)}.
+     */
+    char[] uint16_array(String name, int offset, int length) throws RemoteException;
+
+    /**
+     * Gets a copy of a slice of the char[] with the given name and owner, see {@link #int8_array(long, int, int)}.
+     */
+    char[] uint16_array(String name, long owner_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the byte field with the given name from each element of a slice of the Object[] with the given uid, for example "pkg.Particle.x" for all particles.
+     * The field is read through a type exact MethodHandle so the values are never boxed.
+     *
+     * @param offset The index of the first element of the slice, it is clamped to the bounds of the array.
+     * @param length The maximum number of elements in the slice, a negative length reads to the end of the array.
+     * @return The value of the field for each element, the same value as {@link #int8(long)} returns for an unresolvable value for null elements. Null if the uid couldn't be resolved to an Object[].
+     */
+    byte[] int8_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the short field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    short[] int16_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the int field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    int[] int32_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the long field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    long[] int64_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the float field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    float[] fp32_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the double field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    double[] fp64_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the boolean field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    boolean[] bool_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Reads the char field with the given name from each element of a slice of the Object[] with the given uid, see {@link #int8_strided(String, long, int, int)}.
+     */
+    char[] uint16_strided(String name, long array_uid, int offset, int length) throws RemoteException;
+
+    /**
+     * Resolves every hop of the path on the server and gets the terminal value.
+     *
+     * @return The terminal value if it is Serializable, its uid as a Long if the path is a uid path, otherwise null. Null is also returned when an intermediate hop resolves to null.
+     */
+    Serializable resolve(PathExpression path) throws RemoteException;
+
+    /**
+     * Resolves each of the paths in a single call, see {@link #resolve(PathExpression)}.
+     *
+     * @return The terminal value of each path in the same order as the given paths, and what the resolution threw for each path it threw for.
+     */
+    Resolutions resolve(PathExpression[] paths) throws RemoteException;
+
+    /**
+     * Subscribes to the values of the paths. The server resolves them every interval and calls the listener only with the values that changed
+     * (compared with equals, arrays element by element) and the uid's that became stale, nothing is sent for a sample without changes.
+     * Uid paths are registered on behalf of the session of this stub, and the subscription is cancelled when that session is released.
+     * The listener is called off the sampling threads. Deltas sampled while the listener is still handling one are merged into a single delta,
+     * and a listener that doesn't return within 30 seconds has its subscription cancelled.
+     *
+     * @param interval_millis The delay between the end of a sample and the start of the next.
+     * @return The id of the subscription, used with {@link #unsubscribe(long)}.
+     */
+    long subscribe(PathExpression[] paths, long interval_millis, WatchListener listener) throws RemoteException;
+
+    /**
+     * Cancels a subscription, the listener may still receive a delta that was being delivered.
+     *
+     * @return false if there was no subscription with the id.
+     */
+    boolean unsubscribe(long subscription) throws RemoteException;
+
+    /**
+     * Watches the writes to the field, the server retransforms the classes that write it so that each write is recorded in a bounded ring.
+     * Writes made by constructors and by classes outside the nest of the class declaring the field aren't recorded. Watching a field that is
+     * already watched shares its ring. Requires the server to be deployed by an agent that can retransform classes.
+     *
+     * @param name A String in the format "classname.fieldname"
+     * @param capacity The number of writes the ring holds, at most 4194304, older writes are dropped when it is overrun.
+     * @return The id of the watch, used with {@link #drain_field(long, long, int)} and {@link #unwatch_field(long)}.
+     * @throws RemoteException if the field couldn't be resolved or watched.
+     */
+    long watch_field(String name, int capacity) throws RemoteException;
+
+    /**
+     * Gets the writes to a watched field from the sequence on, the owners and the object values are registered.
+     *
+     * @param sequence The sequence to read from, 0 for the oldest write held or the next sequence of the previous batch.
+     * @return The writes, or null if there is no watch with the id.
+     */
+    FieldEvents drain_field(long watch_id, long sequence, int max_events) throws RemoteException;
+
+    /**
+     * Removes a watch, once a field has no watches left the classes that write it are restored to their original bytecode.
+     *
+     * @return false if there was no watch with the id.
+     */
+    boolean unwatch_field(long watch_id) throws RemoteException;
+
+    /**
+     * Records the value at the end of the path every period on a sampler thread inside the server, for values that change faster than they could
+     * be polled. Each sample is timestamped and kept in a bounded ring, and the sampler doesn't allocate. Periods are kept down to the
+     * resolution of the server's timer, periods that are missed are counted rather than sampled late. The owner of the path is held until the
+     * series is stopped, and the series is stopped when the session of this stub is released.
+     *
+     * @param path A path that ends at a primitive number, boolean values can't be recorded.
+     * @param period_nanos The period between samples in nanoseconds, at least 1000.
+     * @param capacity The number of samples the ring holds, older samples are dropped when it is overrun.
+     * @return The id of the series, used with {@link #drain_series(long, long, int)} and {@link #stop_series(long)}.
+     * @throws RemoteException if the path couldn't be compiled or doesn't end at a number.
+     */
+    long record_series(PathExpression path, long period_nanos, int capacity) throws RemoteException;
+
+    /**
+     * Gets the samples of a series from the sequence on, packed into primitive arrays.
+     *
+     * @param sequence The sequence to read from, 0 for the oldest sample held or the next sequence of the previous window.
+     * @return The samples, or null if there is no series with the id.
+     */
+    TimeSeries drain_series(long series, long sequence, int max_samples) throws RemoteException;
+
+    /**
+     * Stops recording a series and drops its samples.
+     *
+     * @return false if there was no series with the id.
+     */
+    boolean stop_series(long series) throws RemoteException;
+
+    /**
+     * Marks the field as hot, the server generates an accessor class that reads it with a plain getfield or getstatic and uses it for every
+     * later read of the field, including reads through existing plans.
+     *
+     * @param name A String in the format "classname.fieldname"
+     * @return true if the field is read through a generated accessor, false if class definition isn't permitted and the reflective read is kept.
+     * @throws RemoteException if the name couldn't be resolved to a class and field.
+     */
+    boolean hot(String name) throws RemoteException;
+
+    /**
+     * Compiles the path into a plan on the server, reading through a plan costs a single MethodHandle invocation and doesn't allocate.
+     * Compiling the same path again returns the same plan id, as does compiling the same hops from another owner since a plan is read with its owner.
+     *
+     * @return The id of the plan, used with the *_plan methods.
+     * @throws RemoteException if a hop of the path couldn't be resolved to a class and field.
+     */
+    long plan(PathExpression path) throws RemoteException;
+
+    /**
+     * Gets the uid of the terminal value of a plan that starts at a static field.
+     */
+    long uid_plan(long plan) throws RemoteException;
+
+    /**
+     * Gets the uid of the terminal value of a plan that starts at an owner, the owner doesn't have to be the one the plan was compiled with.
+     */
+    long uid_plan(long plan, long owner_uid) throws RemoteException;
+
+    /**
+     * Reads the terminal value of a plan that starts at a static field as a byte.
+     */
+    byte int8_plan(long plan) throws RemoteException;
+
+    /**
+     * Reads the terminal value of a plan that starts at an owner as a byte.
+     */
+    byte int8_plan(long plan, long owner_uid) throws RemoteException;
+
+    short int16_plan(long plan) throws RemoteException;
+
+    short int16_plan(long plan, long owner_uid) throws RemoteException;
+
+    int int32_plan(long plan) throws RemoteException;
+
+    int int32_plan(long plan, long owner_uid) throws RemoteException;
+
+    long int64_plan(long plan) throws RemoteException;
+
+    long int64_plan(long plan, long owner_uid) throws RemoteException;
+
+    float fp32_plan(long plan) throws RemoteException;
+
+    float fp32_plan(long plan, long owner_uid) throws RemoteException;
+
+    double fp64_plan(long plan) throws RemoteException;
+
+    double fp64_plan(long plan, long owner_uid) throws RemoteException;
+
+    boolean bool_plan(long plan) throws RemoteException;
+
+    boolean bool_plan(long plan, long owner_uid) throws RemoteException;
+
+    char uint16_plan(long plan) throws RemoteException;
+
+    char uint16_plan(long plan, long owner_uid) throws RemoteException;
 }
@@ -0,0 +1,455 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import com.carpenter.cross_jvm_reflection.shared.transport.FrameWriter;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The subgraph reachable from an object, read by {@link ServerStub#snapshot(long, int, String[], String[])} in one pass over the graph.
+ * <p>
+ * The graph is transported as a flat table of nodes, every object appears once however often it is referenced. A node is an object, an array
+ * or collection of elements, or a map of keys and values. Strings, boxed primitives, primitive arrays and the names of enum constants are
+ * values that are stored inline, any other reference is the index of a node. Nodes beyond the depth limit, and objects whose fields aren't
+ * accessible, are in the table with their uid and class but aren't expanded.
+ * <p>
+ * Every node is registered as a uid, so a node that wasn't expanded can be read further or be the root of the next snapshot.
+ * The graph is rebuilt into {@link Node}s the first time it is accessed.
+ */
+public final class Snapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int OBJECT = 0;
+    public static final int ELEMENTS = 1;
+    public static final int MAP = 2;
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte BOOLEAN_ARRAY = 11;
+    private static final byte BYTE_ARRAY = 12;
+    private static final byte SHORT_ARRAY = 13;
+    private static final byte CHAR_ARRAY = 14;
+    private static final byte INT_ARRAY = 15;
+    private static final byte LONG_ARRAY = 16;
+    private static final byte FLOAT_ARRAY = 17;
+    private static final byte DOUBLE_ARRAY = 18;
+    private static final byte NODE = 19;
+
+    private final String[] class_names;
+    private final int[] class_kinds;
+    private final String[][] class_fields;
+    private final long[] node_uids;
+    private final int[] node_classes;
+    private final int[] node_sizes;
+    private final byte[] values;
+    private transient Node[] nodes;
+
+    private Snapshot(String[] class_names, int[] class_kinds, String[][] class_fields, long[] node_uids, int[] node_classes, int[] node_sizes, byte[] values) {
+        this.class_names = class_names;
+        this.class_kinds = class_kinds;
+        this.class_fields = class_fields;
+        this.node_uids = node_uids;
+        this.node_classes = node_classes;
+        this.node_sizes = node_sizes;
+        this.values = values;
+    }
+
+    /**
+     * Gets the number of nodes.
+     */
+    public int size() {
+        return node_uids.length;
+    }
+
+    /**
+     * Gets the node of the root object, null if the root was null or couldn't be resolved.
+     */
+    public Node getRoot() {
+        return node_uids.length == 0 ? null : getNode(0);
+    }
+
+    /**
+     * Gets a node, nodes are numbered in the order they were reached in a breadth first walk from the root.
+     */
+    public Node getNode(int index) {
+        if (nodes == null) {
+            nodes = rebuild();
+        }
+        return nodes[index];
+    }
+
+    private Node[] rebuild() {
+        Node[] rebuilt = new Node[node_uids.length];
+        for (int index = 0; index < rebuilt.length; ++index) {
+            int type = node_classes[index];
+            rebuilt[index] = new Node(index, node_uids[index], class_names[type], class_kinds[type], class_fields[type],
+                    node_sizes[index] < 0 ? null : new Object[node_sizes[index]]);
+        }
+        ByteBuffer in = ByteBuffer.wrap(values);
+        for (Node node : rebuilt) {
+            if (node.values != null) {
+                for (int index = 0; index < node.values.length; ++index) {
+                    node.values[index] = readValue(in, rebuilt);
+                }
+            }
+        }
+        return rebuilt;
+    }
+
+    private static Object readValue(ByteBuffer in, Node[] nodes) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case BYTE:
+                return in.get();
+            case SHORT:
+                return in.getShort();
+            case CHAR:
+                return in.getChar();
+            case INT:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case FLOAT:
+                return in.getFloat();
+            case DOUBLE:
+                return in.getDouble();
+            case STRING: {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case BOOLEAN_ARRAY: {
+                boolean[] value = new boolean[in.getInt()];
+                for (int index = 0; index < value.length; ++index) {
+                    value[index] = in.get() != 0;
+                }
+                return value;
+            }
+            case BYTE_ARRAY: {
+                byte[] value = new byte[in.getInt()];
+                in.get(value);
+                return value;
+            }
+            case SHORT_ARRAY: {
+                short[] value = new short[in.getInt()];
+                in.asShortBuffer().get(value);
+                in.position(in.position() + value.length * 2);
+                return value;
+            }
+            case CHAR_ARRAY: {
+                char[] value = new char[in.getInt()];
+                in.asCharBuffer().get(value);
+                in.position(in.position() + value.length * 2);
+                return value;
+            }
+            case INT_ARRAY: {
+                int[] value = new int[in.getInt()];
+                in.asIntBuffer().get(value);
+                in.position(in.position() + value.length * 4);
+                return value;
+            }
+            case LONG_ARRAY: {
+                long[] value = new long[in.getInt()];
+                in.asLongBuffer().get(value);
+                in.position(in.position() + value.length * 8);
+                return value;
+            }
+            case FLOAT_ARRAY: {
+                float[] value = new float[in.getInt()];
+                in.asFloatBuffer().get(value);
+                in.position(in.position() + value.length * 4);
+                return value;
+            }
+            case DOUBLE_ARRAY: {
+                double[] value = new double[in.getInt()];
+                in.asDoubleBuffer().get(value);
+                in.position(in.position() + value.length * 8);
+                return value;
+            }
+            case NODE:
+                return nodes[in.getInt()];
+            default:
+                throw new IllegalStateException("Unknown value tag " + tag + " in a snapshot.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot{" + node_uids.length + " nodes, " + class_names.length + " classes, " + values.length + " bytes of values}";
+    }
+
+    /**
+     * An object of the snapshot. The values of an object are those of its fields, the values of an array or collection are its elements and
+     * the values of a map alternate between its keys and values. A value is a String, a boxed primitive, a primitive array, another Node or null.
+     */
+    public static final class Node {
+        private final int index;
+        private final long uid;
+        private final String class_name;
+        private final int kind;
+        private final String[] fields;
+        private final Object[] values;
+
+        private Node(int index, long uid, String class_name, int kind, String[] fields, Object[] values) {
+            this.index = index;
+            this.uid = uid;
+            this.class_name = class_name;
+            this.kind = kind;
+            this.fields = fields;
+            this.values = values;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the uid the object was registered as on the server.
+         */
+        public long getUID() {
+            return uid;
+        }
+
+        public String getClassName() {
+            return class_name;
+        }
+
+        /**
+         * Gets whether the node is an {@link #OBJECT}, {@link #ELEMENTS} of an array or collection, or a {@link #MAP}.
+         */
+        public int getKind() {
+            return kind;
+        }
+
+        /**
+         * Gets whether the values of the node were read, false if it was beyond the depth limit or its fields aren't accessible.
+         */
+        public boolean isExpanded() {
+            return values != null;
+        }
+
+        /**
+         * Gets the number of values of the node, 0 if it wasn't expanded.
+         */
+        public int size() {
+            return values == null ? 0 : values.length;
+        }
+
+        /**
+         * Gets the name of a field of an object, fields of superclasses that are hidden by a subclass are named "superclass.field".
+         * Values of other nodes have no names.
+         */
+        public String getFieldName(int index) {
+            return kind == OBJECT ? fields[index] : null;
+        }
+
+        public Object get(int index) {
+            return values[index];
+        }
+
+        /**
+         * Gets the value of a field of an object, null if the field wasn't included in the snapshot.
+         */
+        public Object get(String field) {
+            if (values != null && kind == OBJECT) {
+                for (int index = 0; index < fields.length; ++index) {
+                    if (fields[index].equals(field)) {
+                        return values[index];
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Gets the entries of a map node in the order they were iterated on the server.
+         *
+         * @throws IllegalStateException if the node isn't an expanded map.
+         */
+        public Map<Object, Object> asMap() {
+            if (kind != MAP || values == null) {
+                throw new IllegalStateException(class_name + " isn't an expanded map.");
+            }
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (int index = 0; index < values.length; index += 2) {
+                map.put(values[index], values[index + 1]);
+            }
+            return map;
+        }
+
+        /**
+         * Lists the values, nodes only by their class and index since the graph may be cyclic.
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(class_name).append('#').append(index);
+            if (values == null) {
+                return builder.append("{...}").toString();
+            }
+            builder.append('{');
+            for (int index = 0; index < values.length; ++index) {
+                if (index > 0) {
+                    builder.append(", ");
+                }
+                if (kind == OBJECT) {
+                    builder.append(fields[index]).append('=');
+                }
+                Object value = values[index];
+                if (value instanceof Node) {
+                    builder.append(((Node) value).class_name).append('#').append(((Node) value).index);
+                } else if (value != null && value.getClass().isArray()) {
+                    builder.append(value.getClass().getComponentType().getName()).append("[]");
+                } else {
+                    builder.append(value);
+                }
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    /**
+     * Builds a snapshot node by node in the order of the node indices. Every node is added before its values are written, the values of the
+     * nodes that are expanded are written in the same order.
+     */
+    public static final class Writer {
+        private final Map<Object, Integer> class_indices = new HashMap<>();
+        private String[] class_names = new String[8];
+        private int[] class_kinds = new int[8];
+        private String[][] class_fields = new String[8][];
+        private int class_count;
+        private long[] node_uids = new long[16];
+        private int[] node_classes = new int[16];
+        private int[] node_sizes = new int[16];
+        private int node_count;
+        private final FrameWriter values = new FrameWriter(256);
+
+        /**
+         * Gets the index of a class in the class table, adding it the first time.
+         *
+         * @param key Identifies the class, such as its Class object.
+         * @param fields The names of the fields written for objects of the class, null for the other kinds.
+         */
+        public int type(Object key, String name, int kind, String[] fields) {
+            Integer index = class_indices.get(key);
+            if (index != null) {
+                return index;
+            }
+            if (class_count == class_names.length) {
+                class_names = Arrays.copyOf(class_names, class_count * 2);
+                class_kinds = Arrays.copyOf(class_kinds, class_count * 2);
+                class_fields = Arrays.copyOf(class_fields, class_count * 2);
+            }
+            class_names[class_count] = name;
+            class_kinds[class_count] = kind;
+            class_fields[class_count] = fields;
+            class_indices.put(key, class_count);
+            return class_count++;
+        }
+
+        /**
+         * Adds a node that isn't expanded, see {@link #expand(int, int)}.
+         *
+         * @return The index of the node.
+         */
+        public int node(long uid, int type) {
+            if (node_count == node_uids.length) {
+                node_uids = Arrays.copyOf(node_uids, node_count * 2);
+                node_classes = Arrays.copyOf(node_classes, node_count * 2);
+                node_sizes = Arrays.copyOf(node_sizes, node_count * 2);
+            }
+            node_uids[node_count] = uid;
+            node_classes[node_count] = type;
+            node_sizes[node_count] = -1;
+            return node_count++;
+        }
+
+        /**
+         * Marks the node as expanded, the given number of values must be written for it before the values of the next expanded node.
+         */
+        public void expand(int node, int size) {
+            node_sizes[node] = size;
+        }
+
+        public void putNode(int node) {
+            values.putByte(NODE).putInt(node);
+        }
+
+        /**
+         * Writes a value that is stored inline.
+         *
+         * @throws IllegalArgumentException if the value isn't null, a String, a boxed primitive or a primitive array.
+         */
+        public void putValue(Object value) {
+            if (value == null) {
+                values.putByte(NULL);
+            } else if (value instanceof String) {
+                values.putByte(STRING).putString((String) value);
+            } else if (value instanceof Integer) {
+                values.putByte(INT).putInt((Integer) value);
+            } else if (value instanceof Long) {
+                values.putByte(LONG).putLong((Long) value);
+            } else if (value instanceof Boolean) {
+                values.putByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                values.putByte(DOUBLE).putDouble((Double) value);
+            } else if (value instanceof Float) {
+                values.putByte(FLOAT).putFloat((Float) value);
+            } else if (value instanceof Short) {
+                values.putByte(SHORT).putShort((Short) value);
+            } else if (value instanceof Character) {
+                values.putByte(CHAR).putChar((Character) value);
+            } else if (value instanceof Byte) {
+                values.putByte(BYTE).putByte((Byte) value);
+            } else if (value instanceof int[]) {
+                values.putByte(INT_ARRAY).putInts((int[]) value);
+            } else if (value instanceof long[]) {
+                values.putByte(LONG_ARRAY).putLongs((long[]) value);
+            } else if (value instanceof double[]) {
+                values.putByte(DOUBLE_ARRAY).putDoubles((double[]) value);
+            } else if (value instanceof byte[]) {
+                values.putByte(BYTE_ARRAY).putBytes((byte[]) value);
+            } else if (value instanceof char[]) {
+                values.putByte(CHAR_ARRAY).putChars((char[]) value);
+            } else if (value instanceof float[]) {
+                values.putByte(FLOAT_ARRAY).putFloats((float[]) value);
+            } else if (value instanceof short[]) {
+                values.putByte(SHORT_ARRAY).putShorts((short[]) value);
+            } else if (value instanceof boolean[]) {
+                values.putByte(BOOLEAN_ARRAY).putBooleans((boolean[]) value);
+            } else {
+                throw new IllegalArgumentException(value.getClass().getName() + " can't be stored inline.");
+            }
+        }
+
+        public int getNodeCount() {
+            return node_count;
+        }
+
+        public Snapshot finish() {
+            ByteBuffer frame = values.finish();
+            return new Snapshot(Arrays.copyOf(class_names, class_count), Arrays.copyOf(class_kinds, class_count), Arrays.copyOf(class_fields, class_count),
+                    Arrays.copyOf(node_uids, node_count), Arrays.copyOf(node_classes, node_count), Arrays.copyOf(node_sizes, node_count),
+                    Arrays.copyOfRange(frame.array(), 4, frame.limit()));
+        }
+    }
+}
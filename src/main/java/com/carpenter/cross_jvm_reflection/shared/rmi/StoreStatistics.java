@@ -0,0 +1,74 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the object store of the server.
+ */
+public final class StoreStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int live;
+    private final int capacity;
+    private final int max_capacity;
+    private final long reclaimed;
+    private final long released;
+    private final int sessions;
+
+    public StoreStatistics(int live, int capacity, int max_capacity, long reclaimed, long released, int sessions) {
+        this.live = live;
+        this.capacity = capacity;
+        this.max_capacity = max_capacity;
+        this.reclaimed = reclaimed;
+        this.released = released;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Gets the number of uid's that are registered, including those whose object has been collected but not yet reclaimed.
+     */
+    public int getLive() {
+        return live;
+    }
+
+    /**
+     * Gets the number of slots that have been allocated, in use or free.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the maximum number of slots the store may allocate.
+     */
+    public int getMaxCapacity() {
+        return max_capacity;
+    }
+
+    /**
+     * Gets the number of uid's that have been released because their object was garbage collected.
+     */
+    public long getReclaimed() {
+        return reclaimed;
+    }
+
+    /**
+     * Gets the number of uid's that have been released explicitly or by the release or expiry of a session.
+     */
+    public long getReleased() {
+        return released;
+    }
+
+    /**
+     * Gets the number of open sessions.
+     */
+    public int getSessions() {
+        return sessions;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreStatistics{live=" + live + ", capacity=" + capacity + ", max_capacity=" + max_capacity
+                + ", reclaimed=" + reclaimed + ", released=" + released + ", sessions=" + sessions + "}";
+    }
+}
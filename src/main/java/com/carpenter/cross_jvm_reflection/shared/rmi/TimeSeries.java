@@ -0,0 +1,78 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+
+/**
+ * A window of the samples of a recorded series, in the order they were taken.
+ * The values of a series of float or double values are in {@link #getDoubles()}, those of any other primitive series in {@link #getLongs()}.
+ */
+public final class TimeSeries implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long next_sequence;
+    private final long dropped;
+    private final long missed;
+    private final long[] times;
+    private final long[] longs;
+    private final double[] doubles;
+
+    public TimeSeries(long next_sequence, long dropped, long missed, long[] times, long[] longs, double[] doubles) {
+        this.next_sequence = next_sequence;
+        this.dropped = dropped;
+        this.missed = missed;
+        this.times = times;
+        this.longs = longs;
+        this.doubles = doubles;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * Gets the sequence to drain from next.
+     */
+    public long getNextSequence() {
+        return next_sequence;
+    }
+
+    /**
+     * Gets the number of samples from the drained sequence on that were overwritten before they were drained.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Gets the number of sampling periods the recorder has missed since it started, because the sampler fell behind or the path couldn't be read.
+     */
+    public long getMissed() {
+        return missed;
+    }
+
+    /**
+     * Gets the System.nanoTime() of each sample in the server's JVM.
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * Gets the values of an integral series, null for a floating point series.
+     */
+    public long[] getLongs() {
+        return longs;
+    }
+
+    /**
+     * Gets the values of a floating point series, null for an integral series.
+     */
+    public double[] getDoubles() {
+        return doubles;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeries{size=" + size() + ", next_sequence=" + next_sequence + ", dropped=" + dropped + ", missed=" + missed + "}";
+    }
+}
@@ -0,0 +1,39 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+
+/**
+ * Passes the object with a uid as an argument of {@link ServerStub#invoke(String, String[], long, Serializable[])} and the other invoke methods.
+ * Any other argument, including a Long, is passed as it is.
+ */
+public final class UidArgument implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long uid;
+
+    /**
+     * @param uid The uid of the object to pass, 0 for null.
+     */
+    public UidArgument(long uid) {
+        this.uid = uid;
+    }
+
+    public long getUID() {
+        return uid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof UidArgument && ((UidArgument) o).uid == uid;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(uid);
+    }
+
+    @Override
+    public String toString() {
+        return "UidArgument{uid=" + uid + "}";
+    }
+}
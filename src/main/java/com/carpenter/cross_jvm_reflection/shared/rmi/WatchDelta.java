@@ -0,0 +1,63 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The values of a subscription that changed since its previous sample. The first delta of a subscription holds every value.
+ */
+public final class WatchDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long subscription;
+    private final long sample;
+    private final int[] indices;
+    private final Serializable[] values;
+    private final long[] invalidated;
+
+    public WatchDelta(long subscription, long sample, int[] indices, Serializable[] values, long[] invalidated) {
+        this.subscription = subscription;
+        this.sample = sample;
+        this.indices = indices;
+        this.values = values;
+        this.invalidated = invalidated;
+    }
+
+    public long getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Gets the number of the sample the delta was taken from, samples without changes aren't delivered so numbers may be skipped.
+     */
+    public long getSample() {
+        return sample;
+    }
+
+    /**
+     * Gets the indices of the paths whose values changed, in the order they were given to subscribe.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Gets the new value of each changed path, with the same meaning as the values returned by ServerStub.resolve.
+     */
+    public Serializable[] getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the uid's seen by the subscription that became stale since the previous sample, those the paths are rooted at and those returned by uid paths.
+     */
+    public long[] getInvalidated() {
+        return invalidated;
+    }
+
+    @Override
+    public String toString() {
+        return "WatchDelta{subscription=" + subscription + ", sample=" + sample + ", indices=" + Arrays.toString(indices)
+                + ", values=" + Arrays.toString(values) + ", invalidated=" + Arrays.toString(invalidated) + "}";
+    }
+}
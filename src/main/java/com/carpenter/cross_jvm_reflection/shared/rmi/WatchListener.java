@@ -0,0 +1,17 @@
+package com.carpenter.cross_jvm_reflection.shared.rmi;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Receives the changes of a subscription, see {@link ServerStub#subscribe(com.carpenter.cross_jvm_reflection.shared.path.PathExpression[], long, WatchListener)}.
+ * Over rmi the listener has to be exported by the client, the binary transport pushes the changes over its own connection instead.
+ */
+public interface WatchListener extends Remote {
+    /**
+     * Called with the changes of a sample, deltas of one subscription are delivered one at a time and in order. The changes sampled while a
+     * delta is being handled are merged into the next one, which then holds the latest value of each path that changed.
+     * Throwing an exception, or not returning within 30 seconds, cancels the subscription.
+     */
+    void changed(WatchDelta delta) throws RemoteException;
+}
@@ -0,0 +1,124 @@
+package com.carpenter.cross_jvm_reflection.shared.shm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * The layout of the memory mapped file that the server publishes sampled values into, all values are in the native byte order.
+ * <pre>
+ * 0   int  magic
+ * 4   int  version
+ * 8   int  slot count
+ * 12  int  offset of the sequence, a multiple of 64
+ * 16  long refresh interval in microseconds
+ * 24  int  state, 1 while the server publishes and 0 once it stopped
+ * 64  the directory, per slot a type byte followed by the length prefixed UTF-8 text of its path expression
+ * </pre>
+ * At the sequence offset is the long sequence of the seqlock followed by the long time of the last sample in milliseconds, the slots start
+ * on the next cache line. Each slot is 8 bytes holding the raw bits of its value: integers sign extended (chars zero extended), booleans as 0 or 1
+ * and floating point numbers as their raw bits.
+ * <p>
+ * The sequence is odd while the server writes a sample. A reader reads the sequence, the slots and the sequence again, and retries if the
+ * two differ or are odd. The fences are those of sun.misc.Unsafe, resolved reflectively so that both sides run on Java 8 and later.
+ */
+public final class SharedMemoryLayout {
+    public static final int MAGIC = 0x434A5653;
+    public static final int VERSION = 1;
+
+    public static final int MAGIC_OFFSET = 0;
+    public static final int VERSION_OFFSET = 4;
+    public static final int SLOT_COUNT_OFFSET = 8;
+    public static final int SEQUENCE_OFFSET_OFFSET = 12;
+    public static final int REFRESH_OFFSET = 16;
+    public static final int STATE_OFFSET = 24;
+    public static final int DIRECTORY_OFFSET = 64;
+    public static final int CACHE_LINE = 64;
+    public static final int SLOT_SIZE = 8;
+
+    public static final byte INT8 = 0;
+    public static final byte INT16 = 1;
+    public static final byte INT32 = 2;
+    public static final byte INT64 = 3;
+    public static final byte FP32 = 4;
+    public static final byte FP64 = 5;
+    public static final byte BOOL = 6;
+    public static final byte UINT16 = 7;
+
+    private static final String[] TYPE_NAMES = {"int8", "int16", "int32", "int64", "fp32", "fp64", "bool", "uint16"};
+
+    private static final MethodHandle LOAD_FENCE;
+    private static final MethodHandle STORE_FENCE;
+
+    static {
+        try {
+            Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+            Field the_unsafe = unsafe_class.getDeclaredField("theUnsafe");
+            the_unsafe.setAccessible(true);
+            Object unsafe = the_unsafe.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LOAD_FENCE = lookup.findVirtual(unsafe_class, "loadFence", MethodType.methodType(void.class)).bindTo(unsafe);
+            STORE_FENCE = lookup.findVirtual(unsafe_class, "storeFence", MethodType.methodType(void.class)).bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private SharedMemoryLayout() {
+    }
+
+    /**
+     * Prevents loads before the fence from being reordered with loads and stores after it.
+     */
+    public static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Prevents stores before the fence from being reordered with loads and stores after it.
+     */
+    public static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Gets the type with the given name, the names match the prefixes of the ServerStub readers (int8, int16, int32, int64, fp32, fp64, bool and uint16).
+     *
+     * @throws IllegalArgumentException if there is no type with the name.
+     */
+    public static byte getType(String name) {
+        for (byte type = 0; type < TYPE_NAMES.length; ++type) {
+            if (TYPE_NAMES[type].equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown slot type " + name + ", expected one of int8, int16, int32, int64, fp32, fp64, bool or uint16.");
+    }
+
+    public static String getTypeName(byte type) {
+        return TYPE_NAMES[type];
+    }
+
+    /**
+     * Gets the offset of the first slot given the offset of the sequence.
+     */
+    public static int getSlotsOffset(int sequence_offset) {
+        return sequence_offset + CACHE_LINE;
+    }
+
+    /**
+     * Rounds the offset up to the next cache line.
+     */
+    public static int align(int offset) {
+        return (offset + CACHE_LINE - 1) & -CACHE_LINE;
+    }
+}
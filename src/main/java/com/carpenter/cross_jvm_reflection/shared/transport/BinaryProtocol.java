@@ -0,0 +1,267 @@
+package com.carpenter.cross_jvm_reflection.shared.transport;
+
+import com.carpenter.cross_jvm_reflection.shared.rmi.ServerStub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The length prefixed binary protocol used by the non-rmi transport.
+ * <p>
+ * Every frame starts with an int holding the length of the rest of the frame.
+ * A request is followed by a long request id, an int target (0 for the server, otherwise a session opened on the same connection),
+ * a short method id and the arguments. A response is followed by the request id, a status byte and either the result or an error message.
+ * Requests may be pipelined, responses are matched to requests by id and may arrive in any order.
+ * A WatchListener argument is sent as an int id chosen by the client, the server then pushes each delta for it as a response frame whose
+ * request id is the listener id and whose status is {@link #STATUS_PUSH}.
+ * <p>
+ * Method ids are the indices of the methods of {@link ServerStub} sorted by name and descriptor, both sides verify they agree through
+ * the signature sent in the hello frame. Values are encoded according to the declared types of the method: primitives and primitive arrays
+ * in their binary form, Strings as UTF-8, methods returning a ServerStub as the target id of the new session and everything else through java serialization.
+ */
+public final class BinaryProtocol {
+    public static final int MAGIC = 0x434A5652;
+    public static final short HELLO = -1;
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_PUSH = 2;
+    /**
+     * The limit on the length of the response frames a client accepts, a response may carry a large array.
+     */
+    public static final int MAX_FRAME_LENGTH = Integer.MAX_VALUE - 8;
+    /**
+     * The default limit on the length of the request frames a server accepts, see {@link com.carpenter.cross_jvm_reflection.server.transport.BinaryServer}.
+     */
+    public static final int DEFAULT_MAX_REQUEST_LENGTH = 16 * 1024 * 1024;
+
+    private static final Method[] METHODS = ServerStub.class.getMethods();
+    private static final int SIGNATURE;
+
+    static {
+        Arrays.sort(METHODS, Comparator.comparing(BinaryProtocol::getDescriptor));
+        int signature = 1;
+        for (Method method : METHODS) {
+            signature = 31 * signature + getDescriptor(method).hashCode();
+        }
+        SIGNATURE = signature;
+    }
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Gets the method with the given id.
+     *
+     * @throws IllegalArgumentException if there is no method with the id.
+     */
+    public static Method getMethod(short id) {
+        if (id < 0 || id >= METHODS.length) {
+            throw new IllegalArgumentException("There is no method with the id " + id + ".");
+        }
+        return METHODS[id];
+    }
+
+    /**
+     * Gets the id of the method, the method must be declared by ServerStub.
+     */
+    public static short getMethodId(Method method) {
+        for (short id = 0; id < METHODS.length; ++id) {
+            if (METHODS[id].equals(method)) {
+                return id;
+            }
+        }
+        throw new IllegalArgumentException(method + " is not a method of " + ServerStub.class.getName() + ".");
+    }
+
+    /**
+     * Gets a hash of the method table, a client and server only agree on method ids if they agree on the signature.
+     */
+    public static int getSignature() {
+        return SIGNATURE;
+    }
+
+    private static String getDescriptor(Method method) {
+        StringBuilder builder = new StringBuilder(method.getName()).append('(');
+        for (Class<?> type : method.getParameterTypes()) {
+            builder.append(type.getName()).append(';');
+        }
+        return builder.append(')').append(method.getReturnType().getName()).toString();
+    }
+
+    /**
+     * Encodes the value according to its declared type.
+     *
+     * @throws IOException if the value had to be serialized and couldn't be.
+     */
+    public static void write(FrameWriter writer, Class<?> type, Object value) throws IOException {
+        if (type == void.class) {
+            return;
+        } else if (type == boolean.class) {
+            writer.putBoolean((Boolean) value);
+        } else if (type == byte.class) {
+            writer.putByte((Byte) value);
+        } else if (type == short.class) {
+            writer.putShort((Short) value);
+        } else if (type == char.class) {
+            writer.putChar((Character) value);
+        } else if (type == int.class) {
+            writer.putInt((Integer) value);
+        } else if (type == long.class) {
+            writer.putLong((Long) value);
+        } else if (type == float.class) {
+            writer.putFloat((Float) value);
+        } else if (type == double.class) {
+            writer.putDouble((Double) value);
+        } else if (type == String.class) {
+            writer.putString((String) value);
+        } else if (type == byte[].class) {
+            writer.putBytes((byte[]) value);
+        } else if (type == boolean[].class) {
+            writer.putBooleans((boolean[]) value);
+        } else if (type == short[].class) {
+            writer.putShorts((short[]) value);
+        } else if (type == char[].class) {
+            writer.putChars((char[]) value);
+        } else if (type == int[].class) {
+            writer.putInts((int[]) value);
+        } else if (type == long[].class) {
+            writer.putLongs((long[]) value);
+        } else if (type == float[].class) {
+            writer.putFloats((float[]) value);
+        } else if (type == double[].class) {
+            writer.putDoubles((double[]) value);
+        } else {
+            writer.putBytes(value == null ? null : serialize(value));
+        }
+    }
+
+    /**
+     * Decodes a value of the declared type.
+     *
+     * @throws IOException if the value was serialized and couldn't be deserialized.
+     */
+    public static Object read(ByteBuffer buffer, Class<?> type) throws IOException {
+        if (type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return buffer.get() != 0;
+        } else if (type == byte.class) {
+            return buffer.get();
+        } else if (type == short.class) {
+            return buffer.getShort();
+        } else if (type == char.class) {
+            return buffer.getChar();
+        } else if (type == int.class) {
+            return buffer.getInt();
+        } else if (type == long.class) {
+            return buffer.getLong();
+        } else if (type == float.class) {
+            return buffer.getFloat();
+        } else if (type == double.class) {
+            return buffer.getDouble();
+        }
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (type == String.class) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        } else if (type == byte[].class) {
+            byte[] value = new byte[length];
+            buffer.get(value);
+            return value;
+        } else if (type == boolean[].class) {
+            boolean[] value = new boolean[length];
+            for (int index = 0; index < length; ++index) {
+                value[index] = buffer.get() != 0;
+            }
+            return value;
+        } else if (type == short[].class) {
+            short[] value = new short[length];
+            buffer.asShortBuffer().get(value);
+            buffer.position(buffer.position() + length * 2);
+            return value;
+        } else if (type == char[].class) {
+            char[] value = new char[length];
+            buffer.asCharBuffer().get(value);
+            buffer.position(buffer.position() + length * 2);
+            return value;
+        } else if (type == int[].class) {
+            int[] value = new int[length];
+            buffer.asIntBuffer().get(value);
+            buffer.position(buffer.position() + length * 4);
+            return value;
+        } else if (type == long[].class) {
+            long[] value = new long[length];
+            buffer.asLongBuffer().get(value);
+            buffer.position(buffer.position() + length * 8);
+            return value;
+        } else if (type == float[].class) {
+            float[] value = new float[length];
+            buffer.asFloatBuffer().get(value);
+            buffer.position(buffer.position() + length * 4);
+            return value;
+        } else if (type == double[].class) {
+            double[] value = new double[length];
+            buffer.asDoubleBuffer().get(value);
+            buffer.position(buffer.position() + length * 8);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return deserialize(bytes);
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("Failed to deserialize a value.", cnfe);
+        }
+    }
+
+    /**
+     * Gets the protocol family of unix domain sockets, null before Java 16.
+     */
+    public static ProtocolFamily getUnixProtocolFamily() {
+        try {
+            return StandardProtocolFamily.valueOf("UNIX");
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the address of the unix domain socket at the path.
+     *
+     * @throws UnsupportedOperationException before Java 16.
+     */
+    public static SocketAddress getUnixAddress(String path) {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null, path);
+        } catch (ReflectiveOperationException roe) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later.", roe);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.carpenter.cross_jvm_reflection.shared.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable ByteBuffer that frames are encoded into. The first 4 bytes are reserved for the length of the frame, see {@link #finish()}.
+ * Primitive arrays are copied in bulk through buffer views instead of element by element.
+ */
+public final class FrameWriter {
+    private ByteBuffer buffer;
+
+    public FrameWriter(int initial_capacity) {
+        buffer = ByteBuffer.allocate(Math.max(initial_capacity, 64));
+        buffer.putInt(0);
+    }
+
+    /**
+     * Writes the length of the frame into its first 4 bytes and gets the frame ready to be written to a channel.
+     */
+    public ByteBuffer finish() {
+        buffer.putInt(0, buffer.position() - 4);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            long required = (long) buffer.position() + bytes;
+            if (required > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("A frame can't be larger than 2GB.");
+            }
+            ByteBuffer grown = ByteBuffer.allocate((int) Math.min(Math.max(required, buffer.capacity() * 2L), Integer.MAX_VALUE - 8));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    public FrameWriter putByte(byte value) {
+        ensure(1);
+        buffer.put(value);
+        return this;
+    }
+
+    public FrameWriter putShort(short value) {
+        ensure(2);
+        buffer.putShort(value);
+        return this;
+    }
+
+    public FrameWriter putChar(char value) {
+        ensure(2);
+        buffer.putChar(value);
+        return this;
+    }
+
+    public FrameWriter putInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public FrameWriter putLong(long value) {
+        ensure(8);
+        buffer.putLong(value);
+        return this;
+    }
+
+    public FrameWriter putFloat(float value) {
+        ensure(4);
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public FrameWriter putDouble(double value) {
+        ensure(8);
+        buffer.putDouble(value);
+        return this;
+    }
+
+    public FrameWriter putBoolean(boolean value) {
+        return putByte((byte) (value ? 1 : 0));
+    }
+
+    /**
+     * Writes the length followed by the bytes, a length of -1 represents null.
+     */
+    public FrameWriter putBytes(byte[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length);
+        buffer.putInt(value.length);
+        buffer.put(value);
+        return this;
+    }
+
+    /**
+     * Writes the bytes without a length.
+     */
+    public FrameWriter putRaw(byte[] value, int offset, int length) {
+        ensure(length);
+        buffer.put(value, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes the string as length prefixed UTF-8, a length of -1 represents null.
+     */
+    public FrameWriter putString(String value) {
+        return putBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public FrameWriter putShorts(short[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length * 2);
+        buffer.putInt(value.length);
+        buffer.asShortBuffer().put(value);
+        buffer.position(buffer.position() + value.length * 2);
+        return this;
+    }
+
+    public FrameWriter putChars(char[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length * 2);
+        buffer.putInt(value.length);
+        buffer.asCharBuffer().put(value);
+        buffer.position(buffer.position() + value.length * 2);
+        return this;
+    }
+
+    public FrameWriter putInts(int[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length * 4);
+        buffer.putInt(value.length);
+        buffer.asIntBuffer().put(value);
+        buffer.position(buffer.position() + value.length * 4);
+        return this;
+    }
+
+    public FrameWriter putLongs(long[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length * 8);
+        buffer.putInt(value.length);
+        buffer.asLongBuffer().put(value);
+        buffer.position(buffer.position() + value.length * 8);
+        return this;
+    }
+
+    public FrameWriter putFloats(float[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length * 4);
+        buffer.putInt(value.length);
+        buffer.asFloatBuffer().put(value);
+        buffer.position(buffer.position() + value.length * 4);
+        return this;
+    }
+
+    public FrameWriter putDoubles(double[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length * 8);
+        buffer.putInt(value.length);
+        buffer.asDoubleBuffer().put(value);
+        buffer.position(buffer.position() + value.length * 8);
+        return this;
+    }
+
+    public FrameWriter putBooleans(boolean[] value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length);
+        buffer.putInt(value.length);
+        for (boolean element : value) {
+            buffer.put((byte) (element ? 1 : 0));
+        }
+        return this;
+    }
+}
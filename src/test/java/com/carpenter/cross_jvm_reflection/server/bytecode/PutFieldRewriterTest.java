@@ -0,0 +1,442 @@
+package com.carpenter.cross_jvm_reflection.server.bytecode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rewrites the compiled fixtures below and loads the results in their own class loader, which runs them through the verifier before their
+ * methods are called. The writes of the watched fields land in {@link Hooks} instead of the fields.
+ */
+public class PutFieldRewriterTest {
+    private static final String HOOKS = Hooks.class.getName().replace('.', '/');
+    private static final int POOL_COUNT_OFFSET = 8;
+    private static final int ENTRIES_PER_HOOK = 6;
+
+    @BeforeEach
+    public void clearWrites() {
+        Hooks.WRITES.clear();
+    }
+
+    @Test
+    public void keepsEveryPoolTagAndLongAndDoubleSlots() throws Exception {
+        byte[] original = read(Constants.class);
+        byte[] rewritten = PutFieldRewriter.rewrite(original, hooks(Constants.class,
+                "count:I", "total:J", "ratio:D", "name:Ljava/lang/String;", "instances:I", "last:Ljava/lang/Object;"));
+        assertNotNull(rewritten);
+        assertEquals(getPoolCount(original) + 6 * ENTRIES_PER_HOOK, getPoolCount(rewritten));
+        Class<?> type = define(Constants.class, rewritten);
+        Object constants = type.getConstructor().newInstance();
+        type.getMethod("update").invoke(constants);
+        assertWrites(
+                constants, 100_000,
+                constants, 1_234_567_890_123L,
+                constants, 3.25e300,
+                constants, "constants",
+                null, 7,
+                null, constants);
+        assertEquals(0, type.getField("count").getInt(constants));
+        assertEquals((double) (1_234_567_890_123L + 2.5f + 100_000), (Double) type.getMethod("constants").invoke(constants), 0);
+    }
+
+    @Test
+    public void leavesPutfieldInConstructors() throws Exception {
+        byte[] rewritten = PutFieldRewriter.rewrite(read(Constructed.class), hooks(Constructed.class, "count:I"));
+        Class<?> type = define(Constructed.class, rewritten);
+        Object constructed = type.getConstructor(int.class).newInstance(3);
+        assertEquals(3, type.getField("count").getInt(constructed));
+        assertTrue(Hooks.WRITES.isEmpty());
+        type.getMethod("set", int.class).invoke(constructed, 5);
+        assertWrites(constructed, 5);
+        assertEquals(3, type.getField("count").getInt(constructed));
+    }
+
+    @Test
+    public void stepsOverSwitchPaddingAtEveryAlignment() throws Exception {
+        byte[] rewritten = PutFieldRewriter.rewrite(read(Switches.class), hooks(Switches.class, "value:I"));
+        Class<?> type = define(Switches.class, rewritten);
+        Object switches = type.getConstructor().newInstance();
+        for (String kind : new String[]{"table", "lookup"}) {
+            for (int alignment = 0; alignment < 4; ++alignment) {
+                Hooks.WRITES.clear();
+                type.getMethod(kind + alignment, int.class, int.class).invoke(switches, 2, 0);
+                type.getMethod(kind + alignment, int.class, int.class).invoke(switches, 4, 0);
+                assertWrites(switches, 20, switches, 2, switches, -1, switches, 4);
+            }
+        }
+    }
+
+    @Test
+    public void stepsOverWideInstructions() throws Exception {
+        byte[] rewritten = PutFieldRewriter.rewrite(read(Wide.class), hooks(Wide.class, "value:I"));
+        Class<?> type = define(Wide.class, rewritten);
+        Object wide = type.getConstructor().newInstance();
+        type.getMethod("update", int.class).invoke(wide, 1);
+        assertWrites(wide, 198, wide, 395);
+    }
+
+    @Test
+    public void returnsNullWithoutWatchedWrites() throws IOException {
+        assertNull(PutFieldRewriter.rewrite(read(Constructed.class), hooks(Constants.class, "count:I")));
+        assertNull(PutFieldRewriter.rewrite(read(Constructed.class), hooks(Constructed.class, "count:J")));
+    }
+
+    @Test
+    public void rejectsMalformedClassFiles() throws IOException {
+        byte[] class_file = read(Constructed.class);
+        class_file[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> PutFieldRewriter.rewrite(class_file, hooks(Constructed.class, "count:I")));
+        byte[] truncated = Arrays.copyOf(read(Constructed.class), 64);
+        assertThrows(IllegalArgumentException.class, () -> PutFieldRewriter.rewrite(truncated, hooks(Constructed.class, "count:I")));
+    }
+
+    @Test
+    public void growsAConstantPoolUpToItsLimit() throws Exception {
+        byte[] original = read(Constructed.class);
+        byte[] padded = pad(original, 0xFFFF - ENTRIES_PER_HOOK - getPoolCount(original));
+        byte[] rewritten = PutFieldRewriter.rewrite(padded, hooks(Constructed.class, "count:I"));
+        assertEquals(0xFFFF, getPoolCount(rewritten));
+        Class<?> type = define(Constructed.class, rewritten);
+        Object constructed = type.getConstructor(int.class).newInstance(3);
+        type.getMethod("set", int.class).invoke(constructed, 5);
+        assertWrites(constructed, 5);
+    }
+
+    @Test
+    public void rejectsAFullConstantPool() throws IOException {
+        byte[] original = read(Constructed.class);
+        byte[] padded = pad(original, 0xFFFF - ENTRIES_PER_HOOK - getPoolCount(original) + 1);
+        IllegalArgumentException iae = assertThrows(IllegalArgumentException.class,
+                () -> PutFieldRewriter.rewrite(padded, hooks(Constructed.class, "count:I")));
+        assertTrue(iae.getMessage().contains("The constant pool is full."), iae.getMessage());
+    }
+
+    private static void assertWrites(Object... writes) {
+        assertArrayEquals(writes, Hooks.WRITES.toArray());
+    }
+
+    private static Map<String, String> hooks(Class<?> owner, String... fields) {
+        Map<String, String> hooks = new HashMap<>();
+        for (String field : fields) {
+            hooks.put(owner.getName().replace('.', '/') + '.' + field, HOOKS);
+        }
+        return hooks;
+    }
+
+    private static byte[] read(Class<?> type) throws IOException {
+        String name = type.getName();
+        try (InputStream in = type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Defines the class file as the fixture in a new class loader and initializes it, which links and verifies it.
+     */
+    private static Class<?> define(Class<?> fixture, byte[] class_file) throws ClassNotFoundException {
+        ClassLoader loader = new ClassLoader(PutFieldRewriterTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(fixture.getName())) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> defined = findLoadedClass(name);
+                    return defined != null ? defined : defineClass(name, class_file, 0, class_file.length);
+                }
+            }
+        };
+        try {
+            Class<?> type = Class.forName(fixture.getName(), true, loader);
+            assertTrue(type != fixture);
+            return type;
+        } catch (VerifyError ve) {
+            throw new AssertionError("The rewritten class file doesn't verify.", ve);
+        }
+    }
+
+    private static int getPoolCount(byte[] class_file) {
+        return ByteBuffer.wrap(class_file).getShort(POOL_COUNT_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Appends unused utf8 entries to the constant pool, which leaves the indices of the existing entries as they are.
+     */
+    private static byte[] pad(byte[] class_file, int entries) {
+        int pool_end = getPoolEnd(class_file);
+        ByteBuffer out = ByteBuffer.allocate(class_file.length + 6 * entries);
+        out.put(class_file, 0, POOL_COUNT_OFFSET);
+        out.putShort((short) (getPoolCount(class_file) + entries));
+        out.put(class_file, POOL_COUNT_OFFSET + 2, pool_end - POOL_COUNT_OFFSET - 2);
+        for (int entry = 0; entry < entries; ++entry) {
+            out.put((byte) 1).putShort((short) 3).put((byte) 'p').put((byte) 'a').put((byte) 'd');
+        }
+        out.put(class_file, pool_end, class_file.length - pool_end);
+        return out.array();
+    }
+
+    private static int getPoolEnd(byte[] class_file) {
+        ByteBuffer in = ByteBuffer.wrap(class_file);
+        in.position(POOL_COUNT_OFFSET + 2);
+        for (int index = 1; index < getPoolCount(class_file); ++index) {
+            int tag = in.get();
+            switch (tag) {
+                case 1: {
+                    int length = in.getShort() & 0xFFFF;
+                    in.position(in.position() + length);
+                    break;
+                }
+                case 5:
+                case 6:
+                    in.getLong();
+                    ++index;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    in.getShort();
+                    break;
+                case 15:
+                    in.get();
+                    in.getShort();
+                    break;
+                default:
+                    in.getInt();
+            }
+        }
+        return in.position();
+    }
+
+    /**
+     * The hook of every watched field of the fixtures, it records the writes instead of making them.
+     */
+    public static final class Hooks {
+        static final List<Object> WRITES = Collections.synchronizedList(new ArrayList<>());
+
+        public static void put(Object owner, int value) {
+            Collections.addAll(WRITES, owner, value);
+        }
+
+        public static void put(Object owner, long value) {
+            Collections.addAll(WRITES, owner, value);
+        }
+
+        public static void put(Object owner, double value) {
+            Collections.addAll(WRITES, owner, value);
+        }
+
+        public static void put(Object owner, Object value) {
+            Collections.addAll(WRITES, owner, value);
+        }
+
+        public static void put(int value) {
+            Collections.addAll(WRITES, null, value);
+        }
+
+        public static void put(Object value) {
+            Collections.addAll(WRITES, null, value);
+        }
+    }
+
+    /**
+     * Puts integer, float, long, double, string, method handle, method type and invokedynamic entries in the constant pool, with the long and
+     * double entries ahead of the fieldrefs so that a miscounted slot shifts the fieldrefs.
+     */
+    public static final class Constants {
+        public static int instances;
+        public static Object last;
+        public int count;
+        public long total;
+        public double ratio;
+        public String name;
+
+        public double constants() {
+            Supplier<String> supplier = () -> "constants";
+            long total = 1_234_567_890_123L;
+            float half = 2.5f;
+            int large = 100_000;
+            return supplier.get().length() > 0 ? total + half + large : 3.25e300;
+        }
+
+        public void update() {
+            Supplier<String> supplier = () -> "constants";
+            count = 100_000;
+            total = 1_234_567_890_123L;
+            ratio = 3.25e300;
+            name = supplier.get();
+            instances = 7;
+            last = this;
+        }
+    }
+
+    public static final class Constructed {
+        public int count;
+
+        public Constructed(int count) {
+            this.count = count;
+        }
+
+        public void set(int count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * Each method starts its switch at a different offset, "unused = -unused" is 3 bytes long, so the switches are padded by 2, 3, 0 and 1 bytes.
+     * The writes follow the switches, they are only found if the padding and the tables were stepped over. The last key of the lookupswitches
+     * is made of tableswitch opcodes, so reading into the pairs derails the rewrite instead of falling back in step.
+     */
+    public static final class Switches {
+        public int value;
+
+        public void table0(int key, int unused) {
+            switch (key) {
+                case 1: value = 10; break;
+                case 2: value = 20; break;
+                case 3: value = 30; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void table1(int key, int unused) {
+            unused = -unused;
+            switch (key) {
+                case 1: value = 10; break;
+                case 2: value = 20; break;
+                case 3: value = 30; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void table2(int key, int unused) {
+            unused = -unused;
+            unused = -unused;
+            switch (key) {
+                case 1: value = 10; break;
+                case 2: value = 20; break;
+                case 3: value = 30; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void table3(int key, int unused) {
+            unused = -unused;
+            unused = -unused;
+            unused = -unused;
+            switch (key) {
+                case 1: value = 10; break;
+                case 2: value = 20; break;
+                case 3: value = 30; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void lookup0(int key, int unused) {
+            switch (key) {
+                case -1_000_000: value = 10; break;
+                case 2: value = 20; break;
+                case 1_000_000: value = 30; break;
+                case 0x7FAAAAAA: value = 40; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void lookup1(int key, int unused) {
+            unused = -unused;
+            switch (key) {
+                case -1_000_000: value = 10; break;
+                case 2: value = 20; break;
+                case 1_000_000: value = 30; break;
+                case 0x7FAAAAAA: value = 40; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void lookup2(int key, int unused) {
+            unused = -unused;
+            unused = -unused;
+            switch (key) {
+                case -1_000_000: value = 10; break;
+                case 2: value = 20; break;
+                case 1_000_000: value = 30; break;
+                case 0x7FAAAAAA: value = 40; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+
+        public void lookup3(int key, int unused) {
+            unused = -unused;
+            unused = -unused;
+            unused = -unused;
+            switch (key) {
+                case -1_000_000: value = 10; break;
+                case 2: value = 20; break;
+                case 1_000_000: value = 30; break;
+                case 0x7FAAAAAA: value = 40; break;
+                default: value = -1;
+            }
+            value = key;
+        }
+    }
+
+    /**
+     * "key += 197" is a wide iinc because of its increment, the locals past the 130 longs are loaded and stored with wide instructions. The
+     * increment is 0x00C5, a nop and the opcode of a 4 byte instruction, so a wide iinc read as 4 bytes long hides the putfield after it.
+     */
+    public static final class Wide {
+        public int value;
+
+        public void update(int key) {
+            key += 197;
+            value = key;
+            long a000 = 0, a001 = 0, a002 = 0, a003 = 0, a004 = 0, a005 = 0, a006 = 0, a007 = 0, a008 = 0, a009 = 0;
+            long a010 = 0, a011 = 0, a012 = 0, a013 = 0, a014 = 0, a015 = 0, a016 = 0, a017 = 0, a018 = 0, a019 = 0;
+            long a020 = 0, a021 = 0, a022 = 0, a023 = 0, a024 = 0, a025 = 0, a026 = 0, a027 = 0, a028 = 0, a029 = 0;
+            long a030 = 0, a031 = 0, a032 = 0, a033 = 0, a034 = 0, a035 = 0, a036 = 0, a037 = 0, a038 = 0, a039 = 0;
+            long a040 = 0, a041 = 0, a042 = 0, a043 = 0, a044 = 0, a045 = 0, a046 = 0, a047 = 0, a048 = 0, a049 = 0;
+            long a050 = 0, a051 = 0, a052 = 0, a053 = 0, a054 = 0, a055 = 0, a056 = 0, a057 = 0, a058 = 0, a059 = 0;
+            long a060 = 0, a061 = 0, a062 = 0, a063 = 0, a064 = 0, a065 = 0, a066 = 0, a067 = 0, a068 = 0, a069 = 0;
+            long a070 = 0, a071 = 0, a072 = 0, a073 = 0, a074 = 0, a075 = 0, a076 = 0, a077 = 0, a078 = 0, a079 = 0;
+            long a080 = 0, a081 = 0, a082 = 0, a083 = 0, a084 = 0, a085 = 0, a086 = 0, a087 = 0, a088 = 0, a089 = 0;
+            long a090 = 0, a091 = 0, a092 = 0, a093 = 0, a094 = 0, a095 = 0, a096 = 0, a097 = 0, a098 = 0, a099 = 0;
+            long a100 = 0, a101 = 0, a102 = 0, a103 = 0, a104 = 0, a105 = 0, a106 = 0, a107 = 0, a108 = 0, a109 = 0;
+            long a110 = 0, a111 = 0, a112 = 0, a113 = 0, a114 = 0, a115 = 0, a116 = 0, a117 = 0, a118 = 0, a119 = 0;
+            long a120 = 0, a121 = 0, a122 = 0, a123 = 0, a124 = 0, a125 = 0, a126 = 0, a127 = 0, a128 = 0, a129 = 0;
+            int far = key;
+            far += 197;
+            value = far;
+        }
+    }
+}